@@ -118,9 +118,10 @@ public class AddTagController implements Initializable, ChangeScene {
 
     /**
      * Changes the scene to ListAllScene or LocalOnlyScene, based on the former chosen directory, when
-     * go back button is clicked.
+     * go back button is clicked. The pending renames of the tag edits are committed first.
      */
     public void goBackButtonClicked() {
+        Main.system.getImageManager().commitPendingRenames();
         try {
             if (ListAllController.getChosenImage() != null) {
                 changeScene(goBack, "../scenes/ListAllScene.fxml");
@@ -156,11 +157,13 @@ public class AddTagController implements Initializable, ChangeScene {
     }
 
     /**
-     * Changes the scene to ViewHistoryScene when the view history button is clicked.
+     * Changes the scene to ViewHistoryScene when the view history button is clicked. The pending renames of the
+     * tag edits are committed first, so that the history shows the new name.
      *
      * @throws IOException Indicates changing scene fails.
      */
     public void viewHistoryButtonClicked() throws IOException {
+        Main.system.getImageManager().commitPendingRenames();
         changeScene(viewHistory, "../scenes/ViewRenamingHistoryScene.fxml");
 
     }
@@ -193,7 +196,8 @@ public class AddTagController implements Initializable, ChangeScene {
 
     /**
      * Adds the tags chosen from the table or typed in the text field to the image and redraw the table when
-     * addTag Button is clicked. Pop out an alert box if the image already has had that tag.
+     * addTag Button is clicked. Pop out an alert box if the image already has had that tag, or if the tag cannot be
+     * written in a file name.
      *
      * @see ImageManager
      * @see AlertBox
@@ -211,7 +215,11 @@ public class AddTagController implements Initializable, ChangeScene {
                 String message = "The image has this tag already!";
                 AlertBox.display("GoGoPhoto", message);
             } else {
-                imageManager.addTagToName(getChosenImage(), tag);
+                try {
+                    imageManager.addTagToName(getChosenImage(), tag);
+                } catch (IllegalArgumentException e) {
+                    AlertBox.display("GoGoPhoto", e.getMessage());
+                }
             }
         } else {
             if (selectedTags != null && selectedTags.size() != 0) {
@@ -247,11 +255,13 @@ public class AddTagController implements Initializable, ChangeScene {
     }
 
     /**
-     * Changes the scene to AddFilterScene when add filter Button is clicked.
+     * Changes the scene to AddFilterScene when add filter Button is clicked. The pending renames of the tag edits
+     * are committed first, so that the file is found under the current name of the image.
      *
      * @throws IOException Indicates changing scene fails.
      */
     public void addFilterButtonClicked() throws IOException {
+        Main.system.getImageManager().commitPendingRenames();
         changeScene(addFilter, "../scenes/AddFilterScene.fxml");
     }
 
@@ -1,6 +1,8 @@
 package gui;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.Parent;
@@ -13,10 +15,10 @@ import javafx.stage.Stage;
 import model.ExistingImage;
 import model.Image;
 import model.ImageManager;
+import model.ImageScan;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.ResourceBundle;
 
 /**
@@ -67,14 +69,19 @@ public class ListAllController implements Initializable, ChangeScene {
     @FXML
     private TableColumn<ExistingImage, String> pathColumn;
 
+    /**
+     * The background scan filling the table, cancelled when the user leaves the scene.
+     */
+    private ImageScan scan;
+
     /**
      * This method is called firstly once the ListAllscene is displayed. Draw the table based on all the images under
-     * the directory that the user chooses;
+     * the directory that the user chooses; the table is filled progressively while the directory is scanned.
      *
      * @param location  default
      * @param resources default
      *
-     * @throws IOException
+     * @see ImageScan
      */
 
     @Override
@@ -83,19 +90,15 @@ public class ListAllController implements Initializable, ChangeScene {
         nameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
         pathColumn.setCellValueFactory(new PropertyValueFactory<>("path"));
         String path = MainSceneController.getPath();
-        ArrayList<ExistingImage> allImages;
-        try {
-            allImages = Main.system.getDirectoryManager().findAllImages(path);
-            table.setItems(FXCollections.observableArrayList(allImages));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
+        ObservableList<ExistingImage> allImages = FXCollections.observableArrayList();
+        table.setItems(allImages);
+        scan = Main.system.getDirectoryManager().scanAllImages(path,
+                batch -> Platform.runLater(() -> allImages.addAll(batch)));
     }
 
     /**
-     * This method is called when chooseButton is clicked. Make the Image chosen by the user associated with the
-     * controller. Turn to AddTag scene then.
+     * This method is called when chooseButton is clicked. Stops the scan and make the Image chosen by the user
+     * associated with the controller. Turn to AddTag scene then.
      *
      * @throws IOException
      * @see model.ImageManager
@@ -107,6 +110,7 @@ public class ListAllController implements Initializable, ChangeScene {
         ImageManager imageManager = Main.system.getImageManager();
         ExistingImage selected = table.getSelectionModel().getSelectedItem();
         if (selected != null) {
+            scan.cancel();
             Image targetImage = imageManager.foundImage(selected.getPath());
             if (targetImage == null) {
                 chosenImage = new Image(selected.getImageName(), selected.getImageType(), selected.getPath());
@@ -119,12 +123,13 @@ public class ListAllController implements Initializable, ChangeScene {
     }
 
     /**
-     * This method is called when when goBack Button is clicked. Turn to MainScene then.
+     * This method is called when when goBack Button is clicked. Stops the scan and turn to MainScene then.
      *
      * @see ChangeScene
      * @see Button
      */
     public void goBackButtonClicked() throws IOException {
+        scan.cancel();
         changeScene(goBackButton, "../scenes/MainScene.fxml");
     }
 
@@ -1,12 +1,20 @@
 package gui;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import model.CatalogStore;
 import model.GoGoPhotoSystem;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
 
 /**
  * This class is the entrance that the user enters the application. It initializes a new program, creates a
@@ -25,6 +33,13 @@ public class Main extends Application {
      */
     public static GoGoPhotoSystem system;
 
+    /**
+     * The file holding the configuration of the program, such as the store of the images and tags.
+     *
+     * @see CatalogStore#fromConfiguration(Properties)
+     */
+    static final String CONFIGURATION_FILE = "gogophoto.properties";
+
     /**
      * This method launches the whole program.
      *
@@ -36,7 +51,9 @@ public class Main extends Application {
 
     /**
      * Initialize a new GoGoPhotoSystem and sets the initial settings for the primary scene, called when the program
-     * is opened.
+     * is opened. The images and tags are loaded from the store chosen by the configuration, by default the image and
+     * tag files with their journal. Tag edits are written behind, so that adding several tags in a row renames a file
+     * once; the renames are committed on the JavaFX thread.
      *
      * @param primaryStage the primary stage to display everything
      * @throws Exception Indicates setting MainScene fails.
@@ -45,7 +62,10 @@ public class Main extends Application {
      */
     @Override
     public void start(Stage primaryStage) throws Exception {
-        system = new GoGoPhotoSystem("tagFile.ser", "imageFile.ser");
+        system = new GoGoPhotoSystem(CatalogStore.fromConfiguration(readConfiguration()), "scanIndex.ser",
+                "hashCache.ser", "metadataCache.ser");
+        system.getImageManager().setWriteBehind(true);
+        system.getImageManager().setCommitExecutor(Platform::runLater);
         Parent root = FXMLLoader.load(getClass().getResource("../scenes/MainScene.fxml"));
         primaryStage.setTitle("GoGoPhoto");
         primaryStage.setScene(new Scene(root, 800, 494.5));
@@ -54,15 +74,38 @@ public class Main extends Application {
     }
 
     /**
-     * Saves the information stored in the ImageManager and TagManager into imageFile.ser and tagFile.ser, called
-     * when the program is closed.
+     * Returns the configuration of the program: the properties of gogophoto.properties, if the file exists, and the
+     * system properties given on the command line, which take precedence.
+     *
+     * @return the configuration of the program.
+     * @throws IOException Indicates the configuration file cannot be read.
+     */
+    static Properties readConfiguration() throws IOException {
+        Properties configuration = new Properties();
+        File file = new File(CONFIGURATION_FILE);
+        if (file.exists()) {
+            try (InputStream input = new FileInputStream(file)) {
+                configuration.load(input);
+            }
+        }
+        configuration.putAll(System.getProperties());
+        return configuration;
+    }
+
+    /**
+     * Writes the last changes to the ImageManager and TagManager to their store, and saves the directories scanned
+     * so far into scanIndex.ser, the content hashes computed so far into hashCache.ser and the metadata read so far
+     * into metadataCache.ser, called when the program is closed.
      *
      * @throws Exception Indicates the saving operation fails.
      */
     @Override
     public void stop() throws Exception {
-        system.saveToImageManagerFile("imageFile.ser");
-        system.saveToTagManagerFile("tagFile.ser");
+        system.getDirectoryManager().stopWatching();
+        system.close();
+        system.saveToScanIndexFile("scanIndex.ser");
+        system.saveToHashCacheFile("hashCache.ser");
+        system.saveToMetadataCacheFile("metadataCache.ser");
     }
 
 
@@ -62,7 +62,8 @@ public class MainSceneController implements Initializable, ChangeScene {
 
     /**
      * lets the user choose a directory.
-     * Sets path and turn to ViewImageScene then when viewImage Button is clicked.
+     * Sets path, starts watching the chosen directory and turn to ViewImageScene then when viewImage Button
+     * is clicked.
      *
      * @throws IOException indicates that choosing directory or seting path or turning to ViewImageScene fails.
      * @see DirectoryChooser
@@ -78,6 +79,7 @@ public class MainSceneController implements Initializable, ChangeScene {
                 directoryChooser.showDialog(primaryStage);
         if (selectedDirectory != null) {
             path = selectedDirectory.getAbsolutePath();
+            Main.system.getDirectoryManager().watch(path);
             changeScene(viewImage, "../scenes/ViewImageScene.fxml");
         }
 
@@ -99,7 +99,12 @@ public class ViewAllMyTagsController implements Initializable, ChangeScene {
                 String message = "You already have this tag already!";
                 AlertBox.display("GoGoPhoto", message);
             } else {
-                tagManager.addNewTag(tag);
+                try {
+                    TagNameCodec.checkTag(tag);
+                    tagManager.addNewTag(tag);
+                } catch (IllegalArgumentException e) {
+                    AlertBox.display("GoGoPhoto", e.getMessage());
+                }
             }
         } else {
             AlertBox.display("GoGoPhoto", "Please type something!");
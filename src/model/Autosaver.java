@@ -0,0 +1,407 @@
+package model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * This class saves the changes made to the catalog in the background, every few seconds, instead of on every
+ * change or when the program is closed. It tracks which images and which tags have changed since the last save,
+ * and saves only those, to a {@link CatalogJournal}.
+ *
+ * <p>The changes are kept in two buffers. The thread changing the catalog records the changes in the front buffer
+ * in the order they are made: every rename and move, so that the renaming history is saved whole, and the tags
+ * added or removed. Several tag changes to the same image in a row are kept as one; the changes of different
+ * images are never reordered, since the journal finds an image by the path it has at that point. Every
+ * {@link #INTERVAL} milliseconds the saver thread swaps the two buffers, which is the only time it holds the lock
+ * the changing thread takes, and appends the changes of the back buffer to the journal. Closing the program only
+ * saves the changes of the last interval.
+ *
+ * <p>The tag counts are not saved: they follow from the tags of the images, and are counted again when the
+ * journal is replayed. Only the tags created, added to an image or deleted in TagManager are saved, after the
+ * images, so that a tag added and removed between two saves is still known with a count of 0, and a tag removed
+ * from every image and then deleted is deleted when the journal is replayed.
+ *
+ * @see CatalogJournal
+ * @see GoGoPhotoSystem#openJournal()
+ */
+class Autosaver implements CatalogListener, TagListener {
+    /**
+     * The number of milliseconds between two saves, unless another interval is given.
+     */
+    static final long INTERVAL = 2000;
+
+    /**
+     * The journal the changes are saved to.
+     */
+    private final CatalogJournal journal;
+
+    /**
+     * The lock guarding the front buffer and the swap of the buffers.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The buffer the changes are recorded in, guarded by {@link #lock}.
+     */
+    private Changes front = new Changes();
+
+    /**
+     * The buffer being saved, used by the saving thread only.
+     */
+    private Changes back = new Changes();
+
+    /**
+     * The thread saving the changes every interval.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Creates an Autosaver saving the changes to the journal every interval.
+     *
+     * @param journal  the journal the changes are saved to
+     * @param interval the number of milliseconds between two saves
+     */
+    Autosaver(CatalogJournal journal, long interval) {
+        this.journal = journal;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GoGoPhoto autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::saveQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records the latest state of every image changed by the batch.
+     *
+     * @param batch the changes
+     */
+    @Override
+    public void onBatch(CatalogEventBatch batch) {
+        synchronized (lock) {
+            for (CatalogEvent event : batch.getEvents()) {
+                front.record(event);
+            }
+        }
+    }
+
+    /**
+     * Records that a tag has been created in TagManager.
+     *
+     * @param tag the tag created
+     */
+    @Override
+    public void tagCreated(String tag) {
+        synchronized (lock) {
+            front.tags.put(tag, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Records that a tag has been deleted from TagManager.
+     *
+     * @param tag the tag deleted
+     */
+    @Override
+    public void tagDeleted(String tag) {
+        synchronized (lock) {
+            front.tags.put(tag, Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Returns whether changes have been made since the last save.
+     *
+     * @return true if changes have been made since the last save.
+     */
+    boolean isDirty() {
+        synchronized (lock) {
+            return !front.isEmpty();
+        }
+    }
+
+    /**
+     * Swaps the buffers and appends the changes made since the last save to the journal, without waiting for them
+     * to reach the disk.
+     *
+     * @return the number of images and tags saved.
+     */
+    synchronized int save() {
+        Changes dirty;
+        synchronized (lock) {
+            dirty = front;
+            front = back;
+        }
+        back = dirty;
+        int count = dirty.size();
+        dirty.writeTo(journal);
+        dirty.clear();
+        return count;
+    }
+
+    /**
+     * Saves the changes, logging a failure instead of throwing it, so that the next saves still run.
+     */
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (RuntimeException e) {
+            GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot save the changes: " + e);
+        }
+    }
+
+    /**
+     * Stops the saves every interval, saves the last changes and waits until they are on the disk.
+     */
+    void close() {
+        timer.shutdown();
+        try {
+            timer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        save();
+        journal.flush();
+    }
+
+    /**
+     * The changes made to the images and the tags during one interval.
+     */
+    private static class Changes {
+        /**
+         * The changes of the images, in the order they were made. Consecutive changes to the same image are kept
+         * as one entry, but changes to another image in between start a new entry, since the journal finds the
+         * images by the path they have at that point.
+         */
+        private final ArrayList<ImageChange> images = new ArrayList<>();
+
+        /**
+         * The last entry of every image changed, so that its path can be corrected by a later change.
+         */
+        private final IdentityHashMap<Image, ImageChange> last = new IdentityHashMap<>();
+
+        /**
+         * The tags created or added to an image (true) or deleted (false), in the order they first changed.
+         */
+        private final LinkedHashMap<String, Boolean> tags = new LinkedHashMap<>();
+
+        /**
+         * Records the change of the image of the event.
+         *
+         * @param event the change
+         */
+        private void record(CatalogEvent event) {
+            Image image = event.getImage();
+            String oldPath = null;
+            if (event instanceof CatalogEvent.ImageRenamed) {
+                oldPath = ((CatalogEvent.ImageRenamed) event).getOldPath();
+            } else if (event instanceof CatalogEvent.ImageMoved) {
+                oldPath = ((CatalogEvent.ImageMoved) event).getOldPath();
+            }
+            ImageChange previous = last.get(image);
+            if (previous != null && oldPath != null) {
+                // the events of a batch are delivered after the batch, so the path recorded before was the last one
+                previous.correctPath(oldPath);
+            }
+            ImageChange change = images.isEmpty() ? null : images.get(images.size() - 1);
+            if (change == null || change.image != image || event instanceof CatalogEvent.ImageAdded) {
+                change = new ImageChange(image, oldPath != null ? oldPath : image.getPath());
+                change.added = event instanceof CatalogEvent.ImageAdded;
+                change.name = image.getName();
+                images.add(change);
+                last.put(image, change);
+            }
+            if (oldPath != null) {
+                String name = event instanceof CatalogEvent.ImageRenamed ? image.getName() : null;
+                change.paths.add(new PathChange(oldPath, image.getPath(), name));
+                change.path = image.getPath();
+            } else if (event instanceof CatalogEvent.TagAdded) {
+                String tag = ((CatalogEvent.TagAdded) event).getTag();
+                change.tags.put(tag, Boolean.TRUE);
+                tags.put(tag, Boolean.TRUE);
+            } else if (event instanceof CatalogEvent.TagRemoved) {
+                change.tags.put(((CatalogEvent.TagRemoved) event).getTag(), Boolean.FALSE);
+            }
+        }
+
+        /**
+         * Appends the changes to the journal: every image in order, then the tags created and deleted.
+         *
+         * @param journal the journal
+         */
+        private void writeTo(CatalogJournal journal) {
+            for (ImageChange change : images) {
+                if (change.added) {
+                    journal.imageAdded(change.startPath, change.name, change.image.getType());
+                }
+                for (PathChange path : change.paths) {
+                    if (path.newName != null) {
+                        journal.imageRenamed(path.oldPath, path.newPath, path.newName);
+                    } else {
+                        journal.imageMoved(path.oldPath, path.newPath);
+                    }
+                }
+                for (Map.Entry<String, Boolean> tag : change.tags.entrySet()) {
+                    if (tag.getValue()) {
+                        journal.tagAdded(change.path, tag.getKey());
+                    } else {
+                        journal.tagRemoved(change.path, tag.getKey());
+                    }
+                }
+            }
+            for (Map.Entry<String, Boolean> tag : tags.entrySet()) {
+                if (tag.getValue()) {
+                    journal.tagCreated(tag.getKey());
+                } else {
+                    journal.tagDeleted(tag.getKey());
+                }
+            }
+        }
+
+        /**
+         * Returns the number of image entries and tags recorded.
+         *
+         * @return the number of image entries and tags recorded.
+         */
+        private int size() {
+            return images.size() + tags.size();
+        }
+
+        /**
+         * Returns whether no change has been recorded.
+         *
+         * @return true if no change has been recorded.
+         */
+        private boolean isEmpty() {
+            return images.isEmpty() && tags.isEmpty();
+        }
+
+        /**
+         * Forgets every change, so that the buffer can record the changes of a later interval.
+         */
+        private void clear() {
+            images.clear();
+            last.clear();
+            tags.clear();
+        }
+    }
+
+    /**
+     * The consecutive changes to one image.
+     */
+    private static class ImageChange {
+        /**
+         * The image changed.
+         */
+        private final Image image;
+
+        /**
+         * The path of the image before the changes.
+         */
+        private String startPath;
+
+        /**
+         * The path of the image after the changes.
+         */
+        private String path;
+
+        /**
+         * Whether the image has been added by the first change, with the name {@link #name}.
+         */
+        private boolean added;
+
+        /**
+         * The name of the image when it was added, without the file type suffix.
+         */
+        private String name;
+
+        /**
+         * Every rename and move of the image, in order.
+         */
+        private final ArrayList<PathChange> paths = new ArrayList<>();
+
+        /**
+         * The tags added to (true) or removed from (false) the image, the last change of every tag only.
+         */
+        private final LinkedHashMap<String, Boolean> tags = new LinkedHashMap<>();
+
+        /**
+         * Creates the entry of the changes to an image starting at a path.
+         *
+         * @param image     the image changed
+         * @param startPath the path of the image before the changes
+         */
+        private ImageChange(Image image, String startPath) {
+            this.image = image;
+            this.startPath = startPath;
+            this.path = startPath;
+        }
+
+        /**
+         * Corrects the path the image had after these changes, learnt from a later change of the same batch.
+         *
+         * @param correct the path the image had after these changes
+         */
+        private void correctPath(String correct) {
+            if (correct.equals(path)) {
+                return;
+            }
+            path = correct;
+            String name = new File(correct).getName();
+            String suffix = "." + image.getType();
+            if (name.endsWith(suffix)) {
+                name = name.substring(0, name.length() - suffix.length());
+            }
+            if (!paths.isEmpty()) {
+                PathChange change = paths.get(paths.size() - 1);
+                change.newPath = correct;
+                if (change.newName != null) {
+                    change.newName = name;
+                }
+            } else {
+                startPath = correct;
+                this.name = name;
+            }
+        }
+    }
+
+    /**
+     * A rename or a move of an image.
+     */
+    private static class PathChange {
+        /**
+         * The path of the image before the change.
+         */
+        private final String oldPath;
+
+        /**
+         * The path of the image after the change.
+         */
+        private String newPath;
+
+        /**
+         * The name of the image after a rename, without the file type suffix, or null for a move.
+         */
+        private String newName;
+
+        /**
+         * Creates a PathChange.
+         *
+         * @param oldPath the path of the image before the change
+         * @param newPath the path of the image after the change
+         * @param newName the name of the image after a rename, or null for a move
+         */
+        private PathChange(String oldPath, String newPath, String newName) {
+            this.oldPath = oldPath;
+            this.newPath = newPath;
+            this.newName = newName;
+        }
+    }
+}
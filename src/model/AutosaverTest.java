@@ -0,0 +1,161 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AutosaverTest {
+
+    // changes are only written when saved, and every rename is written, so that the renaming history is kept
+    @Test
+    void testCoalescedChanges() throws IOException {
+        Path directory = Files.createTempDirectory("autosave");
+        File imageFile = directory.resolve("imageFile.ser").toFile();
+        File tagFile = directory.resolve("tagFile.ser").toFile();
+        try {
+            ImageManager im = new ImageManager();
+            TagManager tm = new TagManager();
+            im.getEventBus().subscribe(tm);
+            CatalogJournal journal = new CatalogJournal(imageFile, tagFile, CatalogJournal.COMPACTION_THRESHOLD);
+            journal.replay(im, tm);
+            Autosaver autosaver = new Autosaver(journal, 60 * 1000);
+            im.getEventBus().subscribe(autosaver);
+            tm.setTagListener(autosaver);
+            Files.createFile(directory.resolve("IMG_1.jpg"));
+            Image image = new Image("IMG_1", "jpg", directory.resolve("IMG_1.jpg").toString());
+            im.addChosenImage(image);
+            assertEquals(1, autosaver.save());
+            for (int i = 0; i < 10; i++) {
+                im.addTagToName(image, "beach");
+                im.deleteTagFromName(image, "beach");
+            }
+            im.addTagToName(image, "beach");
+            tm.addNewTag("unused");
+            tm.addNewTag("deleted");
+            tm.deleteTag("deleted");
+            journal.flush();
+            long saved = journal.size();
+            assertTrue(autosaver.isDirty());
+            assertEquals(4, autosaver.save());
+            assertFalse(autosaver.isDirty());
+            autosaver.close();
+            assertTrue(journal.size() > saved);
+            journal.close();
+
+            ImageManager replayed = new ImageManager();
+            TagManager tags = new TagManager();
+            replayed.getEventBus().subscribe(tags);
+            CatalogJournal reopened = new CatalogJournal(imageFile, tagFile, CatalogJournal.COMPACTION_THRESHOLD);
+            assertEquals(26, reopened.replay(replayed, tags));
+            Image found = replayed.foundImage(directory.resolve("IMG_1 @beach.jpg").toString());
+            assertNotNull(found);
+            assertEquals(image.getRenamingHistory().size(), found.getRenamingHistory().size());
+            assertTrue(found.hasTag("beach"));
+            assertEquals(1, (int) tags.getTags().get("beach"));
+            assertEquals(0, (int) tags.getTags().get("unused"));
+            assertFalse(tags.getTags().containsKey("deleted"));
+            reopened.close();
+        } finally {
+            Files.deleteIfExists(new File(imageFile.getPath() + ".journal").toPath());
+            Files.deleteIfExists(directory.resolve("IMG_1 @beach.jpg"));
+            Files.delete(directory);
+        }
+    }
+
+    // a tag removed from every image and then deleted in the same interval stays deleted
+    @Test
+    void testTagDeletedAfterImages() throws IOException {
+        Path directory = Files.createTempDirectory("autosave");
+        File imageFile = directory.resolve("imageFile.ser").toFile();
+        File tagFile = directory.resolve("tagFile.ser").toFile();
+        try {
+            ImageManager im = new ImageManager();
+            TagManager tm = new TagManager();
+            im.getEventBus().subscribe(tm);
+            CatalogJournal journal = new CatalogJournal(imageFile, tagFile, CatalogJournal.COMPACTION_THRESHOLD);
+            journal.replay(im, tm);
+            Autosaver autosaver = new Autosaver(journal, 60 * 1000);
+            im.getEventBus().subscribe(autosaver);
+            tm.setTagListener(autosaver);
+            Files.createFile(directory.resolve("IMG_1 @old.jpg"));
+            Image image = new Image("IMG_1 @old", "jpg", directory.resolve("IMG_1 @old.jpg").toString());
+            im.addChosenImage(image);
+            autosaver.save();
+            im.deleteTagFromName(image, "old");
+            assertTrue(tm.deleteTag("old"));
+            autosaver.close();
+            journal.close();
+
+            ImageManager replayed = new ImageManager();
+            TagManager tags = new TagManager();
+            replayed.getEventBus().subscribe(tags);
+            CatalogJournal reopened = new CatalogJournal(imageFile, tagFile, CatalogJournal.COMPACTION_THRESHOLD);
+            reopened.replay(replayed, tags);
+            assertFalse(tags.getTags().containsKey("old"));
+            assertFalse(replayed.foundImage(directory.resolve("IMG_1.jpg").toString()).hasTag("old"));
+            reopened.close();
+        } finally {
+            Files.deleteIfExists(new File(imageFile.getPath() + ".journal").toPath());
+            Files.deleteIfExists(directory.resolve("IMG_1.jpg"));
+            Files.delete(directory);
+        }
+    }
+
+    // changes to two images in between each other are replayed in their order, so that neither takes the path the
+    // other had at that point
+    @Test
+    void testChangesKeepTheirOrder() throws IOException, ClassNotFoundException {
+        Path directory = Files.createTempDirectory("autosave");
+        try {
+            String tagFile = directory.resolve("tagFile.ser").toString();
+            String imageFile = directory.resolve("imageFile.ser").toString();
+            Path first = Files.createFile(directory.resolve("p @t.jpg"));
+            Path second = Files.createFile(directory.resolve("p.jpg"));
+            GoGoPhotoSystem system = new GoGoPhotoSystem(new FileCatalogStore(tagFile, imageFile, true), null, null);
+            ImageManager im = system.getImageManager();
+            Image x = new Image("p @t", "jpg", first.toString());
+            Image y = new Image("p", "jpg", second.toString());
+            im.addChosenImage(x);
+            im.addChosenImage(y);
+            im.addTagToName(y, "z");
+            im.addTagToName(x, "u");
+            im.deleteTagFromName(y, "z");
+            im.addTagToName(y, "t");
+            system.close();
+
+            system = new GoGoPhotoSystem(new FileCatalogStore(tagFile, imageFile, true), null, null);
+            Image replayedX = system.getImageManager().foundImage(directory.resolve("p @t @u.jpg").toString());
+            Image replayedY = system.getImageManager().foundImage(directory.resolve("p @t.jpg").toString());
+            assertNotSame(replayedX, replayedY);
+            assertEquals(names(x), names(replayedX));
+            assertEquals(names(y), names(replayedY));
+            assertEquals(Arrays.asList("p.jpg", "p @z.jpg", "p.jpg", "p @t.jpg"), names(replayedY));
+            system.close();
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Returns the names of the renaming history of an image.
+     */
+    private static List<String> names(Image image) {
+        List<String> names = new ArrayList<>();
+        for (UsedName name : image.getRenamingHistory()) {
+            names.add(name.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,243 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * This class is a BK-tree of 64-bit hashes under the Hamming distance, holding the IDs of the images with every
+ * hash. Every child of a node sits at a known distance from the node, so that a search for the hashes within a
+ * radius of a query only visits the children whose distance to the node is within the radius of the distance
+ * between the query and the node, by the triangle inequality. For small radii, this visits a small part of the
+ * tree.
+ *
+ * @see SimilarImageIndex
+ * @see DifferenceHash
+ */
+class BKTree {
+    /**
+     * The root of the tree, or null if the tree is empty.
+     */
+    private Node root;
+
+    /**
+     * The number of IDs in the tree.
+     */
+    private int size;
+
+    /**
+     * Adds the ID of an image with the hash.
+     *
+     * @param hash the hash of the image
+     * @param id   the ID of the image
+     */
+    void add(long hash, int id) {
+        if (root == null) {
+            root = new Node(hash);
+            root.addId(id);
+            size++;
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = DifferenceHash.distance(hash, node.hash);
+            if (distance == 0) {
+                if (node.addId(id)) {
+                    size++;
+                }
+                return;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                child = new Node(hash);
+                child.addId(id);
+                node.addChild(distance, child);
+                size++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Removes the ID of an image with the hash. The node of the hash stays in the tree to guide searches.
+     *
+     * @param hash the hash of the image
+     * @param id   the ID of the image
+     */
+    void remove(long hash, int id) {
+        Node node = root;
+        while (node != null) {
+            int distance = DifferenceHash.distance(hash, node.hash);
+            if (distance == 0) {
+                if (node.removeId(id)) {
+                    size--;
+                }
+                return;
+            }
+            node = node.child(distance);
+        }
+    }
+
+    /**
+     * Returns the IDs of the images whose hash differs from the query in at most radius bits.
+     *
+     * @param query  the hash to search around
+     * @param radius the largest Hamming distance of the results
+     * @return the IDs found, in no particular order.
+     */
+    int[] search(long query, int radius) {
+        int[] found = new int[16];
+        int count = 0;
+        ArrayDeque<Node> pending = new ArrayDeque<>();
+        if (root != null) {
+            pending.push(root);
+        }
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = DifferenceHash.distance(query, node.hash);
+            if (distance <= radius) {
+                for (int i = 0; i < node.idCount; i++) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = node.ids[i];
+                }
+            }
+            for (int i = 0; i < node.childCount; i++) {
+                if (Math.abs(node.childDistances[i] - distance) <= radius) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Returns the number of IDs in the tree.
+     *
+     * @return the number of IDs in the tree.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * A node of the tree, holding one hash and the IDs of the images with that hash.
+     */
+    private static class Node {
+        /**
+         * The distances of a node without children, shared.
+         */
+        private static final byte[] NO_DISTANCES = new byte[0];
+
+        /**
+         * The children of a node without children, shared.
+         */
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        /**
+         * The hash of the node.
+         */
+        private final long hash;
+
+        /**
+         * The distance of every child to the node, from 1 to 64; only the first childCount are used.
+         */
+        private byte[] childDistances = NO_DISTANCES;
+
+        /**
+         * The children of the node, in the order of childDistances.
+         */
+        private Node[] children = NO_CHILDREN;
+
+        /**
+         * The number of children of the node.
+         */
+        private int childCount;
+
+        /**
+         * The IDs of the images with the hash; only the first idCount are used.
+         */
+        private int[] ids = new int[1];
+
+        /**
+         * The number of IDs of the node.
+         */
+        private int idCount;
+
+        /**
+         * Creates a Node without IDs.
+         *
+         * @param hash the hash of the node
+         */
+        Node(long hash) {
+            this.hash = hash;
+        }
+
+        /**
+         * Returns the child at the distance from the node.
+         *
+         * @param distance the distance of the child
+         * @return the child, or null if there is none at that distance.
+         */
+        Node child(int distance) {
+            for (int i = 0; i < childCount; i++) {
+                if (childDistances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds a child at a distance no other child has.
+         *
+         * @param distance the distance of the child
+         * @param child    the child
+         */
+        void addChild(int distance, Node child) {
+            if (childCount == children.length) {
+                int capacity = Math.max(2, childCount * 2);
+                childDistances = Arrays.copyOf(childDistances, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            childDistances[childCount] = (byte) distance;
+            children[childCount++] = child;
+        }
+
+        /**
+         * Adds an ID to the node, unless it is already there.
+         *
+         * @param id the ID to add
+         * @return true if the ID was added.
+         */
+        boolean addId(int id) {
+            for (int i = 0; i < idCount; i++) {
+                if (ids[i] == id) {
+                    return false;
+                }
+            }
+            if (idCount == ids.length) {
+                ids = Arrays.copyOf(ids, idCount * 2);
+            }
+            ids[idCount++] = id;
+            return true;
+        }
+
+        /**
+         * Removes an ID from the node.
+         *
+         * @param id the ID to remove
+         * @return true if the ID was there.
+         */
+        boolean removeId(int id) {
+            for (int i = 0; i < idCount; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--idCount];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
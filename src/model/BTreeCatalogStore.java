@@ -0,0 +1,390 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+
+/**
+ * This class keeps the catalog in an embedded key-value database, a {@link BTreeFile}, so that a changed image or
+ * tag is saved by writing its own entry, and an image is read by looking up its entry, without reading or writing
+ * the rest of the catalog. The changes of every batch are committed together as soon as they are published.
+ *
+ * <p>The database holds these entries:
+ * <ul>
+ * <li>"i" and the number of an image, in 4 bytes: the name, type, path, tags and renaming history of the image;</li>
+ * <li>"p" and the path of an image: the number of the image;</li>
+ * <li>"t" and a tag: the number of images carrying the tag;</li>
+ * <li>"n": the number of images, the next image getting this number.</li>
+ * </ul>
+ * The images are numbered in the order they are added, and the number of an image saved before the database was
+ * loaded is its ID in ImageManager.
+ *
+ * @see CatalogStore
+ * @see BTreeFile
+ */
+class BTreeCatalogStore implements CatalogStore, CatalogListener, TagListener {
+    /**
+     * The key of the number of images.
+     */
+    private static final byte[] COUNT_KEY = {'n'};
+
+    /**
+     * The prefix of the keys of the image records.
+     */
+    private static final byte[] IMAGE_PREFIX = {'i'};
+
+    /**
+     * The prefix of the keys of the tags.
+     */
+    private static final byte[] TAG_PREFIX = {'t'};
+
+    /**
+     * The file of the database.
+     */
+    private final File file;
+
+    /**
+     * The database, or null if the store is not loaded.
+     */
+    private BTreeFile tree;
+
+    /**
+     * The tag manager whose tag counts are saved.
+     */
+    private TagManager tagManager;
+
+    /**
+     * The number of images of the database, the next image getting this number.
+     */
+    private int count;
+
+    /**
+     * Creates a BTreeCatalogStore keeping the catalog in the input database file.
+     *
+     * @param file the database file, created if it is missing
+     */
+    BTreeCatalogStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the database, reads the tags and reads the images lazily, then saves every later change.
+     *
+     * @param imageManager the image manager the images are read into
+     * @param tagManager   the tag manager the tags are read into
+     * @throws IOException indicates that the database cannot be opened or read.
+     */
+    @Override
+    public synchronized void load(ImageManager imageManager, TagManager tagManager) throws IOException {
+        tree = new BTreeFile(file);
+        byte[] saved = tree.get(COUNT_KEY);
+        count = saved == null ? 0 : ByteBuffer.wrap(saved).getInt();
+        HashMap<String, Integer> tags = new HashMap<>();
+        tree.scan(TAG_PREFIX, (key, value) -> tags.put(new String(key, 1, key.length - 1, StandardCharsets.UTF_8),
+                ByteBuffer.wrap(value).getInt()));
+        tagManager.setTags(tags);
+        imageManager.openCatalog(new Catalog(count));
+        imageManager.indexTags(tagManager.getTagIndex());
+        this.tagManager = tagManager;
+        imageManager.getEventBus().subscribe(this);
+        tagManager.setTagListener(this);
+    }
+
+    /**
+     * Stops saving the changes and closes the database.
+     *
+     * @param imageManager the image manager the images were read into
+     * @param tagManager   the tag manager the tags were read into
+     * @throws IOException indicates that the database cannot be closed.
+     */
+    @Override
+    public synchronized void close(ImageManager imageManager, TagManager tagManager) throws IOException {
+        if (tree == null) {
+            return;
+        }
+        imageManager.getEventBus().unsubscribe(this);
+        tagManager.setTagListener(null);
+        tree.commit();
+        tree.close();
+        tree = null;
+    }
+
+    /**
+     * Writes the record of every image changed by the batch and the count of every tag it touches, and commits
+     * them together.
+     *
+     * @param batch the changes
+     */
+    @Override
+    public synchronized void onBatch(CatalogEventBatch batch) {
+        try {
+            for (CatalogEvent event : batch.getEvents()) {
+                save(event);
+            }
+            for (String tag : batch.getTagDeltas().keySet()) {
+                saveTag(tag);
+            }
+            tree.commit();
+        } catch (IOException e) {
+            GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot save the changes: " + e);
+        }
+    }
+
+    /**
+     * Saves a tag created in TagManager.
+     *
+     * @param tag the tag created
+     */
+    @Override
+    public synchronized void tagCreated(String tag) {
+        commitTag(tag);
+    }
+
+    /**
+     * Removes a tag deleted from TagManager.
+     *
+     * @param tag the tag deleted
+     */
+    @Override
+    public synchronized void tagDeleted(String tag) {
+        commitTag(tag);
+    }
+
+    /**
+     * Saves the count of a tag, or its removal, and commits it, logging a failure instead of throwing it.
+     *
+     * @param tag the tag
+     */
+    private void commitTag(String tag) {
+        try {
+            saveTag(tag);
+            tree.commit();
+        } catch (IOException e) {
+            GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot save the tag " + tag + ": " + e);
+        }
+    }
+
+    /**
+     * Writes the record of the image of an event, with the path entry of a new path.
+     *
+     * @param event the change
+     * @throws IOException indicates that the database cannot be read.
+     */
+    private void save(CatalogEvent event) throws IOException {
+        Image image = event.getImage();
+        int number;
+        if (event instanceof CatalogEvent.ImageAdded) {
+            number = count++;
+            tree.put(COUNT_KEY, ByteBuffer.allocate(4).putInt(count).array());
+            tree.put(pathKey(image.getPath()), ByteBuffer.allocate(4).putInt(number).array());
+        } else {
+            String oldPath = image.getPath();
+            if (event instanceof CatalogEvent.ImageRenamed) {
+                oldPath = ((CatalogEvent.ImageRenamed) event).getOldPath();
+            } else if (event instanceof CatalogEvent.ImageMoved) {
+                oldPath = ((CatalogEvent.ImageMoved) event).getOldPath();
+            }
+            number = number(oldPath);
+            if (number < 0) {
+                number = number(image.getPath());
+                if (number < 0) {
+                    return;
+                }
+            } else if (!oldPath.equals(image.getPath())) {
+                tree.remove(pathKey(oldPath));
+                tree.put(pathKey(image.getPath()), ByteBuffer.allocate(4).putInt(number).array());
+            }
+        }
+        tree.put(imageKey(number), encode(image));
+    }
+
+    /**
+     * Writes the count of a tag in TagManager, or removes the tag if TagManager no longer has it.
+     *
+     * @param tag the tag
+     * @throws IOException indicates that the database cannot be read.
+     */
+    private void saveTag(String tag) throws IOException {
+        byte[] key = ("t" + tag).getBytes(StandardCharsets.UTF_8);
+        Integer tagCount = tagManager.getTags().get(tag);
+        if (tagCount == null) {
+            tree.remove(key);
+        } else {
+            tree.put(key, ByteBuffer.allocate(4).putInt(tagCount).array());
+        }
+    }
+
+    /**
+     * Returns the number of the image saved with the input path.
+     *
+     * @param path the path
+     * @return the number of the image, or -1 if no image is saved with the path.
+     * @throws IOException indicates that the database cannot be read.
+     */
+    private int number(String path) throws IOException {
+        byte[] number = tree.get(pathKey(path));
+        return number == null ? -1 : ByteBuffer.wrap(number).getInt();
+    }
+
+    /**
+     * Returns the key of the number of the image with a path.
+     *
+     * @param path the path of the image
+     * @return the key.
+     */
+    private static byte[] pathKey(String path) {
+        return ("p" + path).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the key of the record of the image with a number.
+     *
+     * @param number the number of the image
+     * @return the key.
+     */
+    private static byte[] imageKey(int number) {
+        return ByteBuffer.allocate(5).put(IMAGE_PREFIX[0]).putInt(number).array();
+    }
+
+    /**
+     * Encodes the record of an image.
+     *
+     * @param image the image
+     * @return the record.
+     * @throws IOException indicates that a string is too long to be encoded.
+     */
+    private static byte[] encode(Image image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeUTF(image.getName());
+        output.writeUTF(image.getType());
+        output.writeUTF(image.getPath());
+        ArrayList<String> tags = image.getTags();
+        output.writeInt(tags.size());
+        for (String tag : tags) {
+            output.writeUTF(tag);
+        }
+        ArrayList<UsedName> history = image.getRenamingHistory();
+        output.writeInt(history.size());
+        for (UsedName name : history) {
+            output.writeUTF(name.getName());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The images of the database as they were when it was loaded, read one at a time as they are looked up.
+     */
+    private class Catalog extends LazyCatalog {
+        /**
+         * The number of images when the database was loaded.
+         */
+        private final int size;
+
+        /**
+         * Creates the catalog of the images saved before the database was loaded.
+         *
+         * @param size the number of images when the database was loaded
+         */
+        private Catalog(int size) {
+            this.size = size;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        int find(String path) {
+            try {
+                int id = number(path);
+                return id >= 0 && id < size && isSavedAt(id, path) ? id : -1;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        Image decode(int id) {
+            try {
+                DataInputStream input = new DataInputStream(new ByteArrayInputStream(tree.get(imageKey(id))));
+                String name = input.readUTF();
+                String type = input.readUTF();
+                String path = input.readUTF();
+                String[] tags = new String[input.readInt()];
+                for (int i = 0; i < tags.length; i++) {
+                    tags[i] = input.readUTF();
+                }
+                int historyCount = input.readInt();
+                ArrayList<UsedName> history = new ArrayList<>(historyCount);
+                for (int i = 0; i < historyCount; i++) {
+                    history.add(new UsedName(input.readUTF()));
+                }
+                Image image = new Image(name, type, path, Arrays.asList(tags), history);
+                image.setId(id);
+                return image;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void forEachSavedTag(BiConsumer<String, Integer> action) {
+            try {
+                tree.scan(IMAGE_PREFIX, (key, value) -> {
+                    int id = ByteBuffer.wrap(key, 1, 4).getInt();
+                    if (id >= size) {
+                        return;
+                    }
+                    try {
+                        DataInputStream input = new DataInputStream(new ByteArrayInputStream(value));
+                        input.readUTF();
+                        input.readUTF();
+                        input.readUTF();
+                        for (int i = input.readInt(); i > 0; i--) {
+                            action.accept(input.readUTF(), id);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void forEachSavedPath(BiConsumer<String, Integer> action) {
+            try {
+                tree.scan(IMAGE_PREFIX, (key, value) -> {
+                    int id = ByteBuffer.wrap(key, 1, 4).getInt();
+                    if (id >= size) {
+                        return;
+                    }
+                    try {
+                        DataInputStream input = new DataInputStream(new ByteArrayInputStream(value));
+                        input.readUTF();
+                        input.readUTF();
+                        action.accept(input.readUTF(), id);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
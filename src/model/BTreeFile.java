@@ -0,0 +1,815 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * This class implements an embedded key-value store kept in one file as a B+tree, so that a value is read or
+ * written by reading the few nodes on the path from the root to its leaf, never the whole file. Keys and values
+ * are byte arrays, and keys are ordered by their unsigned bytes.
+ *
+ * <p>The file is only appended to: a changed node is never written over, but written again at the end of the file
+ * with its parents up to the root, when the changes are committed. The file starts with two meta slots, written in
+ * turn, each holding the position of a root, the end of the nodes and a checksum; the valid slot with the highest
+ * generation is the one read. A commit forces the nodes to the disk before writing the slot, so that a crash
+ * during a commit leaves the tree of the previous commit. Once most of the file is taken by nodes no longer
+ * reachable from the root, the reachable nodes are copied to a new file renamed over the old one.
+ *
+ * <p>Emptied leaves are not merged with their neighbours, so that removing a key only rewrites its path.
+ *
+ * @see BTreeCatalogStore
+ */
+class BTreeFile implements Closeable {
+    /**
+     * The first bytes of the meta slots, "GGPB".
+     */
+    static final int MAGIC = 0x47475042;
+
+    /**
+     * The version of the layout of the file.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The number of bytes of a meta slot.
+     */
+    static final int META_LENGTH = 64;
+
+    /**
+     * The position of the first node, after the two meta slots.
+     */
+    static final long NODES_START = 2 * META_LENGTH;
+
+    /**
+     * The largest number of keys of a node, beyond which it is split in two.
+     */
+    static final int MAX_ENTRIES = 64;
+
+    /**
+     * The number of unchanged nodes kept in memory.
+     */
+    static final int CACHE_SIZE = 256;
+
+    /**
+     * The smallest file compacted, so that small files are never copied.
+     */
+    static final long COMPACTION_MINIMUM = 1 << 20;
+
+    /**
+     * The file of the tree.
+     */
+    private final File file;
+
+    /**
+     * The channel reading and appending to the file.
+     */
+    private FileChannel channel;
+
+    /**
+     * The root node, always held in memory.
+     */
+    private Node root;
+
+    /**
+     * The generation of the last commit, which tells which meta slot is written next.
+     */
+    private long generation;
+
+    /**
+     * The end of the nodes of the last commit, where the next node is written.
+     */
+    private long end;
+
+    /**
+     * The number of bytes taken by the nodes reachable from the committed root.
+     */
+    private long liveBytes;
+
+    /**
+     * The unchanged nodes read last, by position, in the order of their last use.
+     */
+    private final LinkedHashMap<Long, Node> cache = new LinkedHashMap<Long, Node>(CACHE_SIZE * 4 / 3 + 1, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Node> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Opens the tree of the input file, creating an empty tree if the file is missing or empty.
+     *
+     * @param file the file of the tree
+     * @throws IOException indicates that the file cannot be opened or is not a tree file.
+     */
+    BTreeFile(File file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    /**
+     * Returns the value of the key.
+     *
+     * @param key the key
+     * @return the value of the key, or null if there is none.
+     * @throws IOException indicates that a node cannot be read.
+     */
+    synchronized byte[] get(byte[] key) throws IOException {
+        Node node = root;
+        while (!node.leaf) {
+            node = child(node, upperBound(node.keys, key));
+        }
+        int index = lowerBound(node.keys, key);
+        return index < node.keys.size() && compare(node.keys.get(index), key) == 0 ? node.values.get(index) : null;
+    }
+
+    /**
+     * Sets the value of the key, until the next commit in memory only.
+     *
+     * @param key   the key
+     * @param value the value
+     * @throws IOException indicates that a node cannot be read.
+     */
+    synchronized void put(byte[] key, byte[] value) throws IOException {
+        Split split = put(change(root), key, value);
+        if (split != null) {
+            Node top = new Node(false);
+            top.keys.add(split.key);
+            top.children.add(-1L);
+            top.pending.add(root);
+            top.children.add(-1L);
+            top.pending.add(split.right);
+            root = top;
+        }
+    }
+
+    /**
+     * Removes the key and its value, until the next commit in memory only.
+     *
+     * @param key the key
+     * @return true if the key had a value.
+     * @throws IOException indicates that a node cannot be read.
+     */
+    synchronized boolean remove(byte[] key) throws IOException {
+        Node node = root;
+        while (!node.leaf) {
+            node = child(node, upperBound(node.keys, key));
+        }
+        int index = lowerBound(node.keys, key);
+        if (index == node.keys.size() || compare(node.keys.get(index), key) != 0) {
+            return false;
+        }
+        node = change(root);
+        while (!node.leaf) {
+            node = changeChild(node, upperBound(node.keys, key));
+        }
+        node.keys.remove(index);
+        node.values.remove(index);
+        return true;
+    }
+
+    /**
+     * Calls the action with every key starting with the prefix and its value, in the order of the keys.
+     *
+     * @param prefix the prefix
+     * @param action the action receiving a key and its value
+     * @throws IOException indicates that a node cannot be read.
+     */
+    synchronized void scan(byte[] prefix, BiConsumer<byte[], byte[]> action) throws IOException {
+        scan(root, prefix, action);
+    }
+
+    /**
+     * Writes the nodes changed since the last commit at the end of the file, and then the meta slot pointing to
+     * the new root, forcing each to the disk. The file is compacted afterwards if most of it is no longer used.
+     *
+     * @throws IOException indicates that the nodes or the meta slot cannot be written.
+     */
+    synchronized void commit() throws IOException {
+        if (root.position >= 0) {
+            return;
+        }
+        long[] position = {end};
+        liveBytes += write(channel, root, position, false);
+        end = position[0];
+        channel.force(false);
+        writeMeta(channel, generation + 1, root.position, end, liveBytes);
+        channel.force(false);
+        generation++;
+        if (end > COMPACTION_MINIMUM && end > 2 * liveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the file.
+     *
+     * @return the number of bytes of the file.
+     * @throws IOException indicates that the size cannot be read.
+     */
+    synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Closes the file. The changes made since the last commit are lost.
+     *
+     * @throws IOException indicates that the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Copies the nodes reachable from the root to a new file, renamed over the file of the tree.
+     *
+     * @throws IOException indicates that the new file cannot be written or renamed.
+     */
+    synchronized void compact() throws IOException {
+        commit();
+        File temporary = new File(file.getPath() + ".tmp");
+        long length;
+        try (FileChannel copy = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long[] position = {NODES_START};
+            long rootPosition = copy(copy, root, position);
+            length = position[0] - NODES_START;
+            copy.force(false);
+            writeMeta(copy, 0, rootPosition, position[0], length);
+            copy.force(false);
+        }
+        long before = channel.size();
+        channel.close();
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        open();
+        GoGoPhotoSystem.logger.log(Level.FINE, "Compacted " + file + " from " + before + " to " + end + " bytes");
+    }
+
+    /**
+     * Opens the file and reads the meta slot of the last commit and the root, or writes an empty tree.
+     *
+     * @throws IOException indicates that the file cannot be opened or is not a tree file.
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        cache.clear();
+        if (channel.size() == 0) {
+            generation = -1;
+            end = NODES_START;
+            liveBytes = 0;
+            root = new Node(true);
+            commit();
+            return;
+        }
+        ByteBuffer meta = null;
+        for (int slot = 0; slot < 2; slot++) {
+            ByteBuffer read = readMeta(slot);
+            if (read != null && (meta == null || read.getLong(8) > meta.getLong(8))) {
+                meta = read;
+            }
+        }
+        if (meta == null) {
+            channel.close();
+            throw new IOException(file + " is not a catalog database");
+        }
+        if (meta.getInt(4) > VERSION) {
+            channel.close();
+            throw new IOException(file + " is of a later version " + meta.getInt(4));
+        }
+        generation = meta.getLong(8);
+        end = meta.getLong(24);
+        liveBytes = meta.getLong(32);
+        root = read(meta.getLong(16));
+    }
+
+    /**
+     * Reads a meta slot and checks it.
+     *
+     * @param slot the slot, 0 or 1
+     * @return the content of the slot, or null if it is not a valid slot.
+     * @throws IOException indicates that the file cannot be read.
+     */
+    private ByteBuffer readMeta(int slot) throws IOException {
+        ByteBuffer meta = ByteBuffer.allocate(META_LENGTH);
+        readFully(channel, meta, (long) slot * META_LENGTH);
+        if (meta.position() < 44 || meta.getInt(0) != MAGIC || meta.getInt(40) != checksum(meta.array(), 0, 40)) {
+            return null;
+        }
+        return meta;
+    }
+
+    /**
+     * Writes the meta slot of a generation: the other slot than the one of the previous generation.
+     *
+     * @param target        the channel written to
+     * @param generation    the generation of the commit
+     * @param rootPosition  the position of the root
+     * @param nodesEnd      the end of the nodes
+     * @param reachable     the number of bytes of the nodes reachable from the root
+     * @throws IOException indicates that the slot cannot be written.
+     */
+    private static void writeMeta(FileChannel target, long generation, long rootPosition, long nodesEnd,
+                                  long reachable) throws IOException {
+        ByteBuffer meta = ByteBuffer.allocate(META_LENGTH);
+        meta.putInt(MAGIC).putInt(VERSION).putLong(generation).putLong(rootPosition).putLong(nodesEnd)
+                .putLong(reachable);
+        meta.putInt(checksum(meta.array(), 0, 40));
+        meta.clear();
+        target.write(meta, (generation & 1) * META_LENGTH);
+    }
+
+    /**
+     * Inserts or replaces the key in the subtree of a changed node.
+     *
+     * @param node  the changed node
+     * @param key   the key
+     * @param value the value
+     * @return the new right half of the node if it has been split, or null.
+     * @throws IOException indicates that a node cannot be read.
+     */
+    private Split put(Node node, byte[] key, byte[] value) throws IOException {
+        if (node.leaf) {
+            int index = lowerBound(node.keys, key);
+            if (index < node.keys.size() && compare(node.keys.get(index), key) == 0) {
+                node.values.set(index, value);
+                return null;
+            }
+            node.keys.add(index, key);
+            node.values.add(index, value);
+        } else {
+            int index = upperBound(node.keys, key);
+            Split split = put(changeChild(node, index), key, value);
+            if (split == null) {
+                return null;
+            }
+            node.keys.add(index, split.key);
+            node.children.add(index + 1, -1L);
+            node.pending.add(index + 1, split.right);
+        }
+        return node.keys.size() > MAX_ENTRIES ? split(node) : null;
+    }
+
+    /**
+     * Moves the upper half of a node to a new node.
+     *
+     * @param node the node, with more than {@link #MAX_ENTRIES} keys
+     * @return the new node and the key separating it from the node.
+     */
+    private static Split split(Node node) {
+        Node right = new Node(node.leaf);
+        int middle = node.keys.size() / 2;
+        byte[] separator = node.keys.get(middle);
+        if (node.leaf) {
+            moveTail(node.keys, middle, right.keys);
+            moveTail(node.values, middle, right.values);
+        } else {
+            moveTail(node.keys, middle + 1, right.keys);
+            node.keys.remove(middle);
+            moveTail(node.children, middle + 1, right.children);
+            moveTail(node.pending, middle + 1, right.pending);
+        }
+        return new Split(separator, right);
+    }
+
+    /**
+     * Moves the elements of a list from an index to the end to another list.
+     *
+     * @param from  the list the elements are moved from
+     * @param index the index of the first element moved
+     * @param to    the list the elements are moved to
+     * @param <T>   the type of the elements
+     */
+    private static <T> void moveTail(ArrayList<T> from, int index, ArrayList<T> to) {
+        to.addAll(from.subList(index, from.size()));
+        from.subList(index, from.size()).clear();
+    }
+
+    /**
+     * Calls the action with the keys starting with the prefix in the subtree of a node.
+     *
+     * @param node   the node
+     * @param prefix the prefix
+     * @param action the action receiving a key and its value
+     * @return false once a greater key without the prefix has been found, so that the scan stops.
+     * @throws IOException indicates that a node cannot be read.
+     */
+    private boolean scan(Node node, byte[] prefix, BiConsumer<byte[], byte[]> action) throws IOException {
+        if (node.leaf) {
+            for (int i = lowerBound(node.keys, prefix); i < node.keys.size(); i++) {
+                byte[] key = node.keys.get(i);
+                if (!startsWith(key, prefix)) {
+                    return false;
+                }
+                action.accept(key, node.values.get(i));
+            }
+            return true;
+        }
+        for (int i = upperBound(node.keys, prefix); i < node.children.size(); i++) {
+            if (!scan(child(node, i), prefix, action)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a child of a node, reading it if it is not in memory.
+     *
+     * @param node  the internal node
+     * @param index the index of the child
+     * @return the child.
+     * @throws IOException indicates that the child cannot be read.
+     */
+    private Node child(Node node, int index) throws IOException {
+        Node child = node.pending.get(index);
+        return child != null ? child : read(node.children.get(index));
+    }
+
+    /**
+     * Returns a child of a changed node, marked as changed, so that it is written at the next commit.
+     *
+     * @param node  the changed internal node
+     * @param index the index of the child
+     * @return the changed child.
+     * @throws IOException indicates that the child cannot be read.
+     */
+    private Node changeChild(Node node, int index) throws IOException {
+        Node child = change(child(node, index));
+        node.pending.set(index, child);
+        node.children.set(index, -1L);
+        return child;
+    }
+
+    /**
+     * Marks a node as changed: it is forgotten by the cache, and its bytes no longer count as reachable.
+     *
+     * @param node the node
+     * @return the node.
+     */
+    private Node change(Node node) {
+        if (node.position >= 0) {
+            cache.remove(node.position);
+            liveBytes -= node.length;
+            node.position = -1;
+        }
+        return node;
+    }
+
+    /**
+     * Reads the node at a position, or returns it from the cache.
+     *
+     * @param position the position of the node
+     * @return the node.
+     * @throws IOException indicates that the node cannot be read or is damaged.
+     */
+    private Node read(long position) throws IOException {
+        Node node = cache.get(position);
+        if (node != null) {
+            return node;
+        }
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(channel, length, position);
+        int size = length.getInt(0);
+        if (length.position() < 4 || size < 5 || position + 8 + size > end) {
+            throw new IOException("Damaged node at " + position + " of " + file);
+        }
+        ByteBuffer content = ByteBuffer.allocate(size + 4);
+        readFully(channel, content, position + 4);
+        if (content.getInt(size) != checksum(content.array(), 0, size)) {
+            throw new IOException("Damaged node at " + position + " of " + file);
+        }
+        content.flip();
+        content.limit(size);
+        node = new Node(content.get() == 1);
+        int count = content.getInt();
+        for (int i = 0; i < count; i++) {
+            node.keys.add(getBytes(content));
+            if (node.leaf) {
+                node.values.add(getBytes(content));
+            }
+        }
+        if (!node.leaf) {
+            for (int i = 0; i <= count; i++) {
+                node.children.add(content.getLong());
+                node.pending.add(null);
+            }
+        }
+        node.position = position;
+        node.length = size + 8;
+        cache.put(position, node);
+        return node;
+    }
+
+    /**
+     * Writes the changed nodes of a subtree, children first, and marks them as unchanged.
+     *
+     * @param target   the channel written to
+     * @param node     the root of the subtree
+     * @param position the position the next node is written at, moved past the nodes written
+     * @param copy     whether every node is written, changed or not, without marking it
+     * @return the number of bytes written.
+     * @throws IOException indicates that a node cannot be read or written.
+     */
+    private long write(FileChannel target, Node node, long[] position, boolean copy) throws IOException {
+        long written = 0;
+        if (!node.leaf) {
+            for (int i = 0; i < node.children.size(); i++) {
+                Node child = node.pending.get(i);
+                if (child != null) {
+                    written += write(target, child, position, false);
+                    node.children.set(i, child.position);
+                    node.pending.set(i, null);
+                    cache.put(child.position, child);
+                }
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(0);
+        output.writeByte(node.leaf ? 1 : 0);
+        output.writeInt(node.keys.size());
+        for (int i = 0; i < node.keys.size(); i++) {
+            putBytes(output, node.keys.get(i));
+            if (node.leaf) {
+                putBytes(output, node.values.get(i));
+            }
+        }
+        if (!node.leaf) {
+            for (long child : node.children) {
+                output.writeLong(child);
+            }
+        }
+        output.writeInt(0);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        int size = buffer.capacity() - 8;
+        buffer.putInt(0, size);
+        buffer.putInt(size + 4, checksum(buffer.array(), 4, size + 4));
+        while (buffer.hasRemaining()) {
+            target.write(buffer, position[0] + buffer.position());
+        }
+        if (!copy) {
+            node.position = position[0];
+            node.length = size + 8;
+        }
+        position[0] += size + 8;
+        return written + size + 8;
+    }
+
+    /**
+     * Writes every node of a subtree to another file, children first, leaving the nodes in memory unchanged.
+     *
+     * @param target   the channel of the other file
+     * @param node     the root of the subtree, unchanged since the last commit
+     * @param position the position the next node is written at, moved past the nodes written
+     * @return the position of the copy of the node.
+     * @throws IOException indicates that a node cannot be read or written.
+     */
+    private long copy(FileChannel target, Node node, long[] position) throws IOException {
+        Node copied = node;
+        if (!node.leaf) {
+            copied = new Node(false);
+            copied.keys.addAll(node.keys);
+            for (int i = 0; i < node.children.size(); i++) {
+                copied.children.add(copy(target, child(node, i), position));
+                copied.pending.add(null);
+            }
+        }
+        long at = position[0];
+        write(target, copied, position, true);
+        return at;
+    }
+
+    /**
+     * Reads bytes from a position of a channel until the buffer is full or the channel ends.
+     *
+     * @param source   the channel
+     * @param buffer   the buffer
+     * @param position the position of the first byte
+     * @throws IOException indicates that the channel cannot be read.
+     */
+    private static void readFully(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = source.read(buffer, position + buffer.position());
+            if (read < 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads a byte array written by {@link #putBytes(DataOutputStream, byte[])}.
+     *
+     * @param buffer the buffer at the array
+     * @return the array.
+     */
+    private static byte[] getBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes a byte array after its length.
+     *
+     * @param output the output
+     * @param bytes  the array
+     * @throws IOException indicates that the output cannot be written.
+     */
+    private static void putBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Returns the index of the first key not smaller than the input key.
+     *
+     * @param keys the ordered keys
+     * @param key  the key
+     * @return the index of the first key not smaller than the key, or the number of keys.
+     */
+    private static int lowerBound(ArrayList<byte[]> keys, byte[] key) {
+        int low = 0;
+        int high = keys.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(keys.get(middle), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first key greater than the input key, which is the index of the child of an
+     * internal node holding the key.
+     *
+     * @param keys the ordered keys
+     * @param key  the key
+     * @return the index of the first key greater than the key, or the number of keys.
+     */
+    private static int upperBound(ArrayList<byte[]> keys, byte[] key) {
+        int low = 0;
+        int high = keys.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(keys.get(middle), key) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares two keys by their unsigned bytes.
+     *
+     * @param a the first key
+     * @param b the second key
+     * @return a negative number, zero or a positive number as the first key is smaller, equal or greater.
+     */
+    static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Returns whether a key starts with a prefix.
+     *
+     * @param key    the key
+     * @param prefix the prefix
+     * @return true if the key starts with the prefix.
+     */
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        if (key.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the CRC-32 of a range of bytes.
+     *
+     * @param bytes the bytes
+     * @param from  the first byte, included
+     * @param to    the last byte, excluded
+     * @return the CRC-32 of the range.
+     */
+    private static int checksum(byte[] bytes, int from, int to) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, from, to - from);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A node of the tree: a leaf holding keys and their values, or an internal node holding the keys separating
+     * its children. The child at an index holds the keys smaller than the key at that index and not smaller than
+     * the key before it.
+     */
+    private static final class Node {
+        /**
+         * Whether the node is a leaf.
+         */
+        private final boolean leaf;
+
+        /**
+         * The keys, in order.
+         */
+        private final ArrayList<byte[]> keys = new ArrayList<>();
+
+        /**
+         * The values of the keys of a leaf.
+         */
+        private final ArrayList<byte[]> values = new ArrayList<>();
+
+        /**
+         * The positions of the children of an internal node, -1 for a changed child.
+         */
+        private final ArrayList<Long> children = new ArrayList<>();
+
+        /**
+         * The changed children of an internal node, null for an unchanged child.
+         */
+        private final ArrayList<Node> pending = new ArrayList<>();
+
+        /**
+         * The position of the node in the file, or -1 if it has changed since the last commit.
+         */
+        private long position = -1;
+
+        /**
+         * The number of bytes of the node in the file.
+         */
+        private int length;
+
+        /**
+         * Creates an empty node.
+         *
+         * @param leaf whether the node is a leaf
+         */
+        private Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+    }
+
+    /**
+     * The new right half of a split node and the key separating it from the left half.
+     */
+    private static final class Split {
+        /**
+         * The smallest key of the right half.
+         */
+        private final byte[] key;
+
+        /**
+         * The right half.
+         */
+        private final Node right;
+
+        /**
+         * Creates a Split.
+         *
+         * @param key   the smallest key of the right half
+         * @param right the right half
+         */
+        private Split(byte[] key, Node right) {
+            this.key = key;
+            this.right = right;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BTreeFileTest {
+
+    /**
+     * Deletes the directory and everything in it.
+     */
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Returns the key of a number, ordered as the numbers are.
+     */
+    private static byte[] key(int number) {
+        return ByteBuffer.allocate(5).put((byte) 'k').putInt(number).array();
+    }
+
+    /**
+     * Returns the UTF-8 bytes of a string.
+     */
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // values put in any order are found again, in the order of their keys, after being committed and reopened
+    @Test
+    void testPutGetRemove() throws IOException {
+        Path directory = Files.createTempDirectory("btree");
+        try {
+            File file = directory.resolve("catalog.db").toFile();
+            try (BTreeFile tree = new BTreeFile(file)) {
+                for (int i = 0; i < 5000; i++) {
+                    int number = (i * 7919) % 5000;
+                    tree.put(key(number), bytes("value " + number));
+                }
+                tree.put(bytes("other"), bytes("after the numbers"));
+                for (int i = 0; i < 5000; i += 2) {
+                    assertTrue(tree.remove(key(i)));
+                }
+                assertFalse(tree.remove(key(0)));
+                tree.commit();
+            }
+            try (BTreeFile tree = new BTreeFile(file)) {
+                assertNull(tree.get(key(10)));
+                assertArrayEquals(bytes("value 4321"), tree.get(key(4321)));
+                assertArrayEquals(bytes("after the numbers"), tree.get(bytes("other")));
+                ArrayList<Integer> numbers = new ArrayList<>();
+                tree.scan(new byte[]{'k'}, (key, value) -> numbers.add(ByteBuffer.wrap(key, 1, 4).getInt()));
+                assertEquals(2500, numbers.size());
+                for (int i = 0; i < numbers.size(); i++) {
+                    assertEquals(2 * i + 1, (int) numbers.get(i));
+                }
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    // a commit cut short before its meta slot is written leaves the tree of the previous commit
+    @Test
+    void testCommitCutShort() throws IOException {
+        Path directory = Files.createTempDirectory("btree");
+        try {
+            File file = directory.resolve("catalog.db").toFile();
+            long committed;
+            try (BTreeFile tree = new BTreeFile(file)) {
+                tree.put(bytes("a"), bytes("first"));
+                tree.commit();
+                committed = tree.size();
+                tree.put(bytes("a"), bytes("second"));
+                tree.put(bytes("b"), bytes("second"));
+                tree.commit();
+            }
+            try (RandomAccessFile damaged = new RandomAccessFile(file, "rw")) {
+                // the checksum of the slot of the second commit, the first slot after the empty tree
+                damaged.seek(40);
+                damaged.writeInt(0);
+                damaged.setLength(committed + 6);
+            }
+            try (BTreeFile tree = new BTreeFile(file)) {
+                assertArrayEquals(bytes("first"), tree.get(bytes("a")));
+                assertNull(tree.get(bytes("b")));
+                tree.put(bytes("b"), bytes("third"));
+                tree.commit();
+            }
+            try (BTreeFile tree = new BTreeFile(file)) {
+                assertArrayEquals(bytes("third"), tree.get(bytes("b")));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    // a file mostly taken by replaced nodes is copied to a smaller file holding the same values
+    @Test
+    void testCompaction() throws IOException {
+        Path directory = Files.createTempDirectory("btree");
+        try {
+            File file = directory.resolve("catalog.db").toFile();
+            try (BTreeFile tree = new BTreeFile(file)) {
+                for (int i = 0; i < 1000; i++) {
+                    tree.put(key(i), bytes("first " + i));
+                }
+                tree.commit();
+                for (int round = 0; round < 2000; round++) {
+                    tree.put(key(round % 1000), bytes("round " + round));
+                    tree.commit();
+                }
+                assertTrue(tree.size() < 2 * BTreeFile.COMPACTION_MINIMUM);
+            }
+            try (BTreeFile tree = new BTreeFile(file)) {
+                assertArrayEquals(bytes("round 1299"), tree.get(key(299)));
+                assertArrayEquals(bytes("round 1999"), tree.get(key(999)));
+            }
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+        } finally {
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reports what a batch move of ImageManager did to each image: whether its file was moved, skipped
+ * because it already was in the target directory, or left where it was because moving it failed, together with
+ * the reason of the failure.
+ *
+ * @see ImageManager#moveImagesToDirectory(java.util.Collection, String, int, MoveProgressListener)
+ */
+public class BatchMoveReport {
+    /**
+     * What a batch move did to one image.
+     */
+    public enum Outcome {
+        /**
+         * The file of the image was moved and the image has its new path.
+         */
+        MOVED,
+        /**
+         * The file of the image already was in the target directory.
+         */
+        SKIPPED,
+        /**
+         * Moving the file of the image failed; the image was left unchanged.
+         */
+        FAILED
+    }
+
+    /**
+     * The outcome of every image of the move.
+     */
+    private final Map<Image, Outcome> outcomes;
+
+    /**
+     * The reason every failed image could not be moved.
+     */
+    private final Map<Image, Exception> failures;
+
+    /**
+     * The images of the move in the order they were given.
+     */
+    private final ArrayList<Image> order;
+
+    /**
+     * Creates an empty BatchMoveReport.
+     */
+    BatchMoveReport() {
+        outcomes = new IdentityHashMap<>();
+        failures = new IdentityHashMap<>();
+        order = new ArrayList<>();
+    }
+
+    /**
+     * Records the outcome of an image.
+     *
+     * @param image   the image
+     * @param outcome what the move did to the image
+     */
+    void record(Image image, Outcome outcome) {
+        if (outcomes.put(image, outcome) == null) {
+            order.add(image);
+        }
+    }
+
+    /**
+     * Records that moving the file of an image failed.
+     *
+     * @param image the image
+     * @param cause the reason of the failure
+     */
+    void recordFailure(Image image, Exception cause) {
+        record(image, Outcome.FAILED);
+        failures.put(image, cause);
+    }
+
+    /**
+     * Returns what the move did to the image.
+     *
+     * @param image an image of the move
+     * @return the outcome of the image, or null if the image was not part of the move.
+     */
+    public Outcome getOutcome(Image image) {
+        return outcomes.get(image);
+    }
+
+    /**
+     * Returns why the file of the image could not be moved.
+     *
+     * @param image an image of the move
+     * @return the reason of the failure, or null if the image did not fail.
+     */
+    public Exception getFailure(Image image) {
+        return failures.get(image);
+    }
+
+    /**
+     * Returns the images that ended with the given outcome, in the order they were given.
+     *
+     * @param outcome the outcome
+     * @return the images with the outcome.
+     */
+    public List<Image> getImages(Outcome outcome) {
+        ArrayList<Image> result = new ArrayList<>();
+        for (Image image : order) {
+            if (outcomes.get(image) == outcome) {
+                result.add(image);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
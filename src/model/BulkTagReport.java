@@ -0,0 +1,90 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reports what a bulk tag operation of ImageManager did to each image: whether the image was renamed,
+ * skipped because there was nothing to change, or left unchanged because renaming its file failed.
+ *
+ * @see ImageManager#addTagToImages(java.util.Collection, String)
+ * @see ImageManager#deleteTagFromImages(java.util.Collection, String)
+ */
+public class BulkTagReport {
+    /**
+     * What a bulk tag operation did to one image.
+     */
+    public enum Outcome {
+        /**
+         * The image was renamed and its tags were changed.
+         */
+        CHANGED,
+        /**
+         * The image already had the tag to add, or did not have the tag to remove.
+         */
+        SKIPPED,
+        /**
+         * Renaming the file of the image failed; the image was left unchanged.
+         */
+        FAILED
+    }
+
+    /**
+     * The outcome of every image of the operation, in the order the images were given.
+     */
+    private final Map<Image, Outcome> outcomes;
+
+    /**
+     * The images of the operation in the order they were given.
+     */
+    private final ArrayList<Image> order;
+
+    /**
+     * Creates an empty BulkTagReport.
+     */
+    BulkTagReport() {
+        outcomes = new IdentityHashMap<>();
+        order = new ArrayList<>();
+    }
+
+    /**
+     * Records the outcome of an image.
+     *
+     * @param image   the image
+     * @param outcome what the operation did to the image
+     */
+    void record(Image image, Outcome outcome) {
+        if (outcomes.put(image, outcome) == null) {
+            order.add(image);
+        }
+    }
+
+    /**
+     * Returns what the operation did to the image.
+     *
+     * @param image an image of the operation
+     * @return the outcome of the image, or null if the image was not part of the operation.
+     */
+    public Outcome getOutcome(Image image) {
+        return outcomes.get(image);
+    }
+
+    /**
+     * Returns the images that ended with the given outcome, in the order they were given.
+     *
+     * @param outcome the outcome
+     * @return the images with the outcome.
+     */
+    public List<Image> getImages(Outcome outcome) {
+        ArrayList<Image> result = new ArrayList<>();
+        for (Image image : order) {
+            if (outcomes.get(image) == outcome) {
+                result.add(image);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
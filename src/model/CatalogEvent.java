@@ -0,0 +1,169 @@
+package model;
+
+/**
+ * This class describes one change to the catalog of images, published by ImageManager on its
+ * {@link CatalogEventBus}. Every kind of change has its own immutable subclass, so that subscribers receive typed
+ * events instead of untyped arrays.
+ *
+ * @see CatalogEventBus
+ * @see CatalogListener
+ * @see ImageManager
+ */
+public abstract class CatalogEvent {
+    /**
+     * The image that has changed.
+     */
+    private final Image image;
+
+    /**
+     * Creates a CatalogEvent about the given image.
+     *
+     * @param image the image that has changed
+     */
+    private CatalogEvent(Image image) {
+        this.image = image;
+    }
+
+    /**
+     * Returns the image that has changed.
+     *
+     * @return the image that has changed.
+     */
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * An image has been added to the catalog.
+     */
+    public static final class ImageAdded extends CatalogEvent {
+        /**
+         * Creates an ImageAdded event.
+         *
+         * @param image the image that has been added
+         */
+        ImageAdded(Image image) {
+            super(image);
+        }
+    }
+
+    /**
+     * A tag has been added to an image.
+     */
+    public static final class TagAdded extends CatalogEvent {
+        /**
+         * The tag that has been added, without the "@" prefix.
+         */
+        private final String tag;
+
+        /**
+         * Creates a TagAdded event.
+         *
+         * @param image the image the tag has been added to
+         * @param tag   the tag that has been added
+         */
+        TagAdded(Image image, String tag) {
+            super(image);
+            this.tag = tag;
+        }
+
+        /**
+         * Returns the tag that has been added.
+         *
+         * @return the tag that has been added, without the "@" prefix.
+         */
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    /**
+     * A tag has been removed from an image.
+     */
+    public static final class TagRemoved extends CatalogEvent {
+        /**
+         * The tag that has been removed, without the "@" prefix.
+         */
+        private final String tag;
+
+        /**
+         * Creates a TagRemoved event.
+         *
+         * @param image the image the tag has been removed from
+         * @param tag   the tag that has been removed
+         */
+        TagRemoved(Image image, String tag) {
+            super(image);
+            this.tag = tag;
+        }
+
+        /**
+         * Returns the tag that has been removed.
+         *
+         * @return the tag that has been removed, without the "@" prefix.
+         */
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    /**
+     * An image has been renamed in its directory.
+     */
+    public static final class ImageRenamed extends CatalogEvent {
+        /**
+         * The path of the image before it was renamed.
+         */
+        private final String oldPath;
+
+        /**
+         * Creates an ImageRenamed event.
+         *
+         * @param image   the image that has been renamed
+         * @param oldPath the path of the image before it was renamed
+         */
+        ImageRenamed(Image image, String oldPath) {
+            super(image);
+            this.oldPath = oldPath;
+        }
+
+        /**
+         * Returns the path of the image before it was renamed.
+         *
+         * @return the path of the image before it was renamed.
+         */
+        public String getOldPath() {
+            return oldPath;
+        }
+    }
+
+    /**
+     * An image has been moved to another directory.
+     */
+    public static final class ImageMoved extends CatalogEvent {
+        /**
+         * The path of the image before it was moved.
+         */
+        private final String oldPath;
+
+        /**
+         * Creates an ImageMoved event.
+         *
+         * @param image   the image that has been moved
+         * @param oldPath the path of the image before it was moved
+         */
+        ImageMoved(Image image, String oldPath) {
+            super(image);
+            this.oldPath = oldPath;
+        }
+
+        /**
+         * Returns the path of the image before it was moved.
+         *
+         * @return the path of the image before it was moved.
+         */
+        public String getOldPath() {
+            return oldPath;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a batch of changes to the catalog delivered at once to every {@link CatalogListener}. Besides the
+ * events themselves, it gives the net change of the number of images carrying each tag over the whole batch,
+ * so that a listener keeping tag counts updates each tag once per batch rather than once per event.
+ *
+ * @see CatalogEventBus
+ * @see CatalogEvent
+ */
+public final class CatalogEventBatch {
+    /**
+     * The events of the batch, in the order they were published.
+     */
+    private final List<CatalogEvent> events;
+
+    /**
+     * The net change of every tag touched by the batch, computed when first asked for.
+     */
+    private Map<String, Integer> tagDeltas;
+
+    /**
+     * Creates a batch of the given events.
+     *
+     * @param events the events of the batch, in the order they were published
+     */
+    CatalogEventBatch(List<CatalogEvent> events) {
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Returns a batch holding the single given event.
+     *
+     * @param event the event
+     * @return a batch holding the event.
+     */
+    static CatalogEventBatch of(CatalogEvent event) {
+        return new CatalogEventBatch(Collections.singletonList(event));
+    }
+
+    /**
+     * Returns the events of the batch.
+     *
+     * @return the events of the batch, in the order they were published.
+     */
+    public List<CatalogEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * Returns the net change of the number of images carrying each tag touched by the batch. A tag added and then
+     * removed within the batch has a change of 0.
+     *
+     * @return the net change of every tag touched by the batch, in the order the tags were first touched.
+     */
+    public Map<String, Integer> getTagDeltas() {
+        if (tagDeltas == null) {
+            LinkedHashMap<String, Integer> deltas = new LinkedHashMap<>();
+            for (CatalogEvent event : events) {
+                if (event instanceof CatalogEvent.TagAdded) {
+                    deltas.merge(((CatalogEvent.TagAdded) event).getTag(), 1, Integer::sum);
+                } else if (event instanceof CatalogEvent.TagRemoved) {
+                    deltas.merge(((CatalogEvent.TagRemoved) event).getTag(), -1, Integer::sum);
+                }
+            }
+            tagDeltas = Collections.unmodifiableMap(deltas);
+        }
+        return tagDeltas;
+    }
+}
@@ -0,0 +1,101 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This class delivers the changes made by ImageManager to every subscribed {@link CatalogListener}, replacing the
+ * Observable/Observer pair. Outside a batch every event is delivered on its own. Between {@link #beginBatch()}
+ * and the matching {@link #endBatch()} events are collected and delivered together as one
+ * {@link CatalogEventBatch} when the outermost batch ends. Events are published on the thread changing the
+ * catalog; listeners may subscribe from any thread.
+ *
+ * @see CatalogEvent
+ * @see CatalogListener
+ * @see ImageManager
+ */
+public class CatalogEventBus {
+    /**
+     * The subscribed listeners.
+     */
+    private final CopyOnWriteArrayList<CatalogListener> listeners;
+
+    /**
+     * The events collected by the current batch.
+     */
+    private ArrayList<CatalogEvent> pending;
+
+    /**
+     * The number of batches begun and not yet ended.
+     */
+    private int depth;
+
+    /**
+     * Creates a CatalogEventBus without listeners.
+     */
+    CatalogEventBus() {
+        listeners = new CopyOnWriteArrayList<>();
+        pending = new ArrayList<>();
+    }
+
+    /**
+     * Subscribes the listener to every later change.
+     *
+     * @param listener the listener to subscribe
+     */
+    public void subscribe(CatalogListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Unsubscribes the listener.
+     *
+     * @param listener the listener to unsubscribe
+     */
+    public void unsubscribe(CatalogListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Begins a batch. Batches may be nested; the events are delivered when the outermost batch ends.
+     */
+    void beginBatch() {
+        depth++;
+    }
+
+    /**
+     * Ends a batch, delivering its events if it is the outermost batch.
+     */
+    void endBatch() {
+        depth--;
+        if (depth == 0 && !pending.isEmpty()) {
+            CatalogEventBatch batch = new CatalogEventBatch(pending);
+            pending = new ArrayList<>();
+            deliver(batch);
+        }
+    }
+
+    /**
+     * Publishes an event, delivering it right away unless a batch is open.
+     *
+     * @param event the event to publish
+     */
+    void publish(CatalogEvent event) {
+        if (depth > 0) {
+            pending.add(event);
+        } else if (!listeners.isEmpty()) {
+            deliver(CatalogEventBatch.of(event));
+        }
+    }
+
+    /**
+     * Delivers a batch to every listener.
+     *
+     * @param batch the batch to deliver
+     */
+    private void deliver(CatalogEventBatch batch) {
+        for (CatalogListener listener : listeners) {
+            listener.onBatch(batch);
+        }
+    }
+}
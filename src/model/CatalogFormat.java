@@ -0,0 +1,461 @@
+package model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * This class reads and writes the images of the catalog in a compact binary format, instead of Java serialization,
+ * which writes the description of every class into the file, fails whenever a field changes and must read the
+ * whole object graph through reflection. The file is made of:
+ * <ul>
+ * <li>a header of {@link #HEADER_LENGTH} bytes: the magic number "GGPC", the version of the format, reserved
+ * flags, the number of images, the number of strings and the length of the string table, in big-endian order;</li>
+ * <li>the string table: every distinct string of the catalog once, as its length in UTF-8 bytes followed by the
+ * bytes. The directories of the paths, the tags, the extensions and the used names are shared between images;</li>
+ * <li>one record per image, prefixed by its length so that a record can be skipped without being decoded: the
+ * directory and the file name of its path, its name, its extension, its tags and its renaming history, each as the
+ * position of a string in the table;</li>
+ * <li>the CRC-32 of everything before it.</li>
+ * </ul>
+ * All lengths, counts and string positions inside the string table and the records are unsigned variable-length
+ * integers of 7 bits per byte, so that most take one or two bytes.
+ *
+ * <p>A reader refuses files of a later version than {@link #VERSION}. Catalogs saved with Java serialization by
+ * earlier versions are recognized by {@link #isCatalogFile(File)} returning false, and still read the old way.
+ *
+ * @see ImageManager#saveToImageManagerFile(String)
+ */
+final class CatalogFormat {
+    /**
+     * The first bytes of every catalog file, "GGPC".
+     */
+    static final int MAGIC = 0x47475043;
+
+    /**
+     * The version of the format written by this class.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The number of bytes of the header.
+     */
+    static final int HEADER_LENGTH = 20;
+
+    /**
+     * The number of bytes of the CRC-32 at the end of the file.
+     */
+    static final int TRAILER_LENGTH = 4;
+
+    /**
+     * CatalogFormat only has static methods.
+     */
+    private CatalogFormat() {
+    }
+
+    /**
+     * Writes the images to the output stream.
+     *
+     * @param images the images to write
+     * @param output the stream the catalog is written to; it is not closed
+     * @throws IOException indicates that writing fails.
+     */
+    static void write(Collection<Image> images, OutputStream output) throws IOException {
+        StringTable strings = new StringTable();
+        Buffer records = new Buffer(images.size() * 16);
+        Buffer record = new Buffer(256);
+        for (Image image : images) {
+            record.clear();
+            String path = image.getPath();
+            int split = directoryEnd(path);
+            record.putVarInt(strings.code(path.substring(0, split)));
+            record.putVarInt(strings.code(path.substring(split)));
+            record.putVarInt(strings.code(image.getName()));
+            record.putVarInt(strings.code(image.getType()));
+            List<String> tags = image.getTags();
+            record.putVarInt(tags.size());
+            for (String tag : tags) {
+                record.putVarInt(strings.code(tag));
+            }
+            List<UsedName> history = image.getRenamingHistory();
+            record.putVarInt(history.size());
+            for (UsedName usedName : history) {
+                record.putVarInt(strings.code(usedName.getName()));
+            }
+            records.putVarInt(record.length);
+            records.put(record.bytes, 0, record.length);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0).putInt(images.size())
+                .putInt(strings.size()).putInt(strings.table.length);
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, HEADER_LENGTH);
+        crc.update(strings.table.bytes, 0, strings.table.length);
+        crc.update(records.bytes, 0, records.length);
+        output.write(header.array());
+        output.write(strings.table.bytes, 0, strings.table.length);
+        output.write(records.bytes, 0, records.length);
+        output.write(ByteBuffer.allocate(TRAILER_LENGTH).putInt((int) crc.getValue()).array());
+        output.flush();
+    }
+
+    /**
+     * Reads the images of a catalog file.
+     *
+     * @param file the catalog file
+     * @return the images, in the order they were written.
+     * @throws IOException indicates that the file cannot be read, is damaged or is of a later version.
+     */
+    static ArrayList<Image> read(File file) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+    }
+
+    /**
+     * Reads the images of a catalog held in a buffer, from its position to its limit.
+     *
+     * @param buffer the content of the catalog
+     * @return the images, in the order they were written.
+     * @throws IOException indicates that the catalog is damaged or of a later version.
+     */
+    static ArrayList<Image> read(ByteBuffer buffer) throws IOException {
+        Header header = readHeader(buffer);
+        String[] strings = readStrings(buffer, header);
+        ArrayList<Image> images = new ArrayList<>(header.imageCount);
+        try {
+            for (int i = 0; i < header.imageCount; i++) {
+                int length = getVarInt(buffer);
+                int end = buffer.position() + length;
+                images.add(readRecord(buffer, strings));
+                buffer.position(end);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Damaged catalog record: " + e, e);
+        }
+        return images;
+    }
+
+    /**
+     * Returns whether the file starts like a catalog written by this class, rather than by Java serialization.
+     *
+     * @param file the file
+     * @return true if the file starts with the magic number of the format.
+     * @throws IOException indicates that the file cannot be read.
+     */
+    static boolean isCatalogFile(File file) throws IOException {
+        byte[] start = new byte[4];
+        try (InputStream input = new FileInputStream(file)) {
+            int read = 0;
+            while (read < start.length) {
+                int count = input.read(start, read, start.length - read);
+                if (count < 0) {
+                    return false;
+                }
+                read += count;
+            }
+        }
+        return ByteBuffer.wrap(start).getInt() == MAGIC;
+    }
+
+    /**
+     * Reads and checks the header of a catalog, and checks the CRC-32 of the whole catalog. The buffer is left at
+     * the start of the string table.
+     *
+     * @param buffer the content of the catalog, from its position to its limit
+     * @return the header.
+     * @throws IOException indicates that the catalog is damaged or of a later version.
+     */
+    static Header readHeader(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_LENGTH + TRAILER_LENGTH || buffer.getInt(start) != MAGIC) {
+            throw new IOException("Not a catalog file");
+        }
+        int version = buffer.getShort(start + 4) & 0xFFFF;
+        if (version > VERSION) {
+            throw new IOException("Unsupported catalog version " + version + ", expected at most " + VERSION);
+        }
+        int end = buffer.limit() - TRAILER_LENGTH;
+        if (checksum(buffer, start, end) != buffer.getInt(end)) {
+            throw new IOException("Damaged catalog file: checksum mismatch");
+        }
+        Header header = new Header(buffer.getInt(start + 8), buffer.getInt(start + 12), buffer.getInt(start + 16));
+        if (header.imageCount < 0 || header.stringCount < 0 || header.stringTableLength < 0
+                || header.stringTableLength > buffer.remaining() - HEADER_LENGTH - TRAILER_LENGTH) {
+            throw new IOException("Damaged catalog header");
+        }
+        buffer.position(start + HEADER_LENGTH);
+        return header;
+    }
+
+    /**
+     * Reads the string table of a catalog. The buffer is left at the first record.
+     *
+     * @param buffer the content of the catalog, at the start of the string table
+     * @param header the header of the catalog
+     * @return the strings, at their position in the table.
+     * @throws IOException indicates that the string table is damaged.
+     */
+    static String[] readStrings(ByteBuffer buffer, Header header) throws IOException {
+        int end = buffer.position() + header.stringTableLength;
+        String[] strings = new String[header.stringCount];
+        try {
+            for (int i = 0; i < strings.length; i++) {
+                int length = getVarInt(buffer);
+                if (length > end - buffer.position()) {
+                    throw new IOException("Damaged catalog string table");
+                }
+                if (buffer.hasArray()) {
+                    strings[i] = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                            StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + length);
+                } else {
+                    byte[] bytes = new byte[length];
+                    buffer.get(bytes);
+                    strings[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Damaged catalog string table: " + e, e);
+        }
+        buffer.position(end);
+        return strings;
+    }
+
+    /**
+     * Decodes the image of a record.
+     *
+     * @param buffer  the content of the catalog, after the length of the record
+     * @param strings the string table of the catalog
+     * @return the image of the record.
+     */
+    static Image readRecord(ByteBuffer buffer, String[] strings) {
+        String path = strings[getVarInt(buffer)].concat(strings[getVarInt(buffer)]);
+        String name = strings[getVarInt(buffer)];
+        String type = strings[getVarInt(buffer)];
+        int tagCount = getVarInt(buffer);
+        String[] tags = new String[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            tags[i] = strings[getVarInt(buffer)];
+        }
+        int historyCount = getVarInt(buffer);
+        ArrayList<UsedName> history = new ArrayList<>(historyCount);
+        for (int i = 0; i < historyCount; i++) {
+            history.add(new UsedName(strings[getVarInt(buffer)]));
+        }
+        return new Image(name, type, path, Arrays.asList(tags), history);
+    }
+
+    /**
+     * Reads an unsigned variable-length integer of 7 bits per byte, lowest bits first.
+     *
+     * @param buffer the buffer at the integer
+     * @return the integer.
+     * @throws IllegalArgumentException indicates that the integer does not fit in 31 bits.
+     */
+    static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Variable-length integer out of range");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Variable-length integer too long");
+    }
+
+    /**
+     * Returns the CRC-32 of a part of the buffer.
+     *
+     * @param buffer the buffer
+     * @param from   the position of the first byte
+     * @param to     the position after the last byte
+     * @return the CRC-32 of the bytes.
+     */
+    private static int checksum(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + from, to - from);
+        } else {
+            byte[] chunk = new byte[64 * 1024];
+            ByteBuffer content = buffer.duplicate();
+            content.limit(to).position(from);
+            while (content.hasRemaining()) {
+                int count = Math.min(chunk.length, content.remaining());
+                content.get(chunk, 0, count);
+                crc.update(chunk, 0, count);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns the position after the directory of the path, so that images of the same directory share the
+     * string of their directory.
+     *
+     * @param path the path of an image
+     * @return the position after the last separator of the path, or 0 if it has none.
+     */
+    private static int directoryEnd(String path) {
+        return Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar)) + 1;
+    }
+
+    /**
+     * The counts read from the header of a catalog.
+     */
+    static final class Header {
+        /**
+         * The number of images.
+         */
+        final int imageCount;
+
+        /**
+         * The number of strings of the string table.
+         */
+        final int stringCount;
+
+        /**
+         * The number of bytes of the string table.
+         */
+        final int stringTableLength;
+
+        /**
+         * Creates a Header.
+         *
+         * @param imageCount        the number of images
+         * @param stringCount       the number of strings of the string table
+         * @param stringTableLength the number of bytes of the string table
+         */
+        Header(int imageCount, int stringCount, int stringTableLength) {
+            this.imageCount = imageCount;
+            this.stringCount = stringCount;
+            this.stringTableLength = stringTableLength;
+        }
+    }
+
+    /**
+     * The string table being written, giving every distinct string the position of its first use.
+     */
+    private static final class StringTable {
+        /**
+         * The position of every string in the table.
+         */
+        private final HashMap<String, Integer> codes = new HashMap<>();
+
+        /**
+         * The encoded table.
+         */
+        private final Buffer table = new Buffer(4096);
+
+        /**
+         * Returns the position of the string in the table, adding it if it is not there yet.
+         *
+         * @param string the string
+         * @return the position of the string.
+         */
+        int code(String string) {
+            Integer code = codes.get(string);
+            if (code == null) {
+                code = codes.size();
+                codes.put(string, code);
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                table.putVarInt(bytes.length);
+                table.put(bytes, 0, bytes.length);
+            }
+            return code;
+        }
+
+        /**
+         * Returns the number of strings in the table.
+         *
+         * @return the number of strings in the table.
+         */
+        int size() {
+            return codes.size();
+        }
+    }
+
+    /**
+     * A growable array of bytes being written.
+     */
+    private static final class Buffer {
+        /**
+         * The bytes; only the first length are used.
+         */
+        private byte[] bytes;
+
+        /**
+         * The number of bytes written.
+         */
+        private int length;
+
+        /**
+         * Creates an empty Buffer.
+         *
+         * @param capacity the number of bytes it holds before growing
+         */
+        Buffer(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        /**
+         * Forgets the bytes written.
+         */
+        void clear() {
+            length = 0;
+        }
+
+        /**
+         * Writes bytes.
+         *
+         * @param source the bytes to write
+         * @param offset the position of the first byte to write
+         * @param count  the number of bytes to write
+         */
+        void put(byte[] source, int offset, int count) {
+            ensureCapacity(count);
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        /**
+         * Writes a non-negative integer in 7 bits per byte, lowest bits first.
+         *
+         * @param value the integer
+         */
+        void putVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        /**
+         * Grows the array so that the input number of bytes can be written.
+         *
+         * @param count the number of bytes to write
+         */
+        private void ensureCapacity(int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + count, bytes.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * This class measures how fast CatalogFormat loads a catalog and how large the catalog is, against the Java
+ * serialization it replaced. It is run by hand, with the number of images as argument:
+ * <pre>
+ * java model.CatalogFormatBenchmark 500000
+ * </pre>
+ *
+ * @see CatalogFormat
+ */
+class CatalogFormatBenchmark {
+    /**
+     * The number of times every measure is repeated; the first runs warm up the compiler.
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * Runs the benchmark and prints the size of both catalogs and the images loaded per second in the fastest
+     * round of both formats.
+     *
+     * @param args the number of images, 500000 if absent
+     * @throws IOException            indicates that writing or reading a catalog fails.
+     * @throws ClassNotFoundException indicates that reading the serialized catalog fails.
+     */
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        ArrayList<Image> images = images(count, new Random(42));
+        ByteArrayOutputStream catalog = new ByteArrayOutputStream();
+        CatalogFormat.write(images, catalog);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(serialized)) {
+            output.writeObject(images);
+        }
+        byte[] catalogBytes = catalog.toByteArray();
+        byte[] serializedBytes = serialized.toByteArray();
+        long catalogTime = Long.MAX_VALUE;
+        long serializedTime = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            CatalogFormat.read(ByteBuffer.wrap(catalogBytes));
+            catalogTime = Math.min(catalogTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(serializedBytes))) {
+                input.readObject();
+            }
+            serializedTime = Math.min(serializedTime, System.nanoTime() - start);
+        }
+        System.out.printf("catalog format:      %,d bytes, %,.0f images/s%n", catalogBytes.length,
+                count * 1e9 / catalogTime);
+        System.out.printf("java serialization:  %,d bytes, %,.0f images/s%n", serializedBytes.length,
+                count * 1e9 / serializedTime);
+    }
+
+    /**
+     * Returns images spread over a few hundred directories, with from zero to four tags and one or two used names.
+     *
+     * @param count  the number of images
+     * @param random the source of the directories and tags
+     * @return the images.
+     */
+    private static ArrayList<Image> images(int count, Random random) {
+        ArrayList<Image> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ArrayList<String> tags = new ArrayList<>();
+            for (int j = random.nextInt(5); j > 0; j--) {
+                tags.add("tag" + random.nextInt(50));
+            }
+            String name = TagNameCodec.render("IMG_" + i, tags);
+            Image image = new Image(name, "jpg", "/photos/" + (2000 + random.nextInt(20)) + "/event"
+                    + random.nextInt(20) + "/" + name + ".jpg");
+            for (String tag : tags) {
+                image.addTag(tag);
+            }
+            if (!tags.isEmpty()) {
+                image.addNewNameToHistory(name);
+            }
+            images.add(image);
+        }
+        return images;
+    }
+}
@@ -0,0 +1,107 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogFormatTest {
+
+    /**
+     * Returns the catalog of the images, as written by CatalogFormat.
+     */
+    private static byte[] write(ArrayList<Image> images) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CatalogFormat.write(images, output);
+        return output.toByteArray();
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        Image tagged = new Image("IMG_1 @beach @2019", "jpg", "/photos/2019/IMG_1 @beach @2019.jpg");
+        tagged.addTag("beach");
+        tagged.addTag("2019");
+        tagged.addNewNameToHistory("IMG_1 @beach");
+        Image plain = new Image("\u00e9t\u00e9", "png", "/photos/2019/\u00e9t\u00e9.png");
+        Image bare = new Image("bare", "gif", "bare.gif");
+        ArrayList<Image> images = new ArrayList<>(Arrays.asList(tagged, plain, bare));
+        ArrayList<Image> read = CatalogFormat.read(ByteBuffer.wrap(write(images)));
+        assertEquals(3, read.size());
+        for (int i = 0; i < images.size(); i++) {
+            Image expected = images.get(i);
+            Image actual = read.get(i);
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.getPath(), actual.getPath());
+            assertEquals(expected.getTags(), actual.getTags());
+            assertEquals(expected.getRenamingHistory().size(), actual.getRenamingHistory().size());
+            for (int j = 0; j < expected.getRenamingHistory().size(); j++) {
+                assertEquals(expected.getRenamingHistory().get(j).getName(),
+                        actual.getRenamingHistory().get(j).getName());
+            }
+        }
+    }
+
+    // the shared directory and tags are written once
+    @Test
+    void testStringTableShared() throws IOException {
+        ArrayList<Image> images = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Image image = new Image("IMG_" + i, "jpg", "/a/long/shared/directory/of/photos/IMG_" + i + ".jpg");
+            image.addTag("beach");
+            images.add(image);
+        }
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(serialized)) {
+            output.writeObject(images);
+        }
+        assertTrue(write(images).length * 3 < serialized.size());
+    }
+
+    @Test
+    void testDamagedCatalog() throws IOException {
+        ArrayList<Image> images = new ArrayList<>();
+        images.add(new Image("IMG_1", "jpg", "/photos/IMG_1.jpg"));
+        byte[] catalog = write(images);
+        catalog[CatalogFormat.HEADER_LENGTH + 2] ^= 1;
+        assertThrows(IOException.class, () -> CatalogFormat.read(ByteBuffer.wrap(catalog)));
+        byte[] later = write(images);
+        later[5] = (byte) (CatalogFormat.VERSION + 1);
+        assertThrows(IOException.class, () -> CatalogFormat.read(ByteBuffer.wrap(later)));
+    }
+
+    // a catalog saved with Java serialization is still read
+    @Test
+    void testReadSerializedCatalog() throws IOException, ClassNotFoundException {
+        File imageFile = File.createTempFile("images", ".ser");
+        File tagFile = File.createTempFile("tags", ".ser");
+        try {
+            ArrayList<Image> images = new ArrayList<>();
+            images.add(new Image("old @beach", "jpg", "/photos/old @beach.jpg"));
+            images.get(0).addTag("beach");
+            try (OutputStream file = Files.newOutputStream(imageFile.toPath());
+                 ObjectOutputStream output = new ObjectOutputStream(file)) {
+                output.writeObject(images);
+            }
+            assertFalse(CatalogFormat.isCatalogFile(imageFile));
+            GoGoPhotoSystem system = new GoGoPhotoSystem(tagFile.getPath(), imageFile.getPath());
+            assertEquals("old @beach", system.getImageManager().getImages().get(0).getName());
+            system.saveToImageManagerFile(imageFile.getPath());
+            assertTrue(CatalogFormat.isCatalogFile(imageFile));
+            GoGoPhotoSystem reloaded = new GoGoPhotoSystem(tagFile.getPath(), imageFile.getPath());
+            assertTrue(reloaded.getImageManager().getImages().get(0).hasTag("beach"));
+        } finally {
+            Files.deleteIfExists(imageFile.toPath());
+            Files.deleteIfExists(tagFile.toPath());
+        }
+    }
+}
@@ -0,0 +1,692 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * This class appends every change made to the catalog to a journal file next to the image catalog file, so that
+ * a change is on disk within milliseconds of being made, without saving the whole catalog. The image and tag
+ * files written by the last save stay the snapshot; opening the journal replays it over the snapshot already
+ * read.
+ *
+ * <p>A record is added for every image added, renamed or moved, every tag added to or removed from an image, and
+ * every tag created or deleted in TagManager. An image is named by its path before the change, so that replaying
+ * a record twice changes nothing the second time. A record is its length, its content and the CRC-32 of its
+ * content; a record cut short by a crash is dropped when the journal is opened.
+ *
+ * <p>Subscribed to the event bus of ImageManager, the journal appends a record for every change as it is made;
+ * GoGoPhotoSystem appends the changes through an {@link Autosaver} instead, which coalesces the changes of the
+ * last few seconds. Records are appended to memory and written by a background thread, which writes every record
+ * appended since its last write at once and forces them to the disk with a single call (group commit).
+ * {@link #flush()} waits until every record appended so far is on the disk.
+ *
+ * <p>Once the journal grows past the compaction threshold, it is renamed to an old journal and a new journal is
+ * started. A background compaction then reads the snapshot, replays the old journal over it, saves the result as
+ * the new snapshot and deletes the old journal. Opening the journal replays the old journal left by an
+ * interrupted compaction before the new one, and compacts again.
+ *
+ * @see CatalogEventBus
+ * @see Autosaver
+ * @see GoGoPhotoSystem#openJournal()
+ */
+class CatalogJournal implements CatalogListener {
+    /**
+     * The journal is compacted once it is larger than this many bytes, unless another threshold is given.
+     */
+    static final long COMPACTION_THRESHOLD = 4 * 1024 * 1024;
+
+    /**
+     * The first four bytes of a journal file, "GGPJ".
+     */
+    static final int MAGIC = 0x4747504A;
+
+    /**
+     * The version of the journal format written.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * The number of bytes of the header: the magic number and the version.
+     */
+    static final int HEADER_LENGTH = 6;
+
+    /**
+     * An image has been added: its path, name and type.
+     */
+    private static final byte IMAGE_ADDED = 1;
+
+    /**
+     * An image has been renamed: its old path, new path and new name.
+     */
+    private static final byte IMAGE_RENAMED = 2;
+
+    /**
+     * An image has been moved: its old path and new path.
+     */
+    private static final byte IMAGE_MOVED = 3;
+
+    /**
+     * A tag has been added to an image: the path of the image and the tag.
+     */
+    private static final byte TAG_ADDED = 4;
+
+    /**
+     * A tag has been removed from an image: the path of the image and the tag.
+     */
+    private static final byte TAG_REMOVED = 5;
+
+    /**
+     * A tag has been created in TagManager: the tag.
+     */
+    private static final byte TAG_CREATED = 6;
+
+    /**
+     * A tag has been deleted from TagManager: the tag.
+     */
+    private static final byte TAG_DELETED = 7;
+
+    /**
+     * The image catalog file the journal replays over.
+     */
+    private final File imageFile;
+
+    /**
+     * The tag file the journal replays over.
+     */
+    private final File tagFile;
+
+    /**
+     * The journal file records are appended to.
+     */
+    private final File file;
+
+    /**
+     * The journal file being compacted, or left by an interrupted compaction.
+     */
+    private final File oldFile;
+
+    /**
+     * The size past which the journal is compacted.
+     */
+    private final long threshold;
+
+    /**
+     * The records appended and not yet written. Also the lock guarding the counters and the closing.
+     */
+    private final ByteArrayOutputStream pending;
+
+    /**
+     * The number of records appended so far.
+     */
+    private long appended;
+
+    /**
+     * The number of records written and forced to the disk so far.
+     */
+    private long durable;
+
+    /**
+     * Whether the journal has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * The open journal file, used by the writer thread only once the journal is open.
+     */
+    private FileChannel channel;
+
+    /**
+     * The thread writing the appended records.
+     */
+    private final Thread writer;
+
+    /**
+     * The thread compacting the old journal.
+     */
+    private final ExecutorService compactor;
+
+    /**
+     * Opens the journal of the image catalog file, creating it if needed. A record cut short at the end of the
+     * journal is dropped. Nothing is appended before {@link #replay(ImageManager, TagManager)} has been called.
+     *
+     * @param imageFile the image catalog file
+     * @param tagFile   the tag file
+     * @param threshold the size in bytes past which the journal is compacted
+     * @throws IOException indicates that the journal cannot be opened or is not a journal.
+     */
+    CatalogJournal(File imageFile, File tagFile, long threshold) throws IOException {
+        this.imageFile = imageFile;
+        this.tagFile = tagFile;
+        this.file = new File(imageFile.getPath() + ".journal");
+        this.oldFile = new File(imageFile.getPath() + ".journal.old");
+        this.threshold = threshold;
+        this.pending = new ByteArrayOutputStream();
+        this.channel = open(file);
+        this.writer = new Thread(this::write, "GoGoPhoto journal");
+        writer.setDaemon(true);
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "GoGoPhoto journal compaction");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Replays the old journal, if any, and the journal over the images and tags read from the snapshot, then
+     * starts writing the records appended later. The changes are published on the event bus of imageManager, so
+     * this journal must not be subscribed to it yet. The tag counts are then taken from the tag index. If an old
+     * journal was left by an interrupted compaction, it is compacted again in the background.
+     *
+     * @param imageManager the ImageManager holding the snapshot
+     * @param tagManager   the TagManager holding the snapshot, subscribed to imageManager
+     * @return the number of records replayed.
+     * @throws IOException indicates that reading a journal fails.
+     */
+    int replay(ImageManager imageManager, TagManager tagManager) throws IOException {
+        int count = 0;
+        if (oldFile.exists()) {
+            count += replay(oldFile, imageManager, tagManager);
+        }
+        count += replay(file, imageManager, tagManager);
+        tagManager.recount();
+        writer.start();
+        if (oldFile.exists()) {
+            compactor.execute(this::compactQuietly);
+        }
+        return count;
+    }
+
+    /**
+     * Appends a record for every change of the batch.
+     *
+     * @param batch the changes
+     */
+    @Override
+    public void onBatch(CatalogEventBatch batch) {
+        for (CatalogEvent event : batch.getEvents()) {
+            Image image = event.getImage();
+            if (event instanceof CatalogEvent.ImageAdded) {
+                imageAdded(image.getPath(), image.getName(), image.getType());
+            } else if (event instanceof CatalogEvent.ImageRenamed) {
+                imageRenamed(((CatalogEvent.ImageRenamed) event).getOldPath(), image.getPath(), image.getName());
+            } else if (event instanceof CatalogEvent.ImageMoved) {
+                imageMoved(((CatalogEvent.ImageMoved) event).getOldPath(), image.getPath());
+            } else if (event instanceof CatalogEvent.TagAdded) {
+                tagAdded(image.getPath(), ((CatalogEvent.TagAdded) event).getTag());
+            } else if (event instanceof CatalogEvent.TagRemoved) {
+                tagRemoved(image.getPath(), ((CatalogEvent.TagRemoved) event).getTag());
+            }
+        }
+    }
+
+    /**
+     * Appends the adding of an image, without its tags.
+     *
+     * @param path the path of the image
+     * @param name the name of the image, without the file type suffix
+     * @param type the file type of the image
+     */
+    void imageAdded(String path, String name, String type) {
+        append(IMAGE_ADDED, path, name, type);
+    }
+
+    /**
+     * Appends the renaming of an image, which may have moved as well.
+     *
+     * @param oldPath the path of the image before the change
+     * @param newPath the path of the image after the change
+     * @param newName the name of the image after the change, without the file type suffix
+     */
+    void imageRenamed(String oldPath, String newPath, String newName) {
+        append(IMAGE_RENAMED, oldPath, newPath, newName);
+    }
+
+    /**
+     * Appends the moving of an image to another directory.
+     *
+     * @param oldPath the path of the image before the change
+     * @param newPath the path of the image after the change
+     */
+    void imageMoved(String oldPath, String newPath) {
+        append(IMAGE_MOVED, oldPath, newPath);
+    }
+
+    /**
+     * Appends the adding of a tag to an image.
+     *
+     * @param path the path of the image
+     * @param tag  the tag added
+     */
+    void tagAdded(String path, String tag) {
+        append(TAG_ADDED, path, tag);
+    }
+
+    /**
+     * Appends the removal of a tag from an image.
+     *
+     * @param path the path of the image
+     * @param tag  the tag removed
+     */
+    void tagRemoved(String path, String tag) {
+        append(TAG_REMOVED, path, tag);
+    }
+
+    /**
+     * Appends the creation of a tag in TagManager.
+     *
+     * @param tag the tag created
+     */
+    void tagCreated(String tag) {
+        append(TAG_CREATED, tag);
+    }
+
+    /**
+     * Appends the deletion of a tag from TagManager.
+     *
+     * @param tag the tag deleted
+     */
+    void tagDeleted(String tag) {
+        append(TAG_DELETED, tag);
+    }
+
+    /**
+     * Waits until every record appended so far has been written and forced to the disk.
+     */
+    void flush() {
+        synchronized (pending) {
+            long target = appended;
+            try {
+                while (durable < target && writer.isAlive()) {
+                    pending.wait(100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes every record appended so far, waits for a running compaction and closes the journal.
+     *
+     * @throws IOException indicates that closing the journal file fails.
+     */
+    void close() throws IOException {
+        flush();
+        synchronized (pending) {
+            closed = true;
+            pending.notifyAll();
+        }
+        try {
+            writer.join();
+            compactor.shutdown();
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    /**
+     * Returns the size of the journal file.
+     *
+     * @return the size of the journal file in bytes.
+     */
+    long size() {
+        return file.length();
+    }
+
+    /**
+     * Folds the old journal into the snapshot: reads the image and tag files, replays the old journal over them,
+     * saves them again and deletes the old journal. Nothing happens if there is no old journal. The snapshot is
+     * saved to new files renamed over the old ones, so that a compaction cut short leaves the old snapshot or the
+     * new one, and the old journal, which replays over either.
+     *
+     * @throws IOException indicates that reading or saving the snapshot fails; the old journal is then kept.
+     */
+    void compact() throws IOException {
+        if (!oldFile.exists()) {
+            return;
+        }
+        ImageManager imageManager = new ImageManager();
+        TagManager tagManager = new TagManager();
+        imageManager.setImages(readImages(imageFile));
+        tagManager.setTags(readTags(tagFile));
+        tagManager.getTagIndex().rebuild(imageManager.getImages());
+        imageManager.getEventBus().subscribe(tagManager);
+        replay(oldFile, imageManager, tagManager);
+        tagManager.recount();
+        imageManager.saveToImageManagerFile(imageFile.getPath());
+        tagManager.saveToTagManagerFile(tagFile.getPath());
+        Files.delete(oldFile.toPath());
+        GoGoPhotoSystem.logger.log(Level.FINE, "Compacted the journal of " + imageFile);
+    }
+
+    /**
+     * Compacts the old journal, logging a failure instead of throwing it.
+     */
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot compact the journal of " + imageFile + ": " + e);
+        }
+    }
+
+    /**
+     * Appends one record, to be written by the writer thread.
+     *
+     * @param operation the kind of record
+     * @param fields    the fields of the record
+     */
+    private void append(byte operation, String... fields) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream(64);
+        try (DataOutputStream output = new DataOutputStream(content)) {
+            output.writeByte(operation);
+            for (String field : fields) {
+                output.writeUTF(field);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = content.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        synchronized (pending) {
+            if (closed) {
+                GoGoPhotoSystem.logger.log(Level.WARNING, "Change made after the journal was closed is not saved");
+                return;
+            }
+            writeInt(bytes.length);
+            pending.write(bytes, 0, bytes.length);
+            writeInt((int) crc.getValue());
+            appended++;
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * Appends an int to the pending records, most significant byte first. Called with the lock of
+     * {@link #pending} held.
+     *
+     * @param value the int to append
+     */
+    private void writeInt(int value) {
+        pending.write(value >>> 24);
+        pending.write(value >>> 16);
+        pending.write(value >>> 8);
+        pending.write(value);
+    }
+
+    /**
+     * Writes the appended records until the journal is closed: every record appended while the last ones were
+     * being written is written by the next single write and force. Starts a compaction once the journal is
+     * larger than the threshold and no compaction is running.
+     */
+    private void write() {
+        while (true) {
+            byte[] bytes;
+            long upTo;
+            synchronized (pending) {
+                try {
+                    while (pending.size() == 0 && !closed) {
+                        pending.wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                bytes = pending.toByteArray();
+                pending.reset();
+                upTo = appended;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                if (channel.size() > threshold && !oldFile.exists()) {
+                    rotate();
+                }
+            } catch (IOException e) {
+                GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot write the journal of " + imageFile + ": " + e);
+            }
+            synchronized (pending) {
+                durable = upTo;
+                pending.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Renames the journal to the old journal, starts a new journal and compacts the old journal in the
+     * background.
+     *
+     * @throws IOException indicates that renaming or starting a journal fails.
+     */
+    private void rotate() throws IOException {
+        channel.close();
+        Files.move(file.toPath(), oldFile.toPath());
+        channel = open(file);
+        compactor.execute(this::compactQuietly);
+    }
+
+    /**
+     * Opens a journal file for appending, writing the header of a new or empty file and checking the header of
+     * an existing one. A record cut short at the end of the file is cut off.
+     *
+     * @param journal the journal file
+     * @return the open journal file, positioned at its end.
+     * @throws IOException indicates that the file cannot be opened or is not a journal of a known version.
+     */
+    private static FileChannel open(File journal) throws IOException {
+        FileChannel opened = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (opened.size() < HEADER_LENGTH) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                header.putInt(MAGIC).putShort(VERSION).flip();
+                opened.truncate(0);
+                while (header.hasRemaining()) {
+                    opened.write(header);
+                }
+                opened.force(true);
+            } else {
+                long end = HEADER_LENGTH + validLength(Files.readAllBytes(journal.toPath()), journal);
+                if (end < opened.size()) {
+                    GoGoPhotoSystem.logger.log(Level.WARNING, "Dropped " + (opened.size() - end)
+                            + " bytes cut short at the end of " + journal);
+                    opened.truncate(end);
+                }
+            }
+            opened.position(opened.size());
+            return opened;
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks the header of a journal file and returns the length of its whole records.
+     *
+     * @param bytes   the content of the journal file
+     * @param journal the journal file, for the error messages
+     * @return the number of bytes after the header holding whole records with their CRC-32 right.
+     * @throws IOException indicates that the file is not a journal of a known version.
+     */
+    private static int validLength(byte[] bytes, File journal) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC) {
+            throw new IOException(journal + " is not a journal");
+        }
+        short version = buffer.getShort();
+        if (version > VERSION) {
+            throw new IOException(journal + " has version " + version + ", only up to " + VERSION + " is read");
+        }
+        int start = buffer.position();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length <= 0 || buffer.remaining() < length + 4) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            if (buffer.getInt() != (int) crc.getValue()) {
+                break;
+            }
+            start = buffer.position();
+        }
+        return start - HEADER_LENGTH;
+    }
+
+    /**
+     * Replays every whole record of a journal file, in order.
+     *
+     * @param journal      the journal file
+     * @param imageManager the ImageManager the records are replayed over
+     * @param tagManager   the TagManager the records are replayed over
+     * @return the number of records replayed.
+     * @throws IOException indicates that the file cannot be read or is not a journal of a known version.
+     */
+    private static int replay(File journal, ImageManager imageManager, TagManager tagManager) throws IOException {
+        byte[] bytes = Files.readAllBytes(journal.toPath());
+        int end = HEADER_LENGTH + validLength(bytes, journal);
+        int count = 0;
+        for (int position = HEADER_LENGTH; position < end; count++) {
+            int length = ByteBuffer.wrap(bytes, position, 4).getInt();
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes, position + 4, length));
+            apply(input, imageManager, tagManager);
+            position += length + 8;
+        }
+        return count;
+    }
+
+    /**
+     * Replays one record. A record about an image that cannot be found, or that has already been replayed,
+     * changes nothing.
+     *
+     * @param input        the content of the record
+     * @param imageManager the ImageManager the record is replayed over
+     * @param tagManager   the TagManager the record is replayed over
+     * @throws IOException indicates that the record is malformed.
+     */
+    private static void apply(DataInputStream input, ImageManager imageManager, TagManager tagManager)
+            throws IOException {
+        byte operation = input.readByte();
+        switch (operation) {
+            case IMAGE_ADDED: {
+                String path = input.readUTF();
+                String name = input.readUTF();
+                String type = input.readUTF();
+                if (imageManager.foundImage(path) == null) {
+                    imageManager.replayAdded(new Image(name, type, path));
+                }
+                break;
+            }
+            case IMAGE_RENAMED:
+            case IMAGE_MOVED: {
+                Image image = imageManager.foundImage(input.readUTF());
+                String newPath = input.readUTF();
+                if (image == null) {
+                    break;
+                }
+                if (operation == IMAGE_RENAMED) {
+                    imageManager.replayRenamed(image, input.readUTF(), newPath);
+                } else {
+                    imageManager.replayMoved(image, newPath);
+                }
+                break;
+            }
+            case TAG_ADDED:
+            case TAG_REMOVED: {
+                Image image = imageManager.foundImage(input.readUTF());
+                String tag = input.readUTF();
+                if (image != null) {
+                    imageManager.replayTag(image, tag, operation == TAG_ADDED);
+                }
+                break;
+            }
+            case TAG_CREATED: {
+                String tag = input.readUTF();
+                if (!tagManager.getTags().containsKey(tag)) {
+                    tagManager.addNewTag(tag);
+                }
+                break;
+            }
+            case TAG_DELETED: {
+                String tag = input.readUTF();
+                if (tagManager.getTags().containsKey(tag)) {
+                    tagManager.deleteTag(tag);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record " + operation);
+        }
+    }
+
+    /**
+     * Reads the images of a snapshot saved in the catalog format, or with Java serialization by an earlier
+     * version.
+     *
+     * @param file the image catalog file
+     * @return the images, none if the file is empty or missing.
+     * @throws IOException indicates that reading the file fails.
+     */
+    @SuppressWarnings("unchecked")
+    private static ArrayList<Image> readImages(File file) throws IOException {
+        if (file.length() == 0) {
+            return new ArrayList<>();
+        }
+        if (CatalogFormat.isCatalogFile(file)) {
+            return CatalogFormat.read(file);
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (ArrayList<Image>) input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Reads the tags of a snapshot.
+     *
+     * @param file the tag file
+     * @return the tags with their counts, none if the file is empty or missing.
+     * @throws IOException indicates that reading the file fails.
+     */
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, Integer> readTags(File file) throws IOException {
+        if (file.length() == 0) {
+            return new HashMap<>();
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (HashMap<String, Integer>) input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
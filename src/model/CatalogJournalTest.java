@@ -0,0 +1,133 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogJournalTest {
+
+    /**
+     * Deletes the directory and everything in it.
+     */
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // the changes of a session are found again without saving the image and tag files
+    @Test
+    void testReplay() throws IOException, ClassNotFoundException {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            String tagFile = directory.resolve("tagFile.ser").toString();
+            String imageFile = directory.resolve("imageFile.ser").toString();
+            Files.createDirectory(directory.resolve("moved"));
+            Path picture = Files.createFile(directory.resolve("IMG_1.jpg"));
+            GoGoPhotoSystem system = new GoGoPhotoSystem(tagFile, imageFile);
+            system.openJournal();
+            ImageManager im = system.getImageManager();
+            Image image = new Image("IMG_1", "jpg", picture.toString());
+            im.addChosenImage(image);
+            im.addTagToName(image, "beach");
+            im.addTagToName(image, "2019");
+            im.deleteTagFromName(image, "2019");
+            im.moveImageToDirectory(image, directory.resolve("moved").toString());
+            system.getTagManager().addNewTag("unused");
+            system.getTagManager().addNewTag("deleted");
+            system.getTagManager().deleteTag("deleted");
+            system.closeJournal();
+
+            GoGoPhotoSystem reopened = new GoGoPhotoSystem(tagFile, imageFile);
+            assertNull(reopened.getImageManager().foundImage(image.getPath()));
+            reopened.openJournal();
+            Image replayed = reopened.getImageManager().foundImage(image.getPath());
+            assertNotNull(replayed);
+            assertEquals("IMG_1 @beach", replayed.getName());
+            assertEquals(1, replayed.getTags().size());
+            assertEquals(1, (int) reopened.getTagManager().getTags().get("beach"));
+            assertEquals(0, (int) reopened.getTagManager().getTags().get("2019"));
+            assertEquals(0, (int) reopened.getTagManager().getTags().get("unused"));
+            assertFalse(reopened.getTagManager().getTags().containsKey("deleted"));
+            assertEquals(1, reopened.findImages(TagQuery.tag("beach")).size());
+            reopened.closeJournal();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    // a record cut short by a crash is dropped, and the records before it are kept
+    @Test
+    void testRecordCutShort() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            File imageFile = directory.resolve("imageFile.ser").toFile();
+            File tagFile = directory.resolve("tagFile.ser").toFile();
+            ImageManager im = new ImageManager();
+            TagManager tm = new TagManager();
+            CatalogJournal journal = new CatalogJournal(imageFile, tagFile, CatalogJournal.COMPACTION_THRESHOLD);
+            journal.replay(im, tm);
+            im.getEventBus().subscribe(journal);
+            im.addChosenImage(new Image("IMG_1 @beach", "jpg", directory.resolve("IMG_1 @beach.jpg").toString()));
+            journal.close();
+            long length = journal.size();
+            Files.write(directory.resolve("imageFile.ser.journal"), new byte[]{0, 0, 0, 40, 1, 2},
+                    StandardOpenOption.APPEND);
+
+            ImageManager replayed = new ImageManager();
+            TagManager tags = new TagManager();
+            replayed.getEventBus().subscribe(tags);
+            CatalogJournal reopened = new CatalogJournal(imageFile, tagFile, CatalogJournal.COMPACTION_THRESHOLD);
+            assertEquals(length, reopened.size());
+            assertEquals(2, reopened.replay(replayed, tags));
+            assertTrue(replayed.foundImage(directory.resolve("IMG_1 @beach.jpg").toString()).hasTag("beach"));
+            assertEquals(1, (int) tags.getTags().get("beach"));
+            reopened.close();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    // the journal is folded into the image and tag files once it passes the threshold
+    @Test
+    void testCompaction() throws IOException, ClassNotFoundException {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            File imageFile = directory.resolve("imageFile.ser").toFile();
+            File tagFile = directory.resolve("tagFile.ser").toFile();
+            ImageManager im = new ImageManager();
+            TagManager tm = new TagManager();
+            im.getEventBus().subscribe(tm);
+            CatalogJournal journal = new CatalogJournal(imageFile, tagFile, 512);
+            journal.replay(im, tm);
+            im.getEventBus().subscribe(journal);
+            for (int i = 0; i < 200; i++) {
+                im.addChosenImage(new Image("IMG_" + i + " @even", "jpg",
+                        directory.resolve("IMG_" + i + " @even.jpg").toString()));
+                if (i % 50 == 0) {
+                    journal.flush();
+                }
+            }
+            journal.close();
+            assertTrue(CatalogFormat.isCatalogFile(imageFile));
+            assertFalse(new File(imageFile.getPath() + ".journal.old").exists());
+
+            GoGoPhotoSystem reopened = new GoGoPhotoSystem(tagFile.getPath(), imageFile.getPath());
+            reopened.openJournal();
+            assertEquals(200, reopened.getImageManager().allImages().size());
+            assertEquals(200, (int) reopened.getTagManager().getTags().get("even"));
+            assertNotNull(reopened.getImageManager().foundImage(directory.resolve("IMG_199 @even.jpg").toString()));
+            reopened.closeJournal();
+        } finally {
+            delete(directory);
+        }
+    }
+}
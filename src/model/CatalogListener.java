@@ -0,0 +1,17 @@
+package model;
+
+/**
+ * This interface is implemented by everything that follows the changes to the catalog of images, such as the tag
+ * counts of TagManager. Listeners subscribe to the {@link CatalogEventBus} of ImageManager.
+ *
+ * @see CatalogEventBus
+ * @see CatalogEventBatch
+ */
+public interface CatalogListener {
+    /**
+     * Receives a batch of changes to the catalog, in the order they were made.
+     *
+     * @param batch the changes
+     */
+    void onBatch(CatalogEventBatch batch);
+}
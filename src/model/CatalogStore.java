@@ -0,0 +1,93 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * This interface is implemented by the places the catalog, the images of ImageManager and the tags of TagManager,
+ * is kept between sessions. GoGoPhotoSystem loads the catalog from its store when it is created and closes the
+ * store when the program ends, so that the store can be swapped without changing the rest of the program.
+ *
+ * <p>Three stores are provided, chosen by the {@link #STORE} property of the configuration:
+ * <ul>
+ * <li>"file": the image and tag files, optionally with a journal saving the changes as they are made;</li>
+ * <li>"btree": an embedded key-value database in one file, updated one image at a time as it changes;</li>
+ * <li>"memory": nothing kept on disk, the catalog only lasting as long as the program.</li>
+ * </ul>
+ *
+ * @see GoGoPhotoSystem#GoGoPhotoSystem(CatalogStore, String, String)
+ * @see FileCatalogStore
+ * @see BTreeCatalogStore
+ * @see MemoryCatalogStore
+ */
+public interface CatalogStore {
+    /**
+     * The property choosing the store: "file", "btree" or "memory". The default is "file".
+     */
+    String STORE = "catalog.store";
+
+    /**
+     * The property holding the path of the image file of the "file" store. The default is "imageFile.ser".
+     */
+    String IMAGE_FILE = "catalog.imageFile";
+
+    /**
+     * The property holding the path of the tag file of the "file" store. The default is "tagFile.ser".
+     */
+    String TAG_FILE = "catalog.tagFile";
+
+    /**
+     * The property telling whether the "file" store saves the changes to a journal as they are made: "true" or
+     * "false". The default is "true".
+     */
+    String JOURNAL = "catalog.journal";
+
+    /**
+     * The property holding the path of the database file of the "btree" store. The default is "catalog.db".
+     */
+    String DATABASE_FILE = "catalog.databaseFile";
+
+    /**
+     * Reads the catalog into the input managers, and keeps it up to date with their later changes if the store
+     * saves the changes as they are made. The tag manager must already be subscribed to the image manager.
+     *
+     * @param imageManager the image manager the images are read into
+     * @param tagManager   the tag manager the tags are read into
+     * @throws IOException            indicates that the catalog cannot be read.
+     * @throws ClassNotFoundException indicates that the catalog cannot be read.
+     */
+    void load(ImageManager imageManager, TagManager tagManager) throws IOException, ClassNotFoundException;
+
+    /**
+     * Saves the changes of the input managers not saved yet and releases the store.
+     *
+     * @param imageManager the image manager the images were read into
+     * @param tagManager   the tag manager the tags were read into
+     * @throws IOException indicates that the changes cannot be saved.
+     */
+    void close(ImageManager imageManager, TagManager tagManager) throws IOException;
+
+    /**
+     * Returns the store chosen by the input configuration, with the files it names.
+     *
+     * @param configuration the configuration, such as the properties read from gogophoto.properties
+     * @return the store chosen by the configuration.
+     * @throws IllegalArgumentException indicates that the configuration names an unknown store.
+     */
+    static CatalogStore fromConfiguration(Properties configuration) {
+        String store = configuration.getProperty(STORE, "file");
+        switch (store) {
+            case "file":
+                return new FileCatalogStore(configuration.getProperty(TAG_FILE, "tagFile.ser"),
+                        configuration.getProperty(IMAGE_FILE, "imageFile.ser"),
+                        Boolean.parseBoolean(configuration.getProperty(JOURNAL, "true")));
+            case "btree":
+                return new BTreeCatalogStore(new File(configuration.getProperty(DATABASE_FILE, "catalog.db")));
+            case "memory":
+                return new MemoryCatalogStore();
+            default:
+                throw new IllegalArgumentException("Unknown catalog store " + store);
+        }
+    }
+}
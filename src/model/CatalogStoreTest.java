@@ -0,0 +1,129 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogStoreTest {
+
+    /**
+     * Deletes the directory and everything in it.
+     */
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // the images and tags of a session are found again in the next sessions, whichever store keeps them
+    @Test
+    void testRoundTrip() throws IOException, ClassNotFoundException {
+        Path directory = Files.createTempDirectory("store");
+        try {
+            Properties configuration = new Properties();
+            configuration.setProperty(CatalogStore.IMAGE_FILE, directory.resolve("imageFile.ser").toString());
+            configuration.setProperty(CatalogStore.TAG_FILE, directory.resolve("tagFile.ser").toString());
+            configuration.setProperty(CatalogStore.DATABASE_FILE, directory.resolve("catalog.db").toString());
+            for (String kind : new String[]{"memory", "file", "btree"}) {
+                configuration.setProperty(CatalogStore.STORE, kind);
+                CatalogStore store = CatalogStore.fromConfiguration(configuration);
+                String first = directory.resolve(kind).resolve("IMG_1.jpg").toString();
+                String second = directory.resolve(kind).resolve("IMG_2.jpg").toString();
+                Files.createDirectory(directory.resolve(kind));
+                Files.createFile(directory.resolve(kind).resolve("IMG_1.jpg"));
+                Files.createFile(directory.resolve(kind).resolve("IMG_2.jpg"));
+
+                GoGoPhotoSystem system = new GoGoPhotoSystem(store, null, null);
+                Image image = new Image("IMG_1", "jpg", first);
+                system.getImageManager().addChosenImage(image);
+                system.getImageManager().addChosenImage(new Image("IMG_2", "jpg", second));
+                system.getImageManager().addTagToName(image, "beach");
+                system.getTagManager().addNewTag("unused");
+                system.close();
+
+                system = new GoGoPhotoSystem(store, null, null);
+                Image found = system.getImageManager().foundImage(image.getPath());
+                assertNotNull(found, kind);
+                assertTrue(found.hasTag("beach"), kind);
+                assertEquals(1, (int) system.getTagManager().getTags().get("beach"), kind);
+                assertEquals(0, (int) system.getTagManager().getTags().get("unused"), kind);
+                assertEquals(1, system.findImages(TagQuery.tag("beach")).size(), kind);
+                Image other = system.getImageManager().foundImage(second);
+                assertNotNull(other, kind);
+                system.getImageManager().addTagToName(other, "beach");
+                system.getImageManager().deleteTagFromName(found, "beach");
+                system.close();
+
+                system = new GoGoPhotoSystem(store, null, null);
+                assertFalse(system.getImageManager().foundImage(first).hasTag("beach"), kind);
+                assertTrue(system.getImageManager().foundImage(other.getPath()).hasTag("beach"), kind);
+                assertEquals(1, (int) system.getTagManager().getTags().get("beach"), kind);
+                assertEquals(2, system.getImageManager().allImages().size(), kind);
+                system.close();
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    // the configuration cannot name a store that does not exist
+    @Test
+    void testUnknownStore() {
+        Properties configuration = new Properties();
+        configuration.setProperty(CatalogStore.STORE, "cloud");
+        assertThrows(IllegalArgumentException.class, () -> CatalogStore.fromConfiguration(configuration));
+    }
+
+    // tag and image files that cannot be read are logged with their paths, and the catalog starts empty
+    @Test
+    void testUnreadableFiles() throws IOException, ClassNotFoundException {
+        Path directory = Files.createTempDirectory("store");
+        String tagFile = directory.resolve("tagFile.ser").toString();
+        String imageFile = directory.resolve("imageFile.ser").toString();
+        ArrayList<LogRecord> warnings = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.WARNING) {
+                    warnings.add(record);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        GoGoPhotoSystem.logger.addHandler(handler);
+        try {
+            Files.write(Paths.get(tagFile), "not a tag file".getBytes());
+            Files.write(Paths.get(imageFile), "not an image file".getBytes());
+            ImageManager imageManager = new ImageManager();
+            TagManager tagManager = new TagManager();
+            new FileCatalogStore(tagFile, imageFile, false).load(imageManager, tagManager);
+            assertEquals(2, warnings.size());
+            assertTrue(warnings.get(0).getMessage().contains(tagFile));
+            assertTrue(warnings.get(1).getMessage().contains(imageFile));
+            assertTrue(imageManager.allImages().isEmpty());
+            assertTrue(tagManager.getTags().isEmpty());
+        } finally {
+            GoGoPhotoSystem.logger.removeHandler(handler);
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package model;
+
+import java.io.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class remembers the content hashes DuplicateFinder has computed and the perceptual hashes SimilarImageIndex
+ * has computed, for every file together with its size and modification time. A remembered hash is only used while
+ * the file still has the same size and modification time, so that running DuplicateFinder again only reads the
+ * files that are new or have changed. The cache is saved to a file so that it survives between sessions.
+ *
+ * @see DuplicateFinder
+ * @see SimilarImageIndex
+ */
+class ContentHashCache {
+    /**
+     * The remembered hashes, keyed by the normalized absolute path of the file.
+     */
+    private ConcurrentHashMap<String, HashRecord> records;
+
+    /**
+     * Creates an empty ContentHashCache.
+     */
+    ContentHashCache() {
+        records = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the hashes remembered for the file, or null if none are remembered or the file has changed since.
+     *
+     * @param path     the normalized absolute path of the file
+     * @param size     the current size of the file
+     * @param modified the current modification time of the file
+     * @return the remembered hashes of the file, or null if they have to be computed again.
+     */
+    HashRecord get(String path, long size, long modified) {
+        HashRecord record = records.get(path);
+        if (record == null || record.size != size || record.modified != modified) {
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Returns the hashes remembered for the file, creating an empty record for it if none are remembered or the
+     * file has changed since.
+     *
+     * @param path     the normalized absolute path of the file
+     * @param size     the current size of the file
+     * @param modified the current modification time of the file
+     * @return the record of the file.
+     */
+    HashRecord getOrCreate(String path, long size, long modified) {
+        HashRecord record = get(path, size, modified);
+        if (record == null) {
+            record = new HashRecord(size, modified);
+            records.put(path, record);
+        }
+        return record;
+    }
+
+    /**
+     * Returns the number of files remembered.
+     *
+     * @return the number of files remembered.
+     */
+    int size() {
+        return records.size();
+    }
+
+    /**
+     * Saves the remembered hashes to the given filePath
+     *
+     * @param filePath the path of the file the cache is saved to
+     * @throws IOException indicates that saving the cache fails.
+     */
+    void saveToHashCacheFile(String filePath) throws IOException {
+        OutputStream file = new FileOutputStream(filePath);
+        OutputStream buffer = new BufferedOutputStream(file);
+        ObjectOutput output = new ObjectOutputStream(buffer);
+        // serialize the hash cache
+        output.writeObject(records);
+        output.close();
+    }
+
+    /**
+     * Sets the input map as the remembered hashes.
+     *
+     * @param records the remembered hashes, keyed by the path of the file
+     */
+    void setRecords(ConcurrentHashMap<String, HashRecord> records) {
+        this.records = records;
+    }
+
+    /**
+     * This class holds the hashes of the content of a file, as far as they have been computed.
+     */
+    static class HashRecord implements Serializable {
+        /**
+         * The serialVersionUID of the first form of this class, kept so that saved caches stay readable.
+         */
+        private static final long serialVersionUID = 4038695019295686546L;
+
+        /**
+         * The size of the file when it was hashed, in bytes.
+         */
+        private final long size;
+
+        /**
+         * The modification time of the file when it was hashed, in milliseconds.
+         */
+        private final long modified;
+
+        /**
+         * The hash of the first and last bytes of the file, or null if it has not been computed.
+         */
+        private volatile byte[] edgeHash;
+
+        /**
+         * The hash of the whole content of the file, or null if it has not been computed.
+         */
+        private volatile byte[] fullHash;
+
+        /**
+         * The perceptual hash of the picture of the file, valid if {@link #hasPerceptualHash} is true.
+         */
+        private volatile long perceptualHash;
+
+        /**
+         * Whether the perceptual hash has been computed.
+         */
+        private volatile boolean hasPerceptualHash;
+
+        /**
+         * Creates a HashRecord without hashes.
+         *
+         * @param size     the size of the file
+         * @param modified the modification time of the file
+         */
+        HashRecord(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        /**
+         * Returns the hash of the first and last bytes of the file.
+         *
+         * @return the hash, or null if it has not been computed.
+         */
+        byte[] getEdgeHash() {
+            return edgeHash;
+        }
+
+        /**
+         * Sets the hash of the first and last bytes of the file.
+         *
+         * @param edgeHash the hash
+         */
+        void setEdgeHash(byte[] edgeHash) {
+            this.edgeHash = edgeHash;
+        }
+
+        /**
+         * Returns the hash of the whole content of the file.
+         *
+         * @return the hash, or null if it has not been computed.
+         */
+        byte[] getFullHash() {
+            return fullHash;
+        }
+
+        /**
+         * Sets the hash of the whole content of the file.
+         *
+         * @param fullHash the hash
+         */
+        void setFullHash(byte[] fullHash) {
+            this.fullHash = fullHash;
+        }
+
+        /**
+         * Returns whether the perceptual hash of the picture has been computed.
+         *
+         * @return true if the perceptual hash has been computed.
+         */
+        boolean hasPerceptualHash() {
+            return hasPerceptualHash;
+        }
+
+        /**
+         * Returns the perceptual hash of the picture of the file.
+         *
+         * @return the perceptual hash, meaningful only if {@link #hasPerceptualHash()} is true.
+         */
+        long getPerceptualHash() {
+            return perceptualHash;
+        }
+
+        /**
+         * Sets the perceptual hash of the picture of the file.
+         *
+         * @param perceptualHash the perceptual hash
+         */
+        void setPerceptualHash(long perceptualHash) {
+            this.perceptualHash = perceptualHash;
+            this.hasPerceptualHash = true;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package model;
+
+import filter.AbstractBufferedImageOp;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * This class computes the 64-bit difference hash (dHash) of a picture. The picture is shrunk to a grey
+ * {@link #WIDTH} by {@link #HEIGHT} thumbnail, and every bit of the hash tells whether a pixel of the thumbnail is
+ * brighter than its right neighbour. Pictures that look alike have hashes that differ in few bits, whatever their
+ * size, format or compression. The picture is decoded subsampled, so that only a few thousand pixels are read
+ * even for a large photo, and the pixels are read with {@link AbstractBufferedImageOp#getRGB}, like the filters.
+ *
+ * @see SimilarImageIndex
+ */
+class DifferenceHash extends AbstractBufferedImageOp {
+    /**
+     * The width of the thumbnail; one more than the number of bits of the hash on a row.
+     */
+    static final int WIDTH = 9;
+
+    /**
+     * The height of the thumbnail, the number of rows of bits of the hash.
+     */
+    static final int HEIGHT = 8;
+
+    /**
+     * The picture is subsampled so that its shorter side keeps at least this many pixels.
+     */
+    private static final int SAMPLED_SIZE = 64;
+
+    /**
+     * Returns the difference hash of the picture in the file.
+     *
+     * @param file the image file
+     * @return the difference hash of the picture.
+     * @throws IOException indicates that the file cannot be decoded.
+     */
+    long hash(File file) throws IOException {
+        return hash(decodeSubsampled(file));
+    }
+
+    /**
+     * Returns the difference hash of the picture.
+     *
+     * @param picture the picture
+     * @return the difference hash of the picture.
+     */
+    long hash(BufferedImage picture) {
+        BufferedImage thumbnail = filter(picture, null);
+        int[] pixels = getRGB(thumbnail, 0, 0, WIDTH, HEIGHT, null);
+        long hash = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH - 1; x++) {
+                hash <<= 1;
+                if ((pixels[y * WIDTH + x] & 0xFF) > (pixels[y * WIDTH + x + 1] & 0xFF)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Shrinks the source picture to a grey {@link #WIDTH} by {@link #HEIGHT} picture, every pixel being the mean
+     * brightness of the block of source pixels it covers.
+     *
+     * @param src the picture to shrink
+     * @param dst ignored; a new picture is returned
+     * @return the grey thumbnail.
+     */
+    public BufferedImage filter(BufferedImage src, BufferedImage dst) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        long[] sums = new long[WIDTH * HEIGHT];
+        int[] counts = new int[WIDTH * HEIGHT];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            getRGB(src, 0, y, width, 1, row);
+            int cellRow = y * HEIGHT / height * WIDTH;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int grey = (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                int cell = cellRow + x * WIDTH / width;
+                sums[cell] += grey;
+                counts[cell]++;
+            }
+        }
+        BufferedImage thumbnail = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            int grey = counts[i] == 0 ? 0 : (int) (sums[i] / counts[i]);
+            pixels[i] = (grey << 16) | (grey << 8) | grey;
+        }
+        setRGB(thumbnail, 0, 0, WIDTH, HEIGHT, pixels);
+        return thumbnail;
+    }
+
+    /**
+     * Returns the number of bits two hashes differ in.
+     *
+     * @param hash  a hash
+     * @param other another hash
+     * @return the Hamming distance between the hashes.
+     */
+    static int distance(long hash, long other) {
+        return Long.bitCount(hash ^ other);
+    }
+
+    /**
+     * Decodes the picture in the file, reading only every n-th pixel of every n-th row, with n chosen so that the
+     * shorter side keeps at least {@link #SAMPLED_SIZE} pixels.
+     *
+     * @param file the image file
+     * @return the subsampled picture.
+     * @throws IOException indicates that the file cannot be decoded.
+     */
+    private static BufferedImage decodeSubsampled(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                throw new IOException("Cannot open " + file);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Not a readable image: " + file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int shorter = Math.min(reader.getWidth(0), reader.getHeight(0));
+                int step = Math.max(1, shorter / SAMPLED_SIZE);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
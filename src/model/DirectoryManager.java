@@ -1,9 +1,16 @@
 package model;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.io.File;
-import javax.imageio.ImageIO;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 /**
  * This class generates a collection of image files located in or anywhere under the selected directory
@@ -11,16 +18,44 @@ import javax.imageio.ImageIO;
  * image files(as an ExistingImage objects) that located in or anywhere under the selected directory
  *
  * @see ExistingImage
+ * @see DirectoryScanTask
+ * @see ScanIndex
+ * @see LibraryWatcher
+ * @see ImageScan
  */
 public class DirectoryManager {
+    /**
+     * Decides whether a file is an image by reading the header of the file only.
+     *
+     * @see ImageHeaderSniffer
+     */
+    private final ImageHeaderSniffer sniffer;
+
+    /**
+     * Remembers the content of every directory listed so far, so that unchanged directories are not listed again.
+     *
+     * @see ScanIndex
+     */
+    private final ScanIndex scanIndex;
+
+    /**
+     * Keeps the images of the watched directory tree up to date, or null if no directory is watched.
+     *
+     * @see LibraryWatcher
+     */
+    private volatile LibraryWatcher watcher;
+
     /**
      * Constructs a new DirectroyManager
      */
     public DirectoryManager() {
+        sniffer = new ImageHeaderSniffer();
+        scanIndex = new ScanIndex();
     }
 
     /**
-     * Returns a list of image files located in the selected Directory.
+     * Returns a list of image files located in the selected Directory. Directories under the watched directory
+     * are answered from the index of the {@link LibraryWatcher} without any scan.
      *
      * @param path the path of the selected file
      * @return a collection of images located in the selected Directory in an ArrayList of ExistingImage.
@@ -28,20 +63,25 @@ public class DirectoryManager {
      * @see ExistingImage
      */
     public ArrayList<ExistingImage> findLocalImages(String path) throws IOException {
+        Path dir = Paths.get(path);
+        LibraryWatcher currentWatcher = watcher;
+        if (currentWatcher != null && currentWatcher.covers(dir)) {
+            return currentWatcher.findLocalImages(dir);
+        }
         ArrayList<ExistingImage> imageCollection = new ArrayList<>();
-        File[] files = new File(path).listFiles();
-        for (int i = 0; i < files.length; i++) {
-            if ((!files[i].isDirectory()) && isImage(files[i])) {
-                String imageName = files[i].getName();
-                imageCollection.add(new ExistingImage(imageName, files[i].getPath()));
-            }
+        ScanIndex.DirectoryRecord record = listDirectory(dir);
+        for (String imageName : record.getImageNames()) {
+            imageCollection.add(new ExistingImage(imageName, dir.resolve(imageName).toString()));
         }
         return imageCollection;
     }
 
     /**
      * Returns any image files existed under selected file(including the ones in the sub-directories under
-     * the selected file by recursively searching.
+     * the selected file by recursively searching. The sub-directories are scanned in parallel by a
+     * {@link DirectoryScanTask} for each directory, and directories that have not changed since they were last
+     * listed are served from the {@link ScanIndex}. Directories under the watched directory are answered from
+     * the index of the {@link LibraryWatcher} without any scan.
      *
      * @param path The path of the selected file.
      * @return a collection of any images located under the selected Directory(including
@@ -51,50 +91,138 @@ public class DirectoryManager {
      */
     public ArrayList<ExistingImage> findAllImages(String path) throws IOException {
         File dir = new File(path);
+        ArrayList<ExistingImage> watchedImages = findWatchedImages(dir.toPath());
         if (!dir.isDirectory()) {
             return new ArrayList<>();
+        } else if (watchedImages != null) {
+            return watchedImages;
         } else {
-            ArrayList<ExistingImage> imageCollection = findLocalImages(path);
-            File[] files = dir.listFiles();
-            for (int i = 0; i < files.length; i++) {
-                if (files[i].isDirectory()) {
-                    imageCollection = arrayConcatenation(imageCollection, findAllImages(files[i].getPath()));
+            DirectoryScanTask root = new DirectoryScanTask(dir.toPath(), this);
+            ForkJoinPool.commonPool().invoke(root);
+            HashSet<String> visited = new HashSet<>();
+            ArrayList<ExistingImage> imageCollection = root.collect(visited);
+            scanIndex.retainVisited(dir.toPath(), visited);
+            return imageCollection;
+        }
+    }
+
+    /**
+     * Starts walking the tree under the given directory in the background and hands the images found to the
+     * given consumer in batches, as soon as they are discovered. The consumer is called on the scanning thread.
+     * The walk stops when the returned ImageScan is cancelled. Directories under the watched directory are
+     * answered from the index of the {@link LibraryWatcher} in a single batch.
+     *
+     * @param path          The path of the selected file.
+     * @param batchConsumer the consumer receiving the batches of images
+     * @return the running scan, which can be cancelled.
+     * @see ImageScan
+     */
+    public ImageScan scanAllImages(String path, Consumer<List<ExistingImage>> batchConsumer) {
+        ImageScan scan = new ImageScan(Paths.get(path), this, batchConsumer);
+        Thread thread = new Thread(scan, "GoGoPhoto image scan");
+        thread.setDaemon(true);
+        thread.start();
+        return scan;
+    }
+
+    /**
+     * Returns the images located anywhere under the given directory from the index of the
+     * {@link LibraryWatcher}, or null if the directory is not covered by the index.
+     *
+     * @param dir the selected directory
+     * @return the images located under the directory, or null if the directory has to be scanned.
+     */
+    ArrayList<ExistingImage> findWatchedImages(Path dir) {
+        LibraryWatcher currentWatcher = watcher;
+        if (currentWatcher != null && currentWatcher.covers(dir)) {
+            return currentWatcher.findAllImages(dir);
+        }
+        return null;
+    }
+
+    /**
+     * Starts watching the tree under the given directory in the background, so that later calls of findAllImages
+     * and findLocalImages under it are answered from an index kept up to date by a WatchService. The directory
+     * watched before, if any, is no longer watched. Until the tree has been indexed, queries are answered by
+     * scanning as usual.
+     *
+     * @param path the path of the directory to watch
+     * @throws IOException indicates that the directory cannot be watched.
+     * @see LibraryWatcher
+     */
+    public synchronized void watch(String path) throws IOException {
+        Path root = Paths.get(path);
+        if (watcher != null && watcher.getRoot().equals(root)) {
+            return;
+        }
+        stopWatching();
+        watcher = new LibraryWatcher(root, this);
+        watcher.start();
+    }
+
+    /**
+     * Stops watching the directory given to {@link #watch(String)}, if any.
+     *
+     * @see LibraryWatcher
+     */
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Returns the names of the images and sub-directories of the given directory. The directory is only listed
+     * if its modification time has moved since it was last listed; otherwise the names are served from the
+     * {@link ScanIndex}.
+     *
+     * @param dir the directory to list
+     * @return the names of the images and sub-directories of the directory.
+     * @throws IOException indicates that the directory cannot be read.
+     * @see ScanIndex
+     */
+    ScanIndex.DirectoryRecord listDirectory(Path dir) throws IOException {
+        long modified = Files.getLastModifiedTime(dir).toMillis();
+        ScanIndex.DirectoryRecord record = scanIndex.get(dir, modified);
+        if (record == null) {
+            ArrayList<String> imageNames = new ArrayList<>();
+            ArrayList<String> subDirectories = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    if (Files.isDirectory(entry)) {
+                        subDirectories.add(entry.getFileName().toString());
+                    } else if (isImage(entry.toFile())) {
+                        imageNames.add(entry.getFileName().toString());
+                    }
                 }
             }
-            return imageCollection;
+            record = new ScanIndex.DirectoryRecord(modified, imageNames.toArray(new String[0]),
+                    subDirectories.toArray(new String[0]));
+            scanIndex.put(dir, record);
         }
+        return record;
     }
 
     /**
-     * A helper function of findAllImages(String path) for the recursion processes by concatenate two ArrayList
-     * of ExistingImage
+     * Returns the index of the directories listed so far.
      *
-     * @param arr1 the first ArrayList of ExistingImage that needed to be concatenated
-     * @param arr2 the second ArrayList of ExistingImage that needed to be concatenated
-     * @return a collection of any images in an ArrayList of ExistingImage by concatenating two ArrayLists
-     * of ExistingImage.
-     * @see{@link} findAllImages
+     * @return the ScanIndex of this DirectoryManager
      */
-    private ArrayList<ExistingImage> arrayConcatenation(ArrayList<ExistingImage> arr1, ArrayList<ExistingImage> arr2) {
-        ArrayList<ExistingImage> arrLst = new ArrayList<>();
-        arrLst.addAll(arr1);
-        arrLst.addAll(arr2);
-        return arrLst;
+    ScanIndex getScanIndex() {
+        return scanIndex;
     }
 
     /**
-     * Returns if the input file is a image type
+     * Returns if the input file is a image type. Only the header of the file is read, and sidecar files
+     * holding tags are not read at all.
      *
      * @param file
      * @return boolean value that indicates if the input file is image type.
-     * @throws IOException
+     * @see ImageHeaderSniffer
      */
-    private boolean isImage(File file) {
-        try {
-            return (ImageIO.read(file) != null);
-        } catch (IOException e) {
-            return false;
-        }
+    boolean isImage(File file) {
+        return !TagSidecar.isSidecar(file) && sniffer.isImage(file);
     }
 
 }
@@ -0,0 +1,153 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryManagerTest {
+
+    @Test
+    void testFindLocalImages() throws IOException {
+        DirectoryManager dm = new DirectoryManager();
+        ArrayList<ExistingImage> images = dm.findLocalImages("./TestPictures/Handsome");
+        assertEquals(4, images.size());
+    }
+
+    @Test
+    void testFindAllImages() throws IOException {
+        DirectoryManager dm = new DirectoryManager();
+        ArrayList<ExistingImage> images = dm.findAllImages("./TestPictures");
+        int inSubDirectory = 0;
+        for (ExistingImage image : images) {
+            if (image.getPath().contains("Handsome")) {
+                inSubDirectory++;
+            }
+        }
+        assertEquals(4, inSubDirectory);
+        assertTrue(images.size() >= 8);
+    }
+
+    // not a directory
+    @Test
+    void test1FindAllImages() throws IOException {
+        DirectoryManager dm = new DirectoryManager();
+        assertTrue(dm.findAllImages("./TestPictures/Dog.jpg").isEmpty());
+    }
+
+    @Test
+    void testIsImage() {
+        DirectoryManager dm = new DirectoryManager();
+        assertTrue(dm.isImage(new File("./TestPictures/Dog.jpg")));
+        assertFalse(dm.isImage(new File("./TestPictures")));
+    }
+
+    // second scan is served from the scan index
+    @Test
+    void test2FindAllImages() throws IOException {
+        DirectoryManager dm = new DirectoryManager();
+        ArrayList<ExistingImage> firstScan = dm.findAllImages("./TestPictures/Handsome");
+        ArrayList<ExistingImage> secondScan = dm.findAllImages("./TestPictures/Handsome");
+        assertEquals(firstScan.size(), secondScan.size());
+        for (int i = 0; i < firstScan.size(); i++) {
+            assertEquals(firstScan.get(i).getPath(), secondScan.get(i).getPath());
+        }
+    }
+
+    @Test
+    void testScanAllImages() throws IOException, InterruptedException {
+        DirectoryManager dm = new DirectoryManager();
+        List<ExistingImage> scanned = Collections.synchronizedList(new ArrayList<>());
+        ImageScan scan = dm.scanAllImages("./TestPictures", scanned::addAll);
+        for (int i = 0; i < 100 && !scan.isDone(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(scan.isDone());
+        assertEquals(dm.findAllImages("./TestPictures").size(), scanned.size());
+    }
+
+    // a file created empty shows up once an image is written to it, and leaves once it is overwritten
+    @Test
+    void testWatchModifiedFiles() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("watched").toRealPath();
+        Path empty = Files.createFile(directory.resolve("a.jpg"));
+        Path image = directory.resolve("b.jpg");
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0};
+        DirectoryManager dm = new DirectoryManager();
+        try {
+            dm.watch(directory.toString());
+            assertTrue(waitFor(dm, directory, 0));
+            Files.write(image, jpeg);
+            assertTrue(waitFor(dm, directory, 1));
+            Files.write(empty, jpeg);
+            assertTrue(waitFor(dm, directory, 2));
+            Files.write(image, "not an image".getBytes());
+            assertTrue(waitFor(dm, directory, 1));
+            assertEquals("a.jpg", dm.findLocalImages(directory.toString()).get(0).getName());
+        } finally {
+            dm.stopWatching();
+            Files.deleteIfExists(image);
+            Files.delete(empty);
+            Files.delete(directory);
+        }
+    }
+
+    // a scan index file that cannot be read is logged, and the program starts with an empty scan index
+    @Test
+    void testUnreadableScanIndex() throws IOException, ClassNotFoundException {
+        Path file = Files.createTempFile("scanIndex", ".ser");
+        ArrayList<LogRecord> warnings = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.WARNING) {
+                    warnings.add(record);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        GoGoPhotoSystem.logger.addHandler(handler);
+        try {
+            Files.write(file, "not a scan index".getBytes());
+            GoGoPhotoSystem system = new GoGoPhotoSystem(new MemoryCatalogStore(), file.toString(), null);
+            system.close();
+            assertEquals(1, warnings.size());
+            assertTrue(warnings.get(0).getMessage().contains(file.toString()));
+        } finally {
+            GoGoPhotoSystem.logger.removeHandler(handler);
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Waits up to five seconds for the watcher to have the input number of images in the directory.
+     */
+    private static boolean waitFor(DirectoryManager dm, Path directory, int count)
+            throws IOException, InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (dm.findWatchedImages(directory) != null
+                    && dm.findLocalImages(directory.toString()).size() == count) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,107 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class scans one directory for DirectoryManager and forks one subtask for every sub-directory it meets,
+ * so that a whole directory tree is walked by the workers of a ForkJoinPool instead of by a single thread.
+ * Every task keeps the images of its own directory in a private buffer; the buffers are merged only once,
+ * after the whole tree has been walked.
+ *
+ * @see DirectoryManager
+ * @see ExistingImage
+ * @see RecursiveAction
+ */
+class DirectoryScanTask extends RecursiveAction {
+    /**
+     * The serialVersionUID of this class, which is serializable as every ForkJoinTask is, but never serialized.
+     */
+    private static final long serialVersionUID = 1096676089843612729L;
+
+    /**
+     * The directory scanned by this task.
+     */
+    private final Path directory;
+
+    /**
+     * The DirectoryManager which decides whether a file is an image.
+     */
+    private final DirectoryManager directoryManager;
+
+    /**
+     * The images found directly inside {@link #directory}.
+     */
+    private final ArrayList<ExistingImage> found;
+
+    /**
+     * The tasks forked for the sub-directories of {@link #directory}, in the order they were listed.
+     */
+    private final ArrayList<DirectoryScanTask> children;
+
+    /**
+     * Creates a new DirectoryScanTask for the given directory.
+     *
+     * @param directory        the directory to scan
+     * @param directoryManager the DirectoryManager which decides whether a file is an image
+     */
+    DirectoryScanTask(Path directory, DirectoryManager directoryManager) {
+        this.directory = directory;
+        this.directoryManager = directoryManager;
+        this.found = new ArrayList<>();
+        this.children = new ArrayList<>();
+    }
+
+    /**
+     * Lists the directory through DirectoryManager, keeps its images and scans all of its sub-directories
+     * in parallel.
+     * A directory that cannot be read contributes no images.
+     */
+    @Override
+    protected void compute() {
+        ScanIndex.DirectoryRecord record;
+        try {
+            record = directoryManager.listDirectory(directory);
+        } catch (IOException e) {
+            return;
+        }
+        for (String imageName : record.getImageNames()) {
+            found.add(new ExistingImage(imageName, directory.resolve(imageName).toString()));
+        }
+        for (String subDirectory : record.getSubDirectories()) {
+            children.add(new DirectoryScanTask(directory.resolve(subDirectory), directoryManager));
+        }
+        invokeAll(children);
+    }
+
+    /**
+     * Returns the images found in the scanned tree. The images of a directory come before the images of its
+     * sub-directories. The result list is allocated once with the exact size of the result.
+     *
+     * @param visited collects the paths of all the directories in the scanned tree
+     * @return the images found in the scanned tree in an ArrayList of ExistingImage.
+     */
+    ArrayList<ExistingImage> collect(Set<String> visited) {
+        ArrayList<DirectoryScanTask> tasks = new ArrayList<>();
+        int total = 0;
+        ArrayList<DirectoryScanTask> stack = new ArrayList<>();
+        stack.add(this);
+        while (!stack.isEmpty()) {
+            DirectoryScanTask task = stack.remove(stack.size() - 1);
+            tasks.add(task);
+            visited.add(task.directory.toString());
+            total += task.found.size();
+            for (int i = task.children.size() - 1; i >= 0; i--) {
+                stack.add(task.children.get(i));
+            }
+        }
+        ArrayList<ExistingImage> imageCollection = new ArrayList<>(total);
+        for (DirectoryScanTask task : tasks) {
+            imageCollection.addAll(task.found);
+        }
+        return imageCollection;
+    }
+}
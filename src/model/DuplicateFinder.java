@@ -0,0 +1,403 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.logging.Level;
+
+/**
+ * This class finds the image files that have exactly the same content. Files are first grouped by size, which
+ * costs no read at all. Only files sharing their size with another file have their first and last
+ * {@link #EDGE_BYTES} bytes hashed, and only files still sharing that hash with another file are hashed in full,
+ * reading them through memory mapping. Hashing runs on a pool of threads, and every hash is remembered in a
+ * ContentHashCache by path, size and modification time, so that running the finder again only reads the files
+ * that have changed.
+ *
+ * @see ContentHashCache
+ * @see GoGoPhotoSystem#findDuplicates(String)
+ */
+public class DuplicateFinder {
+    /**
+     * The number of bytes hashed at the start and at the end of a file before hashing the whole file.
+     */
+    static final int EDGE_BYTES = 4096;
+
+    /**
+     * The largest part of a file mapped into memory at once while hashing the whole file.
+     */
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    /**
+     * The hash algorithm used for the content of the files.
+     */
+    private static final String ALGORITHM = "SHA-256";
+
+    /**
+     * The remembered hashes.
+     */
+    private final ContentHashCache cache;
+
+    /**
+     * Creates a DuplicateFinder remembering its hashes in the input cache.
+     *
+     * @param cache the cache of the hashes
+     */
+    DuplicateFinder(ContentHashCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the groups of files found by DirectoryManager that have the same content. Every group holds at
+     * least two files; files without duplicate are not returned.
+     *
+     * @param images the image files to compare
+     * @return the groups of files with the same content.
+     */
+    public List<List<ExistingImage>> findDuplicates(Collection<ExistingImage> images) {
+        return group(images, ExistingImage::getPath);
+    }
+
+    /**
+     * Returns the groups of images whose files have the same content. Every group holds at least two images;
+     * images without duplicate are not returned.
+     *
+     * @param images the images to compare
+     * @return the groups of images with the same content.
+     */
+    public List<List<Image>> findDuplicateImages(Collection<Image> images) {
+        return group(images, Image::getPath);
+    }
+
+    /**
+     * Returns the cache of the hashes.
+     *
+     * @return the ContentHashCache of this DuplicateFinder.
+     */
+    ContentHashCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Groups the items by the content of their files, narrowing the groups by size, then by the hash of the
+     * edges of the files, then by the hash of the whole files.
+     *
+     * @param items  the items to group
+     * @param pathOf returns the path of the file of an item
+     * @param <T>    the type of the items
+     * @return the groups of at least two items with the same content, in the order of their first items.
+     */
+    private <T> List<List<T>> group(Collection<T> items, Function<T, String> pathOf) {
+        LinkedHashMap<Long, List<Candidate<T>>> bySize = new LinkedHashMap<>();
+        HashMap<String, Boolean> seen = new HashMap<>();
+        for (T item : items) {
+            Path path = Paths.get(pathOf.apply(item)).toAbsolutePath().normalize();
+            if (seen.put(path.toString(), Boolean.TRUE) != null) {
+                continue;
+            }
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    Candidate<T> candidate = new Candidate<>(item, seen.size(), path, attributes.size(),
+                            attributes.lastModifiedTime().toMillis());
+                    bySize.computeIfAbsent(candidate.size, size -> new ArrayList<>()).add(candidate);
+                }
+            } catch (IOException e) {
+                GoGoPhotoSystem.logger.log(Level.FINE, "Cannot compare " + path + ": " + e);
+            }
+        }
+        ArrayList<List<Candidate<T>>> groups = new ArrayList<>();
+        for (List<Candidate<T>> group : bySize.values()) {
+            if (group.size() > 1) {
+                groups.add(group);
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "GoGoPhoto duplicate finder");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            groups = split(groups, false, pool);
+            ArrayList<List<Candidate<T>>> unsure = new ArrayList<>();
+            ArrayList<List<Candidate<T>>> sure = new ArrayList<>();
+            for (List<Candidate<T>> group : groups) {
+                if (group.get(0).size <= 2L * EDGE_BYTES) {
+                    sure.add(group);
+                } else {
+                    unsure.add(group);
+                }
+            }
+            sure.addAll(split(unsure, true, pool));
+            sure.sort(Comparator.comparingInt(group -> group.get(0).order));
+            groups = sure;
+        } finally {
+            pool.shutdown();
+        }
+        ArrayList<List<T>> result = new ArrayList<>(groups.size());
+        for (List<Candidate<T>> group : groups) {
+            ArrayList<T> duplicates = new ArrayList<>(group.size());
+            for (Candidate<T> candidate : group) {
+                duplicates.add(candidate.item);
+            }
+            result.add(duplicates);
+        }
+        return result;
+    }
+
+    /**
+     * Splits every group by a hash of the files, keeping only the parts of at least two files. Files that cannot
+     * be read are dropped.
+     *
+     * @param groups the groups of files with the same size
+     * @param full   whether the whole files are hashed (true) or only their edges (false)
+     * @param pool   the threads hashing the files
+     * @param <T>    the type of the items
+     * @return the groups of at least two files with the same hash.
+     */
+    private <T> ArrayList<List<Candidate<T>>> split(List<List<Candidate<T>>> groups, boolean full,
+                                                   ExecutorService pool) {
+        ArrayList<Candidate<T>> candidates = new ArrayList<>();
+        ArrayList<Callable<byte[]>> hashes = new ArrayList<>();
+        for (List<Candidate<T>> group : groups) {
+            for (Candidate<T> candidate : group) {
+                candidates.add(candidate);
+                hashes.add(() -> hash(candidate, full));
+            }
+        }
+        List<Future<byte[]>> results;
+        try {
+            results = pool.invokeAll(hashes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        }
+        HashMap<Candidate<T>, String> keys = new HashMap<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            byte[] hash = result(results.get(i));
+            if (hash != null) {
+                keys.put(candidates.get(i), toHex(hash));
+            }
+        }
+        ArrayList<List<Candidate<T>>> split = new ArrayList<>();
+        for (List<Candidate<T>> group : groups) {
+            LinkedHashMap<String, List<Candidate<T>>> byHash = new LinkedHashMap<>();
+            for (Candidate<T> candidate : group) {
+                String key = keys.get(candidate);
+                if (key != null) {
+                    byHash.computeIfAbsent(key, hash -> new ArrayList<>()).add(candidate);
+                }
+            }
+            for (List<Candidate<T>> part : byHash.values()) {
+                if (part.size() > 1) {
+                    split.add(part);
+                }
+            }
+        }
+        return split;
+    }
+
+    /**
+     * Returns the hash of the edges or of the whole file of a candidate, from the cache if the file has not
+     * changed since it was hashed.
+     *
+     * @param candidate the file to hash
+     * @param full      whether the whole file is hashed (true) or only its edges (false)
+     * @return the hash of the file.
+     * @throws IOException indicates that reading the file fails.
+     */
+    private byte[] hash(Candidate<?> candidate, boolean full) throws IOException {
+        ContentHashCache.HashRecord record = cache.getOrCreate(candidate.path.toString(), candidate.size,
+                candidate.modified);
+        byte[] hash = full ? record.getFullHash() : record.getEdgeHash();
+        if (hash == null) {
+            try (FileChannel channel = FileChannel.open(candidate.path, StandardOpenOption.READ)) {
+                hash = full ? fullHash(channel, candidate.size) : edgeHash(channel, candidate.size);
+            }
+            if (full) {
+                record.setFullHash(hash);
+            } else {
+                record.setEdgeHash(hash);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes the first and last {@link #EDGE_BYTES} bytes of a file, or the whole file if it is not longer than
+     * both together.
+     *
+     * @param channel the open file
+     * @param size    the size of the file
+     * @return the hash of the edges of the file.
+     * @throws IOException indicates that reading the file fails.
+     */
+    private static byte[] edgeHash(FileChannel channel, long size) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(EDGE_BYTES);
+        update(digest, channel, buffer, 0, Math.min(size, EDGE_BYTES));
+        if (size > EDGE_BYTES) {
+            long tail = Math.max(EDGE_BYTES, size - EDGE_BYTES);
+            update(digest, channel, buffer, tail, size - tail);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Reads length bytes of the file from position into the digest.
+     *
+     * @param digest   the digest to update
+     * @param channel  the open file
+     * @param buffer   the buffer to read through
+     * @param position where to start reading
+     * @param length   how many bytes to read
+     * @throws IOException indicates that reading the file fails.
+     */
+    private static void update(MessageDigest digest, FileChannel channel, ByteBuffer buffer, long position,
+                               long length) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("File shorter than expected");
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+    }
+
+    /**
+     * Hashes the whole file, mapping it into memory {@link #MAP_WINDOW} bytes at a time.
+     *
+     * @param channel the open file
+     * @param size    the size of the file
+     * @return the hash of the file.
+     * @throws IOException indicates that reading the file fails.
+     */
+    private static byte[] fullHash(FileChannel channel, long size) throws IOException {
+        MessageDigest digest = newDigest();
+        for (long position = 0; position < size; position += MAP_WINDOW) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MAP_WINDOW, size - position));
+            digest.update(window);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Returns a new digest of {@link #ALGORITHM}.
+     *
+     * @return a new digest.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    /**
+     * Returns the hash computed by the pool, or null if the file could not be read.
+     *
+     * @param result the result of the hashing
+     * @return the hash, or null if hashing failed.
+     */
+    private static byte[] result(Future<byte[]> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            GoGoPhotoSystem.logger.log(Level.FINE, "Cannot hash a file: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the hexadecimal form of a hash.
+     *
+     * @param hash the hash
+     * @return the hash in hexadecimal.
+     */
+    private static String toHex(byte[] hash) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = digits[(hash[i] >> 4) & 0xF];
+            hex[2 * i + 1] = digits[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * A file to compare, with the item it belongs to.
+     *
+     * @param <T> the type of the item
+     */
+    private static class Candidate<T> {
+        /**
+         * The item returned in the groups.
+         */
+        private final T item;
+
+        /**
+         * The position of the item among the items to compare.
+         */
+        private final int order;
+
+        /**
+         * The normalized absolute path of the file.
+         */
+        private final Path path;
+
+        /**
+         * The size of the file.
+         */
+        private final long size;
+
+        /**
+         * The modification time of the file.
+         */
+        private final long modified;
+
+        /**
+         * Creates a Candidate.
+         *
+         * @param item     the item returned in the groups
+         * @param order    the position of the item among the items to compare
+         * @param path     the normalized absolute path of the file
+         * @param size     the size of the file
+         * @param modified the modification time of the file
+         */
+        Candidate(T item, int order, Path path, long size, long modified) {
+            this.item = item;
+            this.order = order;
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
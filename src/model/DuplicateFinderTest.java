@@ -0,0 +1,136 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicateFinderTest {
+    /**
+     * A hash cache saved by the first version of ContentHashCache, before perceptual hashes were remembered: one
+     * record for /photos/a.jpg, of size 1234 and modified at 5678, with the edge hash 1, 2, 3 and the full hash 4, 5.
+     */
+    private static final String FIRST_FORM_CACHE =
+            "rO0ABXNyACZqYXZhLnV0aWwuY29uY3VycmVudC5Db25jdXJyZW50SGFzaE1hcGSZ3hKdhyk9AwADSQALc2VnbWVudE1hc2tJ"
+            + "AAxzZWdtZW50U2hpZnRbAAhzZWdtZW50c3QAMVtMamF2YS91dGlsL2NvbmN1cnJlbnQvQ29uY3VycmVudEhhc2hNYXAkU2Vn"
+            + "bWVudDt4cAAAAA8AAAAcdXIAMVtMamF2YS51dGlsLmNvbmN1cnJlbnQuQ29uY3VycmVudEhhc2hNYXAkU2VnbWVudDtSdz9B"
+            + "Mps5dAIAAHhwAAAAEHNyAC5qYXZhLnV0aWwuY29uY3VycmVudC5Db25jdXJyZW50SGFzaE1hcCRTZWdtZW50HzZMkFiTKT0C"
+            + "AAFGAApsb2FkRmFjdG9yeHIAKGphdmEudXRpbC5jb25jdXJyZW50LmxvY2tzLlJlZW50cmFudExvY2tmVagsLMhq6wIAAUwA"
+            + "BHN5bmN0AC9MamF2YS91dGlsL2NvbmN1cnJlbnQvbG9ja3MvUmVlbnRyYW50TG9jayRTeW5jO3hwc3IANGphdmEudXRpbC5j"
+            + "b25jdXJyZW50LmxvY2tzLlJlZW50cmFudExvY2skTm9uZmFpclN5bmNliDLnU3u/CwIAAHhyAC1qYXZhLnV0aWwuY29uY3Vy"
+            + "cmVudC5sb2Nrcy5SZWVudHJhbnRMb2NrJFN5bmO4HqKUqkRafAIAAHhyADVqYXZhLnV0aWwuY29uY3VycmVudC5sb2Nrcy5B"
+            + "YnN0cmFjdFF1ZXVlZFN5bmNocm9uaXplcmZVqEN1P1LjAgABSQAFc3RhdGV4cgA2amF2YS51dGlsLmNvbmN1cnJlbnQubG9j"
+            + "a3MuQWJzdHJhY3RPd25hYmxlU3luY2hyb25pemVyM9+vua1tb6kCAAB4cAAAAAA/QAAAc3EAfgAFc3EAfgAJAAAAAD9AAABz"
+            + "cQB+AAVzcQB+AAkAAAAAP0AAAHNxAH4ABXNxAH4ACQAAAAA/QAAAc3EAfgAFc3EAfgAJAAAAAD9AAABzcQB+AAVzcQB+AAkA"
+            + "AAAAP0AAAHNxAH4ABXNxAH4ACQAAAAA/QAAAc3EAfgAFc3EAfgAJAAAAAD9AAABzcQB+AAVzcQB+AAkAAAAAP0AAAHNxAH4A"
+            + "BXNxAH4ACQAAAAA/QAAAc3EAfgAFc3EAfgAJAAAAAD9AAABzcQB+AAVzcQB+AAkAAAAAP0AAAHNxAH4ABXNxAH4ACQAAAAA/"
+            + "QAAAc3EAfgAFc3EAfgAJAAAAAD9AAABzcQB+AAVzcQB+AAkAAAAAP0AAAHNxAH4ABXNxAH4ACQAAAAA/QAAAdAANL3Bob3Rv"
+            + "cy9hLmpwZ3NyACFtb2RlbC5Db250ZW50SGFzaENhY2hlJEhhc2hSZWNvcmQ4DFO43UI/kgIABEoACG1vZGlmaWVkSgAEc2l6"
+            + "ZVsACGVkZ2VIYXNodAACW0JbAAhmdWxsSGFzaHEAfgAueHAAAAAAAAAWLgAAAAAAAATSdXIAAltCrPMX+AYIVOACAAB4cAAA"
+            + "AAMBAgN1cQB+ADAAAAACBAVwcHg=";
+
+    // same content is found, same size and same edges with a different middle is not
+    @Test
+    void testFindDuplicateImages() throws IOException {
+        Path directory = Files.createTempDirectory("duplicates");
+        try {
+            byte[] content = new byte[5 * DuplicateFinder.EDGE_BYTES];
+            new Random(1).nextBytes(content);
+            Files.write(directory.resolve("a.jpg"), content);
+            Files.write(directory.resolve("b.jpg"), content);
+            byte[] middle = content.clone();
+            middle[middle.length / 2]++;
+            Files.write(directory.resolve("c.jpg"), middle);
+            Files.write(directory.resolve("d.jpg"), new byte[100]);
+            Files.write(directory.resolve("e.jpg"), new byte[100]);
+            Files.write(directory.resolve("f.jpg"), new byte[101]);
+            ArrayList<Image> images = new ArrayList<>();
+            for (String name : new String[]{"a", "b", "c", "d", "e", "f"}) {
+                images.add(new Image(name, "jpg", directory.resolve(name + ".jpg").toString()));
+            }
+            ContentHashCache cache = new ContentHashCache();
+            DuplicateFinder finder = new DuplicateFinder(cache);
+            List<List<Image>> groups = finder.findDuplicateImages(images);
+            assertEquals(2, groups.size());
+            assertEquals(Arrays.asList(images.get(0), images.get(1)), groups.get(0));
+            assertEquals(Arrays.asList(images.get(3), images.get(4)), groups.get(1));
+            assertEquals(5, cache.size());
+
+            // unchanged files are served from the cache
+            assertEquals(groups, finder.findDuplicateImages(images));
+            assertEquals(5, cache.size());
+        } finally {
+            for (File file : directory.toFile().listFiles()) {
+                Files.delete(file.toPath());
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // a hash cache saved before perceptual hashes were remembered is still read
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReadFirstFormCache() throws IOException, ClassNotFoundException {
+        byte[] saved = Base64.getDecoder().decode(FIRST_FORM_CACHE);
+        ContentHashCache cache = new ContentHashCache();
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(saved))) {
+            cache.setRecords((ConcurrentHashMap<String, ContentHashCache.HashRecord>) input.readObject());
+        }
+        assertEquals(1, cache.size());
+        assertNull(cache.get("/photos/a.jpg", 1234, 5679));
+        ContentHashCache.HashRecord record = cache.get("/photos/a.jpg", 1234, 5678);
+        assertNotNull(record);
+        assertArrayEquals(new byte[]{1, 2, 3}, record.getEdgeHash());
+        assertArrayEquals(new byte[]{4, 5}, record.getFullHash());
+        assertFalse(record.hasPerceptualHash());
+    }
+
+    // a hash cache file that cannot be read is logged, and the program starts with an empty cache
+    @Test
+    void testUnreadableCache() throws IOException, ClassNotFoundException {
+        Path file = Files.createTempFile("hashCache", ".ser");
+        ArrayList<LogRecord> warnings = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.WARNING) {
+                    warnings.add(record);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        GoGoPhotoSystem.logger.addHandler(handler);
+        try {
+            Files.write(file, "not a hash cache".getBytes());
+            GoGoPhotoSystem system = new GoGoPhotoSystem(new MemoryCatalogStore(), null, file.toString());
+            system.close();
+            assertEquals(1, warnings.size());
+            assertTrue(warnings.get(0).getMessage().contains(file.toString()));
+        } finally {
+            GoGoPhotoSystem.logger.removeHandler(handler);
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * This class reads the capture date, the camera and the dimensions of a picture from the headers of its file,
+ * without reading the pixel data. In a JPEG file, only the markers before the start of the scan are read: the
+ * APP1 segment holding the EXIF data and the start-of-frame segment holding the dimensions; every other segment
+ * is skipped by its length. In a PNG file, only the chunk headers before the image data are read, together with
+ * the IHDR chunk holding the dimensions and the eXIf chunk, if any.
+ *
+ * <p>EXIF dates have no time zone; they are returned as the milliseconds of that wall-clock time in UTC, so that
+ * the date of a capture time in UTC is the date the camera showed.
+ *
+ * @see MetadataTable
+ */
+final class ExifReader {
+    /**
+     * The signature every PNG file starts with.
+     */
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * The header of the EXIF data in an APP1 segment.
+     */
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    /**
+     * The format of EXIF dates.
+     */
+    private static final DateTimeFormatter EXIF_DATE = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    /**
+     * The EXIF tags read.
+     */
+    private static final int MAKE = 0x010F, MODEL = 0x0110, DATE_TIME = 0x0132, EXIF_IFD = 0x8769,
+            DATE_TIME_ORIGINAL = 0x9003, DATE_TIME_DIGITIZED = 0x9004, PIXEL_X = 0xA002, PIXEL_Y = 0xA003;
+
+    /**
+     * ExifReader only has static methods.
+     */
+    private ExifReader() {
+    }
+
+    /**
+     * Reads the metadata of the picture in the file.
+     *
+     * @param file the image file
+     * @return the metadata found; fields that are not found are left unknown.
+     * @throws IOException indicates that reading the file fails.
+     */
+    static Metadata read(Path file) throws IOException {
+        Metadata metadata = new Metadata();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            byte[] start = read(channel, 0, 8);
+            if (start.length >= 2 && (start[0] & 0xFF) == 0xFF && (start[1] & 0xFF) == 0xD8) {
+                readJpeg(channel, metadata);
+            } else if (startsWith(start, 0, PNG_SIGNATURE)) {
+                readPng(channel, metadata);
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Reads the segments of a JPEG file up to the start of the scan.
+     *
+     * @param channel  the open file
+     * @param metadata receives the metadata found
+     * @throws IOException indicates that reading the file fails.
+     */
+    private static void readJpeg(FileChannel channel, Metadata metadata) throws IOException {
+        long position = 2;
+        while (true) {
+            byte[] header = read(channel, position, 4);
+            if (header.length < 2 || (header[0] & 0xFF) != 0xFF) {
+                return;
+            }
+            int marker = header[1] & 0xFF;
+            if (marker == 0xFF) {
+                position++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                position += 2;
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9 || header.length < 4) {
+                return;
+            }
+            int length = ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+            if (length < 2) {
+                return;
+            }
+            if (marker == 0xE1 && metadata.captureTime == Metadata.UNKNOWN_TIME) {
+                byte[] segment = read(channel, position + 4, length - 2);
+                if (startsWith(segment, 0, EXIF_HEADER)) {
+                    readTiff(segment, EXIF_HEADER.length, metadata);
+                }
+            } else if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                byte[] frame = read(channel, position + 4, 5);
+                if (frame.length == 5) {
+                    metadata.height = ((frame[1] & 0xFF) << 8) | (frame[2] & 0xFF);
+                    metadata.width = ((frame[3] & 0xFF) << 8) | (frame[4] & 0xFF);
+                }
+            }
+            position += 2 + length;
+        }
+    }
+
+    /**
+     * Reads the chunks of a PNG file up to the image data.
+     *
+     * @param channel  the open file
+     * @param metadata receives the metadata found
+     * @throws IOException indicates that reading the file fails.
+     */
+    private static void readPng(FileChannel channel, Metadata metadata) throws IOException {
+        long position = PNG_SIGNATURE.length;
+        while (true) {
+            byte[] header = read(channel, position, 8);
+            if (header.length < 8) {
+                return;
+            }
+            long length = u32(header, 0, true);
+            String type = new String(header, 4, 4, StandardCharsets.US_ASCII);
+            if (type.equals("IHDR")) {
+                byte[] data = read(channel, position + 8, 8);
+                if (data.length == 8) {
+                    metadata.width = (int) u32(data, 0, true);
+                    metadata.height = (int) u32(data, 4, true);
+                }
+            } else if (type.equals("eXIf") && length <= 1 << 20) {
+                readTiff(read(channel, position + 8, (int) length), 0, metadata);
+            } else if (type.equals("IDAT") || type.equals("IEND")) {
+                return;
+            }
+            position += 12 + length;
+        }
+    }
+
+    /**
+     * Reads the EXIF data, a TIFF structure starting at base in the input bytes. Malformed data is ignored from
+     * where it goes wrong.
+     *
+     * @param data     the bytes holding the EXIF data
+     * @param base     where the TIFF structure starts in the bytes
+     * @param metadata receives the metadata found
+     */
+    private static void readTiff(byte[] data, int base, Metadata metadata) {
+        if (data.length < base + 8) {
+            return;
+        }
+        boolean bigEndian;
+        if (data[base] == 'M' && data[base + 1] == 'M') {
+            bigEndian = true;
+        } else if (data[base] == 'I' && data[base + 1] == 'I') {
+            bigEndian = false;
+        } else {
+            return;
+        }
+        String[] dates = new String[3];
+        long exifIfd = readIfd(data, base, u32(data, base + 4, bigEndian), bigEndian, metadata, dates);
+        if (exifIfd > 0) {
+            readIfd(data, base, exifIfd, bigEndian, metadata, dates);
+        }
+        for (String date : dates) {
+            if (date != null) {
+                try {
+                    metadata.captureTime = LocalDateTime.parse(date.trim(), EXIF_DATE).toInstant(ZoneOffset.UTC)
+                            .toEpochMilli();
+                    return;
+                } catch (DateTimeParseException e) {
+                    // try the next date
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the entries of one image file directory of the EXIF data.
+     *
+     * @param data      the bytes holding the EXIF data
+     * @param base      where the TIFF structure starts in the bytes
+     * @param offset    where the directory starts, from base
+     * @param bigEndian whether the numbers are big-endian
+     * @param metadata  receives the metadata found
+     * @param dates     receives the original, digitized and modification dates, in that order
+     * @return the offset of the EXIF directory if this directory points to it, or 0.
+     */
+    private static long readIfd(byte[] data, int base, long offset, boolean bigEndian, Metadata metadata,
+                                String[] dates) {
+        long exifIfd = 0;
+        int start = base + (int) offset;
+        if (offset <= 0 || start + 2 > data.length) {
+            return 0;
+        }
+        int count = u16(data, start, bigEndian);
+        for (int i = 0; i < count; i++) {
+            int entry = start + 2 + 12 * i;
+            if (entry + 12 > data.length) {
+                break;
+            }
+            int tag = u16(data, entry, bigEndian);
+            int type = u16(data, entry + 2, bigEndian);
+            long values = u32(data, entry + 4, bigEndian);
+            switch (tag) {
+                case MAKE:
+                    metadata.make = ascii(data, base, entry, values, bigEndian);
+                    break;
+                case MODEL:
+                    metadata.model = ascii(data, base, entry, values, bigEndian);
+                    break;
+                case DATE_TIME_ORIGINAL:
+                    dates[0] = ascii(data, base, entry, values, bigEndian);
+                    break;
+                case DATE_TIME_DIGITIZED:
+                    dates[1] = ascii(data, base, entry, values, bigEndian);
+                    break;
+                case DATE_TIME:
+                    dates[2] = ascii(data, base, entry, values, bigEndian);
+                    break;
+                case EXIF_IFD:
+                    exifIfd = u32(data, entry + 8, bigEndian);
+                    break;
+                case PIXEL_X:
+                    if (metadata.width == Metadata.UNKNOWN_SIZE) {
+                        metadata.width = number(data, entry, type, bigEndian);
+                    }
+                    break;
+                case PIXEL_Y:
+                    if (metadata.height == Metadata.UNKNOWN_SIZE) {
+                        metadata.height = number(data, entry, type, bigEndian);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return exifIfd;
+    }
+
+    /**
+     * Returns the text value of an entry, without its terminating zero.
+     *
+     * @param data      the bytes holding the EXIF data
+     * @param base      where the TIFF structure starts in the bytes
+     * @param entry     where the entry starts in the bytes
+     * @param length    the number of characters of the value, terminating zero included
+     * @param bigEndian whether the numbers are big-endian
+     * @return the text, or null if it lies outside the bytes.
+     */
+    private static String ascii(byte[] data, int base, int entry, long length, boolean bigEndian) {
+        int start = length <= 4 ? entry + 8 : base + (int) u32(data, entry + 8, bigEndian);
+        if (length <= 0 || start < 0 || start + length > data.length) {
+            return null;
+        }
+        int end = start + (int) length;
+        while (end > start && data[end - 1] == 0) {
+            end--;
+        }
+        return new String(data, start, end - start, StandardCharsets.US_ASCII).trim();
+    }
+
+    /**
+     * Returns the SHORT or LONG value of an entry.
+     *
+     * @param data      the bytes holding the EXIF data
+     * @param entry     where the entry starts in the bytes
+     * @param type      the type of the value: 3 for SHORT, 4 for LONG
+     * @param bigEndian whether the numbers are big-endian
+     * @return the value.
+     */
+    private static int number(byte[] data, int entry, int type, boolean bigEndian) {
+        return type == 3 ? u16(data, entry + 8, bigEndian) : (int) u32(data, entry + 8, bigEndian);
+    }
+
+    /**
+     * Returns the unsigned 16-bit number at the offset.
+     *
+     * @param data      the bytes
+     * @param offset    where the number starts
+     * @param bigEndian whether the number is big-endian
+     * @return the number.
+     */
+    private static int u16(byte[] data, int offset, boolean bigEndian) {
+        int a = data[offset] & 0xFF;
+        int b = data[offset + 1] & 0xFF;
+        return bigEndian ? (a << 8) | b : (b << 8) | a;
+    }
+
+    /**
+     * Returns the unsigned 32-bit number at the offset.
+     *
+     * @param data      the bytes
+     * @param offset    where the number starts
+     * @param bigEndian whether the number is big-endian
+     * @return the number.
+     */
+    private static long u32(byte[] data, int offset, boolean bigEndian) {
+        if (offset < 0 || offset + 4 > data.length) {
+            return 0;
+        }
+        long high = u16(data, offset, bigEndian);
+        long low = u16(data, offset + 2, bigEndian);
+        return bigEndian ? (high << 16) | low : (low << 16) | high;
+    }
+
+    /**
+     * Returns whether the bytes hold the prefix at the offset.
+     *
+     * @param data   the bytes
+     * @param offset where the prefix is expected
+     * @param prefix the prefix
+     * @return true if the bytes hold the prefix at the offset.
+     */
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        if (data.length < offset + prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads up to length bytes of the file from position.
+     *
+     * @param channel  the open file
+     * @param position where to start reading
+     * @param length   how many bytes to read
+     * @return the bytes read, fewer than length if the file ends first.
+     * @throws IOException indicates that reading the file fails.
+     */
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(0, length));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        byte[] bytes = buffer.array();
+        if (buffer.position() < bytes.length) {
+            byte[] shorter = new byte[buffer.position()];
+            System.arraycopy(bytes, 0, shorter, 0, shorter.length);
+            return shorter;
+        }
+        return bytes;
+    }
+
+    /**
+     * The metadata read from the headers of a file.
+     */
+    static class Metadata {
+        /**
+         * The capture time of a picture whose capture time is unknown.
+         */
+        static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+        /**
+         * The width or height of a picture whose dimensions are unknown.
+         */
+        static final int UNKNOWN_SIZE = -1;
+
+        /**
+         * When the picture was taken, in milliseconds of the wall-clock time in UTC.
+         */
+        long captureTime = UNKNOWN_TIME;
+
+        /**
+         * The width of the picture, in pixels.
+         */
+        int width = UNKNOWN_SIZE;
+
+        /**
+         * The height of the picture, in pixels.
+         */
+        int height = UNKNOWN_SIZE;
+
+        /**
+         * The maker of the camera, or null.
+         */
+        String make;
+
+        /**
+         * The model of the camera, or null.
+         */
+        String model;
+
+        /**
+         * Returns the camera, the model prefixed with the maker unless the model already names it.
+         *
+         * @return the camera, or null if unknown.
+         */
+        String getCamera() {
+            if (model == null || model.isEmpty()) {
+                return make == null || make.isEmpty() ? null : make;
+            }
+            if (make == null || make.isEmpty() || model.toLowerCase().startsWith(make.toLowerCase())) {
+                return model;
+            }
+            return make + " " + model;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package model;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.logging.Level;
+
+/**
+ * This class keeps the catalog in the image and tag files: the images in the binary catalog format, read lazily,
+ * and the tags with Java serialization. The changes are either saved when the store is closed, or appended to a
+ * journal as they are made, which is folded into the two files in the background.
+ *
+ * @see CatalogStore
+ * @see CatalogFormat
+ * @see CatalogJournal
+ */
+class FileCatalogStore implements CatalogStore {
+    /**
+     * The path of the tag file.
+     */
+    private final String tagFilePath;
+
+    /**
+     * The path of the image catalog file.
+     */
+    private final String imageFilePath;
+
+    /**
+     * Whether the journal is opened when the catalog is loaded.
+     */
+    private final boolean journaled;
+
+    /**
+     * The journal every change is appended to, or null if changes are only kept by saving.
+     *
+     * @see #openJournal(ImageManager, TagManager)
+     */
+    private CatalogJournal journal;
+
+    /**
+     * Tracks the images and tags changed since the last save and saves them to the journal in the background, or
+     * null if the journal is not open.
+     *
+     * @see Autosaver
+     */
+    private Autosaver autosaver;
+
+    /**
+     * Creates a FileCatalogStore keeping the catalog in the input files.
+     *
+     * @param tagFilePath   a file path of storage file to read or create.
+     * @param imageFilePath a file path of storage file to read or create.
+     * @param journaled     whether the journal is opened when the catalog is loaded
+     */
+    FileCatalogStore(String tagFilePath, String imageFilePath, boolean journaled) {
+        this.tagFilePath = tagFilePath;
+        this.imageFilePath = imageFilePath;
+        this.journaled = journaled;
+    }
+
+    /**
+     * Reads the tag and image files, creating the missing ones, and opens the journal if the store is journaled.
+     *
+     * @param imageManager the image manager the images are read into
+     * @param tagManager   the tag manager the tags are read into
+     * @throws IOException            indicates that a missing file cannot be created or the journal cannot be read.
+     * @throws ClassNotFoundException indicates that reading a file fails.
+     */
+    @Override
+    public void load(ImageManager imageManager, TagManager tagManager) throws IOException, ClassNotFoundException {
+        File tagManagerFile = new File(tagFilePath);
+        File imageManagerFile = new File(imageFilePath);
+        if (tagManagerFile.exists()) {
+            readFromTagManagerFile(tagManager);
+        } else {
+            tagManagerFile.createNewFile();
+        }
+
+        if (imageManagerFile.exists()) {
+            readFromImageManagerFile(imageManager, tagManager);
+        } else {
+            imageManagerFile.createNewFile();
+        }
+        if (journaled) {
+            openJournal(imageManager, tagManager);
+        }
+    }
+
+    /**
+     * Reads the tag file and assign deserialize result to tagManager.tags. A file that cannot be read is logged and
+     * left out.
+     *
+     * @param tagManager the tag manager the tags are read into
+     * @throws ClassNotFoundException indicates that reading file from path fails
+     */
+    @SuppressWarnings("unchecked")
+    private void readFromTagManagerFile(TagManager tagManager) throws ClassNotFoundException {
+        try (ObjectInput input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(tagFilePath)))) {
+            //deserialize
+            tagManager.setTags((HashMap<String, Integer>) input.readObject());
+        } catch (IOException ex) {
+            GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot read the tag file " + tagFilePath + ": " + ex);
+        }
+    }
+
+    /**
+     * Reads the image file and assign deserialize result to imageManager.images. A file in the binary catalog
+     * format is mapped and its images are only read when they are looked up; a file saved with Java serialization
+     * by an earlier version is read whole. A file that cannot be read is logged and left out.
+     *
+     * @param imageManager the image manager the images are read into
+     * @param tagManager   the tag manager whose tag index is filled
+     * @throws ClassNotFoundException indicates that read from path fails
+     * @see CatalogFormat
+     */
+    @SuppressWarnings("unchecked")
+    private void readFromImageManagerFile(ImageManager imageManager, TagManager tagManager)
+            throws ClassNotFoundException {
+        try {
+            if (CatalogFormat.isCatalogFile(new File(imageFilePath))) {
+                imageManager.openCatalog(new File(imageFilePath));
+                imageManager.indexTags(tagManager.getTagIndex());
+                return;
+            }
+            try (ObjectInput input = new ObjectInputStream(
+                    new BufferedInputStream(new FileInputStream(imageFilePath)))) {
+                //deserialize
+                imageManager.setImages((ArrayList<Image>) input.readObject());
+            }
+            tagManager.getTagIndex().rebuild(imageManager.getImages());
+        } catch (IOException ex) {
+            GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot read the image file " + imageFilePath + ": " + ex);
+        }
+    }
+
+    /**
+     * Opens the journal of the image file and replays the changes it holds over the images and tags read, then
+     * saves every later change to it in the background. Nothing happens if the journal is already open.
+     *
+     * @param imageManager the image manager the changes are replayed over
+     * @param tagManager   the tag manager the changes are replayed over
+     * @throws IOException indicates that the journal cannot be opened or read.
+     * @see GoGoPhotoSystem#openJournal()
+     */
+    void openJournal(ImageManager imageManager, TagManager tagManager) throws IOException {
+        if (journal != null) {
+            return;
+        }
+        CatalogJournal opened = new CatalogJournal(new File(imageFilePath), new File(tagFilePath),
+                CatalogJournal.COMPACTION_THRESHOLD);
+        int count = opened.replay(imageManager, tagManager);
+        if (count > 0) {
+            GoGoPhotoSystem.logger.log(Level.FINE, "Replayed " + count + " changes from the journal of "
+                    + imageFilePath);
+        }
+        autosaver = new Autosaver(opened, Autosaver.INTERVAL);
+        imageManager.getEventBus().subscribe(autosaver);
+        tagManager.setTagListener(autosaver);
+        journal = opened;
+    }
+
+    /**
+     * Returns whether images or tags have changed since they were last saved to the journal.
+     *
+     * @return true if changes have not been saved yet, false if none has or the journal is not open.
+     */
+    boolean hasUnsavedChanges() {
+        return autosaver != null && autosaver.isDirty();
+    }
+
+    /**
+     * Saves the changes made since the last save in the background and closes the journal. Pending renames are
+     * committed first. Nothing happens if the journal is not open.
+     *
+     * @param imageManager the image manager the changes were saved from
+     * @param tagManager   the tag manager the changes were saved from
+     * @throws IOException indicates that closing the journal fails.
+     * @see GoGoPhotoSystem#closeJournal()
+     */
+    void closeJournal(ImageManager imageManager, TagManager tagManager) throws IOException {
+        if (journal == null) {
+            return;
+        }
+        imageManager.commitPendingRenames();
+        imageManager.getEventBus().unsubscribe(autosaver);
+        tagManager.setTagListener(null);
+        autosaver.close();
+        journal.close();
+        autosaver = null;
+        journal = null;
+    }
+
+    /**
+     * Closes the journal if it is open, or else saves the images and tags to the image and tag files.
+     *
+     * @param imageManager the image manager the images were read into
+     * @param tagManager   the tag manager the tags were read into
+     * @throws IOException indicates that saving fails.
+     */
+    @Override
+    public void close(ImageManager imageManager, TagManager tagManager) throws IOException {
+        if (journal != null) {
+            closeJournal(imageManager, tagManager);
+        } else {
+            imageManager.saveToImageManagerFile(imageFilePath);
+            tagManager.saveToTagManagerFile(tagFilePath);
+        }
+    }
+}
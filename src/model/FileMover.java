@@ -0,0 +1,100 @@
+package model;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+
+/**
+ * This class moves image files. A file is renamed atomically when its new location is on the same file system;
+ * otherwise it is streamed to a temporary file next to its new location with {@link FileChannel#transferTo},
+ * which lets the operating system copy the bytes without passing them through Java buffers, and the temporary
+ * file is then renamed into place and the original deleted. The new location never holds a partly copied file,
+ * and a file already at the new location is never replaced.
+ *
+ * @see ImageManager#moveImagesToDirectory(java.util.Collection, String, int, MoveProgressListener)
+ */
+final class FileMover {
+    /**
+     * The suffix of the temporary file a file is copied to before it is renamed into place.
+     */
+    private static final String PART_SUFFIX = ".part";
+
+    /**
+     * FileMover only has static methods.
+     */
+    private FileMover() {
+    }
+
+    /**
+     * Moves a file to the target path. An atomic rename replaces an existing file on most systems, so the target
+     * is checked first.
+     *
+     * @param source the file to move
+     * @param target the new path of the file
+     * @throws FileAlreadyExistsException indicates that a file is already at the target; nothing is moved.
+     * @throws IOException                indicates that moving the file fails; the source is then left where it was.
+     */
+    static void move(Path source, Path target) throws IOException {
+        checkFree(target);
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            copyThenDelete(source, target);
+        }
+    }
+
+    /**
+     * Copies the file next to the target with {@link FileChannel#transferTo}, renames the copy into place, then
+     * deletes the source. The move counts as done once the copy is in place, even if the source cannot be deleted.
+     *
+     * @param source the file to move
+     * @param target the new path of the file
+     * @throws IOException indicates that copying the file fails.
+     */
+    private static void copyThenDelete(Path source, Path target) throws IOException {
+        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        try {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+                out.force(true);
+            }
+            Files.setLastModifiedTime(part, Files.getLastModifiedTime(source));
+            checkFree(target);
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        try {
+            Files.delete(source);
+        } catch (IOException e) {
+            GoGoPhotoSystem.logger.log(Level.WARNING, "Copied " + source + " to " + target
+                    + " but cannot delete it: " + e);
+        }
+    }
+
+    /**
+     * Checks that no file is at the target path.
+     *
+     * @param target the path
+     * @throws FileAlreadyExistsException indicates that a file is at the path.
+     */
+    private static void checkFree(Path target) throws FileAlreadyExistsException {
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+    }
+}
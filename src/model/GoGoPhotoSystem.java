@@ -1,12 +1,15 @@
 package model;
 
 import java.io.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 /**
  * This class implements photo system that sets up TagManager,
@@ -49,6 +52,41 @@ public class GoGoPhotoSystem {
      */
     private DirectoryManager directoryManager;
 
+    /**
+     * Finds the image files with the same content.
+     *
+     * @see DuplicateFinder
+     */
+    private DuplicateFinder duplicateFinder;
+
+    /**
+     * Finds the images that look like a given image.
+     *
+     * @see SimilarImageIndex
+     */
+    private SimilarImageIndex similarImageIndex;
+
+    /**
+     * Holds the capture date, camera and dimensions of the images.
+     *
+     * @see MetadataTable
+     */
+    private MetadataTable metadataTable;
+
+    /**
+     * Remembers the metadata metadataTable has read, so that unchanged files are not read again.
+     *
+     * @see MetadataCache
+     */
+    private MetadataCache metadataCache;
+
+    /**
+     * Where the images and tags are kept between sessions.
+     *
+     * @see CatalogStore
+     */
+    private final CatalogStore store;
+
     /**
      * Creates a new GoGoPhotoSystem with given tage and image  files' path.
      *
@@ -58,30 +96,105 @@ public class GoGoPhotoSystem {
      * @throws IOException            indicates that initializing GoGoPhotoSystem fails.
      */
     public GoGoPhotoSystem(String tagFilePath, String imageFilePath) throws ClassNotFoundException, IOException {
+        this(tagFilePath, imageFilePath, null);
+    }
 
-        // Reads serializable objects from file.
-        // Populates the record list using stored data, if it exists.
-        File tagManagerFile = new File(tagFilePath);
-        File imageManagerFile = new File(imageFilePath);
+    /**
+     * Creates a new GoGoPhotoSystem with given tag, image and scan index files' path.
+     *
+     * @param tagFilePath       a file path of storage file to read or create.
+     * @param imageFilePath     a file path of storage file to read or create.
+     * @param scanIndexFilePath a file path of the scan index file to read, or null if the scan index
+     *                          is not kept between sessions.
+     * @throws ClassNotFoundException indicates that initializing GoGoPhotoSystem fails.
+     * @throws IOException            indicates that initializing GoGoPhotoSystem fails.
+     * @see ScanIndex
+     */
+    public GoGoPhotoSystem(String tagFilePath, String imageFilePath, String scanIndexFilePath)
+            throws ClassNotFoundException, IOException {
+        this(tagFilePath, imageFilePath, scanIndexFilePath, null);
+    }
 
+    /**
+     * Creates a new GoGoPhotoSystem with given tag, image, scan index and hash cache files' path.
+     *
+     * @param tagFilePath       a file path of storage file to read or create.
+     * @param imageFilePath     a file path of storage file to read or create.
+     * @param scanIndexFilePath a file path of the scan index file to read, or null if the scan index
+     *                          is not kept between sessions.
+     * @param hashCacheFilePath a file path of the content hash cache file to read, or null if the hashes
+     *                          are not kept between sessions.
+     * @throws ClassNotFoundException indicates that initializing GoGoPhotoSystem fails.
+     * @throws IOException            indicates that initializing GoGoPhotoSystem fails.
+     * @see ScanIndex
+     * @see ContentHashCache
+     */
+    public GoGoPhotoSystem(String tagFilePath, String imageFilePath, String scanIndexFilePath,
+                           String hashCacheFilePath) throws ClassNotFoundException, IOException {
+        this(new FileCatalogStore(tagFilePath, imageFilePath, false), scanIndexFilePath, hashCacheFilePath);
+    }
+
+    /**
+     * Creates a new GoGoPhotoSystem loading the images and tags from the given store, and the scan index and hash
+     * cache from the given files' path.
+     *
+     * @param store             where the images and tags are kept between sessions
+     * @param scanIndexFilePath a file path of the scan index file to read, or null if the scan index
+     *                          is not kept between sessions.
+     * @param hashCacheFilePath a file path of the content hash cache file to read, or null if the hashes
+     *                          are not kept between sessions.
+     * @throws ClassNotFoundException indicates that initializing GoGoPhotoSystem fails.
+     * @throws IOException            indicates that initializing GoGoPhotoSystem fails.
+     * @see CatalogStore#fromConfiguration(java.util.Properties)
+     */
+    public GoGoPhotoSystem(CatalogStore store, String scanIndexFilePath, String hashCacheFilePath)
+            throws ClassNotFoundException, IOException {
+        this(store, scanIndexFilePath, hashCacheFilePath, null);
+    }
+
+    /**
+     * Creates a new GoGoPhotoSystem loading the images and tags from the given store, and the scan index, hash
+     * cache and metadata cache from the given files' path.
+     *
+     * @param store                 where the images and tags are kept between sessions
+     * @param scanIndexFilePath     a file path of the scan index file to read, or null if the scan index
+     *                              is not kept between sessions.
+     * @param hashCacheFilePath     a file path of the content hash cache file to read, or null if the hashes
+     *                              are not kept between sessions.
+     * @param metadataCacheFilePath a file path of the metadata cache file to read, or null if the metadata read
+     *                              from the files is not kept between sessions.
+     * @throws ClassNotFoundException indicates that initializing GoGoPhotoSystem fails.
+     * @throws IOException            indicates that initializing GoGoPhotoSystem fails.
+     * @see MetadataCache
+     */
+    public GoGoPhotoSystem(CatalogStore store, String scanIndexFilePath, String hashCacheFilePath,
+                           String metadataCacheFilePath) throws ClassNotFoundException, IOException {
+        this.store = store;
         directoryManager = new DirectoryManager();
         filterManager = new FilterManager();
         imageManager = new ImageManager();
         tagManager = new TagManager();
-        imageManager.addObserver(tagManager);
+        duplicateFinder = new DuplicateFinder(new ContentHashCache());
+        similarImageIndex = new SimilarImageIndex(duplicateFinder.getCache());
+        metadataCache = new MetadataCache();
+        metadataTable = new MetadataTable(metadataCache);
+        imageManager.getEventBus().subscribe(tagManager);
+        imageManager.getEventBus().subscribe(similarImageIndex);
+        imageManager.getEventBus().subscribe(metadataTable);
 
+        store.load(imageManager, tagManager);
 
-        if (tagManagerFile.exists()) {
-            readFromTagManagerFile(tagFilePath);
-        } else {
-            tagManagerFile.createNewFile();
+        if (scanIndexFilePath != null && new File(scanIndexFilePath).exists()) {
+            readFromScanIndexFile(scanIndexFilePath);
         }
-
-        if (imageManagerFile.exists()) {
-            readFromImageManagerFile(imageFilePath);
-        } else {
-            imageManagerFile.createNewFile();
+        if (hashCacheFilePath != null && new File(hashCacheFilePath).exists()) {
+            readFromHashCacheFile(hashCacheFilePath);
+        }
+        if (metadataCacheFilePath != null && new File(metadataCacheFilePath).exists()) {
+            readFromMetadataCacheFile(metadataCacheFilePath);
         }
+        metadataTable.indexAll(imageManager);
+        similarImageIndex.indexAll(imageManager);
         MyFormatter formatter = new MyFormatter();
         logger.setLevel(Level.ALL);
         Handler fileHandler = new FileHandler("LogHis.txt", true);
@@ -93,45 +206,114 @@ public class GoGoPhotoSystem {
     }
 
     /**
-     * Reads the stored file based on the input file path and assign deserialize result to tagManager.tags.
+     * Reads the stored file based on the input file path and assign deserialize result to the scan index of
+     * directoryManager. A file that cannot be read is logged and left out, and the directories are listed again.
      *
-     * @param path the path of the stored file
-     * @throws ClassNotFoundException indicates that reading file from path fails
+     * @param path the path where the file is read from.
+     * @throws ClassNotFoundException indicates that read from path fails
+     * @see ScanIndex
      */
-    private void readFromTagManagerFile(String path) throws ClassNotFoundException {
-        try {
-            InputStream file = new FileInputStream(path);
-            InputStream buffer = new BufferedInputStream(file);
-            ObjectInput input = new ObjectInputStream(buffer);
-
+    @SuppressWarnings("unchecked")
+    private void readFromScanIndexFile(String path) throws ClassNotFoundException {
+        try (ObjectInput input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
             //deserialize
-            tagManager.setTags((HashMap<String, Integer>) input.readObject());
-            input.close();
+            directoryManager.getScanIndex().setDirectories(
+                    (ConcurrentHashMap<String, ScanIndex.DirectoryRecord>) input.readObject());
         } catch (IOException ex) {
-            java.lang.System.out.println("Cannot read from input.");
+            logger.log(Level.WARNING, "Cannot read the scan index " + path + ": " + ex);
         }
     }
 
     /**
-     * Reads the stored file based on the input file path and assign deserialize result to imageManager.images.
+     * Reads the stored file based on the input file path and assign deserialize result to the hash cache of
+     * duplicateFinder. A file that cannot be read is logged and left out, and the hashes are computed again.
      *
      * @param path the path where the file is read from.
      * @throws ClassNotFoundException indicates that read from path fails
+     * @see ContentHashCache
      */
-    private void readFromImageManagerFile(String path) throws ClassNotFoundException {
-        try {
-            InputStream file = new FileInputStream(path);
-            InputStream buffer = new BufferedInputStream(file);
-            ObjectInput input = new ObjectInputStream(buffer);
+    @SuppressWarnings("unchecked")
+    private void readFromHashCacheFile(String path) throws ClassNotFoundException {
+        try (ObjectInput input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            //deserialize
+            duplicateFinder.getCache().setRecords(
+                    (ConcurrentHashMap<String, ContentHashCache.HashRecord>) input.readObject());
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Cannot read the hash cache " + path + ": " + ex);
+        }
+    }
 
+
+    /**
+     * Reads the stored file based on the input file path and assign deserialize result to the metadata cache of
+     * metadataTable. A file that cannot be read is logged and left out, and the metadata is read again.
+     *
+     * @param path the path where the file is read from.
+     * @throws ClassNotFoundException indicates that read from path fails
+     * @see MetadataCache
+     */
+    @SuppressWarnings("unchecked")
+    private void readFromMetadataCacheFile(String path) throws ClassNotFoundException {
+        try (ObjectInput input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
             //deserialize
-            imageManager.setImages((ArrayList<Image>) input.readObject());
-            input.close();
+            metadataCache.setRecords((ConcurrentHashMap<String, MetadataCache.MetadataRecord>) input.readObject());
         } catch (IOException ex) {
-            java.lang.System.out.println("Cannot read from input.");
+            logger.log(Level.WARNING, "Cannot read the metadata cache " + path + ": " + ex);
+        }
+    }
+
+    /**
+     * Opens the journal of the image file read at startup and replays the changes it holds over the images and tags
+     * read, then saves every later change to it: images added, renamed and moved, tags added to and removed from
+     * images, and tags created and deleted. The images and tags changed are tracked and saved in the background
+     * every {@link Autosaver#INTERVAL} milliseconds, so the image and tag files no longer need saving when the
+     * program is closed; they are rewritten by the journal compaction in the background, and must not be saved by
+     * other means while the journal is open. Nothing happens if the images and tags are not kept in files.
+     *
+     * @throws IOException indicates that the journal cannot be opened or read.
+     * @see CatalogJournal
+     * @see Autosaver
+     */
+    public void openJournal() throws IOException {
+        if (store instanceof FileCatalogStore) {
+            ((FileCatalogStore) store).openJournal(imageManager, tagManager);
         }
     }
 
+    /**
+     * Returns whether images or tags have changed since they were last saved to the journal.
+     *
+     * @return true if changes have not been saved yet, false if none has or the journal is not open.
+     * @see #openJournal()
+     */
+    public boolean hasUnsavedChanges() {
+        return store instanceof FileCatalogStore && ((FileCatalogStore) store).hasUnsavedChanges();
+    }
+
+    /**
+     * Saves the changes made since the last save in the background, which are the changes of the last few seconds,
+     * and closes the journal. Pending renames are committed first. Nothing happens if the journal is not open.
+     *
+     * @throws IOException indicates that closing the journal fails.
+     * @see #openJournal()
+     */
+    public void closeJournal() throws IOException {
+        if (store instanceof FileCatalogStore) {
+            ((FileCatalogStore) store).closeJournal(imageManager, tagManager);
+        }
+    }
+
+    /**
+     * Commits the pending renames and closes the store of the images and tags, which saves the changes it has not
+     * saved yet.
+     *
+     * @throws IOException indicates that saving the changes fails.
+     * @see CatalogStore#close(ImageManager, TagManager)
+     */
+    public void close() throws IOException {
+        imageManager.commitPendingRenames();
+        store.close(imageManager, tagManager);
+    }
 
     /**
      * Saves the data to the input file path by calling saveToTagManagerFile method of tagManager.
@@ -156,6 +338,170 @@ public class GoGoPhotoSystem {
         imageManager.saveToImageManagerFile(filePath);
     }
 
+    /**
+     * Saves the scan index of directoryManager to the input file path, so that unchanged directories are not
+     * listed again in the next session.
+     *
+     * @param filePath the path to the location that the scan index is stored
+     * @throws IOException indicates that saving to file path fails
+     * @see ScanIndex
+     */
+    public void saveToScanIndexFile(String filePath) throws IOException {
+        directoryManager.getScanIndex().saveToScanIndexFile(filePath);
+    }
+
+    /**
+     * Saves the content hashes of duplicateFinder to the input file path, so that unchanged files are not
+     * hashed again in the next session.
+     *
+     * @param filePath the path to the location that the hashes are stored
+     * @throws IOException indicates that saving to file path fails
+     * @see ContentHashCache
+     */
+    public void saveToHashCacheFile(String filePath) throws IOException {
+        duplicateFinder.getCache().saveToHashCacheFile(filePath);
+    }
+
+    /**
+     * Saves the metadata read by metadataTable to the input file path, so that the headers of unchanged files are
+     * not read again in the next session.
+     *
+     * @param filePath the path to the location that the metadata is stored
+     * @throws IOException indicates that saving to file path fails
+     * @see MetadataCache
+     */
+    public void saveToMetadataCacheFile(String filePath) throws IOException {
+        metadataCache.saveToMetadataCacheFile(filePath);
+    }
+
+
+    /**
+     * Returns the images matched by the given tag query, such as "@beach AND @2019 AND NOT @rejected". The query
+     * is answered from the inverted tag index of the tagManager, intersecting the smallest sets of image IDs first,
+     * and only the matched images are looked up by their ID.
+     *
+     * @param query the tag query
+     * @return the images matched by the query.
+     * @see TagQuery
+     * @see TagIndex
+     * @see ImageBitmap
+     */
+    public ArrayList<Image> findImages(TagQuery query) {
+        ImageBitmap ids = query.evaluate(tagManager.getTagIndex(), imageManager.getIdCount());
+        ArrayList<Image> result = new ArrayList<>(ids.cardinality());
+        for (int id : ids.toArray()) {
+            result.add(imageManager.getImageById(id));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the plan answering the query written in the input text, such as
+     * "tag:beach AND NOT tag:rejected AND dir:/photos/2019 AND date:&gt;2019-06". The plan reads the most selective
+     * of the tag index, the path index and the timeline, and checks the other terms on the images it finds.
+     *
+     * @param text the text of the query
+     * @return the plan answering the query.
+     * @throws IllegalArgumentException indicates that the text is not a valid query.
+     * @see ImageQuery
+     * @see QueryPlan
+     */
+    public QueryPlan compile(String text) {
+        return new QueryPlan(ImageQuery.parse(text),
+                new QueryContext(tagManager.getTagIndex(), imageManager, metadataTable));
+    }
+
+    /**
+     * Returns the images matched by the query written in the input text, found as the stream is consumed.
+     *
+     * @param text the text of the query
+     * @return the images matched by the query.
+     * @throws IllegalArgumentException indicates that the text is not a valid query.
+     * @see #compile(String)
+     */
+    public Stream<Image> query(String text) {
+        return compile(text).stream();
+    }
+
+    /**
+     * Returns how the query written in the input text would be answered: the index read and the terms checked
+     * on every image it finds.
+     *
+     * @param text the text of the query
+     * @return the explanation of the plan of the query.
+     * @throws IllegalArgumentException indicates that the text is not a valid query.
+     * @see QueryPlan#explain()
+     */
+    public String explain(String text) {
+        return compile(text).explain();
+    }
+
+    /**
+     * Returns the groups of image files under the input directory, sub-directories included, that have the
+     * same content.
+     *
+     * @param path the path of the directory
+     * @return the groups of at least two image files with the same content.
+     * @throws IOException indicates that finding the image files fails.
+     * @see DuplicateFinder
+     */
+    public List<List<ExistingImage>> findDuplicates(String path) throws IOException {
+        return duplicateFinder.findDuplicates(directoryManager.findAllImages(path));
+    }
+
+    /**
+     * Returns the groups of images of imageManager whose files have the same content.
+     *
+     * @return the groups of at least two images with the same content.
+     * @see DuplicateFinder
+     */
+    public List<List<Image>> findDuplicateImages() {
+        return duplicateFinder.findDuplicateImages(imageManager.getImages());
+    }
+
+    /**
+     * Returns the images of imageManager that look like the input image: the images whose difference hash differs
+     * from the hash of the input image in at most maxDistance of its 64 bits. A distance of about 10 finds resized,
+     * recompressed or slightly edited copies.
+     *
+     * @param image       the image to compare with
+     * @param maxDistance the largest number of different bits
+     * @return the similar images, without the input image.
+     * @see SimilarImageIndex
+     */
+    public ArrayList<Image> findSimilarImages(Image image, int maxDistance) {
+        ArrayList<Image> result = new ArrayList<>();
+        for (int id : similarImageIndex.findSimilar(image, maxDistance)) {
+            Image similar = imageManager.getImageById(id);
+            if (similar != null && similar != image) {
+                result.add(similar);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the images of imageManager taken from the first day to the last day, both included, in the order of
+     * their capture times. Only the images whose capture date has already been read from their file are found.
+     *
+     * @param from the first day
+     * @param to   the last day
+     * @return the images taken in the range.
+     * @see TimelineIndex
+     */
+    public ArrayList<Image> findImagesTakenBetween(LocalDate from, LocalDate to) {
+        int[] ids = metadataTable.getTimeline().findBetween(TimelineIndex.startOf(from),
+                TimelineIndex.startOf(to.plusDays(1)));
+        ArrayList<Image> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Image image = imageManager.getImageById(id);
+            if (image != null) {
+                result.add(image);
+            }
+        }
+        return result;
+    }
+
 
     /**
      * Returns the directoryManager.
@@ -184,6 +530,15 @@ public class GoGoPhotoSystem {
         return imageManager;
     }
 
+    /**
+     * Returns the table of the capture date, camera and dimensions of the images, filled in the background.
+     *
+     * @return the metadataTable that is returned
+     */
+    public MetadataTable getMetadataTable() {
+        return metadataTable;
+    }
+
     /**
      * Returns the FilterManager.
      *
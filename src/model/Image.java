@@ -1,7 +1,13 @@
 package model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * This class is used to track all the image changes.
@@ -10,28 +16,52 @@ import java.util.ArrayList;
  * @see UsedName*
  */
 public class Image implements Serializable {
+    /**
+     * The serialVersionUID of the original form of this class, kept so that saved images stay readable.
+     */
+    private static final long serialVersionUID = -8128053586726867694L;
+    /**
+     * The serialized fields of this class. Tags are still saved as an ArrayList of their names, as in the original
+     * form of this class, rather than as codes of the session's {@link TagDictionary}.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("name", String.class),
+            new ObjectStreamField("path", String.class),
+            new ObjectStreamField("type", String.class),
+            new ObjectStreamField("tags", ArrayList.class),
+            new ObjectStreamField("renamingHistory", ArrayList.class)
+    };
+    /**
+     * The tags of an image without tags.
+     */
+    private static final int[] NO_TAGS = new int[0];
     /**
      * The name of this image without the filename extension.
      */
-    private String name;
+    private volatile String name;
     /**
      * The file path of this image.
      */
-    private String path;
+    private volatile String path;
     /**
      * The filename extension of this image, which is the suffix after ".".
      */
     private String type;
     /**
-     * A collection of tags that have been added to this image. This collection is represented by a ArrayList
-     * Each tag is only added into this collection once, so there are no duplicated tags in this ArrayList.
+     * The tags that have been added to this image, as the sorted codes given to them by {@link TagDictionary}.
+     * Each tag is only added once, so there are no duplicated codes in this array.
      */
-    private ArrayList<String> tags;
+    private int[] tagCodes;
     /**
      * A collection of used names that have been added to this image including the original name of this image.
      * This collection is a ArrayList of {@link UsedName}.
      */
     private ArrayList<UsedName> renamingHistory;
+    /**
+     * The dense integer ID given to this image by {@link ImageManager}, or -1 before it is given. IDs are not
+     * saved; they are given again whenever the images are loaded.
+     */
+    private transient int id = -1;
 
 
     /**
@@ -47,12 +77,33 @@ public class Image implements Serializable {
     public Image(String name, String type, String path) {
         this.name = name;
         this.type = type;
-        this.tags = new ArrayList<>();
+        this.tagCodes = NO_TAGS;
         this.path = path;
         this.renamingHistory = new ArrayList<>();
         this.renamingHistory.add(new UsedName(this.name + "." + this.type));
     }
 
+    /**
+     * Initializes an image that was saved, with its tags and its renaming history.
+     *
+     * @param name            the name of this image not including the filename extension
+     * @param type            the filename extension of this image
+     * @param path            the path of this image
+     * @param tags            the tags of this image, without the "@" prefix
+     * @param renamingHistory the names this image has used, the current one included
+     * @see CatalogFormat
+     */
+    Image(String name, String type, String path, List<String> tags, ArrayList<UsedName> renamingHistory) {
+        this.name = name;
+        this.type = type;
+        this.tagCodes = NO_TAGS;
+        this.path = path;
+        this.renamingHistory = renamingHistory;
+        for (String tag : tags) {
+            addTag(tag);
+        }
+    }
+
     /**
      * Returns the filename Extension of this image represented by String.
      *
@@ -83,26 +134,27 @@ public class Image implements Serializable {
     }
 
     /**
-     * Returns an ArrayList of {@link #tags} of this image.
+     * Returns an ArrayList of the tags of this image. The Tag objects are shared through {@link TagDictionary}.
      *
      * @return an ArrayList of tags of this image.
      */
     public ArrayList<Tag> getTagList() {
-        ArrayList<Tag> tagContainer = new ArrayList<>();
-        for (String tag : this.tags) {
-            tagContainer.add(new Tag(tag));
+        ArrayList<Tag> tagContainer = new ArrayList<>(this.tagCodes.length);
+        for (int code : this.tagCodes) {
+            tagContainer.add(TagDictionary.tag(code));
         }
         return tagContainer;
     }
 
     /**
      * Returns an ArrayList of names this image has ever used. The ArrayList is a collection of {@link UsedName}
-     * for the convenience of interactions with GUI
+     * for the convenience of interactions with GUI. The ArrayList is a copy, as names may be added by the thread
+     * committing renames.
      *
      * @return an ArrayList of used names represented by {@link UsedName} objects.
      */
-    public ArrayList<UsedName> getRenamingHistory() {
-        return renamingHistory;
+    public synchronized ArrayList<UsedName> getRenamingHistory() {
+        return new ArrayList<>(renamingHistory);
     }
 
     /**
@@ -111,7 +163,7 @@ public class Image implements Serializable {
      * @param newName the name of the image that to be added to the ArrayList
      *                of the renaming history.
      */
-    void addNewNameToHistory(String newName) {
+    synchronized void addNewNameToHistory(String newName) {
         this.renamingHistory.add(new UsedName(newName + "." + this.type));
     }
 
@@ -136,12 +188,96 @@ public class Image implements Serializable {
     }
 
     /**
-     * Returns an collection of string representing the tags of this image.
+     * Returns an collection of string representing the tags of this image. The collection is a copy; changing it
+     * does not change the tags of this image.
      *
-     * @return the collection of {@link #tags} of this image
+     * @return the collection of tags of this image
      */
     public ArrayList<String> getTags() {
-        return this.tags;
+        ArrayList<String> tagNames = new ArrayList<>(this.tagCodes.length);
+        for (int code : this.tagCodes) {
+            tagNames.add(TagDictionary.name(code));
+        }
+        return tagNames;
+    }
+
+    /**
+     * Returns the sorted codes of the tags of this image. The array must not be modified.
+     *
+     * @return the sorted codes of the tags of this image.
+     * @see TagDictionary
+     */
+    int[] getTagCodes() {
+        return this.tagCodes;
+    }
+
+    /**
+     * Returns whether this image has the given tag. No string is built and nothing is allocated.
+     *
+     * @param tag the tag without the "@" prefix
+     * @return true if this image has the tag.
+     */
+    public boolean hasTag(String tag) {
+        int code = TagDictionary.lookup(tag);
+        return code >= 0 && Arrays.binarySearch(this.tagCodes, code) >= 0;
+    }
+
+    /**
+     * Adds the tag to this image, unless this image already has it.
+     *
+     * @param tag the tag without the "@" prefix
+     * @return true if the tag has been added.
+     */
+    boolean addTag(String tag) {
+        int code = TagDictionary.intern(tag);
+        int i = Arrays.binarySearch(this.tagCodes, code);
+        if (i >= 0) {
+            return false;
+        }
+        i = -i - 1;
+        int[] codes = new int[this.tagCodes.length + 1];
+        System.arraycopy(this.tagCodes, 0, codes, 0, i);
+        codes[i] = code;
+        System.arraycopy(this.tagCodes, i, codes, i + 1, this.tagCodes.length - i);
+        this.tagCodes = codes;
+        return true;
+    }
+
+    /**
+     * Removes the tag from this image, if this image has it.
+     *
+     * @param tag the tag without the "@" prefix
+     * @return true if the tag has been removed.
+     */
+    boolean removeTag(String tag) {
+        int code = TagDictionary.lookup(tag);
+        int i = code < 0 ? -1 : Arrays.binarySearch(this.tagCodes, code);
+        if (i < 0) {
+            return false;
+        }
+        int[] codes = this.tagCodes.length == 1 ? NO_TAGS : new int[this.tagCodes.length - 1];
+        System.arraycopy(this.tagCodes, 0, codes, 0, i);
+        System.arraycopy(this.tagCodes, i + 1, codes, i, this.tagCodes.length - i - 1);
+        this.tagCodes = codes;
+        return true;
+    }
+
+    /**
+     * Returns the dense integer ID given to this image by {@link ImageManager}.
+     *
+     * @return the ID of this image, or -1 if it has not been given one.
+     */
+    int getId() {
+        return this.id;
+    }
+
+    /**
+     * Sets the dense integer ID of this image.
+     *
+     * @param id the ID given to this image by {@link ImageManager}.
+     */
+    void setId(int id) {
+        this.id = id;
     }
 
     /**
@@ -152,4 +288,44 @@ public class Image implements Serializable {
     String getFullName() {
         return this.name + "." + this.type;
     }
+
+    /**
+     * Saves this image, with its tags as an ArrayList of their names.
+     *
+     * @param output the stream this image is written to.
+     * @throws IOException indicates that writing this image fails.
+     */
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        ObjectOutputStream.PutField fields = output.putFields();
+        fields.put("name", this.name);
+        fields.put("path", this.path);
+        fields.put("type", this.type);
+        fields.put("tags", getTags());
+        fields.put("renamingHistory", getRenamingHistory());
+        output.writeFields();
+    }
+
+    /**
+     * Reads this image and interns the names of its tags.
+     *
+     * @param input the stream this image is read from.
+     * @throws IOException            indicates that reading this image fails.
+     * @throws ClassNotFoundException indicates that reading this image fails.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = input.readFields();
+        this.name = (String) fields.get("name", null);
+        this.path = (String) fields.get("path", null);
+        this.type = (String) fields.get("type", null);
+        this.renamingHistory = (ArrayList<UsedName>) fields.get("renamingHistory", null);
+        this.tagCodes = NO_TAGS;
+        this.id = -1;
+        ArrayList<String> tags = (ArrayList<String>) fields.get("tags", null);
+        if (tags != null) {
+            for (String tag : tags) {
+                addTag(tag);
+            }
+        }
+    }
 }
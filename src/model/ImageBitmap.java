@@ -0,0 +1,704 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * This class is a compressed set of image IDs, used as the posting list of a tag in the TagIndex.
+ * Following the layout of roaring bitmaps, the IDs are split into chunks of 65536 by their high 16 bits, and each
+ * chunk keeps its low 16 bits in the smaller of two containers: a sorted array when the chunk holds at most 4096
+ * IDs, or a bitmap of 65536 bits otherwise. Sparse tags therefore cost 2 bytes per image, dense tags at most one
+ * bit per possible image, and intersections and unions of dense chunks run 64 images at a time.
+ *
+ * @see TagIndex
+ * @see TagQuery
+ */
+final class ImageBitmap {
+    /**
+     * The largest number of values kept in an array container. Above it a bitmap container is smaller.
+     */
+    private static final int ARRAY_LIMIT = 4096;
+
+    /**
+     * The high 16 bits of the IDs of every chunk, in increasing order.
+     */
+    private char[] keys;
+
+    /**
+     * The container of every chunk, in the order of {@link #keys}.
+     */
+    private Container[] containers;
+
+    /**
+     * The number of chunks in use.
+     */
+    private int size;
+
+    /**
+     * Creates an empty ImageBitmap.
+     */
+    ImageBitmap() {
+        keys = new char[4];
+        containers = new Container[4];
+    }
+
+    /**
+     * Returns an ImageBitmap holding every ID from {@code from} (inclusive) to {@code to} (exclusive).
+     *
+     * @param from the first ID
+     * @param to   the ID after the last one
+     * @return an ImageBitmap holding the range of IDs.
+     */
+    static ImageBitmap range(int from, int to) {
+        ImageBitmap bitmap = new ImageBitmap();
+        int start = from;
+        while (start < to) {
+            int high = start >>> 16;
+            int end = Math.min(to, (high + 1) << 16);
+            bitmap.append((char) high, BitmapContainer.range(start & 0xFFFF, end - (high << 16)).shrink());
+            start = end;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds an ID to this ImageBitmap.
+     *
+     * @param id the ID to add
+     */
+    void add(int id) {
+        char high = (char) (id >>> 16);
+        int i = find(high);
+        if (i >= 0) {
+            containers[i] = containers[i].add((char) id);
+        } else {
+            insert(-i - 1, high, new ArrayContainer().add((char) id));
+        }
+    }
+
+    /**
+     * Removes an ID from this ImageBitmap.
+     *
+     * @param id the ID to remove
+     */
+    void remove(int id) {
+        int i = find((char) (id >>> 16));
+        if (i >= 0) {
+            Container container = containers[i].remove((char) id);
+            if (container.cardinality() == 0) {
+                System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+                containers[--size] = null;
+            } else {
+                containers[i] = container;
+            }
+        }
+    }
+
+    /**
+     * Returns whether this ImageBitmap holds the ID.
+     *
+     * @param id the ID to look for
+     * @return true if this ImageBitmap holds the ID.
+     */
+    boolean contains(int id) {
+        int i = find((char) (id >>> 16));
+        return i >= 0 && containers[i].contains((char) id);
+    }
+
+    /**
+     * Returns the number of IDs held by this ImageBitmap.
+     *
+     * @return the number of IDs held by this ImageBitmap.
+     */
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Returns whether this ImageBitmap holds no ID.
+     *
+     * @return true if this ImageBitmap is empty.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the IDs held by both this ImageBitmap and the other one.
+     *
+     * @param other the other ImageBitmap
+     * @return a new ImageBitmap holding the intersection.
+     */
+    ImageBitmap and(ImageBitmap other) {
+        ImageBitmap result = new ImageBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.append(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs held by this ImageBitmap or by the other one.
+     *
+     * @param other the other ImageBitmap
+     * @return a new ImageBitmap holding the union.
+     */
+    ImageBitmap or(ImageBitmap other) {
+        ImageBitmap result = new ImageBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs held by this ImageBitmap but not by the other one.
+     *
+     * @param other the other ImageBitmap
+     * @return a new ImageBitmap holding the difference.
+     */
+    ImageBitmap andNot(ImageBitmap other) {
+        ImageBitmap result = new ImageBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container;
+            if (j < other.size && other.keys[j] == keys[i]) {
+                container = containers[i].andNot(other.containers[j]);
+            } else {
+                container = containers[i].copy();
+            }
+            if (container.cardinality() > 0) {
+                result.append(keys[i], container);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of this ImageBitmap.
+     *
+     * @return a new ImageBitmap holding the same IDs.
+     */
+    ImageBitmap copy() {
+        ImageBitmap result = new ImageBitmap();
+        for (int i = 0; i < size; i++) {
+            result.append(keys[i], containers[i].copy());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs held by this ImageBitmap in increasing order.
+     *
+     * @return the IDs held by this ImageBitmap in an array.
+     */
+    int[] toArray() {
+        int[] ids = new int[cardinality()];
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            offset = containers[i].fill(ids, offset, keys[i] << 16);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the position of the chunk with the given high bits, or (-(insertion point) - 1) if there is none.
+     *
+     * @param high the high 16 bits of an ID
+     * @return the position of the chunk.
+     */
+    private int find(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    /**
+     * Inserts a chunk at the given position.
+     *
+     * @param i         the position of the chunk
+     * @param high      the high 16 bits of the IDs of the chunk
+     * @param container the container of the chunk
+     */
+    private void insert(int i, char high, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = high;
+        containers[i] = container;
+        size++;
+    }
+
+    /**
+     * Appends a chunk after all the chunks of this ImageBitmap.
+     *
+     * @param high      the high 16 bits of the IDs of the chunk, greater than those of every chunk so far
+     * @param container the container of the chunk
+     */
+    private void append(char high, Container container) {
+        insert(size, high, container);
+    }
+
+    /**
+     * The low 16 bits of the IDs of one chunk.
+     */
+    private abstract static class Container {
+        /**
+         * Adds a value, returning the container now holding the values, which may be a new one.
+         *
+         * @param value the value to add
+         * @return the container holding the values.
+         */
+        abstract Container add(char value);
+
+        /**
+         * Removes a value, returning the container now holding the values, which may be a new one.
+         *
+         * @param value the value to remove
+         * @return the container holding the values.
+         */
+        abstract Container remove(char value);
+
+        /**
+         * Returns whether the container holds the value.
+         *
+         * @param value the value to look for
+         * @return true if the container holds the value.
+         */
+        abstract boolean contains(char value);
+
+        /**
+         * Returns the number of values in the container.
+         *
+         * @return the number of values in the container.
+         */
+        abstract int cardinality();
+
+        /**
+         * Returns the values held by both containers in a new container.
+         *
+         * @param other the other container
+         * @return the intersection.
+         */
+        abstract Container and(Container other);
+
+        /**
+         * Returns the values held by either container in a new container.
+         *
+         * @param other the other container
+         * @return the union.
+         */
+        abstract Container or(Container other);
+
+        /**
+         * Returns the values held by this container but not by the other one in a new container.
+         *
+         * @param other the other container
+         * @return the difference.
+         */
+        abstract Container andNot(Container other);
+
+        /**
+         * Returns a copy of the container.
+         *
+         * @return a copy of the container.
+         */
+        abstract Container copy();
+
+        /**
+         * Writes the values of the container, combined with the given high bits, into the array.
+         *
+         * @param ids    the array to fill
+         * @param offset the position of the first value in the array
+         * @param high   the high bits of the chunk, already shifted
+         * @return the position after the last value written.
+         */
+        abstract int fill(int[] ids, int offset, int high);
+    }
+
+    /**
+     * A container keeping at most {@link #ARRAY_LIMIT} values in a sorted array.
+     */
+    private static final class ArrayContainer extends Container {
+        /**
+         * The values, sorted, in the first {@link #cardinality} elements.
+         */
+        private char[] values;
+
+        /**
+         * The number of values.
+         */
+        private int cardinality;
+
+        /**
+         * Creates an empty ArrayContainer.
+         */
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        /**
+         * Creates an ArrayContainer holding the first values of the array.
+         *
+         * @param values      the sorted values
+         * @param cardinality the number of values
+         */
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                return toBitmap().add(value);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (!(other instanceof ArrayContainer)) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            if (cardinality + array.cardinality > ARRAY_LIMIT) {
+                BitmapContainer bitmap = toBitmap();
+                for (int j = 0; j < array.cardinality; j++) {
+                    bitmap.add(array.values[j]);
+                }
+                return bitmap.shrink();
+            }
+            char[] result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    result[count++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                } else {
+                    result[count++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] result = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(1, cardinality)), cardinality);
+        }
+
+        @Override
+        int fill(int[] ids, int offset, int high) {
+            for (int i = 0; i < cardinality; i++) {
+                ids[offset++] = high | values[i];
+            }
+            return offset;
+        }
+
+        /**
+         * Returns a BitmapContainer holding the same values.
+         *
+         * @return a BitmapContainer holding the same values.
+         */
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * A container keeping its values as one bit per possible value.
+     */
+    private static final class BitmapContainer extends Container {
+        /**
+         * The bits of the 65536 possible values.
+         */
+        private final long[] words;
+
+        /**
+         * The number of bits set.
+         */
+        private int cardinality;
+
+        /**
+         * Creates an empty BitmapContainer.
+         */
+        BitmapContainer() {
+            this(new long[1024], 0);
+        }
+
+        /**
+         * Creates a BitmapContainer with the given bits.
+         *
+         * @param words       the bits of the 65536 possible values
+         * @param cardinality the number of bits set
+         */
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * Returns a BitmapContainer holding every value from {@code from} (inclusive) to {@code to} (exclusive).
+         *
+         * @param from the first value
+         * @param to   the value after the last one, at most 65536
+         * @return a BitmapContainer holding the range.
+         */
+        static BitmapContainer range(int from, int to) {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int value = from; value < to; value++) {
+                bitmap.words[value >>> 6] |= 1L << value;
+            }
+            bitmap.cardinality = to - from;
+            return bitmap;
+        }
+
+        @Override
+        Container add(char value) {
+            long word = words[value >>> 6];
+            long bit = 1L << value;
+            if ((word & bit) == 0) {
+                words[value >>> 6] = word | bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long word = words[value >>> 6];
+            long bit = 1L << value;
+            if ((word & bit) != 0) {
+                words[value >>> 6] = word & ~bit;
+                cardinality--;
+            }
+            return shrink();
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (!(other instanceof BitmapContainer)) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[1024];
+            int count = 0;
+            for (int i = 0; i < 1024; i++) {
+                result[i] = words[i] & otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            return new BitmapContainer(result, count).shrink();
+        }
+
+        @Override
+        Container or(Container other) {
+            if (!(other instanceof BitmapContainer)) {
+                BitmapContainer result = (BitmapContainer) copy();
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    result.add(array.values[i]);
+                }
+                return result;
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[1024];
+            int count = 0;
+            for (int i = 0; i < 1024; i++) {
+                result[i] = words[i] | otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            return new BitmapContainer(result, count);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            if (!(other instanceof BitmapContainer)) {
+                Container result = copy();
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    result = result.remove(array.values[i]);
+                }
+                return result;
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[1024];
+            int count = 0;
+            for (int i = 0; i < 1024; i++) {
+                result[i] = words[i] & ~otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            return new BitmapContainer(result, count).shrink();
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        int fill(int[] ids, int offset, int high) {
+            for (int i = 0; i < 1024; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    ids[offset++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+
+        /**
+         * Returns an ArrayContainer holding the same values if that is smaller, or this container otherwise.
+         *
+         * @return the smaller container holding the values.
+         */
+        Container shrink() {
+            if (cardinality > ARRAY_LIMIT) {
+                return this;
+            }
+            char[] values = new char[Math.max(1, cardinality)];
+            fill(values);
+            return new ArrayContainer(values, cardinality);
+        }
+
+        /**
+         * Writes the values of this container into the array in increasing order.
+         *
+         * @param values the array to fill
+         */
+        private void fill(char[] values) {
+            int count = 0;
+            for (int i = 0; i < 1024; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageBitmapTest {
+
+    @Test
+    void testAddAndRemove() {
+        ImageBitmap bitmap = new ImageBitmap();
+        bitmap.add(3);
+        bitmap.add(70000);
+        bitmap.add(3);
+        assertEquals(2, bitmap.cardinality());
+        assertTrue(bitmap.contains(70000));
+        bitmap.remove(70000);
+        assertFalse(bitmap.contains(70000));
+        assertArrayEquals(new int[]{3}, bitmap.toArray());
+    }
+
+    // more than 4096 ids in one chunk
+    @Test
+    void testDenseChunk() {
+        ImageBitmap even = new ImageBitmap();
+        ImageBitmap odd = new ImageBitmap();
+        for (int i = 0; i < 20000; i++) {
+            if (i % 2 == 0) {
+                even.add(i);
+            } else {
+                odd.add(i);
+            }
+        }
+        assertEquals(10000, even.cardinality());
+        assertTrue(even.and(odd).isEmpty());
+        assertEquals(20000, even.or(odd).cardinality());
+        assertEquals(10000, ImageBitmap.range(0, 20000).andNot(odd).cardinality());
+    }
+
+    @Test
+    void testAnd() {
+        ImageBitmap multiplesOfThree = new ImageBitmap();
+        ImageBitmap multiplesOfFive = new ImageBitmap();
+        for (int i = 0; i < 200000; i += 3) {
+            multiplesOfThree.add(i);
+        }
+        for (int i = 0; i < 200000; i += 5) {
+            multiplesOfFive.add(i);
+        }
+        int[] multiplesOfFifteen = multiplesOfThree.and(multiplesOfFive).toArray();
+        assertEquals(13334, multiplesOfFifteen.length);
+        assertEquals(15, multiplesOfFifteen[1]);
+    }
+}
@@ -0,0 +1,129 @@
+package model;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * This class decides whether a file is an image by looking at the first bytes of the file only, so that
+ * DirectoryManager does not need to decode every pixel of a file to know that it is an image.
+ * The magic numbers of JPEG, PNG, GIF, BMP and WebP files are recognised directly. Any other file is
+ * offered to the ImageReaders registered with ImageIO, which also only read the header of the file.
+ *
+ * @see DirectoryManager
+ * @see ImageIO
+ */
+class ImageHeaderSniffer {
+    /**
+     * The number of bytes read from the start of a file, enough for every magic number below.
+     */
+    private static final int HEADER_LENGTH = 12;
+
+    /**
+     * The magic number every JPEG file starts with.
+     */
+    private static final int[] JPEG = {0xFF, 0xD8, 0xFF};
+
+    /**
+     * The magic number every PNG file starts with.
+     */
+    private static final int[] PNG = {0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+
+    /**
+     * The magic number every GIF file starts with, followed by "87a" or "89a".
+     */
+    private static final int[] GIF = {'G', 'I', 'F', '8'};
+
+    /**
+     * The magic number every BMP file starts with.
+     */
+    private static final int[] BMP = {'B', 'M'};
+
+    /**
+     * The RIFF container magic number a WebP file starts with.
+     */
+    private static final int[] RIFF = {'R', 'I', 'F', 'F'};
+
+    /**
+     * The WebP form type found at offset 8 of a RIFF container.
+     */
+    private static final int[] WEBP = {'W', 'E', 'B', 'P'};
+
+    /**
+     * Constructs a new ImageHeaderSniffer
+     */
+    ImageHeaderSniffer() {
+    }
+
+    /**
+     * Returns if the input file is an image, reading only the header of the file.
+     *
+     * @param file the file to check
+     * @return true if the header of the file is the header of an image.
+     */
+    boolean isImage(File file) {
+        byte[] header = new byte[HEADER_LENGTH];
+        int length = 0;
+        try (InputStream input = new FileInputStream(file)) {
+            int read = 0;
+            while (read != -1 && length < HEADER_LENGTH) {
+                read = input.read(header, length, HEADER_LENGTH - length);
+                if (read > 0) {
+                    length += read;
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        if (startsWith(header, length, 0, JPEG) || startsWith(header, length, 0, PNG)
+                || startsWith(header, length, 0, GIF) || (startsWith(header, length, 0, BMP) && length >= 6)
+                || (startsWith(header, length, 0, RIFF) && startsWith(header, length, 8, WEBP))) {
+            return true;
+        }
+        return length > 0 && hasImageReader(file);
+    }
+
+    /**
+     * Returns if the header holds the given magic number at the given offset.
+     *
+     * @param header the first bytes of a file
+     * @param length the number of bytes of the header that were actually read
+     * @param offset the offset of the magic number in the header
+     * @param magic  the magic number
+     * @return true if the header holds the magic number at the offset.
+     */
+    private boolean startsWith(byte[] header, int length, int offset, int[] magic) {
+        if (length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns if any ImageReader registered with ImageIO accepts the file. The readers only inspect the
+     * header of the file and never decode it.
+     *
+     * @param file the file to check
+     * @return true if some ImageReader can read the file.
+     */
+    private boolean hasImageReader(File file) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                return false;
+            }
+            Iterator<?> readers = ImageIO.getImageReaders(input);
+            return readers.hasNext();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
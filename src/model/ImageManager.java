@@ -1,132 +1,662 @@
 package model;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Observable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-
 /**
- * This class is responsible for move a image to another directory,
+ * This class is responsible for move a image, or many images at once, to another directory,
  * rename an image, add tag to an image's name,
  * delete tag from an image's name(while keep the original suffix).
  * This class is also responsible for renaming an Image back to one of its used name.
  * Besides, it also serializes the ALL images in the arraylist of ImageManager.
  * This helps GUI to display all the images in the arraylist.
+ * In write-behind mode, several tag edits made to an image in a row rename its file only once. In sidecar mode, tags
+ * are kept in a sidecar file in the directory of the image and tag edits do not rename files at all.
+ * Images are also indexed by their path, so that finding an image by its path takes constant time, and given
+ * dense integer IDs, so that tag indexes can keep compact sets of IDs instead of sets of images.
  *
  * @see TagManager
  * @see Image
- * @see Observable
+ * @see CatalogEventBus
+ * @see TagSidecar
  * @see Serializable
  * @see gui.AddTagController
  * @see gui.ListAllController
  * @see gui.LocalOnlyController
  * @see gui.ViewHistoryController
  * @see gui.ViewImageController
- * @see Observable
+ * @see CatalogEventBus
  * @see Serializable
  */
-public class ImageManager extends Observable implements Serializable {
+public class ImageManager implements Serializable {
     /**
      * an ArrayList of Image.
      */
     private ArrayList<Image> images;
 
+    /**
+     * The largest number of files renamed at the same time by a bulk tag operation.
+     */
+    private static final int RENAME_PARALLELISM = 8;
+
+    /**
+     * In write-behind mode, pending renames are committed once no image has been renamed for this many
+     * milliseconds.
+     */
+    private static final long QUIET_PERIOD = 1000;
+
+    /**
+     * The largest number of files moved at the same time by a batch move, unless another limit is given.
+     */
+    static final int MOVE_PARALLELISM = 4;
+
+    /**
+     * An index from the normalized path of every image in {@link #images} to the image, so that an image is
+     * found by its path without scanning the whole ArrayList.
+     */
+    private transient HashMap<String, Image> pathIndex;
+
+    /**
+     * The same images as {@link #pathIndex}, sorted by path, so that the images under a directory are found as one
+     * range of paths.
+     */
+    private transient TreeMap<String, Image> sortedPaths;
+
+    /**
+     * Every image known to this ImageManager, at the position of its dense integer ID. An image gets its ID when
+     * it is added or when its tags first change, so that tag indexes can refer to it by ID.
+     */
+    private transient ArrayList<Image> imagesById;
+
+    /**
+     * The catalog file the saved images are read from lazily, or null if every image is in {@link #images}. While
+     * it is open, {@link #images} only holds the images added since, and the saved images keep the IDs of their
+     * records, with no entry in {@link #imagesById} or the path index until they change path.
+     *
+     * @see #openCatalog(File)
+     */
+    private transient LazyCatalog catalog;
+
+    /**
+     * Delivers every change made to the images to the subscribed listeners, such as TagManager.
+     *
+     * @see CatalogEventBus
+     */
+    private transient CatalogEventBus eventBus;
+
+    /**
+     * Whether renaming an image only renames its file when the pending renames are committed.
+     *
+     * @see #setWriteBehind(boolean)
+     */
+    private transient volatile boolean writeBehind;
+
+    /**
+     * The images renamed in write-behind mode since the last commit, with the path their file still has on disk.
+     * Also the lock guarding the pending renames.
+     */
+    private transient LinkedHashMap<Image, PendingRename> pendingRenames;
+
+    /**
+     * The thread committing the pending renames after the quiet period, created when first needed.
+     */
+    private transient ScheduledExecutorService commitTimer;
+
+    /**
+     * The next automatic commit of the pending renames, or null if none is scheduled.
+     */
+    private transient ScheduledFuture<?> scheduledCommit;
+
+    /**
+     * The executor the automatic commits of the pending renames run on.
+     *
+     * @see #setCommitExecutor(Executor)
+     */
+    private transient volatile Executor commitExecutor;
+
+    /**
+     * Calls the action with the path and the ID of every image, reading the paths of an open catalog file without
+     * reading its images. Images without an ID are left out.
+     *
+     * @param action the action receiving a path and an image ID
+     */
+    void forEachPath(BiConsumer<String, Integer> action) {
+        if (catalog != null) {
+            catalog.forEachPath(action);
+        }
+        for (Image image : images) {
+            if (image.getId() >= 0) {
+                action.accept(image.getPath(), image.getId());
+            }
+        }
+    }
+
+    /**
+     * Where the tags of the images are stored.
+     *
+     * @see #setTagStorage(TagStorage)
+     */
+    private transient volatile TagStorage tagStorage;
+
+    /**
+     * The sidecar files holding the tags of the images in sidecar mode.
+     */
+    private transient TagSidecar sidecar;
+
     /**
      * Initializes ImageManager object, meanwhile, creating an Arraylist that is used
      * to hold images.
      */
     ImageManager() {
         this.images = new ArrayList<>();
+        this.pathIndex = new HashMap<>();
+        this.sortedPaths = new TreeMap<>();
+        this.imagesById = new ArrayList<>();
+        this.eventBus = new CatalogEventBus();
+        this.pendingRenames = new LinkedHashMap<>();
+        this.commitExecutor = Runnable::run;
+        this.tagStorage = TagStorage.FILENAME;
+        this.sidecar = new TagSidecar();
     }
 
     /**
-     * Adds an image to the ArrayList of ImageManager.
+     * Adds an image to the ArrayList of ImageManager, if it has tags. The tags are read from the name of the
+     * image, or in sidecar mode from the sidecar file of its directory when it holds the tags of the image.
      *
      * @param image the picture to be added to the ArrayList
      */
     public void addImage(Image image) {
-        String[] nameParts = image.getName().split(" @");
-        if (nameParts.length > 1) {
-            images.add(image);
-            for (int i = 1; i < nameParts.length; i++) {
-                updateUpTags(image, nameParts[i]);
-            }
+        List<String> tags = importedTags(image);
+        if (!tags.isEmpty()) {
+            addWithTags(image, tags);
         }
     }
 
     /**
-     * Adds input image to images and sets up tags of the image.
+     * Adds input image to images and sets up tags of the image, read as in {@link #addImage(Image)}.
      *
      * @param image an image that need to be added.
      */
     public void addChosenImage(Image image) {
-        String[] nameParts = image.getName().split(" @");
+        addWithTags(image, importedTags(image));
+    }
+
+    /**
+     * Returns the tags an image has when it is added: the ones the sidecar file of its directory holds for it in
+     * sidecar mode, and the ones in its name otherwise.
+     *
+     * @param image the image being added
+     * @return the tags of the image.
+     */
+    private List<String> importedTags(Image image) {
+        if (tagStorage == TagStorage.SIDECAR) {
+            List<String> tags = sidecar.getTags(image.getPath());
+            if (tags != null) {
+                return tags;
+            }
+        }
+        return TagNameCodec.parseTags(image.getName());
+    }
+
+    /**
+     * Adds input image to images with the input tags, publishing the addition and the tags as one batch.
+     *
+     * @param image the image to add
+     * @param tags  the tags of the image
+     */
+    private void addWithTags(Image image, List<String> tags) {
         images.add(image);
-        for (int i = 1; i < nameParts.length; i++) {
-            updateUpTags(image, nameParts[i]);
+        indexPath(image);
+        assignId(image);
+        eventBus.beginBatch();
+        try {
+            eventBus.publish(new CatalogEvent.ImageAdded(image));
+            for (String tag : tags) {
+                updateUpTags(image, tag);
+            }
+        } finally {
+            eventBus.endBatch();
         }
     }
 
 
     /**
      * Gets the Image object given a file path. returns null if the image object
-     * doesn't exist.
+     * doesn't exist. The image is looked up in the path index, in constant time.
      *
      * @param path the path given to find the Image object.
      * @return the Image object given a file path. returns null if the image object
      * cannot be found
      */
     public Image foundImage(String path) {
-        for (int i = 0; i < this.images.size(); i++) {
-            if (this.images.get(i).getPath().equals(path)) {
-                return this.images.get(i);
+        String key = normalizePath(path);
+        Image image = pathIndex.get(key);
+        if (image == null && catalog != null) {
+            int id = catalog.find(path);
+            if (id < 0 && !key.equals(path)) {
+                id = catalog.find(key);
             }
+            image = catalog.get(id);
         }
-        return null;
+        return image;
     }
 
     /**
      * Changes the selected image's actual file name to newName. The given newName does not include the file type
-     * suffix. Adds the newName to the image's renamingHistory and the path of the image changes accordingly.
-     *
+     * suffix. Adds the newName to the image's renamingHistory and the path of the image changes accordingly. A file
+     * is never replaced. If the file cannot be renamed, the failure is logged and the image is left unchanged: the
+     * rename is neither recorded nor added to the renamingHistory nor published.
+     * In write-behind mode only the name of the image changes right away; the file is renamed, the path changed,
+     * the new name added to the renamingHistory and the rename published when the pending renames are committed.
      *
      * @param image   the image that need to be renamed.
      * @param newName the new name that will be used for the image.
+     * @return false if the file could not be renamed and the image is unchanged, true otherwise.
+     * @see #setWriteBehind(boolean)
      */
-    void renameFile(Image image, String newName) {
-        String oldPath = image.getPath().toString();
-        String newPath = oldPath.substring(0, oldPath.lastIndexOf(File.separator));
-        newPath = newPath + File.separator + newName + "." + image.getType();
-        File oldFile = new File(oldPath);
-        image.setName(newName);
-        image.setPath(newPath);
+    boolean renameFile(Image image, String newName) {
+        String oldPath = image.getPath();
+        if (writeBehind) {
+            synchronized (pendingRenames) {
+                if (!pendingRenames.containsKey(image)) {
+                    pendingRenames.put(image, new PendingRename(oldPath, image.getName(), image.getTags()));
+                }
+                image.setName(newName);
+                scheduleCommit();
+            }
+            return true;
+        }
+        String newPath = pathForName(image, newName);
+        File newFile = new File(newPath);
+        if ((!newPath.equals(oldPath) && newFile.exists()) || !new File(oldPath).renameTo(newFile)) {
+            GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot rename " + oldPath + " to " + newPath
+                    + ", keeping " + image.getName());
+            return false;
+        }
+        recordRename(image, newName);
         image.addNewNameToHistory(newName);
+        eventBus.publish(new CatalogEvent.ImageRenamed(image, oldPath));
+        return true;
+    }
+
+    /**
+     * Turns write-behind mode on or off. In write-behind mode, renaming an image changes the name of the image in
+     * memory right away, but the file is renamed only once for all the changes made to the image in a row: when
+     * {@link #commitPendingRenames()} is called, or automatically once no image has been renamed for
+     * {@link #QUIET_PERIOD} milliseconds. Turning write-behind mode off commits the pending renames.
+     *
+     * @param writeBehind whether tag edits are written behind.
+     * @see #setCommitExecutor(Executor)
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        if (!writeBehind) {
+            commitPendingRenames();
+        }
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * Sets the executor the automatic commits of the pending renames run on, such as the thread of the user
+     * interface, so that the images are only changed on the thread that reads them. By default they run on the
+     * thread of the commit timer.
+     *
+     * @param commitExecutor the executor the automatic commits run on.
+     */
+    public void setCommitExecutor(Executor commitExecutor) {
+        this.commitExecutor = commitExecutor;
+    }
+
+    /**
+     * Renames the file of every image renamed in write-behind mode since the last commit, once, from the name it
+     * has on disk to the current name of the image. Once the file is renamed, the path of the image changes, the
+     * final name is added to the renamingHistory of the image, logged once, and the rename is published; the
+     * renames of one commit are published as one batch. Nothing happens to an image whose edits have brought it
+     * back to the name it has on disk.
+     * If a file cannot be renamed, because it is gone or another file has the new name, the failure is logged and
+     * the image gets back the name and tags of its file, as if the edits had not been made.
+     */
+    public void commitPendingRenames() {
+        synchronized (pendingRenames) {
+            if (scheduledCommit != null) {
+                scheduledCommit.cancel(false);
+                scheduledCommit = null;
+            }
+            if (pendingRenames.isEmpty()) {
+                return;
+            }
+            eventBus.beginBatch();
+            try {
+                for (Map.Entry<Image, PendingRename> entry : pendingRenames.entrySet()) {
+                    commitRename(entry.getKey(), entry.getValue());
+                }
+            } finally {
+                pendingRenames.clear();
+                eventBus.endBatch();
+            }
+        }
+    }
+
+    /**
+     * Renames the file of an image renamed in write-behind mode to the current name of the image, or gives the
+     * image back the name and tags of its file if the file cannot be renamed. Called with the lock of
+     * {@link #pendingRenames} held.
+     *
+     * @param image   the image renamed
+     * @param pending the file of the image as it is on disk
+     */
+    private void commitRename(Image image, PendingRename pending) {
+        String newPath = pathForName(image, image.getName());
+        if (newPath.equals(pending.diskPath)) {
+            return;
+        }
         File newFile = new File(newPath);
-        oldFile.renameTo(newFile);
+        if (!newFile.exists() && new File(pending.diskPath).renameTo(newFile)) {
+            image.setPath(newPath);
+            reindexPath(image, pending.diskPath);
+            image.addNewNameToHistory(image.getName());
+            GoGoPhotoSystem.logger.log(Level.FINE, "Old Name: " + pending.diskName + "." + image.getType()
+                    + ", New Name: " + image.getFullName());
+            eventBus.publish(new CatalogEvent.ImageRenamed(image, pending.diskPath));
+            return;
+        }
+        GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot rename " + pending.diskPath + " to " + newPath
+                + ", keeping " + pending.diskName);
+        ArrayList<String> tags = image.getTags();
+        image.setName(pending.diskName);
+        for (String tag : tags) {
+            if (!pending.diskTags.contains(tag)) {
+                updateDownTags(image, tag);
+            }
+        }
+        for (String tag : pending.diskTags) {
+            if (!tags.contains(tag)) {
+                updateUpTags(image, tag);
+            }
+        }
+    }
 
+    /**
+     * Schedules a commit of the pending renames after {@link #QUIET_PERIOD} milliseconds, replacing the commit
+     * scheduled before. Called with the lock of {@link #pendingRenames} held.
+     */
+    private void scheduleCommit() {
+        if (scheduledCommit != null) {
+            scheduledCommit.cancel(false);
+        }
+        if (commitTimer == null) {
+            commitTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "GoGoPhoto rename commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduledCommit = commitTimer.schedule(() -> commitExecutor.execute(this::commitPendingRenames), QUIET_PERIOD,
+                TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Moves image file to a new location. Also, sets the new path to image.
+     * Chooses where the tags of the images are stored. In {@link TagStorage#FILENAME} mode, the tags of an image are
+     * kept in its file name, so that every tag edit renames the file. In {@link TagStorage#SIDECAR} mode, tag edits
+     * leave the file name untouched and are appended to a sidecar file in the directory of the image instead; the
+     * tags in the names of files the sidecar file holds nothing for are still read when the files are added.
+     *
+     * @param tagStorage where the tags of the images are stored.
+     * @see TagSidecar
+     */
+    public void setTagStorage(TagStorage tagStorage) {
+        this.tagStorage = tagStorage;
+    }
+
+    /**
+     * Returns where the tags of the images are stored.
+     *
+     * @return where the tags of the images are stored.
+     */
+    public TagStorage getTagStorage() {
+        return tagStorage;
+    }
+
+    /**
+     * Returns the path the image would have if it were renamed to newName, in the same directory.
+     *
+     * @param image   the image that would be renamed.
+     * @param newName the new name, without the file type suffix.
+     * @return the path of the renamed image.
+     */
+    private String pathForName(Image image, String newName) {
+        String oldPath = image.getPath();
+        return oldPath.substring(0, oldPath.lastIndexOf(File.separator)) + File.separator + newName + "."
+                + image.getType();
+    }
+
+    /**
+     * Changes the name and the path of the image to newName and keeps the path index up to date, without touching
+     * the file or the renamingHistory.
+     *
+     * @param image   the image that has been renamed.
+     * @param newName the new name, without the file type suffix.
+     */
+    private void recordRename(Image image, String newName) {
+        String oldPath = image.getPath();
+        image.setName(newName);
+        image.setPath(pathForName(image, newName));
+        reindexPath(image, oldPath);
+    }
+
+    /**
+     * Moves image file to a new location. Also, sets the new path to image. Pending renames are committed first.
+     * In sidecar mode, the tags of the image move to the sidecar file of the new location.
      *
      * @param image    the image that need to be moved
      * @param new_path the new location path
      * @throws IOException indicates that moving image file to new location fails.
+     * @see FileMover
      */
     public void moveImageToDirectory(Image image, String new_path) throws IOException {
+        commitPendingRenames();
         String newImagePath = new_path + File.separator + image.getName() + "." + image.getType();
-        Files.move(Paths.get(image.getPath()), Paths.get(newImagePath), REPLACE_EXISTING);
-        image.setPath(newImagePath);
+        FileMover.move(Paths.get(image.getPath()), Paths.get(newImagePath));
+        recordMove(image, newImagePath);
+    }
+
+    /**
+     * Moves the files of the images to the directory with {@link #MOVE_PARALLELISM} threads.
+     *
+     * @param images    the images that need to be moved
+     * @param directory the new location path
+     * @return a report of what was done to every image.
+     * @see #moveImagesToDirectory(Collection, String, int, MoveProgressListener)
+     */
+    public BatchMoveReport moveImagesToDirectory(Collection<Image> images, String directory) {
+        return moveImagesToDirectory(images, directory, MOVE_PARALLELISM, null);
+    }
+
+    /**
+     * Moves the files of the images to the directory. Pending renames are committed first. The files are moved
+     * concurrently by at most parallelism threads, each renamed atomically when the directory is on the same file
+     * system and copied otherwise. Once every file is done, the images that were moved get their new paths on the
+     * calling thread and are published to the listeners as one batch. An image already in the directory is
+     * skipped, and an image whose file cannot be moved is left unchanged. A file is never replaced: an image whose
+     * new path is taken by a file, or by another image of the batch planned before it, fails. If the calling
+     * thread is interrupted, the moves not started yet fail and the files already moved are still recorded.
+     *
+     * @param images      the images that need to be moved
+     * @param directory   the new location path
+     * @param parallelism the largest number of files moved at the same time
+     * @param listener    notified after every file, from the moving threads, or null
+     * @return a report of what was done to every image.
+     * @see FileMover
+     * @see BatchMoveReport
+     */
+    public BatchMoveReport moveImagesToDirectory(Collection<Image> images, String directory, int parallelism,
+                                                 MoveProgressListener listener) {
+        BatchMoveReport report = new BatchMoveReport();
+        commitPendingRenames();
+        LinkedHashMap<Image, String> newPaths = new LinkedHashMap<>();
+        HashSet<String> targets = new HashSet<>();
+        for (Image image : images) {
+            String newPath = directory + File.separator + image.getName() + "." + image.getType();
+            if (normalizePath(newPath).equals(normalizePath(image.getPath()))) {
+                report.record(image, BatchMoveReport.Outcome.SKIPPED);
+            } else if (!targets.add(normalizePath(newPath)) || Files.exists(Paths.get(newPath))) {
+                report.recordFailure(image, new FileAlreadyExistsException(newPath));
+                GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot move " + image.getPath() + ": " + newPath
+                        + " already exists");
+            } else {
+                newPaths.put(image, newPath);
+            }
+        }
+        if (newPaths.isEmpty()) {
+            return report;
+        }
+        final int total = newPaths.size();
+        final AtomicInteger completed = new AtomicInteger();
+        ArrayList<Callable<Exception>> moves = new ArrayList<>(total);
+        for (Map.Entry<Image, String> entry : newPaths.entrySet()) {
+            final Path source = Paths.get(entry.getKey().getPath());
+            final Path target = Paths.get(entry.getValue());
+            moves.add(() -> {
+                Exception failure = null;
+                try {
+                    FileMover.move(source, target);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                if (listener != null) {
+                    listener.progressed(completed.incrementAndGet(), total);
+                }
+                return failure;
+            });
+        }
+        List<Future<Exception>> results = runAll(
+                Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, total))), moves);
+        eventBus.beginBatch();
+        try {
+            int i = 0;
+            for (Map.Entry<Image, String> entry : newPaths.entrySet()) {
+                Image image = entry.getKey();
+                Exception failure = failure(results.get(i));
+                if (failure == null) {
+                    recordMove(image, entry.getValue());
+                    report.record(image, BatchMoveReport.Outcome.MOVED);
+                } else {
+                    report.recordFailure(image, failure);
+                    GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot move " + image.getPath() + ": " + failure);
+                }
+                i++;
+            }
+        } finally {
+            eventBus.endBatch();
+        }
+        GoGoPhotoSystem.logger.log(Level.FINE, "Moved " + report.getImages(BatchMoveReport.Outcome.MOVED).size()
+                + " images to " + directory);
+        return report;
+    }
+
+    /**
+     * Returns why a move run by the pool failed.
+     *
+     * @param result the result of the move
+     * @return the reason of the failure, or null if the file was moved.
+     */
+    private Exception failure(Future<Exception> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Runs the tasks on the pool and waits until the pool has terminated, so that every task that has started is
+     * finished when this returns. If the calling thread is interrupted, the tasks that have not started yet fail
+     * with a CancellationException instead of running, the tasks already running are still waited for, and the
+     * interrupt is restored afterwards.
+     *
+     * @param pool  the pool running the tasks, shut down by this method
+     * @param tasks the tasks to run
+     * @param <T>   the type of the results of the tasks
+     * @return the futures of the tasks, in the order of the tasks, all done.
+     */
+    private static <T> List<Future<T>> runAll(ExecutorService pool, List<Callable<T>> tasks) {
+        AtomicBoolean stopped = new AtomicBoolean();
+        ArrayList<Future<T>> results = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            results.add(pool.submit(() -> {
+                if (stopped.get()) {
+                    throw new CancellationException("The caller was interrupted");
+                }
+                return task.call();
+            }));
+        }
+        pool.shutdown();
+        boolean interrupted = false;
+        while (!pool.isTerminated()) {
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                stopped.set(true);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+
+    /**
+     * Sets the new path of an image whose file has been moved, keeps the path index and, in sidecar mode, the
+     * sidecar files up to date, and publishes the move.
+     *
+     * @param image   the image that has been moved
+     * @param newPath the new path of the image
+     */
+    private void recordMove(Image image, String newPath) {
+        String oldPath = image.getPath();
+        image.setPath(newPath);
+        reindexPath(image, oldPath);
+        if (tagStorage == TagStorage.SIDECAR && sidecar.getTags(oldPath) != null) {
+            sidecar.moveTags(oldPath, newPath, image.getTags());
+        }
+        eventBus.publish(new CatalogEvent.ImageMoved(image, oldPath));
     }
 
     /**
      * Sets image name as a old version name(input name). And adjusts corresponding tag records in image's tag set.
-     * Also, records the renaming record.
+     * Also, records the renaming record. In sidecar mode, the sidecar file then holds the tags of the old name.
+     * If the file cannot be renamed, the image is left unchanged.
      *
      * @param image the image that need to be resetted name
      * @param name  the name that the image's name  need to be set.
@@ -135,49 +665,65 @@ public class ImageManager extends Observable implements Serializable {
     public void backToOldName(Image image, String name) {
         String oldName = name.substring(0, name.lastIndexOf("."));
         String curName = image.getName();
-        ArrayList<String> curTags = (ArrayList<String>) image.getTags().clone();
-        renameFile(image, oldName);
-        String[] oldTagsArray = oldName.split(" @");
-        ArrayList<String> oldTags = new ArrayList<>();
-        oldTags.addAll(Arrays.asList(oldTagsArray).subList(1, oldTagsArray.length));
-        for (String tag : curTags) {
-            if (!oldTags.contains(tag)) {
-                updateDownTags(image, tag);
+        String curPath = image.getPath();
+        ArrayList<String> curTags = image.getTags();
+        eventBus.beginBatch();
+        try {
+            if (!renameFile(image, oldName)) {
+                return;
             }
-        }
-        for (String tag : oldTags) {
-            if (!curTags.contains(tag)) {
-                updateUpTags(image, tag);
+            List<String> oldTags = TagNameCodec.parseTags(oldName);
+            for (String tag : curTags) {
+                if (!oldTags.contains(tag)) {
+                    updateDownTags(image, tag);
+                }
+            }
+            for (String tag : oldTags) {
+                if (!curTags.contains(tag)) {
+                    updateUpTags(image, tag);
+                }
             }
+        } finally {
+            eventBus.endBatch();
+        }
+        if (tagStorage == TagStorage.SIDECAR) {
+            sidecar.moveTags(curPath, image.getPath(), image.getTags());
+        }
+        if (!writeBehind) {
+            GoGoPhotoSystem.logger.log(Level.FINE, "Changes from current name: " + curName +
+                    ", to new name: " + image.getFullName());
         }
-        GoGoPhotoSystem.logger.log(Level.FINE, "Changes from current name: " + curName +
-                ", to new name: " + image.getFullName());
     }
 
     /**
      * Delete a tag from the given image. The given tag name to be deleted doesn't include "@" prefix. When this method
      * is called, the actual image file's name is also updated. Also, the new file name is added to the
      * renamingHistory and the tag is deleted from the image's tag set. TagManager will then be notified and update its
-     * tag set as the tag is deleted from the Image.
+     * tag set as the tag is deleted from the Image. In sidecar mode, the file is not renamed, and the deletion is
+     * appended to the sidecar file instead. If the file cannot be renamed, the image is left unchanged.
      *
      * @param image the image that is manipulated
      * @param tag   the tag that is deleted.
      */
     public void deleteTagFromName(Image image, String tag) {
-
-        String[] nameParts = image.getName().split(" @");
-        StringBuilder newFileName = new StringBuilder();
-        newFileName.append(nameParts[0]);
-        for (int i = 1; i < nameParts.length; i++) {
-            if (!nameParts[i].equals(tag)) {
-                newFileName.append(" @");
-                newFileName.append(nameParts[i]);
-            }
+        if (tagStorage == TagStorage.SIDECAR) {
+            editSidecarTag(image, tag, false);
+            return;
         }
+        String newFileName = TagNameCodec.withoutTag(image.getName(), tag);
         String oldName = image.getFullName();
-        this.renameFile(image, newFileName.toString());
-        updateDownTags(image, tag);
-        GoGoPhotoSystem.logger.log(Level.FINE, "Old Name: " + oldName + ", New Name: " + image.getFullName());
+        eventBus.beginBatch();
+        try {
+            if (!this.renameFile(image, newFileName)) {
+                return;
+            }
+            updateDownTags(image, tag);
+        } finally {
+            eventBus.endBatch();
+        }
+        if (!writeBehind) {
+            GoGoPhotoSystem.logger.log(Level.FINE, "Old Name: " + oldName + ", New Name: " + image.getFullName());
+        }
 
 
     }
@@ -186,34 +732,274 @@ public class ImageManager extends Observable implements Serializable {
      * Adds a tag to the given image. The given tag name to be added doesn't include "@" prefix. When this method is
      * called, the actual image file's name is also updated. Also, the new name is added to the renamingHistory and the
      * tag is added to the image's tag set. TagManager will then be notified and update its tag set as a new tag is
-     * added to an Image.
+     * added to an Image. In sidecar mode, the file is not renamed, and the tag is appended to the sidecar file
+     * instead. If the file cannot be renamed, the image is left unchanged.
      *
      * @param image The image to be added tag on
      * @param tag   the tag to be added on.
-     * @see Observable
+     * @throws IllegalArgumentException indicates that the tag is not valid, or that the new file name would be too
+     *                                  long; the image is left unchanged.
+     * @see CatalogEventBus
      * @see TagManager
+     * @see TagNameCodec
      */
     public void addTagToName(Image image, String tag) {
+        TagNameCodec.checkTag(tag);
+        if (tagStorage == TagStorage.SIDECAR) {
+            editSidecarTag(image, tag, true);
+            return;
+        }
         String oldName = image.getFullName();
-        String newFileName = image.getName() + " @" + tag;
-        this.renameFile(image, newFileName);
-        updateUpTags(image, tag);
-        GoGoPhotoSystem.logger.log(Level.FINE, "Old Name: " + oldName + ", New Name" + image.getFullName());
+        String newFileName = TagNameCodec.withTag(image.getName(), tag);
+        TagNameCodec.checkFileName(newFileName, image.getType());
+        eventBus.beginBatch();
+        try {
+            if (!this.renameFile(image, newFileName)) {
+                return;
+            }
+            updateUpTags(image, tag);
+        } finally {
+            eventBus.endBatch();
+        }
+        if (!writeBehind) {
+            GoGoPhotoSystem.logger.log(Level.FINE, "Old Name: " + oldName + ", New Name" + image.getFullName());
+        }
+    }
+
+    /**
+     * Adds a tag to or deletes a tag from the image in sidecar mode, appending the change to the sidecar file of
+     * its directory without renaming the file.
+     *
+     * @param image the image that is manipulated
+     * @param tag   the tag added or deleted
+     * @param added whether the tag is added (true) or deleted (false)
+     */
+    private void editSidecarTag(Image image, String tag, boolean added) {
+        if (added) {
+            updateUpTags(image, tag);
+        } else {
+            updateDownTags(image, tag);
+        }
+        sidecar.recordTag(image.getPath(), image.getTags(), tag, added);
+        GoGoPhotoSystem.logger.log(Level.FINE, (added ? "Tag added to " : "Tag deleted from ")
+                + image.getFullName() + ": " + tag);
+    }
+
+    /**
+     * Adds a tag to every given image that does not have it yet. The given tag name doesn't include "@" prefix.
+     * All the new file names are planned first, then the files are renamed concurrently by at most
+     * {@link #RENAME_PARALLELISM} threads, and finally the images that were renamed are updated in memory on the
+     * calling thread and published to the listeners as one batch, so that TagManager updates the tag count once.
+     * In sidecar mode no file is renamed, and the tag is appended once to the sidecar file of every directory.
+     *
+     * The images whose new file name would be too long are reported as failed and left unchanged.
+     *
+     * @param images the images to be added tag on
+     * @param tag    the tag to be added on.
+     * @return a report of what was done to every image.
+     * @throws IllegalArgumentException indicates that the tag is not valid; no image is changed.
+     * @see BulkTagReport
+     * @see TagNameCodec
+     */
+    public BulkTagReport addTagToImages(Collection<Image> images, String tag) {
+        TagNameCodec.checkTag(tag);
+        BulkTagReport report = new BulkTagReport();
+        LinkedHashMap<Image, String> newNames = new LinkedHashMap<>();
+        for (Image image : images) {
+            if (image.hasTag(tag)) {
+                report.record(image, BulkTagReport.Outcome.SKIPPED);
+            } else {
+                String newFileName = TagNameCodec.withTag(image.getName(), tag);
+                try {
+                    if (tagStorage == TagStorage.FILENAME) {
+                        TagNameCodec.checkFileName(newFileName, image.getType());
+                    }
+                    newNames.put(image, newFileName);
+                } catch (IllegalArgumentException e) {
+                    GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot tag " + image.getFullName() + ": "
+                            + e.getMessage());
+                    report.record(image, BulkTagReport.Outcome.FAILED);
+                }
+            }
+        }
+        applyTagEdits(newNames, tag, true, report);
+        return report;
+    }
+
+    /**
+     * Deletes a tag from every given image that has it. The given tag name doesn't include "@" prefix.
+     * The files are renamed as in {@link #addTagToImages(Collection, String)}.
+     *
+     * @param images the images that are manipulated
+     * @param tag    the tag that is deleted.
+     * @return a report of what was done to every image.
+     * @see BulkTagReport
+     */
+    public BulkTagReport deleteTagFromImages(Collection<Image> images, String tag) {
+        BulkTagReport report = new BulkTagReport();
+        LinkedHashMap<Image, String> newNames = new LinkedHashMap<>();
+        for (Image image : images) {
+            if (!image.hasTag(tag)) {
+                report.record(image, BulkTagReport.Outcome.SKIPPED);
+            } else {
+                newNames.put(image, TagNameCodec.withoutTag(image.getName(), tag));
+            }
+        }
+        applyTagEdits(newNames, tag, false, report);
+        return report;
+    }
+
+    /**
+     * Renames the files of the images to their planned new names concurrently, then records the renames and the
+     * tag change of every image whose file was renamed, publishing them to the listeners as one batch. A file is
+     * never replaced: an image whose new path is taken by a file, or by another image of the batch planned before
+     * it, fails.
+     *
+     * @param newNames the planned new name of every image to change
+     * @param tag      the tag added or removed
+     * @param added    whether the tag is added (true) or removed (false)
+     * @param report   the report receiving the outcome of every image
+     */
+    private void applyTagEdits(LinkedHashMap<Image, String> newNames, String tag, boolean added,
+                               BulkTagReport report) {
+        if (newNames.isEmpty()) {
+            return;
+        }
+        if (tagStorage == TagStorage.SIDECAR) {
+            applySidecarTagEdits(newNames.keySet(), tag, added, report);
+            return;
+        }
+        commitPendingRenames();
+        HashSet<String> targets = new HashSet<>();
+        Iterator<Map.Entry<Image, String>> planned = newNames.entrySet().iterator();
+        while (planned.hasNext()) {
+            Map.Entry<Image, String> entry = planned.next();
+            String newPath = pathForName(entry.getKey(), entry.getValue());
+            if (!targets.add(normalizePath(newPath)) || Files.exists(Paths.get(newPath))) {
+                report.record(entry.getKey(), BulkTagReport.Outcome.FAILED);
+                GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot rename " + entry.getKey().getPath() + ": "
+                        + newPath + " already exists");
+                planned.remove();
+            }
+        }
+        if (newNames.isEmpty()) {
+            return;
+        }
+        ArrayList<Callable<Boolean>> renames = new ArrayList<>(newNames.size());
+        for (Map.Entry<Image, String> entry : newNames.entrySet()) {
+            final Path source = Paths.get(entry.getKey().getPath());
+            final Path target = Paths.get(pathForName(entry.getKey(), entry.getValue()));
+            renames.add(() -> {
+                try {
+                    Files.move(source, target);
+                    return true;
+                } catch (IOException e) {
+                    GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot rename " + source + " to " + target + ": " + e);
+                    return false;
+                }
+            });
+        }
+        List<Future<Boolean>> results = runAll(
+                Executors.newFixedThreadPool(Math.min(RENAME_PARALLELISM, renames.size())), renames);
+        eventBus.beginBatch();
+        try {
+            int i = 0;
+            for (Map.Entry<Image, String> entry : newNames.entrySet()) {
+                Image image = entry.getKey();
+                if (renamed(results.get(i))) {
+                    String oldName = image.getFullName();
+                    String oldPath = image.getPath();
+                    recordRename(image, entry.getValue());
+                    image.addNewNameToHistory(entry.getValue());
+                    eventBus.publish(new CatalogEvent.ImageRenamed(image, oldPath));
+                    if (added) {
+                        updateUpTags(image, tag);
+                    } else {
+                        updateDownTags(image, tag);
+                    }
+                    report.record(image, BulkTagReport.Outcome.CHANGED);
+                    GoGoPhotoSystem.logger.log(Level.FINE, "Old Name: " + oldName + ", New Name: "
+                            + image.getFullName());
+                } else {
+                    report.record(image, BulkTagReport.Outcome.FAILED);
+                }
+                i++;
+            }
+        } finally {
+            eventBus.endBatch();
+        }
+    }
+
+    /**
+     * Records the tag change of every image in memory as one batch, then appends it to the sidecar files of
+     * their directories, without renaming any file.
+     *
+     * @param images the images to change
+     * @param tag    the tag added or removed
+     * @param added  whether the tag is added (true) or removed (false)
+     * @param report the report receiving the outcome of every image
+     */
+    private void applySidecarTagEdits(Collection<Image> images, String tag, boolean added, BulkTagReport report) {
+        LinkedHashMap<String, List<String>> tags = new LinkedHashMap<>();
+        eventBus.beginBatch();
+        try {
+            for (Image image : images) {
+                if (added) {
+                    updateUpTags(image, tag);
+                } else {
+                    updateDownTags(image, tag);
+                }
+                tags.put(image.getPath(), image.getTags());
+                report.record(image, BulkTagReport.Outcome.CHANGED);
+            }
+        } finally {
+            eventBus.endBatch();
+        }
+        sidecar.recordTag(tags, tag, added);
+        GoGoPhotoSystem.logger.log(Level.FINE, (added ? "Tag added to " : "Tag deleted from ") + images.size()
+                + " images: " + tag);
     }
 
     /**
-     * Saves the images(the arraylist of images in the ImageManager) to the given filePath
+     * Returns whether a rename run by the pool succeeded.
+     *
+     * @param result the result of the rename
+     * @return true if the file was renamed.
+     */
+    private boolean renamed(Future<Boolean> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Saves the images(the arraylist of images in the ImageManager) to the given filePath, in the binary catalog
+     * format. Pending renames are committed first, so that the saved images match the files. The catalog is
+     * written to a new file renamed over the old one, so that an open catalog file is never written while it is
+     * mapped, and a failed save leaves the old file whole.
      *
      * @param filePath saves the image to the given path
      * @throws IOException indicates that Saving the images fails.
+     * @see CatalogFormat
      */
     void saveToImageManagerFile(String filePath) throws IOException {
-        OutputStream file = new FileOutputStream(filePath);
-        OutputStream buffer = new BufferedOutputStream(file);
-        ObjectOutput output = new ObjectOutputStream(buffer);
-        // serialize the imageManager
-        output.writeObject(images);
-        output.close();
+        commitPendingRenames();
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        OutputStream file = new FileOutputStream(temporary.toFile());
+        OutputStream buffer = new BufferedOutputStream(file, 64 * 1024);
+        try {
+            CatalogFormat.write(allImages(), buffer);
+        } finally {
+            buffer.close();
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
 
@@ -225,64 +1011,432 @@ public class ImageManager extends Observable implements Serializable {
      * @return returns true if the given image's tags include the newTag.
      */
     public boolean foundTag(Image image, String newTag) {
-        for (Tag t : image.getTagList()) {
-            if (t.getName().equals("@" + newTag)) {
-                return true;
-            }
-        }
-        return false;
+        return image.hasTag(newTag);
     }
 
     /**
-     * Adds input tag to image's tag set. And it will notify the change to all observers.
+     * Adds input tag to image's tag set. And it will publish the change to all listeners as a
+     * {@link CatalogEvent.TagAdded}.
      *
      * @param image the image that is manipulated.
      * @param tag   the tag that is added to the image.
-     * @see Observable
+     * @see CatalogEventBus
      * @see TagManager
      */
     private void updateUpTags(Image image, String tag) {
-        image.getTags().add(tag);
-        String[] tagAndType = {tag, "U"};
-        setChanged();
-        notifyObservers(tagAndType);
-        //add a suffix "U" here to let Observers know that we want to update up
+        image.addTag(tag);
+        assignId(image);
+        eventBus.publish(new CatalogEvent.TagAdded(image, tag));
     }
 
     /**
-     * Removes input tag from image's tag set. And it will notify the change to all observers.
+     * Removes input tag from image's tag set. And it will publish the change to all listeners as a
+     * {@link CatalogEvent.TagRemoved}.
      *
      * @param image the image that is manipulated.
      * @param tag   the tag that is removed to the image.
-     * @see Observable
+     * @see CatalogEventBus
      * @see TagManager
      */
     private void updateDownTags(Image image, String tag) {
-        image.getTags().remove(tag);
-        String[] tagAndType = {tag, "D"};
-        setChanged();
-        notifyObservers(tagAndType);
-        //add a suffix "D" here to let Observers know that we want to update down
+        image.removeTag(tag);
+        assignId(image);
+        eventBus.publish(new CatalogEvent.TagRemoved(image, tag));
+    }
+
+    /**
+     * Adds an image read from a journal, without tags; the tags it had follow as their own records.
+     *
+     * @param image the image added
+     * @see CatalogJournal
+     */
+    void replayAdded(Image image) {
+        addWithTags(image, Collections.<String>emptyList());
+    }
+
+    /**
+     * Renames an image as read from a journal, without touching its file, which has already been renamed.
+     *
+     * @param image   the image renamed
+     * @param newName the new name, without the file type suffix
+     * @param newPath the new path of the image
+     * @see CatalogJournal
+     */
+    void replayRenamed(Image image, String newName, String newPath) {
+        String oldPath = image.getPath();
+        image.setName(newName);
+        image.setPath(newPath);
+        reindexPath(image, oldPath);
+        image.addNewNameToHistory(newName);
+        eventBus.publish(new CatalogEvent.ImageRenamed(image, oldPath));
+    }
+
+    /**
+     * Moves an image as read from a journal, without touching its file, which has already been moved.
+     *
+     * @param image   the image moved
+     * @param newPath the new path of the image
+     * @see CatalogJournal
+     */
+    void replayMoved(Image image, String newPath) {
+        String oldPath = image.getPath();
+        image.setPath(newPath);
+        reindexPath(image, oldPath);
+        eventBus.publish(new CatalogEvent.ImageMoved(image, oldPath));
+    }
+
+    /**
+     * Adds a tag to or removes a tag from an image as read from a journal, unless the image already has or lacks
+     * the tag.
+     *
+     * @param image the image that is manipulated
+     * @param tag   the tag added or removed
+     * @param added whether the tag is added (true) or removed (false)
+     * @see CatalogJournal
+     */
+    void replayTag(Image image, String tag, boolean added) {
+        if (image.hasTag(tag) == added) {
+            return;
+        }
+        if (added) {
+            updateUpTags(image, tag);
+        } else {
+            updateDownTags(image, tag);
+        }
     }
 
     /**
      * Sets input images as ImageManager's image set.
      *
      * @param images the image set that is set as ImageManager's image set.
-     * @see Observable
      * @see TagManager
      * @see GoGoPhotoSystem
      */
     public void setImages(ArrayList<Image> images) {
+        if (catalog != null) {
+            eventBus.unsubscribe(catalog);
+            catalog = null;
+        }
         this.images = images;
+        rebuildPathIndex();
     }
 
     /**
-     * Returns ImageManager's image set.
+     * Adds the input image to the path index, unless another image is already indexed under the same path.
+     *
+     * @param image the image to index.
+     */
+    private void indexPath(Image image) {
+        String key = normalizePath(image.getPath());
+        if (!pathIndex.containsKey(key)) {
+            pathIndex.put(key, image);
+            sortedPaths.put(key, image);
+        }
+    }
+
+    /**
+     * Moves the input image in the path index from its old path to its current path, if the image is
+     * managed by this ImageManager.
+     *
+     * @param image   the image whose path has changed.
+     * @param oldPath the path of the image before the change.
+     */
+    private void reindexPath(Image image, String oldPath) {
+        String oldKey = normalizePath(oldPath);
+        if (pathIndex.get(oldKey) == image) {
+            pathIndex.remove(oldKey);
+            sortedPaths.remove(oldKey);
+            String newKey = normalizePath(image.getPath());
+            pathIndex.put(newKey, image);
+            sortedPaths.put(newKey, image);
+        } else if (catalog != null && image.getId() < catalog.size() && catalog.get(image.getId()) == image) {
+            indexPath(image);
+        }
+    }
+
+    /**
+     * Rebuilds the path index and gives the images their IDs again from {@link #images}, which is needed when
+     * the image set is replaced.
+     */
+    private void rebuildPathIndex() {
+        pathIndex = new HashMap<>(Math.max(16, (int) (images.size() / 0.75f) + 1));
+        sortedPaths = new TreeMap<>();
+        imagesById = new ArrayList<>(images.size());
+        for (Image image : images) {
+            indexPath(image);
+            assignId(image);
+        }
+    }
+
+    /**
+     * Gives the input image the next dense integer ID, unless it already has an ID of this ImageManager.
+     *
+     * @param image the image to give an ID.
+     * @return the ID of the image.
+     */
+    int assignId(Image image) {
+        int id = image.getId();
+        if (id < 0 || id >= imagesById.size() || getImageById(id) != image) {
+            id = imagesById.size();
+            imagesById.add(image);
+            image.setId(id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the image with the input dense integer ID.
+     *
+     * @param id the ID of the image.
+     * @return the image with the ID, or null if there is none.
+     */
+    Image getImageById(int id) {
+        if (id < 0 || id >= imagesById.size()) {
+            return null;
+        }
+        Image image = imagesById.get(id);
+        return image == null && catalog != null ? catalog.get(id) : image;
+    }
+
+    /**
+     * Returns the number of IDs given so far. Every ID is smaller than this number.
+     *
+     * @return the number of IDs given so far.
+     */
+    int getIdCount() {
+        return imagesById.size();
+    }
+
+    /**
+     * Returns the images whose path lies under the input directory, sub-directories included, read from the
+     * sorted path index.
+     *
+     * @param directory the path of the directory
+     * @return the images under the directory, in the order of their paths, or null while a catalog file is open,
+     * since the images of the catalog are not in the sorted path index.
+     * @see #openCatalog(File)
+     */
+    Collection<Image> findImagesUnder(String directory) {
+        if (catalog != null) {
+            return null;
+        }
+        String prefix = normalizePath(directory);
+        if (!prefix.endsWith(File.separator)) {
+            prefix = prefix + File.separator;
+        }
+        return sortedPaths.subMap(prefix, prefix + Character.MAX_VALUE).values();
+    }
+
+    /**
+     * Returns whether the path of the image lies under the input directory, sub-directories included.
+     *
+     * @param image     the image
+     * @param directory the path of the directory
+     * @return true if the image is under the directory.
+     */
+    static boolean isUnder(Image image, String directory) {
+        String prefix = normalizePath(directory);
+        if (!prefix.endsWith(File.separator)) {
+            prefix = prefix + File.separator;
+        }
+        return normalizePath(image.getPath()).startsWith(prefix);
+    }
+
+    /**
+     * Returns the normalized form of the input path, so that different spellings of the same path
+     * (such as "./a/b.jpg" and "a/b.jpg") find the same image.
+     *
+     * @param path the path to normalize.
+     * @return the normalized path.
+     */
+    private static String normalizePath(String path) {
+        return Paths.get(path).normalize().toString();
+    }
+
+    /**
+     * Rebuilds the path index and the IDs after this ImageManager has been deserialized.
+     *
+     * @param input the stream this ImageManager is read from.
+     * @throws IOException            indicates that reading this ImageManager fails.
+     * @throws ClassNotFoundException indicates that reading this ImageManager fails.
+     */
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        eventBus = new CatalogEventBus();
+        pendingRenames = new LinkedHashMap<>();
+        commitExecutor = Runnable::run;
+        tagStorage = TagStorage.FILENAME;
+        sidecar = new TagSidecar();
+        rebuildPathIndex();
+    }
+
+    /**
+     * Returns the bus delivering every change made to the images.
+     *
+     * @return the CatalogEventBus of this ImageManager.
+     * @see CatalogEventBus
+     */
+    public CatalogEventBus getEventBus() {
+        return eventBus;
+    }
+
+    /**
+     * Returns ImageManager's image set. Images have to be added through addImage, addChosenImage or setImages
+     * to be found by foundImage. If a catalog file is open, every saved image is read from it first, and the
+     * catalog is closed.
      *
      * @return the ImageManager's image set.
+     * @see #openCatalog(File)
      */
     public ArrayList<Image> getImages() {
+        if (catalog != null) {
+            ArrayList<Image> all = new ArrayList<>(catalog.size() + images.size());
+            for (int id = 0; id < catalog.size(); id++) {
+                Image image = catalog.get(id);
+                imagesById.set(id, image);
+                indexPath(image);
+                all.add(image);
+            }
+            all.addAll(images);
+            images = all;
+            eventBus.unsubscribe(catalog);
+            catalog = null;
+        }
         return images;
     }
+
+    /**
+     * Returns every image of this ImageManager without reading the whole catalog file at once: the images of an
+     * open catalog file are read one at a time as the collection is iterated.
+     *
+     * @return every image, the saved ones first.
+     */
+    Collection<Image> allImages() {
+        final LazyCatalog source = catalog;
+        if (source == null) {
+            return images;
+        }
+        final ArrayList<Image> added = images;
+        return new AbstractCollection<Image>() {
+            @Override
+            public Iterator<Image> iterator() {
+                return new Iterator<Image>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size();
+                    }
+
+                    @Override
+                    public Image next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = next++;
+                        return i < source.size() ? source.get(i) : added.get(i - source.size());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return source.size() + added.size();
+            }
+        };
+    }
+
+    /**
+     * Reads the saved images lazily from a catalog file in the {@link CatalogFormat}: the file is mapped, and an
+     * image is only read from it when it is looked up by path or by ID. The images added before are forgotten.
+     *
+     * @param file the catalog file
+     * @throws IOException indicates that the file cannot be mapped, is damaged or is of a later version.
+     * @see MappedCatalog
+     */
+    void openCatalog(File file) throws IOException {
+        openCatalog(new MappedCatalog(file));
+    }
+
+    /**
+     * Reads the saved images lazily from the input catalog: an image is only read from it when it is looked up by
+     * path or by ID. The images added before are forgotten.
+     *
+     * @param opened the catalog
+     * @see LazyCatalog
+     */
+    void openCatalog(LazyCatalog opened) {
+        if (catalog != null) {
+            eventBus.unsubscribe(catalog);
+        }
+        catalog = opened;
+        images = new ArrayList<>();
+        pathIndex = new HashMap<>();
+        sortedPaths = new TreeMap<>();
+        imagesById = new ArrayList<>(Collections.<Image>nCopies(catalog.size(), null));
+        eventBus.subscribe(catalog);
+    }
+
+    /**
+     * Replaces the content of the tag index with the tags of every image, reading the tags of an open catalog file
+     * without reading its images.
+     *
+     * @param index the tag index
+     */
+    void indexTags(TagIndex index) {
+        index.rebuild(images);
+        if (catalog != null) {
+            catalog.forEachTag(index::add);
+        }
+    }
+
+    /**
+     * Where the tags of the images are stored.
+     *
+     * @see #setTagStorage(TagStorage)
+     */
+    public enum TagStorage {
+        /**
+         * The tags of an image are kept in its file name, as " @tag" after the name.
+         */
+        FILENAME,
+
+        /**
+         * The tags of an image are kept in a sidecar file in its directory, and its file name is left untouched.
+         */
+        SIDECAR
+    }
+
+    /**
+     * The file of an image renamed in write-behind mode, as it still is on disk.
+     */
+    private static class PendingRename {
+        /**
+         * The path of the file on disk.
+         */
+        private final String diskPath;
+
+        /**
+         * The name of the file on disk, without the file type suffix.
+         */
+        private final String diskName;
+
+        /**
+         * The tags the image had when the file got its name.
+         */
+        private final ArrayList<String> diskTags;
+
+        /**
+         * Creates a PendingRename.
+         *
+         * @param diskPath the path of the file on disk
+         * @param diskName the name of the file on disk, without the file type suffix
+         * @param diskTags the tags the image had when the file got its name
+         */
+        PendingRename(String diskPath, String diskName, ArrayList<String> diskTags) {
+            this.diskPath = diskPath;
+            this.diskName = diskName;
+            this.diskTags = diskTags;
+        }
+    }
 }
@@ -4,6 +4,12 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -19,6 +25,21 @@ class ImageManagerTest {
         im.deleteTagFromName(image,"helloJava");
     }
 
+    // the addition and the tags parsed from the name are delivered in one batch
+    @Test
+    void test1ImageManagerAddImage() {
+        Image image = new Image("notExisting @helloJava @helloPaul", "jpg",
+                "./UnittestPictures/notExisting @helloJava @helloPaul.jpg");
+        ImageManager im = new ImageManager();
+        ArrayList<CatalogEventBatch> batches = new ArrayList<>();
+        im.getEventBus().subscribe(batches::add);
+        im.addImage(image);
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).getEvents().size());
+        assertTrue(batches.get(0).getEvents().get(0) instanceof CatalogEvent.ImageAdded);
+        assertEquals(1, (int) batches.get(0).getTagDeltas().get("helloPaul"));
+    }
+
     @Test
     //not found the image
     void test1ImageManagerFoundImage() {
@@ -27,6 +48,34 @@ class ImageManagerTest {
         assertEquals(null, im.foundImage(image.getPath()));
     }
 
+    // found after renaming and under another spelling of the path
+    @Test
+    void test2ImageManagerFoundImage() throws IOException {
+        Path file = Files.createFile(Paths.get("./UnittestPictures/found @helloJava.jpg"));
+        try {
+            Image image = new Image("found @helloJava", "jpg", file.toString());
+            ImageManager im = new ImageManager();
+            im.addImage(image);
+            im.renameFile(image, "found @helloPaul");
+            assertNull(im.foundImage("./UnittestPictures/found @helloJava.jpg"));
+            assertEquals(image, im.foundImage("UnittestPictures/found @helloPaul.jpg"));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(Paths.get("./UnittestPictures/found @helloPaul.jpg"));
+        }
+    }
+
+    // found after setting the image set
+    @Test
+    void test3ImageManagerFoundImage() {
+        Image image = new Image("IMG_454", "jpg", "./UnittestPictures/IMG_454.jpg");
+        ImageManager im = new ImageManager();
+        ArrayList<Image> images = new ArrayList<>();
+        images.add(image);
+        im.setImages(images);
+        assertEquals(image, im.foundImage(image.getPath()));
+    }
+
     @Test
     void testImageManagerRenameFile(){
         Image image = new Image("IMG_454", "jpg", "./UnittestPictures/IMG_454.jpg");
@@ -154,6 +203,364 @@ class ImageManagerTest {
         im.deleteTagFromName(image, "cindy");
     }
 
+    @Test
+    void testImageManagerAddTagToImages() {
+        Image image = new Image("IMG_4892", "jpg", "./UnittestPictures/IMG_4892.jpg");
+        Image missing = new Image("notExisting", "jpg", "./UnittestPictures/notExisting.jpg");
+        ImageManager im = new ImageManager();
+        TagManager tm = new TagManager();
+        im.getEventBus().subscribe(tm);
+        ArrayList<Image> images = new ArrayList<>();
+        images.add(image);
+        images.add(missing);
+        BulkTagReport report = im.addTagToImages(images, "helloJava");
+        assertEquals(BulkTagReport.Outcome.CHANGED, report.getOutcome(image));
+        assertEquals(BulkTagReport.Outcome.FAILED, report.getOutcome(missing));
+        assertEquals("IMG_4892 @helloJava", image.getName());
+        assertTrue(new File("./UnittestPictures/IMG_4892 @helloJava.jpg").exists());
+        assertEquals("notExisting", missing.getName());
+        assertEquals(1, (int) tm.getTags().get("helloJava"));
+        assertEquals(BulkTagReport.Outcome.SKIPPED, im.addTagToImages(images, "helloJava").getOutcome(image));
+        report = im.deleteTagFromImages(images, "helloJava");
+        assertEquals(BulkTagReport.Outcome.CHANGED, report.getOutcome(image));
+        assertEquals(BulkTagReport.Outcome.SKIPPED, report.getOutcome(missing));
+        assertEquals("IMG_4892", image.getName());
+        assertEquals(0, (int) tm.getTags().get("helloJava"));
+    }
+
+    // tag edits in a row rename the file once, and the rename is only published once the file has its new name
+    @Test
+    void testImageManagerWriteBehind() throws IOException {
+        Path directory = Files.createTempDirectory("writeBehind");
+        Path file = Files.createFile(directory.resolve("IMG_454.jpg"));
+        Path renamed = directory.resolve("IMG_454 @helloJava @helloPaul.jpg");
+        try {
+            Image image = new Image("IMG_454", "jpg", file.toString());
+            ImageManager im = new ImageManager();
+            im.addChosenImage(image);
+            ArrayList<String> oldPaths = new ArrayList<>();
+            im.getEventBus().subscribe(batch -> {
+                for (CatalogEvent event : batch.getEvents()) {
+                    if (event instanceof CatalogEvent.ImageRenamed) {
+                        oldPaths.add(((CatalogEvent.ImageRenamed) event).getOldPath());
+                    }
+                }
+            });
+            im.setWriteBehind(true);
+            im.addTagToName(image, "helloJava");
+            im.addTagToName(image, "helloPaul");
+            assertEquals("IMG_454 @helloJava @helloPaul", image.getName());
+            assertEquals(file.toString(), image.getPath());
+            assertTrue(Files.exists(file));
+            assertTrue(oldPaths.isEmpty());
+            im.commitPendingRenames();
+            assertTrue(Files.exists(renamed));
+            assertEquals(renamed.toString(), image.getPath());
+            assertEquals(image, im.foundImage(renamed.toString()));
+            assertEquals(2, image.getRenamingHistory().size());
+            assertEquals(1, oldPaths.size());
+            assertEquals(file.toString(), oldPaths.get(0));
+            im.setWriteBehind(false);
+            im.backToOldName(image, "IMG_454.jpg");
+            assertEquals("IMG_454", image.getName());
+            assertTrue(Files.exists(file));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(renamed);
+            Files.delete(directory);
+        }
+    }
+
+    // a file that cannot be renamed when the renames are committed leaves the image with the name and tags it had
+    @Test
+    void testImageManagerWriteBehindFailure() throws IOException {
+        Path directory = Files.createTempDirectory("writeBehind");
+        Path file = Files.createFile(directory.resolve("a @old.jpg"));
+        Path taken = Files.createFile(directory.resolve("a @old @new.jpg"));
+        try {
+            Image image = new Image("a @old", "jpg", file.toString());
+            ImageManager im = new ImageManager();
+            TagManager tm = new TagManager();
+            im.getEventBus().subscribe(tm);
+            im.addImage(image);
+            ArrayList<CatalogEvent> renames = new ArrayList<>();
+            im.getEventBus().subscribe(batch -> {
+                for (CatalogEvent event : batch.getEvents()) {
+                    if (event instanceof CatalogEvent.ImageRenamed) {
+                        renames.add(event);
+                    }
+                }
+            });
+            im.setWriteBehind(true);
+            im.addTagToName(image, "new");
+            assertEquals(1, (int) tm.getTags().get("new"));
+            im.commitPendingRenames();
+            assertEquals("a @old", image.getName());
+            assertEquals(file.toString(), image.getPath());
+            assertTrue(image.hasTag("old"));
+            assertFalse(image.hasTag("new"));
+            assertEquals(0, (int) tm.getTags().get("new"));
+            assertEquals(1, image.getRenamingHistory().size());
+            assertTrue(renames.isEmpty());
+            assertTrue(Files.exists(file));
+            assertTrue(Files.exists(taken));
+        } finally {
+            Files.delete(file);
+            Files.delete(taken);
+            Files.delete(directory);
+        }
+    }
+
+    // a file that cannot be renamed right away leaves the image unchanged, and nothing is recorded or published
+    @Test
+    void testImageManagerRenameFailure() throws IOException {
+        Path directory = Files.createTempDirectory("rename");
+        Path file = Files.createFile(directory.resolve("a @old.jpg"));
+        Path taken = Files.createFile(directory.resolve("a @old @new.jpg"));
+        try {
+            Image image = new Image("a @old", "jpg", file.toString());
+            Image missing = new Image("b", "jpg", directory.resolve("b.jpg").toString());
+            ImageManager im = new ImageManager();
+            TagManager tm = new TagManager();
+            im.getEventBus().subscribe(tm);
+            im.addImage(image);
+            im.addImage(missing);
+            ArrayList<CatalogEventBatch> batches = new ArrayList<>();
+            im.getEventBus().subscribe(batches::add);
+            im.addTagToName(image, "new");
+            im.addTagToName(missing, "new");
+            assertFalse(im.renameFile(missing, "c"));
+            im.backToOldName(missing, "d.jpg");
+            assertEquals("a @old", image.getName());
+            assertEquals(file.toString(), image.getPath());
+            assertFalse(image.hasTag("new"));
+            assertEquals(1, image.getRenamingHistory().size());
+            assertEquals("b", missing.getName());
+            assertEquals(directory.resolve("b.jpg").toString(), missing.getPath());
+            assertEquals(1, missing.getRenamingHistory().size());
+            assertFalse(tm.getTags().containsKey("new"));
+            assertEquals(image, im.foundImage(file.toString()));
+            assertTrue(batches.isEmpty());
+            assertTrue(Files.exists(file));
+            assertTrue(Files.exists(taken));
+        } finally {
+            Files.delete(file);
+            Files.delete(taken);
+            Files.delete(directory);
+        }
+    }
+
+    // tags go to the sidecar file and the file keeps its name
+    @Test
+    void testImageManagerSidecar() throws IOException {
+        Path directory = Files.createTempDirectory("sidecar");
+        Path file = Files.createFile(directory.resolve("a.jpg"));
+        try {
+            ImageManager im = new ImageManager();
+            im.setTagStorage(ImageManager.TagStorage.SIDECAR);
+            Image image = new Image("a", "jpg", file.toString());
+            im.addChosenImage(image);
+            im.addTagToName(image, "helloJava");
+            im.addTagToName(image, "helloPaul");
+            im.deleteTagFromName(image, "helloJava");
+            assertEquals("a", image.getName());
+            assertTrue(Files.exists(file));
+            assertEquals(1, image.getRenamingHistory().size());
+
+            ImageManager reopened = new ImageManager();
+            reopened.setTagStorage(ImageManager.TagStorage.SIDECAR);
+            Image found = new Image("a", "jpg", file.toString());
+            reopened.addImage(found);
+            assertEquals(found, reopened.foundImage(file.toString()));
+            assertEquals(1, found.getTags().size());
+            assertTrue(found.hasTag("helloPaul"));
+        } finally {
+            Files.deleteIfExists(directory.resolve(TagSidecar.FILE_NAME));
+            Files.delete(file);
+            Files.delete(directory);
+        }
+    }
+
+    // a sidecar file mostly made of undone lines is compacted as tags are edited, and when it is read again
+    @Test
+    void testImageManagerSidecarCompaction() throws IOException {
+        Path directory = Files.createTempDirectory("sidecar");
+        Path file = Files.createFile(directory.resolve("a.jpg"));
+        Path sidecar = directory.resolve(TagSidecar.FILE_NAME);
+        try {
+            ImageManager im = new ImageManager();
+            im.setTagStorage(ImageManager.TagStorage.SIDECAR);
+            Image image = new Image("a", "jpg", file.toString());
+            im.addChosenImage(image);
+            im.addTagToName(image, "kept");
+            for (int i = 0; i < 10 * TagSidecar.COMPACTION_MINIMUM; i++) {
+                im.addTagToName(image, "flip");
+                im.deleteTagFromName(image, "flip");
+            }
+            assertTrue(Files.readAllLines(sidecar).size() <= TagSidecar.COMPACTION_MINIMUM);
+
+            ArrayList<String> lines = new ArrayList<>(Files.readAllLines(sidecar));
+            for (int i = 0; i < TagSidecar.COMPACTION_MINIMUM; i++) {
+                lines.add("+\ta.jpg\tflip");
+                lines.add("-\ta.jpg\tflip");
+            }
+            Files.write(sidecar, lines);
+            TagSidecar reread = new TagSidecar();
+            assertEquals(1, reread.getTags(file.toString()).size());
+            assertEquals(Arrays.asList("=\ta.jpg", "+\ta.jpg\tkept"), Files.readAllLines(sidecar));
+        } finally {
+            Files.deleteIfExists(sidecar);
+            Files.delete(file);
+            Files.delete(directory);
+        }
+    }
+
+    // moved files get their new paths in one batch, missing files fail
+    @Test
+    void testImageManagerMoveImagesToDirectory() throws IOException {
+        Path from = Files.createTempDirectory("from");
+        Path to = Files.createTempDirectory("to");
+        try {
+            ImageManager im = new ImageManager();
+            ArrayList<Image> images = new ArrayList<>();
+            for (String name : new String[]{"a @x", "b", "c"}) {
+                Files.write(from.resolve(name + ".jpg"), name.getBytes());
+                Image image = new Image(name, "jpg", from.resolve(name + ".jpg").toString());
+                im.addChosenImage(image);
+                images.add(image);
+            }
+            Image missing = new Image("missing", "jpg", from.resolve("missing.jpg").toString());
+            im.addChosenImage(missing);
+            images.add(missing);
+            ArrayList<CatalogEventBatch> batches = new ArrayList<>();
+            im.getEventBus().subscribe(batches::add);
+            AtomicInteger progress = new AtomicInteger();
+            BatchMoveReport report = im.moveImagesToDirectory(images, to.toString(), 2,
+                    (completed, total) -> progress.incrementAndGet());
+            assertEquals(4, progress.get());
+            assertEquals(3, report.getImages(BatchMoveReport.Outcome.MOVED).size());
+            assertEquals(BatchMoveReport.Outcome.FAILED, report.getOutcome(missing));
+            assertNotNull(report.getFailure(missing));
+            assertEquals(1, batches.size());
+            assertEquals(3, batches.get(0).getEvents().size());
+            for (Image image : images.subList(0, 3)) {
+                assertTrue(Files.exists(Paths.get(image.getPath())));
+                assertEquals(image, im.foundImage(to.resolve(image.getFullName()).toString()));
+            }
+            assertEquals(from.resolve("missing.jpg").toString(), missing.getPath());
+            assertEquals(BatchMoveReport.Outcome.SKIPPED,
+                    im.moveImagesToDirectory(images.subList(0, 1), to.toString()).getOutcome(images.get(0)));
+        } finally {
+            for (Path directory : new Path[]{from, to}) {
+                for (File file : directory.toFile().listFiles()) {
+                    Files.delete(file.toPath());
+                }
+                Files.delete(directory);
+            }
+        }
+    }
 
+    // two images moved to the same new path, or to the path of an existing file, fail instead of replacing a file
+    @Test
+    void testImageManagerMoveImagesToTakenPath() throws IOException {
+        Path from = Files.createTempDirectory("from");
+        Path to = Files.createTempDirectory("to");
+        try {
+            Files.createDirectory(from.resolve("a"));
+            Files.createDirectory(from.resolve("b"));
+            ImageManager im = new ImageManager();
+            ArrayList<Image> images = new ArrayList<>();
+            for (String path : new String[]{"a/x", "b/x", "a/y"}) {
+                Files.write(from.resolve(path + ".jpg"), path.getBytes());
+                Image image = new Image(Paths.get(path).getFileName().toString(), "jpg",
+                        from.resolve(path + ".jpg").toString());
+                im.addChosenImage(image);
+                images.add(image);
+            }
+            Files.write(to.resolve("y.jpg"), "existing".getBytes());
+            BatchMoveReport report = im.moveImagesToDirectory(images, to.toString());
+            assertEquals(BatchMoveReport.Outcome.MOVED, report.getOutcome(images.get(0)));
+            assertEquals(BatchMoveReport.Outcome.FAILED, report.getOutcome(images.get(1)));
+            assertEquals(BatchMoveReport.Outcome.FAILED, report.getOutcome(images.get(2)));
+            assertEquals("a/x", new String(Files.readAllBytes(to.resolve("x.jpg"))));
+            assertEquals("b/x", new String(Files.readAllBytes(from.resolve("b/x.jpg"))));
+            assertEquals("existing", new String(Files.readAllBytes(to.resolve("y.jpg"))));
+            assertEquals(from.resolve("b/x.jpg").toString(), images.get(1).getPath());
+            assertEquals(from.resolve("a/y.jpg").toString(), images.get(2).getPath());
+        } finally {
+            for (Path directory : new Path[]{from.resolve("a"), from.resolve("b"), from, to}) {
+                for (File file : directory.toFile().listFiles()) {
+                    Files.delete(file.toPath());
+                }
+                Files.delete(directory);
+            }
+        }
+    }
 
-}
\ No newline at end of file
+    // two images renamed to the same new name, or to the name of an existing file, fail instead of replacing a file
+    @Test
+    void testImageManagerDeleteTagFromImagesTakenName() throws IOException {
+        Path directory = Files.createTempDirectory("takenName");
+        try {
+            ImageManager im = new ImageManager();
+            ArrayList<Image> images = new ArrayList<>();
+            for (String name : new String[]{"a @x @y", "b @x @y", "b @y @x"}) {
+                Files.write(directory.resolve(name + ".jpg"), name.getBytes());
+                Image image = new Image(name, "jpg", directory.resolve(name + ".jpg").toString());
+                im.addChosenImage(image);
+                images.add(image);
+            }
+            Files.write(directory.resolve("a @y.jpg"), "existing".getBytes());
+            BulkTagReport report = im.deleteTagFromImages(images, "x");
+            assertEquals(BulkTagReport.Outcome.FAILED, report.getOutcome(images.get(0)));
+            assertEquals(BulkTagReport.Outcome.CHANGED, report.getOutcome(images.get(1)));
+            assertEquals(BulkTagReport.Outcome.FAILED, report.getOutcome(images.get(2)));
+            assertEquals("existing", new String(Files.readAllBytes(directory.resolve("a @y.jpg"))));
+            assertEquals("a @x @y", new String(Files.readAllBytes(directory.resolve("a @x @y.jpg"))));
+            assertEquals("b @x @y", new String(Files.readAllBytes(directory.resolve("b @y.jpg"))));
+            assertEquals("b @y @x", new String(Files.readAllBytes(directory.resolve("b @y @x.jpg"))));
+            assertEquals("a @x @y", images.get(0).getName());
+            assertEquals("b @y @x", images.get(2).getName());
+        } finally {
+            for (File file : directory.toFile().listFiles()) {
+                Files.delete(file.toPath());
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // interrupting the caller cancels the moves not started yet, and every file already moved is still recorded
+    @Test
+    void testImageManagerMoveImagesInterrupted() throws IOException {
+        Path from = Files.createTempDirectory("from");
+        Path to = Files.createTempDirectory("to");
+        try {
+            ImageManager im = new ImageManager();
+            ArrayList<Image> images = new ArrayList<>();
+            for (String name : new String[]{"a", "b", "c", "d"}) {
+                Files.write(from.resolve(name + ".jpg"), name.getBytes());
+                Image image = new Image(name, "jpg", from.resolve(name + ".jpg").toString());
+                im.addChosenImage(image);
+                images.add(image);
+            }
+            Thread caller = Thread.currentThread();
+            BatchMoveReport report = im.moveImagesToDirectory(images, to.toString(), 1,
+                    (completed, total) -> caller.interrupt());
+            assertTrue(Thread.interrupted());
+            assertEquals(BatchMoveReport.Outcome.MOVED, report.getOutcome(images.get(0)));
+            for (Image image : images) {
+                boolean moved = Files.exists(to.resolve(image.getFullName()));
+                assertEquals(moved ? BatchMoveReport.Outcome.MOVED : BatchMoveReport.Outcome.FAILED,
+                        report.getOutcome(image));
+                assertTrue(Files.exists(Paths.get(image.getPath())));
+            }
+        } finally {
+            for (Path directory : new Path[]{from, to}) {
+                for (File file : directory.toFile().listFiles()) {
+                    Files.delete(file.toPath());
+                }
+                Files.delete(directory);
+            }
+        }
+    }
+}
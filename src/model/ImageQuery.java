@@ -0,0 +1,819 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents a query over the tags, the directory and the capture date of images, written as text such
+ * as "tag:beach AND NOT tag:rejected AND dir:/photos/2019 AND date:>2019-06". A query is made of terms combined
+ * with AND, OR, NOT and parentheses; terms next to each other are combined with AND. The terms are:
+ * <ul>
+ * <li>tag:beach, the images carrying the tag;</li>
+ * <li>dir:/photos/2019, the images under the directory, sub-directories included;</li>
+ * <li>date:2019, date:2019-06 or date:2019-06-14, the images taken in the year, month or day; date:&gt;2019-06,
+ * date:&gt;=2019-06, date:&lt;2019-06 and date:&lt;=2019-06 for the images taken after, from, before or until
+ * it; date:2019-06..2019-08 for the images taken from the first to the last, both included.</li>
+ * </ul>
+ * Values with spaces are written within double quotes, such as dir:"/photos/summer trip".
+ *
+ * <p>Every term can be answered from an index: the tag index, the sorted path index of ImageManager or the
+ * timeline of the capture dates. A query is turned into a QueryPlan that reads the most selective of them and
+ * checks the rest image by image.
+ *
+ * @see QueryPlan
+ * @see GoGoPhotoSystem#query(String)
+ */
+public abstract class ImageQuery {
+
+    /**
+     * Creates an ImageQuery. Queries are only created by {@link #parse(String)}.
+     */
+    private ImageQuery() {
+    }
+
+    /**
+     * Returns the query written in the input text.
+     *
+     * @param text the text of the query
+     * @return the query.
+     * @throws IllegalArgumentException indicates that the text is not a valid query.
+     */
+    public static ImageQuery parse(String text) {
+        return new Parser(text).parse();
+    }
+
+    /**
+     * Returns whether the image with the ID is matched by this query.
+     *
+     * @param id      the ID of the image
+     * @param context the indexes of the images
+     * @return true if the image is matched by this query.
+     */
+    abstract boolean matches(int id, QueryContext context);
+
+    /**
+     * Returns the number of images an index finds for this query, counting no further than the limit.
+     *
+     * @param context the indexes of the images
+     * @param limit   the count after which counting stops
+     * @return the number of images found, at most limit, or -1 if no index answers this query.
+     */
+    abstract int estimate(QueryContext context, int limit);
+
+    /**
+     * Returns the IDs of the images matched by this query, read from the indexes. The returned ImageBitmap may
+     * belong to an index and must not be modified.
+     *
+     * @param context the indexes of the images
+     * @return the IDs of the images matched, or null if no index answers this query.
+     */
+    abstract ImageBitmap lookup(QueryContext context);
+
+    /**
+     * Returns the name of the index answering this query, for the explanation of a plan.
+     *
+     * @return the name of the index, or null if no index answers this query.
+     */
+    abstract String indexName();
+
+    /**
+     * Returns the operands of this query that must all match, this query itself unless it is an AND.
+     *
+     * @return the operands of this query that must all match.
+     */
+    List<ImageQuery> conjuncts() {
+        return Collections.singletonList(this);
+    }
+
+    /**
+     * A query matching the images carrying one tag.
+     */
+    private static class TagTerm extends ImageQuery {
+        /**
+         * The tag, without the "@" prefix.
+         */
+        private final String tag;
+
+        /**
+         * Creates a TagTerm.
+         *
+         * @param tag the tag, without the "@" prefix
+         */
+        TagTerm(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        boolean matches(int id, QueryContext context) {
+            return context.getTagIndex().getImages(tag).contains(id);
+        }
+
+        @Override
+        int estimate(QueryContext context, int limit) {
+            return Math.min(limit, context.getTagIndex().count(tag));
+        }
+
+        @Override
+        ImageBitmap lookup(QueryContext context) {
+            return context.getTagIndex().getImages(tag);
+        }
+
+        @Override
+        String indexName() {
+            return "tag index";
+        }
+
+        @Override
+        public String toString() {
+            return "tag:" + quote(tag);
+        }
+    }
+
+    /**
+     * A query matching the images under one directory, sub-directories included.
+     */
+    private static class DirectoryTerm extends ImageQuery {
+        /**
+         * The path of the directory.
+         */
+        private final String directory;
+
+        /**
+         * Creates a DirectoryTerm.
+         *
+         * @param directory the path of the directory
+         */
+        DirectoryTerm(String directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        boolean matches(int id, QueryContext context) {
+            Image image = context.image(id);
+            return image != null && ImageManager.isUnder(image, directory);
+        }
+
+        @Override
+        int estimate(QueryContext context, int limit) {
+            Collection<Image> images = context.getImageManager().findImagesUnder(directory);
+            if (images == null) {
+                return -1;
+            }
+            int count = 0;
+            for (Image ignored : images) {
+                if (++count >= limit) {
+                    break;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        ImageBitmap lookup(QueryContext context) {
+            Collection<Image> images = context.getImageManager().findImagesUnder(directory);
+            if (images == null) {
+                return null;
+            }
+            ImageBitmap result = new ImageBitmap();
+            for (Image image : images) {
+                result.add(image.getId());
+            }
+            return result;
+        }
+
+        @Override
+        String indexName() {
+            return "path index";
+        }
+
+        @Override
+        public String toString() {
+            return "dir:" + quote(directory);
+        }
+    }
+
+    /**
+     * A query matching the images taken in a range of capture times. Images whose capture time is unknown are
+     * never matched.
+     */
+    private static class DateTerm extends ImageQuery {
+        /**
+         * The first capture time of the range.
+         */
+        private final long from;
+
+        /**
+         * The capture time after the last of the range.
+         */
+        private final long to;
+
+        /**
+         * The range as it was written.
+         */
+        private final String text;
+
+        /**
+         * Creates a DateTerm.
+         *
+         * @param from the first capture time of the range
+         * @param to   the capture time after the last of the range
+         * @param text the range as it was written
+         */
+        DateTerm(long from, long to, String text) {
+            this.from = from;
+            this.to = to;
+            this.text = text;
+        }
+
+        @Override
+        boolean matches(int id, QueryContext context) {
+            long time = context.getMetadataTable().getCaptureTime(id);
+            return time != MetadataTable.UNKNOWN_TIME && time >= from && time < to;
+        }
+
+        @Override
+        int estimate(QueryContext context, int limit) {
+            return Math.min(limit, context.getMetadataTable().getTimeline().countBetween(from, to));
+        }
+
+        @Override
+        ImageBitmap lookup(QueryContext context) {
+            ImageBitmap result = new ImageBitmap();
+            for (int id : context.getMetadataTable().getTimeline().findBetween(from, to)) {
+                result.add(id);
+            }
+            return result;
+        }
+
+        @Override
+        String indexName() {
+            return "timeline";
+        }
+
+        @Override
+        public String toString() {
+            return "date:" + text;
+        }
+    }
+
+    /**
+     * A query matching the images matched by all of its operands.
+     */
+    private static class And extends ImageQuery {
+        /**
+         * The operands of this query.
+         */
+        private final List<ImageQuery> operands;
+
+        /**
+         * Creates an And query.
+         *
+         * @param operands the operands of this query
+         */
+        And(List<ImageQuery> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        boolean matches(int id, QueryContext context) {
+            for (ImageQuery operand : operands) {
+                if (!operand.matches(id, context)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        int estimate(QueryContext context, int limit) {
+            int estimate = -1;
+            for (ImageQuery operand : operands) {
+                int count = operand.estimate(context, estimate < 0 ? limit : estimate);
+                if (count >= 0 && (estimate < 0 || count < estimate)) {
+                    estimate = count;
+                }
+            }
+            return estimate;
+        }
+
+        /**
+         * Reads the operand the fewest images match from its index and keeps the images matched by the other
+         * operands.
+         */
+        @Override
+        ImageBitmap lookup(QueryContext context) {
+            ImageQuery driver = null;
+            int best = Integer.MAX_VALUE;
+            for (ImageQuery operand : operands) {
+                int count = operand.estimate(context, best);
+                if (count >= 0 && (driver == null || count < best)) {
+                    driver = operand;
+                    best = count;
+                }
+            }
+            if (driver == null) {
+                return null;
+            }
+            ImageBitmap result = new ImageBitmap();
+            for (int id : driver.lookup(context).toArray()) {
+                if (matchesOthers(id, driver, context)) {
+                    result.add(id);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns whether the image with the ID is matched by every operand but the input one.
+         *
+         * @param id      the ID of the image
+         * @param skipped the operand not checked
+         * @param context the indexes of the images
+         * @return true if the image is matched by the other operands.
+         */
+        private boolean matchesOthers(int id, ImageQuery skipped, QueryContext context) {
+            for (ImageQuery operand : operands) {
+                if (operand != skipped && !operand.matches(id, context)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        String indexName() {
+            return null;
+        }
+
+        @Override
+        List<ImageQuery> conjuncts() {
+            return operands;
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " AND ");
+        }
+    }
+
+    /**
+     * A query matching the images matched by any of its operands. It is answered from the indexes only if all of
+     * its operands are.
+     */
+    private static class Or extends ImageQuery {
+        /**
+         * The operands of this query.
+         */
+        private final List<ImageQuery> operands;
+
+        /**
+         * Creates an Or query.
+         *
+         * @param operands the operands of this query
+         */
+        Or(List<ImageQuery> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        boolean matches(int id, QueryContext context) {
+            for (ImageQuery operand : operands) {
+                if (operand.matches(id, context)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int estimate(QueryContext context, int limit) {
+            long estimate = 0;
+            for (ImageQuery operand : operands) {
+                int count = operand.estimate(context, limit);
+                if (count < 0) {
+                    return -1;
+                }
+                estimate += count;
+            }
+            return (int) Math.min(estimate, limit);
+        }
+
+        @Override
+        ImageBitmap lookup(QueryContext context) {
+            ImageBitmap result = new ImageBitmap();
+            for (ImageQuery operand : operands) {
+                ImageBitmap found = operand.lookup(context);
+                if (found == null) {
+                    return null;
+                }
+                result = result.or(found);
+            }
+            return result;
+        }
+
+        @Override
+        String indexName() {
+            StringBuilder names = new StringBuilder();
+            for (ImageQuery operand : operands) {
+                String name = operand.indexName();
+                if (name == null) {
+                    return null;
+                }
+                if (names.indexOf(name) < 0) {
+                    names.append(names.length() == 0 ? "" : " + ").append(name);
+                }
+            }
+            return names.toString();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + join(operands, " OR ") + ")";
+        }
+    }
+
+    /**
+     * A query matching the images not matched by its operand. It is never answered from an index, since it
+     * matches most images; it is only checked image by image.
+     */
+    private static class Not extends ImageQuery {
+        /**
+         * The negated query.
+         */
+        private final ImageQuery operand;
+
+        /**
+         * Creates a Not query.
+         *
+         * @param operand the negated query
+         */
+        Not(ImageQuery operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean matches(int id, QueryContext context) {
+            return !operand.matches(id, context);
+        }
+
+        @Override
+        int estimate(QueryContext context, int limit) {
+            return -1;
+        }
+
+        @Override
+        ImageBitmap lookup(QueryContext context) {
+            return null;
+        }
+
+        @Override
+        String indexName() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return operand instanceof And ? "NOT (" + operand + ")" : "NOT " + operand;
+        }
+    }
+
+    /**
+     * Returns the value within double quotes if it holds a space, a parenthesis or a double quote.
+     *
+     * @param value the value of a term
+     * @return the value as it is written in a query.
+     */
+    private static String quote(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '"') {
+                return "\"" + value.replace("\"", "\\\"") + "\"";
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the queries written one after the other with the separator between them.
+     *
+     * @param queries   the queries
+     * @param separator the text between two queries
+     * @return the queries as text.
+     */
+    private static String join(List<ImageQuery> queries, String separator) {
+        StringBuilder text = new StringBuilder();
+        for (ImageQuery query : queries) {
+            if (text.length() > 0) {
+                text.append(separator);
+            }
+            text.append(query);
+        }
+        return text.toString();
+    }
+
+    /**
+     * This class reads the text of a query, one token at a time, by recursive descent: OR binds more loosely than
+     * AND, which binds more loosely than NOT.
+     */
+    private static class Parser {
+        /**
+         * The text of the query.
+         */
+        private final String text;
+
+        /**
+         * The position of the next character to read.
+         */
+        private int position;
+
+        /**
+         * Creates a Parser of the input text.
+         *
+         * @param text the text of the query
+         */
+        Parser(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Reads the whole text as one query.
+         *
+         * @return the query.
+         * @throws IllegalArgumentException indicates that the text is not a valid query.
+         */
+        ImageQuery parse() {
+            skipSpaces();
+            if (position == text.length()) {
+                throw error("Empty query");
+            }
+            ImageQuery query = parseOr();
+            if (position < text.length()) {
+                throw error("Unexpected \"" + text.charAt(position) + "\"");
+            }
+            return query;
+        }
+
+        /**
+         * Reads operands separated by OR.
+         *
+         * @return the query read.
+         */
+        private ImageQuery parseOr() {
+            ArrayList<ImageQuery> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (acceptKeyword("OR")) {
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        /**
+         * Reads operands separated by AND or by nothing, flattening nested ANDs.
+         *
+         * @return the query read.
+         */
+        private ImageQuery parseAnd() {
+            ArrayList<ImageQuery> operands = new ArrayList<>();
+            operands.addAll(parseNot().conjuncts());
+            while (true) {
+                if (acceptKeyword("AND")) {
+                    operands.addAll(parseNot().conjuncts());
+                } else if (position < text.length() && text.charAt(position) != ')' && !atKeyword("OR")) {
+                    operands.addAll(parseNot().conjuncts());
+                } else {
+                    break;
+                }
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        /**
+         * Reads a negated operand, an operand within parentheses or a term.
+         *
+         * @return the query read.
+         */
+        private ImageQuery parseNot() {
+            if (acceptKeyword("NOT")) {
+                return new Not(parseNot());
+            }
+            if (position < text.length() && text.charAt(position) == '(') {
+                position++;
+                skipSpaces();
+                ImageQuery query = parseOr();
+                if (position == text.length() || text.charAt(position) != ')') {
+                    throw error("Missing \")\"");
+                }
+                position++;
+                skipSpaces();
+                return query;
+            }
+            return parseTerm();
+        }
+
+        /**
+         * Reads a term, a field name and a value separated by a colon.
+         *
+         * @return the term read.
+         */
+        private ImageQuery parseTerm() {
+            int start = position;
+            while (position < text.length() && Character.isLetter(text.charAt(position))) {
+                position++;
+            }
+            String field = text.substring(start, position);
+            if (field.isEmpty() || position == text.length() || text.charAt(position) != ':') {
+                position = start;
+                throw error("Expected a term such as tag:beach");
+            }
+            position++;
+            int valueStart = position;
+            String value = readValue();
+            ImageQuery term;
+            switch (field.toLowerCase()) {
+                case "tag":
+                    term = new TagTerm(value.startsWith("@") ? value.substring(1) : value);
+                    break;
+                case "dir":
+                    term = new DirectoryTerm(value);
+                    break;
+                case "date":
+                    term = parseDate(value, valueStart);
+                    break;
+                default:
+                    position = start;
+                    throw error("Unknown field \"" + field + "\"");
+            }
+            skipSpaces();
+            return term;
+        }
+
+        /**
+         * Reads the value of a term, up to a space or a parenthesis, or within double quotes.
+         *
+         * @return the value read, without the quotes.
+         */
+        private String readValue() {
+            StringBuilder value = new StringBuilder();
+            if (position < text.length() && text.charAt(position) == '"') {
+                int start = position++;
+                while (position < text.length() && text.charAt(position) != '"') {
+                    if (text.charAt(position) == '\\' && position + 1 < text.length()) {
+                        position++;
+                    }
+                    value.append(text.charAt(position++));
+                }
+                if (position == text.length()) {
+                    position = start;
+                    throw error("Missing closing quote");
+                }
+                position++;
+            } else {
+                while (position < text.length() && !Character.isWhitespace(text.charAt(position))
+                        && text.charAt(position) != '(' && text.charAt(position) != ')') {
+                    value.append(text.charAt(position++));
+                }
+            }
+            if (value.length() == 0) {
+                throw error("Missing value");
+            }
+            return value.toString();
+        }
+
+        /**
+         * Reads the value of a date term.
+         *
+         * @param value the value
+         * @param start the position of the value, for errors
+         * @return the date term.
+         */
+        private ImageQuery parseDate(String value, int start) {
+            try {
+                long from = Long.MIN_VALUE + 1;
+                long to = Long.MAX_VALUE;
+                int range = value.indexOf("..");
+                if (range >= 0) {
+                    from = startOf(value.substring(0, range));
+                    to = endOf(value.substring(range + 2));
+                } else if (value.startsWith(">=")) {
+                    from = startOf(value.substring(2));
+                } else if (value.startsWith(">")) {
+                    from = endOf(value.substring(1));
+                } else if (value.startsWith("<=")) {
+                    to = endOf(value.substring(2));
+                } else if (value.startsWith("<")) {
+                    to = startOf(value.substring(1));
+                } else {
+                    from = startOf(value);
+                    to = endOf(value);
+                }
+                return new DateTerm(from, to, value);
+            } catch (DateTimeParseException e) {
+                position = start;
+                throw error("Invalid date \"" + value + "\", expected yyyy, yyyy-MM or yyyy-MM-dd");
+            }
+        }
+
+        /**
+         * Returns the first capture time of the year, month or day.
+         *
+         * @param date the year, month or day
+         * @return the first capture time.
+         */
+        private static long startOf(String date) {
+            return TimelineIndex.startOf(firstDay(date));
+        }
+
+        /**
+         * Returns the capture time after the last of the year, month or day.
+         *
+         * @param date the year, month or day
+         * @return the capture time after the last.
+         */
+        private static long endOf(String date) {
+            LocalDate first = firstDay(date);
+            switch (date.length()) {
+                case 4:
+                    return TimelineIndex.startOf(first.plusYears(1));
+                case 7:
+                    return TimelineIndex.startOf(first.plusMonths(1));
+                default:
+                    return TimelineIndex.startOf(first.plusDays(1));
+            }
+        }
+
+        /**
+         * Returns the first day of the year, month or day.
+         *
+         * @param date the year as yyyy, the month as yyyy-MM or the day as yyyy-MM-dd
+         * @return the first day.
+         * @throws DateTimeParseException indicates that the date is in none of the formats.
+         */
+        private static LocalDate firstDay(String date) {
+            switch (date.length()) {
+                case 4:
+                    return Year.parse(date).atDay(1);
+                case 7:
+                    return YearMonth.parse(date).atDay(1);
+                case 10:
+                    return LocalDate.parse(date);
+                default:
+                    throw new DateTimeParseException("Invalid date", date, 0);
+            }
+        }
+
+        /**
+         * Reads the keyword if it comes next, in any case, followed by a space, a parenthesis or the end.
+         *
+         * @param keyword the keyword
+         * @return true if the keyword was read.
+         */
+        private boolean acceptKeyword(String keyword) {
+            if (!atKeyword(keyword)) {
+                return false;
+            }
+            position += keyword.length();
+            skipSpaces();
+            return true;
+        }
+
+        /**
+         * Returns whether the keyword comes next, in any case, followed by a space, a parenthesis or the end.
+         *
+         * @param keyword the keyword
+         * @return true if the keyword comes next.
+         */
+        private boolean atKeyword(String keyword) {
+            int end = position + keyword.length();
+            if (!text.regionMatches(true, position, keyword, 0, keyword.length())) {
+                return false;
+            }
+            return end == text.length() || Character.isWhitespace(text.charAt(end)) || text.charAt(end) == '('
+                    || text.charAt(end) == ')';
+        }
+
+        /**
+         * Skips the spaces at the position.
+         */
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        /**
+         * Returns the exception of a syntax error at the position.
+         *
+         * @param message what is wrong
+         * @return the exception to throw.
+         */
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " of \"" + text + "\"");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageQueryTest {
+
+    /**
+     * Returns the names of the images matched by the query, sorted.
+     */
+    private static List<String> names(QueryPlan plan) {
+        return plan.stream().map(Image::getName).sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Returns a context over the images, with their tags and capture dates indexed.
+     */
+    private static QueryContext context(ImageManager im, Image... images) throws InterruptedException {
+        TagManager tm = new TagManager();
+        MetadataTable table = new MetadataTable();
+        im.getEventBus().subscribe(tm);
+        im.getEventBus().subscribe(table);
+        for (Image image : images) {
+            im.addChosenImage(image);
+        }
+        table.awaitIndexing();
+        return new QueryContext(tm.getTagIndex(), im, table);
+    }
+
+    @Test
+    void testQuery() throws InterruptedException {
+        ImageManager im = new ImageManager();
+        QueryContext context = context(im,
+                new Image("a @beach", "jpg", "/photos/2019/a @beach.jpg"),
+                new Image("b @beach @rejected", "jpg", "/photos/2019/b @beach @rejected.jpg"),
+                new Image("c @beach", "jpg", "/photos/2018/c @beach.jpg"),
+                new Image("d", "jpg", "/photos/2019/trip/d.jpg"),
+                new Image("IMG_4987", "jpg", "./TestPictures/IMG_4987.jpg"));
+        QueryPlan plan = new QueryPlan(ImageQuery.parse("tag:beach AND NOT tag:rejected AND dir:/photos/2019"),
+                context);
+        assertEquals("[a @beach]", names(plan).toString());
+        assertEquals("[a @beach, b @beach @rejected, d]",
+                names(new QueryPlan(ImageQuery.parse("dir:/photos/2019"), context)).toString());
+        assertEquals("[c @beach, d]",
+                names(new QueryPlan(ImageQuery.parse("dir:/photos/2018 OR dir:\"/photos/2019/trip\""), context))
+                        .toString());
+        assertEquals("[IMG_4987]",
+                names(new QueryPlan(ImageQuery.parse("date:2017-09 (tag:beach or not tag:beach)"), context))
+                        .toString());
+        assertEquals("[]", names(new QueryPlan(ImageQuery.parse("date:>2017-09"), context)).toString());
+        assertEquals("[IMG_4987]", names(new QueryPlan(ImageQuery.parse("date:2017..2017-09-09"), context))
+                .toString());
+    }
+
+    // the most selective index drives the plan, a query without one scans every image
+    @Test
+    void testExplain() throws InterruptedException {
+        ImageManager im = new ImageManager();
+        QueryContext context = context(im,
+                new Image("a @beach", "jpg", "/photos/2019/a @beach.jpg"),
+                new Image("b @beach", "jpg", "/photos/2019/b @beach.jpg"),
+                new Image("c @beach", "jpg", "/photos/2018/c @beach.jpg"));
+        String explained = new QueryPlan(ImageQuery.parse("tag:beach AND dir:/photos/2018"), context).explain();
+        assertTrue(explained.contains("read dir:/photos/2018 from the path index, about 1 images"), explained);
+        assertTrue(explained.contains("check tag:beach"), explained);
+        QueryPlan scan = new QueryPlan(ImageQuery.parse("NOT tag:beach"), context);
+        assertTrue(scan.explain().contains("scan all 3 images"), scan.explain());
+        assertEquals(0, scan.stream().count());
+    }
+
+    @Test
+    void testParseErrors() {
+        assertThrows(IllegalArgumentException.class, () -> ImageQuery.parse(""));
+        assertThrows(IllegalArgumentException.class, () -> ImageQuery.parse("color:red"));
+        assertThrows(IllegalArgumentException.class, () -> ImageQuery.parse("tag:beach AND"));
+        assertThrows(IllegalArgumentException.class, () -> ImageQuery.parse("(tag:beach"));
+        assertThrows(IllegalArgumentException.class, () -> ImageQuery.parse("date:2019-13"));
+        assertEquals("tag:beach AND NOT (tag:a AND dir:\"/my photos\")",
+                ImageQuery.parse("tag:@beach not (tag:a dir:\"/my photos\")").toString());
+    }
+}
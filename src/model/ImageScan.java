@@ -0,0 +1,150 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * This class walks a directory tree in the background and hands the images it finds to a consumer in batches,
+ * as soon as they are discovered, so that a table can show the first images of a large tree right away instead
+ * of waiting for the whole tree to be walked. The walk stops as soon as the scan is cancelled.
+ *
+ * @see DirectoryManager
+ * @see ExistingImage
+ * @see gui.ListAllController
+ */
+public class ImageScan implements Runnable {
+    /**
+     * A batch is handed over once it holds this many images.
+     */
+    private static final int BATCH_SIZE = 512;
+
+    /**
+     * A batch is also handed over once this many milliseconds have passed since the previous batch.
+     */
+    private static final long BATCH_INTERVAL = 50;
+
+    /**
+     * The root directory of the scanned tree.
+     */
+    private final Path root;
+
+    /**
+     * The DirectoryManager used to list the directories of the tree.
+     */
+    private final DirectoryManager directoryManager;
+
+    /**
+     * The consumer receiving the batches of images.
+     */
+    private final Consumer<List<ExistingImage>> batchConsumer;
+
+    /**
+     * Whether the scan has been cancelled.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Whether the whole tree has been walked.
+     */
+    private volatile boolean done;
+
+    /**
+     * Creates an ImageScan of the tree under the given root.
+     *
+     * @param root             the root directory of the tree to scan
+     * @param directoryManager the DirectoryManager used to list the directories of the tree
+     * @param batchConsumer    the consumer receiving the batches of images, called on the scanning thread
+     */
+    ImageScan(Path root, DirectoryManager directoryManager, Consumer<List<ExistingImage>> batchConsumer) {
+        this.root = root;
+        this.directoryManager = directoryManager;
+        this.batchConsumer = batchConsumer;
+    }
+
+    /**
+     * Stops the scan. No batch is handed over after the scan has been cancelled.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether the scan has been cancelled.
+     *
+     * @return true if the scan has been cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns whether the whole tree has been walked and every image has been handed over.
+     *
+     * @return true if the scan is complete.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Walks the tree depth first, the images of a directory before those of its sub-directories, and hands
+     * the images over in batches until the tree is walked or the scan is cancelled. A tree covered by the
+     * index of the LibraryWatcher is handed over in a single batch without walking it.
+     */
+    @Override
+    public void run() {
+        ArrayList<ExistingImage> watchedImages = directoryManager.findWatchedImages(root);
+        if (watchedImages != null) {
+            handOver(watchedImages);
+            done = !cancelled;
+            return;
+        }
+        ArrayDeque<Path> directories = new ArrayDeque<>();
+        directories.push(root);
+        ArrayList<ExistingImage> batch = new ArrayList<>();
+        long lastBatch = System.currentTimeMillis() - BATCH_INTERVAL;
+        while (!directories.isEmpty() && !cancelled) {
+            Path dir = directories.pop();
+            ScanIndex.DirectoryRecord record;
+            try {
+                record = directoryManager.listDirectory(dir);
+            } catch (IOException e) {
+                GoGoPhotoSystem.logger.log(Level.FINE, "Cannot list " + dir);
+                continue;
+            }
+            for (String imageName : record.getImageNames()) {
+                batch.add(new ExistingImage(imageName, dir.resolve(imageName).toString()));
+            }
+            String[] subDirectories = record.getSubDirectories();
+            for (int i = subDirectories.length - 1; i >= 0; i--) {
+                directories.push(dir.resolve(subDirectories[i]));
+            }
+            long now = System.currentTimeMillis();
+            if (batch.size() >= BATCH_SIZE || (!batch.isEmpty() && now - lastBatch >= BATCH_INTERVAL)) {
+                handOver(batch);
+                batch = new ArrayList<>();
+                lastBatch = now;
+            }
+        }
+        if (!batch.isEmpty()) {
+            handOver(batch);
+        }
+        done = !cancelled;
+    }
+
+    /**
+     * Hands a batch of images over to the consumer, unless the scan has been cancelled.
+     *
+     * @param batch the batch of images
+     */
+    private void handOver(List<ExistingImage> batch) {
+        if (!cancelled) {
+            batchConsumer.accept(batch);
+        }
+    }
+}
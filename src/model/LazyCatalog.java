@@ -0,0 +1,238 @@
+package model;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * This class is the base of the saved catalogs ImageManager reads its images from lazily, one image at a time,
+ * instead of reading them all when the program starts. Every saved image has a record with a dense ID; a subclass
+ * finds the records by path and decodes them, and this class keeps track of the decoded images.
+ *
+ * <p>The images decoded last are kept in a small LRU, and every decoded image is remembered weakly, so that an
+ * image is never decoded twice while anything holds it and asking for it again always returns the same object.
+ * Images that change (renamed, moved, tagged) are written through to an overlay holding them strongly, so that
+ * their changes are never lost when they leave the LRU.
+ *
+ * @see MappedCatalog
+ * @see BTreeCatalogStore
+ * @see ImageManager#openCatalog(LazyCatalog)
+ */
+abstract class LazyCatalog implements CatalogListener {
+    /**
+     * The number of images kept in the LRU.
+     */
+    static final int CACHE_SIZE = 1024;
+
+    /**
+     * The images decoded last, by ID, in the order of their last use.
+     */
+    private final LinkedHashMap<Integer, Image> recent;
+
+    /**
+     * Every decoded image still held by something, by ID.
+     */
+    private final HashMap<Integer, ImageReference> decoded = new HashMap<>();
+
+    /**
+     * The references of the decoded images that are no longer held.
+     */
+    private final ReferenceQueue<Image> released = new ReferenceQueue<>();
+
+    /**
+     * The images changed since the catalog was opened, by ID.
+     */
+    private final HashMap<Integer, Image> changed = new HashMap<>();
+
+    /**
+     * Creates a LazyCatalog without decoded images.
+     */
+    LazyCatalog() {
+        recent = new LinkedHashMap<Integer, Image>(CACHE_SIZE * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Image> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of images of the catalog. Their IDs are the numbers from 0 to this number, excluded.
+     *
+     * @return the number of images of the catalog.
+     */
+    abstract int size();
+
+    /**
+     * Returns the ID of the image whose path, as it was saved, is the input path. An image that has been renamed
+     * or moved since the catalog was opened is no longer found by its old path.
+     *
+     * @param path the path of the image
+     * @return the ID of the image, or -1 if there is none.
+     * @see #isSavedAt(int, String)
+     */
+    abstract int find(String path);
+
+    /**
+     * Decodes the image of a record and gives it its ID.
+     *
+     * @param id the ID of the image, from 0 to {@link #size()} excluded
+     * @return the image.
+     */
+    abstract Image decode(int id);
+
+    /**
+     * Calls the action with every tag of every record and the ID of its image, reading the records without
+     * decoding the images.
+     *
+     * @param action the action receiving a tag and an image ID
+     */
+    abstract void forEachSavedTag(BiConsumer<String, Integer> action);
+
+    /**
+     * Calls the action with the path of every record, as it was saved, and the ID of its image, reading the
+     * records without decoding the images.
+     *
+     * @param action the action receiving a path and an image ID
+     */
+    abstract void forEachSavedPath(BiConsumer<String, Integer> action);
+
+    /**
+     * Returns the image with the ID, decoding it if it is not held already.
+     *
+     * @param id the ID of the image
+     * @return the image, or null if the catalog has no image with the ID.
+     */
+    synchronized Image get(int id) {
+        if (id < 0 || id >= size()) {
+            return null;
+        }
+        Image image = changed.get(id);
+        if (image == null) {
+            purge();
+            ImageReference reference = decoded.get(id);
+            image = reference == null ? null : reference.get();
+            if (image == null) {
+                image = decode(id);
+                decoded.put(id, new ImageReference(id, image, released));
+            }
+        }
+        recent.put(id, image);
+        return image;
+    }
+
+    /**
+     * Calls the action with every tag of every image and the ID of the image, reading the records of the images
+     * that have not changed without decoding them.
+     *
+     * @param action the action receiving a tag and an image ID
+     */
+    synchronized void forEachTag(BiConsumer<String, Integer> action) {
+        forEachSavedTag((tag, id) -> {
+            if (!changed.containsKey(id)) {
+                action.accept(tag, id);
+            }
+        });
+        for (Map.Entry<Integer, Image> entry : changed.entrySet()) {
+            for (String tag : entry.getValue().getTags()) {
+                action.accept(tag, entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Calls the action with the path of every image and the ID of the image, reading the records of the images
+     * that have not changed without decoding them.
+     *
+     * @param action the action receiving a path and an image ID
+     */
+    synchronized void forEachPath(BiConsumer<String, Integer> action) {
+        forEachSavedPath((path, id) -> {
+            if (!changed.containsKey(id)) {
+                action.accept(path, id);
+            }
+        });
+        for (Map.Entry<Integer, Image> entry : changed.entrySet()) {
+            action.accept(entry.getValue().getPath(), entry.getKey());
+        }
+    }
+
+    /**
+     * Returns whether the image of a record found by its saved path is still at that path, which is not the case
+     * once it has been renamed or moved.
+     *
+     * @param id   the ID of the image
+     * @param path the path the record was found by
+     * @return true if the image has not changed path.
+     */
+    synchronized boolean isSavedAt(int id, String path) {
+        Image image = changed.get(id);
+        return image == null || image.getPath().equals(path);
+    }
+
+    /**
+     * Writes the changes of the images through to the overlay, so that they outlive the LRU.
+     *
+     * @param batch the changes published together
+     */
+    @Override
+    public synchronized void onBatch(CatalogEventBatch batch) {
+        for (CatalogEvent event : batch.getEvents()) {
+            Image image = event.getImage();
+            int id = image.getId();
+            if (id >= 0 && id < size() && !(event instanceof CatalogEvent.ImageAdded)) {
+                ImageReference reference = decoded.get(id);
+                if (changed.get(id) == null && reference != null && reference.get() == image) {
+                    changed.put(id, image);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of images decoded and still held.
+     *
+     * @return the number of images decoded and still held.
+     */
+    synchronized int decodedCount() {
+        purge();
+        return decoded.size();
+    }
+
+    /**
+     * Forgets the decoded images that are no longer held.
+     */
+    private void purge() {
+        ImageReference reference;
+        while ((reference = (ImageReference) released.poll()) != null) {
+            if (decoded.get(reference.id) == reference) {
+                decoded.remove(reference.id);
+            }
+        }
+    }
+
+    /**
+     * A weak reference to a decoded image, knowing the ID of the image.
+     */
+    private static class ImageReference extends WeakReference<Image> {
+        /**
+         * The ID of the image.
+         */
+        private final int id;
+
+        /**
+         * Creates an ImageReference.
+         *
+         * @param id    the ID of the image
+         * @param image the image
+         * @param queue the queue receiving this reference once the image is no longer held
+         */
+        ImageReference(int id, Image image, ReferenceQueue<Image> queue) {
+            super(image, queue);
+            this.id = id;
+        }
+    }
+}
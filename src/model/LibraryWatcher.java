@@ -0,0 +1,352 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * This class keeps an in-memory index of every image under a root directory up to date while the user works,
+ * so that DirectoryManager can answer findAllImages and findLocalImages without scanning the tree again.
+ * A background thread registers every directory under the root with a WatchService. Events that arrive in a
+ * burst are coalesced, and each changed directory is listed again once per burst. A file that has been written to
+ * is checked again once per burst, since a file created empty or rewritten may have become an image or stopped
+ * being one. When the WatchService reports that events were lost, the directory concerned is rescanned together
+ * with its whole subtree.
+ *
+ * @see DirectoryManager
+ * @see WatchService
+ * @see ExistingImage
+ */
+class LibraryWatcher implements Runnable {
+    /**
+     * A burst of events ends once no new event has arrived for this many milliseconds.
+     */
+    private static final long QUIET_PERIOD = 100;
+
+    /**
+     * A burst of events is applied after at most this many milliseconds, even if events keep arriving.
+     */
+    private static final long MAX_DELAY = 1000;
+
+    /**
+     * The root directory of the watched tree.
+     */
+    private final Path root;
+
+    /**
+     * The DirectoryManager used to list the directories of the watched tree.
+     */
+    private final DirectoryManager directoryManager;
+
+    /**
+     * The WatchService every directory of the watched tree is registered with.
+     */
+    private final WatchService watchService;
+
+    /**
+     * The directory each WatchKey was registered for. Only used by the watching thread.
+     */
+    private final HashMap<WatchKey, Path> keys;
+
+    /**
+     * The images of every directory of the watched tree, keyed by the path of the directory. Sorting by path
+     * keeps every subtree in one contiguous range of keys.
+     */
+    private final ConcurrentSkipListMap<String, List<ExistingImage>> index;
+
+    /**
+     * The thread watching the tree.
+     */
+    private final Thread thread;
+
+    /**
+     * Whether the whole tree has been indexed once, so that the index can answer queries.
+     */
+    private volatile boolean ready;
+
+    /**
+     * Creates a LibraryWatcher for the tree under the given root. The watcher does not start until
+     * {@link #start()} is called.
+     *
+     * @param root             the root directory of the tree to watch
+     * @param directoryManager the DirectoryManager used to list the directories of the tree
+     * @throws IOException indicates that the WatchService cannot be created.
+     */
+    LibraryWatcher(Path root, DirectoryManager directoryManager) throws IOException {
+        this.root = root;
+        this.directoryManager = directoryManager;
+        this.watchService = root.getFileSystem().newWatchService();
+        this.keys = new HashMap<>();
+        this.index = new ConcurrentSkipListMap<>();
+        this.thread = new Thread(this, "GoGoPhoto library watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts indexing and watching the tree in the background.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops watching the tree. The index is no longer used to answer queries.
+     */
+    void close() {
+        ready = false;
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot close the library watcher.", e);
+        }
+    }
+
+    /**
+     * Returns the root directory of the watched tree.
+     *
+     * @return the root directory of the watched tree
+     */
+    Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns whether the index can answer queries about the given directory.
+     *
+     * @param dir the directory of a query
+     * @return true if the whole tree has been indexed and the directory lies in the tree.
+     */
+    boolean covers(Path dir) {
+        return ready && dir.startsWith(root);
+    }
+
+    /**
+     * Returns the images located in the given directory.
+     *
+     * @param dir a directory of the watched tree
+     * @return the images located in the directory in an ArrayList of ExistingImage.
+     */
+    ArrayList<ExistingImage> findLocalImages(Path dir) {
+        List<ExistingImage> images = index.get(dir.toString());
+        return images == null ? new ArrayList<ExistingImage>() : new ArrayList<>(images);
+    }
+
+    /**
+     * Returns the images located anywhere under the given directory, including its sub-directories.
+     *
+     * @param dir a directory of the watched tree
+     * @return the images located under the directory in an ArrayList of ExistingImage.
+     */
+    ArrayList<ExistingImage> findAllImages(Path dir) {
+        ArrayList<ExistingImage> imageCollection = findLocalImages(dir);
+        for (List<ExistingImage> images : subtree(dir).values()) {
+            imageCollection.addAll(images);
+        }
+        return imageCollection;
+    }
+
+    /**
+     * Indexes the whole tree, then applies the changes reported by the WatchService until the watcher is closed.
+     */
+    @Override
+    public void run() {
+        try {
+            registerTree(root);
+            ready = true;
+            while (!Thread.currentThread().isInterrupted()) {
+                LinkedHashSet<Path> changed = new LinkedHashSet<>();
+                LinkedHashSet<Path> modified = new LinkedHashSet<>();
+                LinkedHashSet<Path> rescans = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                long deadline = System.currentTimeMillis() + MAX_DELAY;
+                while (key != null) {
+                    processEvents(key, changed, modified, rescans);
+                    long remaining = deadline - System.currentTimeMillis();
+                    key = remaining > 0 ? watchService.poll(Math.min(QUIET_PERIOD, remaining), TimeUnit.MILLISECONDS)
+                            : null;
+                }
+                for (Path dir : rescans) {
+                    registerTree(dir);
+                }
+                for (Path dir : changed) {
+                    if (!rescans.contains(dir)) {
+                        indexDirectory(dir);
+                    }
+                }
+                for (Path file : modified) {
+                    recheckFile(file);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher has been closed
+        } catch (IOException e) {
+            GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot watch " + root, e);
+        }
+        ready = false;
+    }
+
+    /**
+     * Records which directories are touched by the events of the given key.
+     *
+     * @param key      a signalled WatchKey
+     * @param changed  collects the directories whose entries have changed
+     * @param modified collects the files that have been written to
+     * @param rescans  collects the directories whose whole subtree has to be scanned again
+     */
+    private void processEvents(WatchKey key, LinkedHashSet<Path> changed, LinkedHashSet<Path> modified,
+                               LinkedHashSet<Path> rescans) {
+        Path dir = keys.get(key);
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                rescans.add(dir);
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_MODIFY) {
+                if (!Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    modified.add(child);
+                }
+                continue;
+            }
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                rescans.add(child);
+            } else if (event.kind() == ENTRY_DELETE) {
+                removeTree(child);
+            }
+            changed.add(dir);
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+            removeTree(dir);
+        }
+    }
+
+    /**
+     * Registers every directory under the given directory with the WatchService and indexes it.
+     * Each directory is registered before it is listed, so that no change made during the scan is missed.
+     *
+     * @param start the directory to register
+     * @throws IOException indicates that the tree cannot be walked.
+     */
+    private void registerTree(Path start) throws IOException {
+        if (!Files.isDirectory(start, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                indexDirectory(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Lists the given directory again and replaces its images in the index.
+     *
+     * @param dir the directory to list
+     */
+    private void indexDirectory(Path dir) {
+        try {
+            ScanIndex.DirectoryRecord record = directoryManager.listDirectory(dir);
+            ArrayList<ExistingImage> images = new ArrayList<>(record.getImageNames().length);
+            for (String imageName : record.getImageNames()) {
+                images.add(new ExistingImage(imageName, dir.resolve(imageName).toString()));
+            }
+            index.put(dir.toString(), Collections.unmodifiableList(images));
+        } catch (IOException e) {
+            index.remove(dir.toString());
+        }
+    }
+
+    /**
+     * Checks again whether a file that has been written to is an image, and adds it to or removes it from the
+     * images of its directory in the index if that has changed. The remembered content of the directory is then
+     * forgotten, since writing to a file does not move the modification time of its directory. Nothing happens if
+     * the directory of the file is not indexed.
+     *
+     * @param file the file that has been written to
+     */
+    private void recheckFile(Path file) {
+        String dir = file.getParent().toString();
+        List<ExistingImage> images = index.get(dir);
+        if (images == null) {
+            return;
+        }
+        String name = file.getFileName().toString();
+        boolean image = Files.exists(file) && !Files.isDirectory(file) && directoryManager.isImage(file.toFile());
+        ArrayList<ExistingImage> updated = new ArrayList<>(images.size() + 1);
+        boolean listed = false;
+        for (ExistingImage existing : images) {
+            if (existing.getName().equals(name)) {
+                listed = true;
+            } else {
+                updated.add(existing);
+            }
+        }
+        if (listed == image) {
+            return;
+        }
+        if (image) {
+            updated.add(new ExistingImage(name, file.toString()));
+        }
+        index.put(dir, Collections.unmodifiableList(updated));
+        directoryManager.getScanIndex().forget(file.getParent());
+    }
+
+    /**
+     * Removes the given directory and all of its sub-directories from the index and stops watching them.
+     * Nothing happens if the path is not an indexed directory.
+     *
+     * @param dir the directory that has been deleted or moved away
+     */
+    private void removeTree(Path dir) {
+        if (index.remove(dir.toString()) == null) {
+            return;
+        }
+        subtree(dir).clear();
+        Iterator<Map.Entry<WatchKey, Path>> entries = keys.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<WatchKey, Path> entry = entries.next();
+            if (entry.getValue().startsWith(dir)) {
+                entry.getKey().cancel();
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the part of the index holding the sub-directories of the given directory, at any depth.
+     *
+     * @param dir a directory of the watched tree
+     * @return a view of the index restricted to the sub-directories of the directory.
+     */
+    private Map<String, List<ExistingImage>> subtree(Path dir) {
+        String prefix = dir.toString() + File.separator;
+        return index.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+}
@@ -0,0 +1,280 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * This class reads the images of a catalog file in the {@link CatalogFormat} lazily, from a memory mapping of the
+ * file, so that opening a catalog of a million images does not decode a million images. Opening the file only
+ * finds where every string and every record starts, and indexes the records by the hash of their path; an Image is
+ * decoded from its record the first time it is asked for, by ID or by path.
+ *
+ * <p>The decoded images are kept track of by {@link LazyCatalog}: an image changed since the catalog was opened
+ * stays in memory until the catalog is saved again.
+ *
+ * <p>The file must not be written while it is mapped; ImageManager saves a catalog to a new file and renames it
+ * over the old one.
+ *
+ * @see CatalogFormat
+ * @see LazyCatalog
+ */
+class MappedCatalog extends LazyCatalog {
+    /**
+     * The starting value of the FNV-1a hash.
+     */
+    private static final int FNV_OFFSET = 0x811C9DC5;
+
+    /**
+     * The multiplier of the FNV-1a hash.
+     */
+    private static final int FNV_PRIME = 0x01000193;
+
+    /**
+     * The mapped file, from the header to the CRC-32.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The position of every string in the buffer, after its length.
+     */
+    private final int[] stringOffsets;
+
+    /**
+     * The number of UTF-8 bytes of every string.
+     */
+    private final int[] stringLengths;
+
+    /**
+     * The decoded strings shared between images: directories, extensions and tags. Strings proper to one image are
+     * not kept.
+     */
+    private final String[] sharedStrings;
+
+    /**
+     * The position of the record of every image in the buffer, after its length, by image ID.
+     */
+    private final int[] recordOffsets;
+
+    /**
+     * The records by the hash of their path, in open addressing: every slot holds an image ID plus one, or 0 if
+     * it is empty.
+     */
+    private final int[] pathSlots;
+
+    /**
+     * Maps the catalog file and indexes its strings and records.
+     *
+     * @param file the catalog file, in the CatalogFormat
+     * @throws IOException indicates that the file cannot be mapped, is damaged or is of a later version.
+     */
+    MappedCatalog(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        CatalogFormat.Header header = CatalogFormat.readHeader(buffer);
+        stringOffsets = new int[header.stringCount];
+        stringLengths = new int[header.stringCount];
+        sharedStrings = new String[header.stringCount];
+        recordOffsets = new int[header.imageCount];
+        try {
+            for (int i = 0; i < header.stringCount; i++) {
+                stringLengths[i] = CatalogFormat.getVarInt(buffer);
+                stringOffsets[i] = buffer.position();
+                buffer.position(buffer.position() + stringLengths[i]);
+            }
+            for (int i = 0; i < header.imageCount; i++) {
+                int length = CatalogFormat.getVarInt(buffer);
+                recordOffsets[i] = buffer.position();
+                buffer.position(buffer.position() + length);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Damaged catalog: " + e, e);
+        }
+        pathSlots = new int[Integer.highestOneBit(Math.max(1, header.imageCount) * 2 - 1) << 1];
+        int mask = pathSlots.length - 1;
+        for (int id = 0; id < recordOffsets.length; id++) {
+            int slot = pathHash(id) & mask;
+            while (pathSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            pathSlots[slot] = id + 1;
+        }
+    }
+
+    @Override
+    int size() {
+        return recordOffsets.length;
+    }
+
+    @Override
+    synchronized int find(String path) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes, 0, bytes.length, FNV_OFFSET);
+        int mask = pathSlots.length - 1;
+        for (int slot = hash & mask; pathSlots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = pathSlots[slot] - 1;
+            if (pathEquals(id, bytes) && isSavedAt(id, path)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    synchronized void forEachSavedTag(BiConsumer<String, Integer> action) {
+        ByteBuffer records = buffer.duplicate();
+        for (int id = 0; id < recordOffsets.length; id++) {
+            records.position(recordOffsets[id]);
+            for (int i = 0; i < 4; i++) {
+                CatalogFormat.getVarInt(records);
+            }
+            for (int i = CatalogFormat.getVarInt(records); i > 0; i--) {
+                action.accept(sharedString(CatalogFormat.getVarInt(records)), id);
+            }
+        }
+    }
+
+    @Override
+    synchronized void forEachSavedPath(BiConsumer<String, Integer> action) {
+        ByteBuffer records = buffer.duplicate();
+        for (int id = 0; id < recordOffsets.length; id++) {
+            records.position(recordOffsets[id]);
+            String directory = sharedString(CatalogFormat.getVarInt(records));
+            action.accept(directory.concat(string(CatalogFormat.getVarInt(records))), id);
+        }
+    }
+
+    @Override
+    Image decode(int id) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(recordOffsets[id]);
+        String directory = sharedString(CatalogFormat.getVarInt(record));
+        String path = directory.concat(string(CatalogFormat.getVarInt(record)));
+        String name = string(CatalogFormat.getVarInt(record));
+        String type = sharedString(CatalogFormat.getVarInt(record));
+        String[] tags = new String[CatalogFormat.getVarInt(record)];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = sharedString(CatalogFormat.getVarInt(record));
+        }
+        int historyCount = CatalogFormat.getVarInt(record);
+        ArrayList<UsedName> history = new ArrayList<>(historyCount);
+        for (int i = 0; i < historyCount; i++) {
+            history.add(new UsedName(string(CatalogFormat.getVarInt(record))));
+        }
+        Image image = new Image(name, type, path, Arrays.asList(tags), history);
+        image.setId(id);
+        return image;
+    }
+
+    /**
+     * Returns a string shared between images, decoding it the first time only.
+     *
+     * @param code the position of the string in the table
+     * @return the string.
+     */
+    private String sharedString(int code) {
+        String string = sharedStrings[code];
+        if (string == null) {
+            string = string(code);
+            sharedStrings[code] = string;
+        }
+        return string;
+    }
+
+    /**
+     * Decodes a string of the table.
+     *
+     * @param code the position of the string in the table
+     * @return the string.
+     */
+    private String string(int code) {
+        byte[] bytes = new byte[stringLengths[code]];
+        ByteBuffer string = buffer.duplicate();
+        string.position(stringOffsets[code]);
+        string.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns whether the path of the record, as it was saved, is made of the input bytes.
+     *
+     * @param id    the ID of the image
+     * @param bytes the path in UTF-8
+     * @return true if the path of the record is the input path.
+     */
+    private boolean pathEquals(int id, byte[] bytes) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(recordOffsets[id]);
+        int directory = CatalogFormat.getVarInt(record);
+        int file = CatalogFormat.getVarInt(record);
+        int directoryLength = stringLengths[directory];
+        if (directoryLength + stringLengths[file] != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < directoryLength; i++) {
+            if (buffer.get(stringOffsets[directory] + i) != bytes[i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < stringLengths[file]; i++) {
+            if (buffer.get(stringOffsets[file] + i) != bytes[directoryLength + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash of the path of the record, as it was saved.
+     *
+     * @param id the ID of the image
+     * @return the hash of the path in UTF-8.
+     */
+    private int pathHash(int id) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(recordOffsets[id]);
+        int directory = CatalogFormat.getVarInt(record);
+        int file = CatalogFormat.getVarInt(record);
+        int hash = hash(buffer, stringOffsets[directory], stringLengths[directory], FNV_OFFSET);
+        return hash(buffer, stringOffsets[file], stringLengths[file], hash);
+    }
+
+    /**
+     * Continues the FNV-1a hash of bytes of the buffer.
+     *
+     * @param source the buffer
+     * @param offset the position of the first byte
+     * @param length the number of bytes
+     * @param hash   the hash of the bytes before
+     * @return the hash with the bytes.
+     */
+    private static int hash(ByteBuffer source, int offset, int length, int hash) {
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (source.get(i) & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Continues the FNV-1a hash of bytes of an array.
+     *
+     * @param source the array
+     * @param offset the position of the first byte
+     * @param length the number of bytes
+     * @param hash   the hash of the bytes before
+     * @return the hash with the bytes.
+     */
+    private static int hash(byte[] source, int offset, int length, int hash) {
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (source[i] & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
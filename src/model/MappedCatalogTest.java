@@ -0,0 +1,119 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedCatalogTest {
+
+    /**
+     * Returns a catalog file of images named IMG_0 to IMG_(count - 1), the even ones tagged "even".
+     */
+    private static File catalog(int count) throws IOException {
+        ImageManager im = new ImageManager();
+        for (int i = 0; i < count; i++) {
+            String name = i % 2 == 0 ? "IMG_" + i + " @even" : "IMG_" + i;
+            im.addChosenImage(new Image(name, "jpg", "./UnittestPictures/" + name + ".jpg"));
+        }
+        File file = File.createTempFile("catalog", ".ser");
+        im.saveToImageManagerFile(file.getPath());
+        return file;
+    }
+
+    @Test
+    void testLazyLookup() throws IOException {
+        File file = catalog(5000);
+        try {
+            ImageManager im = new ImageManager();
+            im.openCatalog(file);
+            TagIndex index = new TagIndex();
+            im.indexTags(index);
+            assertEquals(2500, index.count("even"));
+            Image image = im.foundImage("./UnittestPictures/IMG_42 @even.jpg");
+            assertNotNull(image);
+            assertEquals("IMG_42 @even", image.getName());
+            assertTrue(image.hasTag("even"));
+            assertSame(image, im.foundImage("./UnittestPictures/IMG_42 @even.jpg"));
+            assertSame(image, im.getImageById(image.getId()));
+            assertNull(im.foundImage("./UnittestPictures/IMG_5000.jpg"));
+            assertEquals(5000, im.allImages().size());
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    // a changed image is kept after leaving the LRU, and is found by its new path only
+    @Test
+    void testWriteThrough() throws IOException {
+        File file = catalog(MappedCatalog.CACHE_SIZE * 3);
+        File saved = File.createTempFile("catalog", ".ser");
+        Path picture = Files.createFile(Paths.get("./UnittestPictures/IMG_7.jpg"));
+        try {
+            ImageManager im = new ImageManager();
+            im.openCatalog(file);
+            Image image = im.foundImage("./UnittestPictures/IMG_7.jpg");
+            int id = image.getId();
+            im.renameFile(image, "IMG_7 @renamed");
+            image = null;
+            for (int i = 0; i < MappedCatalog.CACHE_SIZE * 3; i++) {
+                im.getImageById(i);
+            }
+            System.gc();
+            assertNull(im.foundImage("./UnittestPictures/IMG_7.jpg"));
+            Image renamed = im.foundImage("./UnittestPictures/IMG_7 @renamed.jpg");
+            assertNotNull(renamed);
+            assertEquals(id, renamed.getId());
+            im.saveToImageManagerFile(saved.getPath());
+            ImageManager reopened = new ImageManager();
+            reopened.openCatalog(saved);
+            assertEquals("IMG_7 @renamed", reopened.foundImage("./UnittestPictures/IMG_7 @renamed.jpg").getName());
+            ArrayList<Image> all = reopened.getImages();
+            assertEquals(MappedCatalog.CACHE_SIZE * 3, all.size());
+            assertSame(all.get(8), reopened.foundImage("./UnittestPictures/IMG_8 @even.jpg"));
+        } finally {
+            Files.delete(file.toPath());
+            Files.delete(saved.toPath());
+            Files.deleteIfExists(picture);
+            Files.deleteIfExists(Paths.get("./UnittestPictures/IMG_7 @renamed.jpg"));
+        }
+    }
+
+    // the paths of every image are read for the indexes without decoding the images
+    @Test
+    void testForEachPath() throws IOException {
+        File file = catalog(100);
+        Path picture = Files.createFile(Paths.get("./UnittestPictures/IMG_7.jpg"));
+        try {
+            MappedCatalog catalog = new MappedCatalog(file);
+            ArrayList<String> saved = new ArrayList<>();
+            catalog.forEachPath((path, id) -> saved.add(path));
+            assertEquals(100, saved.size());
+            assertEquals("./UnittestPictures/IMG_3.jpg", saved.get(3));
+            assertEquals(0, catalog.decodedCount());
+
+            ImageManager im = new ImageManager();
+            im.openCatalog(file);
+            im.renameFile(im.foundImage("./UnittestPictures/IMG_7.jpg"), "IMG_7 @renamed");
+            Image added = new Image("added", "jpg", "./UnittestPictures/added.jpg");
+            im.addChosenImage(added);
+            HashMap<Integer, String> paths = new HashMap<>();
+            im.forEachPath((path, id) -> assertNull(paths.put(id, path)));
+            assertEquals(101, paths.size());
+            assertEquals("./UnittestPictures/IMG_42 @even.jpg", paths.get(42));
+            assertEquals("./UnittestPictures/IMG_7 @renamed.jpg", paths.get(7));
+            assertEquals(added.getPath(), paths.get(added.getId()));
+        } finally {
+            Files.delete(file.toPath());
+            Files.deleteIfExists(picture);
+            Files.deleteIfExists(Paths.get("./UnittestPictures/IMG_7 @renamed.jpg"));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class keeps the catalog in memory only: closing the store keeps the images and tags for the next load in
+ * the same program, and nothing is written to disk. It suits tests and sessions whose changes must not be kept.
+ *
+ * @see CatalogStore
+ */
+class MemoryCatalogStore implements CatalogStore {
+    /**
+     * The images kept at the last close.
+     */
+    private ArrayList<Image> images = new ArrayList<>();
+
+    /**
+     * The tags and their counts kept at the last close.
+     */
+    private HashMap<String, Integer> tags = new HashMap<>();
+
+    /**
+     * Gives the managers the images and tags kept at the last close, if any.
+     *
+     * @param imageManager the image manager the images are read into
+     * @param tagManager   the tag manager the tags are read into
+     */
+    @Override
+    public void load(ImageManager imageManager, TagManager tagManager) {
+        imageManager.setImages(new ArrayList<>(images));
+        tagManager.setTags(new HashMap<>(tags));
+        tagManager.getTagIndex().rebuild(imageManager.getImages());
+    }
+
+    /**
+     * Keeps the images and tags of the managers for the next load.
+     *
+     * @param imageManager the image manager the images were read into
+     * @param tagManager   the tag manager the tags were read into
+     */
+    @Override
+    public void close(ImageManager imageManager, TagManager tagManager) {
+        images = new ArrayList<>(imageManager.getImages());
+        tags = new HashMap<>(tagManager.getTags());
+    }
+}
@@ -0,0 +1,156 @@
+package model;
+
+import java.io.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class remembers the metadata MetadataTable has read from the headers of the files, for every file together
+ * with its size and modification time. Remembered metadata is only used while the file still has the same size and
+ * modification time, so that the next session only reads the headers of the files that are new or have changed.
+ * The cache is saved to a file so that it survives between sessions.
+ *
+ * @see MetadataTable
+ * @see ContentHashCache
+ */
+class MetadataCache {
+    /**
+     * The remembered metadata, keyed by the normalized absolute path of the file.
+     */
+    private ConcurrentHashMap<String, MetadataRecord> records;
+
+    /**
+     * Creates an empty MetadataCache.
+     */
+    MetadataCache() {
+        records = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the metadata remembered for the file, or null if none is remembered or the file has changed since.
+     *
+     * @param path     the normalized absolute path of the file
+     * @param size     the current size of the file
+     * @param modified the current modification time of the file
+     * @return the remembered metadata of the file, or null if it has to be read again.
+     */
+    ExifReader.Metadata get(String path, long size, long modified) {
+        MetadataRecord record = records.get(path);
+        if (record == null || record.size != size || record.modified != modified) {
+            return null;
+        }
+        ExifReader.Metadata metadata = new ExifReader.Metadata();
+        metadata.captureTime = record.captureTime;
+        metadata.width = record.width;
+        metadata.height = record.height;
+        metadata.make = record.make;
+        metadata.model = record.model;
+        return metadata;
+    }
+
+    /**
+     * Remembers the metadata read from the file.
+     *
+     * @param path     the normalized absolute path of the file
+     * @param size     the size of the file when it was read
+     * @param modified the modification time of the file when it was read
+     * @param metadata the metadata read from the file
+     */
+    void put(String path, long size, long modified, ExifReader.Metadata metadata) {
+        records.put(path, new MetadataRecord(size, modified, metadata));
+    }
+
+    /**
+     * Returns the number of files remembered.
+     *
+     * @return the number of files remembered.
+     */
+    int size() {
+        return records.size();
+    }
+
+    /**
+     * Saves the remembered metadata to the given filePath
+     *
+     * @param filePath the path of the file the cache is saved to
+     * @throws IOException indicates that saving the cache fails.
+     */
+    void saveToMetadataCacheFile(String filePath) throws IOException {
+        OutputStream file = new FileOutputStream(filePath);
+        OutputStream buffer = new BufferedOutputStream(file);
+        ObjectOutput output = new ObjectOutputStream(buffer);
+        // serialize the metadata cache
+        output.writeObject(records);
+        output.close();
+    }
+
+    /**
+     * Sets the input map as the remembered metadata.
+     *
+     * @param records the remembered metadata, keyed by the path of the file
+     */
+    void setRecords(ConcurrentHashMap<String, MetadataRecord> records) {
+        this.records = records;
+    }
+
+    /**
+     * This class holds the metadata read from the headers of a file.
+     */
+    static class MetadataRecord implements Serializable {
+        /**
+         * The version of the saved form of this class.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The size of the file when it was read, in bytes.
+         */
+        private final long size;
+
+        /**
+         * The modification time of the file when it was read, in milliseconds.
+         */
+        private final long modified;
+
+        /**
+         * When the picture was taken, in milliseconds of the wall-clock time in UTC.
+         */
+        private final long captureTime;
+
+        /**
+         * The width of the picture, in pixels.
+         */
+        private final int width;
+
+        /**
+         * The height of the picture, in pixels.
+         */
+        private final int height;
+
+        /**
+         * The maker of the camera, or null.
+         */
+        private final String make;
+
+        /**
+         * The model of the camera, or null.
+         */
+        private final String model;
+
+        /**
+         * Creates a MetadataRecord.
+         *
+         * @param size     the size of the file
+         * @param modified the modification time of the file
+         * @param metadata the metadata read from the file
+         */
+        MetadataRecord(long size, long modified, ExifReader.Metadata metadata) {
+            this.size = size;
+            this.modified = modified;
+            this.captureTime = metadata.captureTime;
+            this.width = metadata.width;
+            this.height = metadata.height;
+            this.make = metadata.make;
+            this.model = metadata.model;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+/**
+ * This class holds the capture date, the camera and the dimensions of the images, read from the headers of their
+ * files by ExifReader. The values are kept in columns, one primitive array per field indexed by image ID, instead
+ * of one object per image, so that sorting or filtering by one field only touches that column. The camera names are
+ * stored once each and referred to by a small integer code.
+ *
+ * <p>Every image added to the catalog is read in the background, on a few threads of the lowest priority, so that
+ * reading never competes with the GUI; the columns of an image stay unknown until it has been read. The capture
+ * times are also indexed in a TimelineIndex as the images are read. What is read is remembered in a MetadataCache,
+ * by path, size and modification time, so that the headers of a file are only read again once it has changed.
+ *
+ * @see ExifReader
+ * @see MetadataCache
+ * @see TimelineIndex
+ * @see GoGoPhotoSystem#getMetadataTable()
+ */
+public class MetadataTable implements CatalogListener {
+    /**
+     * The capture time of an image whose capture time is unknown.
+     */
+    public static final long UNKNOWN_TIME = ExifReader.Metadata.UNKNOWN_TIME;
+
+    /**
+     * The width or height of an image whose dimensions are unknown.
+     */
+    public static final int UNKNOWN_SIZE = ExifReader.Metadata.UNKNOWN_SIZE;
+
+    /**
+     * The state of an image that has not been read yet.
+     */
+    private static final byte PENDING = 0;
+
+    /**
+     * The state of an image that has been read.
+     */
+    private static final byte READ = 1;
+
+    /**
+     * The state of an image whose file could not be read.
+     */
+    private static final byte FAILED = 2;
+
+    /**
+     * The capture time of every image, by image ID.
+     */
+    private long[] captureTimes = new long[0];
+
+    /**
+     * The width of every image, by image ID.
+     */
+    private int[] widths = new int[0];
+
+    /**
+     * The height of every image, by image ID.
+     */
+    private int[] heights = new int[0];
+
+    /**
+     * The code of the camera of every image, by image ID, or -1 if unknown.
+     */
+    private int[] cameraCodes = new int[0];
+
+    /**
+     * The state of every image, by image ID.
+     */
+    private byte[] states = new byte[0];
+
+    /**
+     * The camera names, at the position of their code.
+     */
+    private final ArrayList<String> cameras = new ArrayList<>();
+
+    /**
+     * The code of every camera name.
+     */
+    private final HashMap<String, Integer> cameraCodesByName = new HashMap<>();
+
+    /**
+     * The images with a known capture time, sorted by capture time.
+     */
+    private final TimelineIndex timeline = new TimelineIndex();
+
+    /**
+     * The threads reading the files, created when first needed.
+     */
+    private ExecutorService pool;
+
+    /**
+     * The number of images waiting to be read. Also the lock of the waiting.
+     */
+    private final int[] pending = new int[1];
+
+    /**
+     * The remembered metadata.
+     */
+    private final MetadataCache cache;
+
+    /**
+     * Creates an empty MetadataTable remembering what it reads in a cache of its own.
+     */
+    public MetadataTable() {
+        this(new MetadataCache());
+    }
+
+    /**
+     * Creates an empty MetadataTable remembering what it reads in the input cache.
+     *
+     * @param cache the cache of the metadata
+     */
+    MetadataTable(MetadataCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Reads the images added to the catalog in the background.
+     *
+     * @param batch the changes published together
+     */
+    @Override
+    public void onBatch(CatalogEventBatch batch) {
+        for (CatalogEvent event : batch.getEvents()) {
+            if (event instanceof CatalogEvent.ImageAdded) {
+                submit(event.getImage().getId(), event.getImage().getPath());
+            }
+        }
+    }
+
+    /**
+     * Reads the images in the background, such as the images read from the catalog file. Only their paths and
+     * IDs are read, so that the images of a catalog file are not decoded.
+     *
+     * @param imageManager the image manager whose images are read
+     * @see ImageManager#forEachPath(java.util.function.BiConsumer)
+     */
+    void indexAll(ImageManager imageManager) {
+        imageManager.forEachPath((path, id) -> submit(id, path));
+    }
+
+    /**
+     * Returns when the image was taken, in milliseconds of the wall-clock time of the camera in UTC.
+     *
+     * @param id the ID of the image
+     * @return the capture time, or {@link #UNKNOWN_TIME} if it is unknown or not read yet.
+     */
+    public synchronized long getCaptureTime(int id) {
+        return id >= 0 && id < captureTimes.length ? captureTimes[id] : UNKNOWN_TIME;
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @param id the ID of the image
+     * @return the width in pixels, or {@link #UNKNOWN_SIZE} if it is unknown or not read yet.
+     */
+    public synchronized int getWidth(int id) {
+        return id >= 0 && id < widths.length ? widths[id] : UNKNOWN_SIZE;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @param id the ID of the image
+     * @return the height in pixels, or {@link #UNKNOWN_SIZE} if it is unknown or not read yet.
+     */
+    public synchronized int getHeight(int id) {
+        return id >= 0 && id < heights.length ? heights[id] : UNKNOWN_SIZE;
+    }
+
+    /**
+     * Returns the camera that took the image.
+     *
+     * @param id the ID of the image
+     * @return the maker and model of the camera, or null if it is unknown or not read yet.
+     */
+    public synchronized String getCamera(int id) {
+        int code = id >= 0 && id < cameraCodes.length ? cameraCodes[id] : -1;
+        return code < 0 ? null : cameras.get(code);
+    }
+
+    /**
+     * Returns whether the file of the image has been read.
+     *
+     * @param id the ID of the image
+     * @return true if the file has been read, even if it held no metadata.
+     */
+    public synchronized boolean isRead(int id) {
+        return id >= 0 && id < states.length && states[id] != PENDING;
+    }
+
+    /**
+     * Returns the index of the images by capture time, kept up to date as images are read.
+     *
+     * @return the timeline of the images.
+     * @see TimelineIndex
+     */
+    public TimelineIndex getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Waits until every image submitted so far has been read.
+     *
+     * @throws InterruptedException indicates that the waiting has been interrupted.
+     */
+    void awaitIndexing() throws InterruptedException {
+        synchronized (pending) {
+            while (pending[0] > 0) {
+                pending.wait();
+            }
+        }
+    }
+
+    /**
+     * Reads the image on the pool, unless it has no ID yet.
+     *
+     * @param id   the ID of the image
+     * @param path the path of the file of the image
+     */
+    private void submit(int id, String path) {
+        if (id < 0) {
+            return;
+        }
+        synchronized (pending) {
+            pending[0]++;
+        }
+        pool().execute(() -> {
+            try {
+                read(id, path);
+            } finally {
+                synchronized (pending) {
+                    pending[0]--;
+                    pending.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the pool reading the files, creating it when first needed. It has half as many threads as there are
+     * processors, at the lowest priority.
+     *
+     * @return the pool reading the files.
+     */
+    private synchronized ExecutorService pool() {
+        if (pool == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            pool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "GoGoPhoto metadata reader");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Reads the headers of the file of an image, from the cache if the file has not changed, and stores what they
+     * hold in the columns. Only the ID and path of the image are kept until then, so that images read lazily from a
+     * catalog file are not held by the queue.
+     *
+     * @param id        the ID of the image
+     * @param imagePath the path of the file of the image
+     */
+    private void read(int id, String imagePath) {
+        Path path = Paths.get(imagePath).toAbsolutePath().normalize();
+        ExifReader.Metadata metadata;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            metadata = cache.get(path.toString(), size, modified);
+            if (metadata == null) {
+                metadata = ExifReader.read(path);
+                cache.put(path.toString(), size, modified, metadata);
+            }
+        } catch (IOException | RuntimeException e) {
+            GoGoPhotoSystem.logger.log(Level.FINE, "Cannot read the metadata of " + path + ": " + e);
+            metadata = null;
+        }
+        store(id, metadata);
+    }
+
+    /**
+     * Stores the metadata of an image in the columns, and its capture time in the timeline.
+     *
+     * @param id       the ID of the image
+     * @param metadata the metadata of the image, or null if its file could not be read
+     */
+    private synchronized void store(int id, ExifReader.Metadata metadata) {
+        ensureCapacity(id + 1);
+        if (metadata == null) {
+            states[id] = FAILED;
+            timeline.remove(id);
+            return;
+        }
+        captureTimes[id] = metadata.captureTime;
+        widths[id] = metadata.width;
+        heights[id] = metadata.height;
+        String camera = metadata.getCamera();
+        if (camera != null) {
+            Integer code = cameraCodesByName.get(camera);
+            if (code == null) {
+                code = cameras.size();
+                cameras.add(camera);
+                cameraCodesByName.put(camera, code);
+            }
+            cameraCodes[id] = code;
+        }
+        states[id] = READ;
+        if (metadata.captureTime == UNKNOWN_TIME) {
+            timeline.remove(id);
+        } else {
+            timeline.put(id, metadata.captureTime);
+        }
+    }
+
+    /**
+     * Grows the columns so that they hold at least the input number of images, filling the new rows with
+     * unknown values.
+     *
+     * @param size the number of images the columns must hold
+     */
+    private void ensureCapacity(int size) {
+        int length = captureTimes.length;
+        if (size <= length) {
+            return;
+        }
+        int capacity = Math.max(size, length + (length >> 1) + 16);
+        captureTimes = Arrays.copyOf(captureTimes, capacity);
+        Arrays.fill(captureTimes, length, capacity, UNKNOWN_TIME);
+        widths = Arrays.copyOf(widths, capacity);
+        Arrays.fill(widths, length, capacity, UNKNOWN_SIZE);
+        heights = Arrays.copyOf(heights, capacity);
+        Arrays.fill(heights, length, capacity, UNKNOWN_SIZE);
+        cameraCodes = Arrays.copyOf(cameraCodes, capacity);
+        Arrays.fill(cameraCodes, length, capacity, -1);
+        states = Arrays.copyOf(states, capacity);
+    }
+}
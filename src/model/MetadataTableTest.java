@@ -0,0 +1,184 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataTableTest {
+
+    @Test
+    void testMetadataTable() throws InterruptedException {
+        ImageManager im = new ImageManager();
+        MetadataTable table = new MetadataTable();
+        im.getEventBus().subscribe(table);
+        Image dated = new Image("IMG_4987", "jpg", "./TestPictures/IMG_4987.jpg");
+        Image undated = new Image("IMG_1604", "jpg", "./TestPictures/IMG_1604.jpg");
+        Image missing = new Image("notExisting", "jpg", "./TestPictures/notExisting.jpg");
+        im.addChosenImage(dated);
+        im.addChosenImage(undated);
+        im.addChosenImage(missing);
+        table.awaitIndexing();
+        assertEquals(Instant.parse("2017-09-09T14:20:35Z").toEpochMilli(), table.getCaptureTime(dated.getId()));
+        assertEquals(4032, table.getWidth(dated.getId()));
+        assertEquals(2688, table.getHeight(dated.getId()));
+        assertEquals(MetadataTable.UNKNOWN_TIME, table.getCaptureTime(undated.getId()));
+        assertEquals(625, table.getWidth(undated.getId()));
+        assertTrue(table.isRead(missing.getId()));
+        assertEquals(MetadataTable.UNKNOWN_SIZE, table.getWidth(missing.getId()));
+    }
+
+    // the camera is read from the APP1 segment, the size from the frame header
+    @Test
+    void testExifReaderCamera() throws IOException {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        tiff.write(new byte[]{'M', 'M', 0, 42, 0, 0, 0, 8, 0, 2});
+        tiff.write(new byte[]{0x01, 0x0F, 0, 2, 0, 0, 0, 6, 0, 0, 0, 38});
+        tiff.write(new byte[]{0x01, 0x10, 0, 2, 0, 0, 0, 4, 'E', 'O', 'S', 0});
+        tiff.write(new byte[]{0, 0, 0, 0});
+        tiff.write("Canon\0".getBytes(StandardCharsets.US_ASCII));
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0, (byte) (tiff.size() + 8)});
+        jpeg.write(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        jpeg.write(tiff.toByteArray());
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xC0, 0, 8, 8, 0x01, 0x2C, 0x01, (byte) 0x90, 0});
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xD9});
+        Path file = Files.createTempFile("exif", ".jpg");
+        try {
+            Files.write(file, jpeg.toByteArray());
+            ExifReader.Metadata metadata = ExifReader.read(file);
+            assertEquals("Canon EOS", metadata.getCamera());
+            assertEquals(400, metadata.width);
+            assertEquals(300, metadata.height);
+            assertEquals(MetadataTable.UNKNOWN_TIME, metadata.captureTime);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // the timeline is filled as images are read
+    @Test
+    void testMetadataTableTimeline() throws InterruptedException {
+        ImageManager im = new ImageManager();
+        MetadataTable table = new MetadataTable();
+        im.getEventBus().subscribe(table);
+        Image dated = new Image("IMG_4987", "jpg", "./TestPictures/IMG_4987.jpg");
+        Image undated = new Image("IMG_1604", "jpg", "./TestPictures/IMG_1604.jpg");
+        im.addChosenImage(dated);
+        im.addChosenImage(undated);
+        table.awaitIndexing();
+        TimelineIndex timeline = table.getTimeline();
+        assertEquals(1, timeline.size());
+        assertArrayEquals(new int[]{dated.getId()}, timeline.findBetween(
+                TimelineIndex.startOf(LocalDate.of(2017, 9, 9)), TimelineIndex.startOf(LocalDate.of(2017, 9, 10))));
+        assertEquals(0, timeline.countBetween(
+                TimelineIndex.startOf(LocalDate.of(2017, 9, 10)), TimelineIndex.startOf(LocalDate.of(2017, 9, 11))));
+    }
+
+    // ranges and buckets match counting every capture time, across additions and removals
+    @Test
+    void testTimelineIndex() {
+        Random random = new Random(3);
+        TimelineIndex timeline = new TimelineIndex();
+        long start = TimelineIndex.startOf(LocalDate.of(2019, 1, 1));
+        long[] times = new long[3000];
+        for (int id = 0; id < times.length; id++) {
+            times[id] = start + (long) (random.nextDouble() * 400) * 24 * 3600 * 1000 + random.nextInt(86400000);
+            timeline.put(id, times[id]);
+            if (id % 500 == 0) {
+                timeline.countBetween(start, start + 1);
+            }
+        }
+        for (int id = 0; id < times.length; id += 7) {
+            timeline.remove(id);
+            times[id] = MetadataTable.UNKNOWN_TIME;
+        }
+        timeline.put(1, start);
+        times[1] = start;
+        long from = TimelineIndex.startOf(LocalDate.of(2019, 7, 1));
+        long to = TimelineIndex.startOf(LocalDate.of(2019, 7, 15));
+        int[] found = timeline.findBetween(from, to);
+        int expected = 0;
+        for (long time : times) {
+            if (time != MetadataTable.UNKNOWN_TIME && time >= from && time < to) {
+                expected++;
+            }
+        }
+        assertEquals(expected, found.length);
+        for (int i = 0; i < found.length; i++) {
+            assertTrue(times[found[i]] >= from && times[found[i]] < to);
+            assertTrue(i == 0 || times[found[i - 1]] <= times[found[i]]);
+        }
+        SortedMap<LocalDate, Integer> days =
+                timeline.countByDay(LocalDate.of(2019, 7, 1), LocalDate.of(2019, 7, 14));
+        int dayTotal = 0;
+        for (int count : days.values()) {
+            dayTotal += count;
+        }
+        assertEquals(expected, dayTotal);
+        SortedMap<YearMonth, Integer> months = timeline.countByMonth(YearMonth.of(2019, 1), YearMonth.of(2020, 12));
+        int monthTotal = 0;
+        for (int count : months.values()) {
+            monthTotal += count;
+        }
+        assertEquals(timeline.size(), monthTotal);
+        LocalDate first = LocalDate.of(2019, 1, 1);
+        assertTrue(timeline.countByDay(first, first).containsKey(first));
+    }
+
+    // the metadata of an unchanged file comes from the cache, which is saved and read back between sessions
+    @Test
+    @SuppressWarnings("unchecked")
+    void testMetadataTableCache() throws IOException, ClassNotFoundException, InterruptedException {
+        Path file = Paths.get("./TestPictures/IMG_4987.jpg").toAbsolutePath().normalize();
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        MetadataCache cache = new MetadataCache();
+        MetadataTable table = new MetadataTable(cache);
+        ImageManager im = new ImageManager();
+        im.getEventBus().subscribe(table);
+        Image image = new Image("IMG_4987", "jpg", "./TestPictures/IMG_4987.jpg");
+        im.addChosenImage(image);
+        table.awaitIndexing();
+        assertEquals(1, cache.size());
+        assertEquals(4032, cache.get(file.toString(), size, modified).width);
+        assertNull(cache.get(file.toString(), size, modified + 1));
+
+        Path saved = Files.createTempFile("metadataCache", ".ser");
+        try {
+            cache.saveToMetadataCacheFile(saved.toString());
+            MetadataCache reread = new MetadataCache();
+            try (ObjectInputStream input = new ObjectInputStream(Files.newInputStream(saved))) {
+                reread.setRecords((ConcurrentHashMap<String, MetadataCache.MetadataRecord>) input.readObject());
+            }
+            ExifReader.Metadata metadata = reread.get(file.toString(), size, modified);
+            assertEquals(Instant.parse("2017-09-09T14:20:35Z").toEpochMilli(), metadata.captureTime);
+
+            // a remembered value is used instead of the header of the file
+            metadata.width = 17;
+            reread.put(file.toString(), size, modified, metadata);
+            MetadataTable cached = new MetadataTable(reread);
+            ImageManager other = new ImageManager();
+            other.getEventBus().subscribe(cached);
+            Image same = new Image("IMG_4987", "jpg", "./TestPictures/IMG_4987.jpg");
+            other.addChosenImage(same);
+            cached.awaitIndexing();
+            assertEquals(17, cached.getWidth(same.getId()));
+        } finally {
+            Files.delete(saved);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package model;
+
+/**
+ * This interface is notified of the progress of a batch move of ImageManager. It is called from the threads
+ * moving the files, once after every file, so it must not touch the GUI directly.
+ *
+ * @see ImageManager#moveImagesToDirectory(java.util.Collection, String, int, MoveProgressListener)
+ */
+@FunctionalInterface
+public interface MoveProgressListener {
+    /**
+     * Called after a file has been moved or has failed to move.
+     *
+     * @param completed the number of files done so far
+     * @param total     the number of files to move
+     */
+    void progressed(int completed, int total);
+}
@@ -0,0 +1,75 @@
+package model;
+
+/**
+ * This class holds the indexes an ImageQuery is answered from: the inverted tag index, the sorted path index of
+ * the ImageManager and the timeline of the capture dates.
+ *
+ * @see ImageQuery
+ * @see QueryPlan
+ */
+class QueryContext {
+    /**
+     * The inverted tag index.
+     */
+    private final TagIndex tagIndex;
+
+    /**
+     * The images, by ID and by path.
+     */
+    private final ImageManager imageManager;
+
+    /**
+     * The capture dates of the images.
+     */
+    private final MetadataTable metadataTable;
+
+    /**
+     * Creates a QueryContext.
+     *
+     * @param tagIndex      the inverted tag index
+     * @param imageManager  the images, by ID and by path
+     * @param metadataTable the capture dates of the images
+     */
+    QueryContext(TagIndex tagIndex, ImageManager imageManager, MetadataTable metadataTable) {
+        this.tagIndex = tagIndex;
+        this.imageManager = imageManager;
+        this.metadataTable = metadataTable;
+    }
+
+    /**
+     * Returns the inverted tag index.
+     *
+     * @return the inverted tag index.
+     */
+    TagIndex getTagIndex() {
+        return tagIndex;
+    }
+
+    /**
+     * Returns the imageManager.
+     *
+     * @return the imageManager.
+     */
+    ImageManager getImageManager() {
+        return imageManager;
+    }
+
+    /**
+     * Returns the table of the capture dates.
+     *
+     * @return the table of the capture dates.
+     */
+    MetadataTable getMetadataTable() {
+        return metadataTable;
+    }
+
+    /**
+     * Returns the image with the ID.
+     *
+     * @param id the ID of the image
+     * @return the image, or null if no image has the ID.
+     */
+    Image image(int id) {
+        return imageManager.getImageById(id);
+    }
+}
@@ -0,0 +1,143 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * This class is the plan answering an ImageQuery. Of the operands that must all match, the one an index answers
+ * with the fewest images drives the plan: only the images it finds are looked at, and the other operands are
+ * checked on them one image at a time, as the results are consumed. If no operand can be answered from an index,
+ * every image of the ImageManager is checked.
+ *
+ * <p>The plan is chosen from the indexes as they are when it is compiled, and the results are read from them as
+ * they are when they are streamed.
+ *
+ * @see ImageQuery
+ * @see GoGoPhotoSystem#compile(String)
+ */
+public class QueryPlan {
+    /**
+     * The query answered by this plan.
+     */
+    private final ImageQuery query;
+
+    /**
+     * The indexes the plan reads.
+     */
+    private final QueryContext context;
+
+    /**
+     * The operand whose index is read, or null if every image is checked.
+     */
+    private final ImageQuery driver;
+
+    /**
+     * The number of images the driver was estimated to find, or the number of images checked.
+     */
+    private final int estimate;
+
+    /**
+     * The operands checked image by image, in the order they are written.
+     */
+    private final List<ImageQuery> filters;
+
+    /**
+     * Creates the plan answering the query from the indexes.
+     *
+     * @param query   the query to answer
+     * @param context the indexes of the images
+     */
+    QueryPlan(ImageQuery query, QueryContext context) {
+        this.query = query;
+        this.context = context;
+        ImageQuery best = null;
+        int bestEstimate = Integer.MAX_VALUE;
+        for (ImageQuery operand : query.conjuncts()) {
+            int count = operand.estimate(context, bestEstimate);
+            if (count >= 0 && (best == null || count < bestEstimate)) {
+                best = operand;
+                bestEstimate = count;
+            }
+        }
+        this.driver = best;
+        this.estimate = best == null ? context.getImageManager().allImages().size() : bestEstimate;
+        ArrayList<ImageQuery> rest = new ArrayList<>();
+        for (ImageQuery operand : query.conjuncts()) {
+            if (operand != best) {
+                rest.add(operand);
+            }
+        }
+        this.filters = rest;
+    }
+
+    /**
+     * Returns the images matched by the query. The images are found lazily: the driving index is read when the
+     * stream is consumed, and every other operand is checked on one image at a time.
+     *
+     * @return the images matched by the query.
+     */
+    public Stream<Image> stream() {
+        if (driver == null) {
+            return context.getImageManager().allImages().stream()
+                    .filter(image -> matchesFilters(image.getId()));
+        }
+        return Stream.of(driver)
+                .flatMapToInt(operand -> IntStream.of(operand.lookup(context).toArray()))
+                .filter(this::matchesFilters)
+                .mapToObj(context::image)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Returns how the query is answered: the index read, with the number of images it was estimated to find,
+     * and the operands checked on every image it finds, such as:
+     * <pre>
+     * tag:beach AND NOT tag:rejected AND dir:/photos/2019
+     *   read tag:beach from the tag index, about 12 images
+     *   check NOT tag:rejected
+     *   check dir:/photos/2019
+     * </pre>
+     *
+     * @return the explanation of this plan.
+     */
+    public String explain() {
+        StringBuilder text = new StringBuilder(query.toString());
+        if (driver == null) {
+            text.append(System.lineSeparator()).append("  scan all ").append(estimate).append(" images");
+        } else {
+            text.append(System.lineSeparator()).append("  read ").append(driver).append(" from the ")
+                    .append(driver.indexName()).append(", about ").append(estimate).append(" images");
+        }
+        for (ImageQuery filter : filters) {
+            text.append(System.lineSeparator()).append("  check ").append(filter);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the query answered by this plan.
+     *
+     * @return the query answered by this plan.
+     */
+    public ImageQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns whether the image with the ID is matched by every operand checked image by image.
+     *
+     * @param id the ID of the image
+     * @return true if the image passes every check.
+     */
+    private boolean matchesFilters(int id) {
+        for (ImageQuery filter : filters) {
+            if (!filter.matches(id, context)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,175 @@
+package model;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class remembers, for every directory DirectoryManager has listed, the modification time of the directory
+ * together with the names of the images and sub-directories it contained. A directory whose modification time
+ * has not moved since it was listed does not need to be listed again, because creating, deleting or renaming an
+ * entry of a directory always moves its modification time. The index is saved to a file so that it survives
+ * between sessions.
+ *
+ * @see DirectoryManager
+ * @see DirectoryScanTask
+ */
+class ScanIndex {
+    /**
+     * A directory modified this recently (in milliseconds) is not remembered, since it could still be modified
+     * within the same tick of the file system clock without its modification time moving.
+     */
+    private static final long SETTLE_TIME = 2000;
+
+    /**
+     * The remembered directories, keyed by the path of the directory.
+     */
+    private ConcurrentHashMap<String, DirectoryRecord> directories;
+
+    /**
+     * Creates an empty ScanIndex.
+     */
+    ScanIndex() {
+        directories = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the remembered content of the directory, or null if the directory is not remembered or
+     * has been modified since it was remembered.
+     *
+     * @param directory the directory to look up
+     * @param modified  the current modification time of the directory
+     * @return the remembered content of the directory, or null if it has to be listed again.
+     */
+    DirectoryRecord get(Path directory, long modified) {
+        DirectoryRecord record = directories.get(directory.toString());
+        if (record == null || record.modified != modified) {
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Remembers the content of a directory that has just been listed.
+     *
+     * @param directory the directory that has been listed
+     * @param record    the content of the directory
+     */
+    void put(Path directory, DirectoryRecord record) {
+        if (System.currentTimeMillis() - record.modified >= SETTLE_TIME) {
+            directories.put(directory.toString(), record);
+        } else {
+            directories.remove(directory.toString());
+        }
+    }
+
+    /**
+     * Forgets the content of a directory, so that it is listed again the next time, such as a directory one of
+     * whose files has been written to without its modification time moving.
+     *
+     * @param directory the directory to forget
+     */
+    void forget(Path directory) {
+        directories.remove(directory.toString());
+    }
+
+    /**
+     * Forgets every directory under the given root that was not visited by the latest scan of the root, such
+     * as directories that have been deleted or moved away.
+     *
+     * @param root    the root of the latest scan
+     * @param visited the paths of the directories visited by the latest scan
+     */
+    void retainVisited(Path root, Set<String> visited) {
+        String prefix = root.toString() + File.separator;
+        Iterator<String> keys = directories.keySet().iterator();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (key.startsWith(prefix) && !visited.contains(key)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Saves the remembered directories to the given filePath
+     *
+     * @param filePath the path of the file the index is saved to
+     * @throws IOException indicates that saving the index fails.
+     */
+    void saveToScanIndexFile(String filePath) throws IOException {
+        OutputStream file = new FileOutputStream(filePath);
+        OutputStream buffer = new BufferedOutputStream(file);
+        ObjectOutput output = new ObjectOutputStream(buffer);
+        // serialize the scan index
+        output.writeObject(directories);
+        output.close();
+    }
+
+    /**
+     * Sets the input map as the remembered directories.
+     *
+     * @param directories the remembered directories, keyed by the path of the directory
+     */
+    void setDirectories(ConcurrentHashMap<String, DirectoryRecord> directories) {
+        this.directories = directories;
+    }
+
+    /**
+     * This class holds what a directory contained when it was listed.
+     */
+    static class DirectoryRecord implements Serializable {
+        /**
+         * The serialVersionUID of the first form of this class, kept so that saved scan indexes stay readable.
+         */
+        private static final long serialVersionUID = -3447389170506662132L;
+
+        /**
+         * The modification time of the directory when it was listed, in milliseconds.
+         */
+        private final long modified;
+
+        /**
+         * The names of the image files in the directory.
+         */
+        private final String[] imageNames;
+
+        /**
+         * The names of the sub-directories of the directory.
+         */
+        private final String[] subDirectories;
+
+        /**
+         * Creates a DirectoryRecord.
+         *
+         * @param modified       the modification time of the directory when it was listed
+         * @param imageNames     the names of the image files in the directory
+         * @param subDirectories the names of the sub-directories of the directory
+         */
+        DirectoryRecord(long modified, String[] imageNames, String[] subDirectories) {
+            this.modified = modified;
+            this.imageNames = imageNames;
+            this.subDirectories = subDirectories;
+        }
+
+        /**
+         * Returns the names of the image files in the directory.
+         *
+         * @return the names of the image files in the directory.
+         */
+        String[] getImageNames() {
+            return imageNames;
+        }
+
+        /**
+         * Returns the names of the sub-directories of the directory.
+         *
+         * @return the names of the sub-directories of the directory.
+         */
+        String[] getSubDirectories() {
+            return subDirectories;
+        }
+    }
+}
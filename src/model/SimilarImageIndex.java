@@ -0,0 +1,209 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+/**
+ * This class finds the images that look like a given image. Every image added to the catalog gets its difference
+ * hash computed in the background, by a pool of threads, and the hashes are indexed by image ID in a BK-tree, so
+ * that the images whose hash is within a few bits of a query are found without comparing the query with every
+ * image. The hashes are remembered in the ContentHashCache with the content hashes, by path, size and
+ * modification time, so that they are only computed again for files that have changed.
+ *
+ * @see DifferenceHash
+ * @see BKTree
+ * @see ContentHashCache
+ * @see GoGoPhotoSystem#findSimilarImages(Image, int)
+ */
+public class SimilarImageIndex implements CatalogListener {
+    /**
+     * The remembered hashes.
+     */
+    private final ContentHashCache cache;
+
+    /**
+     * The hashes of the indexed images, by image ID.
+     */
+    private final BKTree tree;
+
+    /**
+     * The hash of every indexed image, by image ID, so that an image is not indexed twice.
+     */
+    private final HashMap<Integer, Long> hashes;
+
+    /**
+     * The threads computing the hashes, created when first needed.
+     */
+    private ExecutorService pool;
+
+    /**
+     * The number of images waiting to be hashed. Also the lock of the waiting.
+     */
+    private final int[] pending = new int[1];
+
+    /**
+     * Creates an empty SimilarImageIndex remembering its hashes in the input cache.
+     *
+     * @param cache the cache of the hashes
+     */
+    SimilarImageIndex(ContentHashCache cache) {
+        this.cache = cache;
+        this.tree = new BKTree();
+        this.hashes = new HashMap<>();
+    }
+
+    /**
+     * Hashes the images added to the catalog in the background.
+     *
+     * @param batch the changes published together
+     */
+    @Override
+    public void onBatch(CatalogEventBatch batch) {
+        for (CatalogEvent event : batch.getEvents()) {
+            if (event instanceof CatalogEvent.ImageAdded) {
+                submit(event.getImage().getId(), event.getImage().getPath());
+            }
+        }
+    }
+
+    /**
+     * Hashes the images in the background, such as the images read from the catalog file. Only their paths and
+     * IDs are read, so that the images of a catalog file are not decoded.
+     *
+     * @param imageManager the image manager whose images are indexed
+     * @see ImageManager#forEachPath(java.util.function.BiConsumer)
+     */
+    void indexAll(ImageManager imageManager) {
+        imageManager.forEachPath((path, id) -> submit(id, path));
+    }
+
+    /**
+     * Returns the IDs of the images whose hash differs from the hash of the input image in at most maxDistance
+     * bits, the image itself included. The image is hashed first if it has not been hashed yet.
+     *
+     * @param image       the image to search around
+     * @param maxDistance the largest number of different bits
+     * @return the IDs of the similar images, or an empty array if the image cannot be hashed.
+     */
+    int[] findSimilar(Image image, int maxDistance) {
+        Long hash;
+        synchronized (this) {
+            hash = hashes.get(image.getId());
+        }
+        if (hash == null) {
+            hash = index(image.getId(), image.getPath());
+            if (hash == null) {
+                return new int[0];
+            }
+        }
+        synchronized (this) {
+            return tree.search(hash, maxDistance);
+        }
+    }
+
+    /**
+     * Returns the number of images indexed.
+     *
+     * @return the number of images indexed.
+     */
+    synchronized int size() {
+        return tree.size();
+    }
+
+    /**
+     * Waits until every image submitted so far has been hashed.
+     *
+     * @throws InterruptedException indicates that the waiting has been interrupted.
+     */
+    void awaitIndexing() throws InterruptedException {
+        synchronized (pending) {
+            while (pending[0] > 0) {
+                pending.wait();
+            }
+        }
+    }
+
+    /**
+     * Hashes the image on the pool, unless it has no ID yet.
+     *
+     * @param id        the ID of the image
+     * @param imagePath the path of the file of the image
+     */
+    private void submit(int id, String imagePath) {
+        if (id < 0) {
+            return;
+        }
+        synchronized (pending) {
+            pending[0]++;
+        }
+        pool().execute(() -> {
+            try {
+                index(id, imagePath);
+            } finally {
+                synchronized (pending) {
+                    pending[0]--;
+                    pending.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the pool hashing the images, creating it when first needed.
+     *
+     * @return the pool hashing the images.
+     */
+    private synchronized ExecutorService pool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "GoGoPhoto similarity hashing");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Hashes an image, from the cache if its file has not changed, and adds it to the tree. Only the ID and path
+     * of the image are needed, so that images read lazily from a catalog file are not held by the queue.
+     *
+     * @param id        the ID of the image
+     * @param imagePath the path of the file of the image
+     * @return the hash of the image, or null if its file cannot be decoded.
+     */
+    private Long index(int id, String imagePath) {
+        Path path = Paths.get(imagePath).toAbsolutePath().normalize();
+        long hash;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            ContentHashCache.HashRecord record = cache.getOrCreate(path.toString(), attributes.size(),
+                    attributes.lastModifiedTime().toMillis());
+            if (record.hasPerceptualHash()) {
+                hash = record.getPerceptualHash();
+            } else {
+                hash = new DifferenceHash().hash(path.toFile());
+                record.setPerceptualHash(hash);
+            }
+        } catch (IOException | RuntimeException e) {
+            GoGoPhotoSystem.logger.log(Level.FINE, "Cannot hash " + path + ": " + e);
+            return null;
+        }
+        synchronized (this) {
+            Long old = hashes.put(id, hash);
+            if (old != null) {
+                tree.remove(old, id);
+            }
+            tree.add(hash, id);
+        }
+        return hash;
+    }
+}
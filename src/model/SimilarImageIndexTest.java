@@ -0,0 +1,95 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimilarImageIndexTest {
+
+    // a resized copy is found, a different picture is not
+    @Test
+    void testFindSimilar() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("similar");
+        try {
+            ImageManager im = new ImageManager();
+            SimilarImageIndex index = new SimilarImageIndex(new ContentHashCache());
+            im.getEventBus().subscribe(index);
+            Image original = add(im, directory, "original", picture(400, 300, false), "png");
+            Image resized = add(im, directory, "resized", picture(200, 150, false), "jpg");
+            Image other = add(im, directory, "other", picture(400, 300, true), "png");
+            index.awaitIndexing();
+            assertEquals(3, index.size());
+            int[] similar = index.findSimilar(original, 6);
+            Arrays.sort(similar);
+            assertArrayEquals(new int[]{original.getId(), resized.getId()}, similar);
+            assertEquals(1, index.findSimilar(other, 6).length);
+        } finally {
+            for (File file : directory.toFile().listFiles()) {
+                Files.delete(file.toPath());
+            }
+            Files.delete(directory);
+        }
+    }
+
+    // the tree finds exactly what comparing with every hash finds
+    @Test
+    void testBKTreeSearch() {
+        Random random = new Random(7);
+        long[] hashes = new long[2000];
+        BKTree tree = new BKTree();
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = i % 3 == 0 ? random.nextLong()
+                    : hashes[random.nextInt(Math.max(1, i))] ^ (1L << random.nextInt(64));
+            tree.add(hashes[i], i);
+        }
+        assertEquals(hashes.length, tree.size());
+        for (int q = 0; q < 50; q++) {
+            long noise = random.nextLong() & random.nextLong() & random.nextLong();
+            long query = hashes[random.nextInt(hashes.length)] ^ noise;
+            int[] found = tree.search(query, 8);
+            Arrays.sort(found);
+            int[] expected = new int[hashes.length];
+            int count = 0;
+            for (int i = 0; i < hashes.length; i++) {
+                if (DifferenceHash.distance(query, hashes[i]) <= 8) {
+                    expected[count++] = i;
+                }
+            }
+            assertArrayEquals(Arrays.copyOf(expected, count), found);
+        }
+    }
+
+    private static Image add(ImageManager im, Path directory, String name, BufferedImage picture, String type)
+            throws IOException {
+        File file = directory.resolve(name + "." + type).toFile();
+        ImageIO.write(picture, type, file);
+        Image image = new Image(name, type, file.getPath());
+        im.addChosenImage(image);
+        return image;
+    }
+
+    private static BufferedImage picture(int width, int height, boolean flipped) {
+        BufferedImage picture = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double u = (double) x / width;
+                double v = (double) y / height;
+                int grey = (int) (127 + 120 * Math.sin(7 * u + 3 * v) * Math.cos(5 * v));
+                if (flipped) {
+                    grey = (int) (127 + 120 * Math.cos(11 * v - 4 * u));
+                }
+                picture.setRGB(x, y, (grey << 16) | (grey << 8) | grey);
+            }
+        }
+        return picture;
+    }
+}
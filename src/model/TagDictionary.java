@@ -0,0 +1,95 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class interns every tag used in the system to a small integer code, so that an Image can keep its tags as
+ * a sorted array of codes instead of a list of strings. Codes are given in the order tags are first seen and are
+ * never reused within a session; they are not saved, since images save the names of their tags.
+ * The dictionary also keeps one shared {@link Tag} per code, so that displaying the tags of an image does not
+ * create new Tag objects.
+ *
+ * @see Image
+ * @see Tag
+ */
+final class TagDictionary {
+    /**
+     * The code of every interned tag, keyed by the tag without the "@" prefix.
+     */
+    private static final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+
+    /**
+     * The shared Tag of every code, at the position of the code.
+     */
+    private static volatile Tag[] tags = new Tag[16];
+
+    /**
+     * The number of codes given so far.
+     */
+    private static int size;
+
+    /**
+     * This class only has static members.
+     */
+    private TagDictionary() {
+    }
+
+    /**
+     * Returns the code of the tag, giving it the next code if it has never been seen.
+     *
+     * @param tag the tag without the "@" prefix
+     * @return the code of the tag.
+     */
+    static int intern(String tag) {
+        Integer code = codes.get(tag);
+        if (code != null) {
+            return code;
+        }
+        synchronized (TagDictionary.class) {
+            code = codes.get(tag);
+            if (code == null) {
+                Tag[] current = tags;
+                if (size == current.length) {
+                    current = Arrays.copyOf(current, size * 2);
+                }
+                current[size] = new Tag(tag);
+                tags = current;
+                code = size++;
+                codes.put(tag, code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Returns the code of the tag without interning it.
+     *
+     * @param tag the tag without the "@" prefix
+     * @return the code of the tag, or -1 if the tag has never been seen.
+     */
+    static int lookup(String tag) {
+        Integer code = codes.get(tag);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Returns the name of the tag with the given code.
+     *
+     * @param code the code of a tag
+     * @return the name of the tag without the "@" prefix.
+     */
+    static String name(int code) {
+        return tags[code].getOriginalName();
+    }
+
+    /**
+     * Returns the shared Tag with the given code.
+     *
+     * @param code the code of a tag
+     * @return the Tag with the code.
+     */
+    static Tag tag(int code) {
+        return tags[code];
+    }
+}
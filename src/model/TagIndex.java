@@ -0,0 +1,110 @@
+package model;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * This class is an inverted index from every tag to the images carrying it. TagManager keeps it up to date from
+ * the same notifications it counts tags with, so that the images carrying a tag are found without looking at
+ * the tags of every image. The images of a tag are kept as a compressed {@link ImageBitmap} of their IDs.
+ *
+ * @see TagManager
+ * @see TagQuery
+ * @see ImageBitmap
+ */
+class TagIndex {
+    /**
+     * The IDs of the images carrying each tag, keyed by the tag without the "@" prefix.
+     */
+    private final HashMap<String, ImageBitmap> postings;
+
+    /**
+     * An empty set of IDs, returned for unknown tags.
+     */
+    private static final ImageBitmap EMPTY = new ImageBitmap();
+
+    /**
+     * Creates an empty TagIndex.
+     */
+    TagIndex() {
+        postings = new HashMap<>();
+    }
+
+    /**
+     * Records that the image with the given ID carries the tag.
+     *
+     * @param tag the tag added to the image
+     * @param id  the ID of the image
+     */
+    void add(String tag, int id) {
+        ImageBitmap ids = postings.get(tag);
+        if (ids == null) {
+            ids = new ImageBitmap();
+            postings.put(tag, ids);
+        }
+        ids.add(id);
+    }
+
+    /**
+     * Records that the image with the given ID no longer carries the tag.
+     *
+     * @param tag the tag removed from the image
+     * @param id  the ID of the image
+     */
+    void remove(String tag, int id) {
+        ImageBitmap ids = postings.get(tag);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                postings.remove(tag);
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of the images carrying the tag. The returned ImageBitmap belongs to the index and must
+     * not be modified.
+     *
+     * @param tag the tag
+     * @return the IDs of the images carrying the tag.
+     */
+    ImageBitmap getImages(String tag) {
+        ImageBitmap ids = postings.get(tag);
+        return ids == null ? EMPTY : ids;
+    }
+
+    /**
+     * Returns the number of images carrying the tag.
+     *
+     * @param tag the tag
+     * @return the number of images carrying the tag.
+     */
+    int count(String tag) {
+        ImageBitmap ids = postings.get(tag);
+        return ids == null ? 0 : ids.cardinality();
+    }
+
+    /**
+     * Returns the tags carried by at least one image.
+     *
+     * @return the tags carried by at least one image, a view that must not be modified.
+     */
+    Set<String> getTags() {
+        return postings.keySet();
+    }
+
+    /**
+     * Replaces the content of the index with the tags of the given images, which must have been given IDs.
+     *
+     * @param images the images to index
+     */
+    void rebuild(Collection<Image> images) {
+        postings.clear();
+        for (Image image : images) {
+            for (int code : image.getTagCodes()) {
+                add(TagDictionary.name(code), image.getId());
+            }
+        }
+    }
+}
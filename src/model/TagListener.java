@@ -0,0 +1,24 @@
+package model;
+
+/**
+ * This interface is implemented by the classes that keep the tags of TagManager somewhere else, such as a saver,
+ * and need to know about the tags created and deleted in TagManager. The tags added to and removed from images
+ * are published on the {@link CatalogEventBus} instead.
+ *
+ * @see TagManager#setTagListener(TagListener)
+ */
+interface TagListener {
+    /**
+     * Called after a tag has been created in TagManager.
+     *
+     * @param tag the tag created
+     */
+    void tagCreated(String tag);
+
+    /**
+     * Called after a tag has been deleted from TagManager.
+     *
+     * @param tag the tag deleted
+     */
+    void tagDeleted(String tag);
+}
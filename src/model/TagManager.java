@@ -2,47 +2,73 @@ package model;
 
 import java.io.*;
 import java.lang.System;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 /**
  * This class manipulates tags which are associated with pictures in system.
  *
- * @see Observer
+ * @see CatalogListener
  * @see Serializable
  * @see GoGoPhotoSystem
  * @see ImageManager
- * @see Observer
- * @see Serializable
  */
-public class TagManager implements Observer, Serializable {
+public class TagManager implements CatalogListener, Serializable {
 
     /**
      * A tag hash map which stores and records tags information.
      */
     private HashMap<String, Integer> tags;
 
+    /**
+     * An inverted index from every tag to the images carrying it.
+     *
+     * @see TagIndex
+     */
+    private transient TagIndex tagIndex;
+
+    /**
+     * The listener told about the tags created and deleted, such as a saver, or null if there is none.
+     *
+     * @see TagListener
+     */
+    private transient TagListener tagListener;
+
     /**
      * Creates a TagManager.
      */
     TagManager() {
         tags = new HashMap<>();
+        tagIndex = new TagIndex();
     }
 
 
     /**
-     * Saves the tags into the input filePath.
+     * Saves the tags into the input filePath. The tags are written to a new file renamed over the old one, so that
+     * a failed save leaves the old file whole.
      *
      * @param filePath the filepath that the tags are saved to.
      * @throws IOException indicates that Saving operation fails.
      */
     void saveToTagManagerFile(String filePath) throws IOException {
-        OutputStream file = new FileOutputStream(filePath);
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        OutputStream file = new FileOutputStream(temporary.toFile());
         OutputStream buffer = new BufferedOutputStream(file);
         ObjectOutput output = new ObjectOutputStream(buffer);
 
         // serialize the tagManager
         output.writeObject(tags);
         output.close();
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
     /**
@@ -62,39 +88,85 @@ public class TagManager implements Observer, Serializable {
     }
 
     /**
-     * Updates the tags information based on the inputs. If the input arg contains "U", it means this method will add
-     * a new tag or increase the value of the tag by 1. Otherwise, this methods will decrease the value of the tag by 1.
+     * Updates the tags information based on a batch of changes published by ImageManager. The value of every tag
+     * touched by the batch is changed once by its net change over the batch; a tag seen for the first time is added.
+     * The inverted tag index is updated for every tag added to or removed from an image.
      *
-     * @param o   the Observable object which sends the notify.
-     * @param arg the information(Array of String) which will be used to update tag's information.
-     *            the first element of this Array is the tag name.
-     *            the second element of this Array indicates that if it should add up tag's value or reduce it.
+     * @param batch the changes published by ImageManager.
      * @see ImageManager
+     * @see CatalogEventBatch
      */
     @Override
-    public void update(Observable o, Object arg) {
-        String key = ((String[]) arg)[0];
-        String upOrDown = ((String[]) arg)[1];
-        if (Objects.equals(upOrDown, "U")) {
-            if (!tags.containsKey(key)) {
-                tags.put(key, 1);
-            } else {
-                tags.put(key, tags.get(key) + 1);
+    public void onBatch(CatalogEventBatch batch) {
+        for (Map.Entry<String, Integer> delta : batch.getTagDeltas().entrySet()) {
+            tags.merge(delta.getKey(), delta.getValue(), Integer::sum);
+        }
+        for (CatalogEvent event : batch.getEvents()) {
+            if (event instanceof CatalogEvent.TagAdded) {
+                tagIndex.add(((CatalogEvent.TagAdded) event).getTag(), event.getImage().getId());
+            } else if (event instanceof CatalogEvent.TagRemoved) {
+                tagIndex.remove(((CatalogEvent.TagRemoved) event).getTag(), event.getImage().getId());
             }
-        } else {
-            Integer value = tags.get(key);
-            tags.put(key, value - 1);
         }
     }
 
+    /**
+     * Returns the inverted index from every tag to the images carrying it.
+     *
+     * @return the inverted tag index.
+     * @see TagIndex
+     */
+    TagIndex getTagIndex() {
+        return tagIndex;
+    }
+
+    /**
+     * Sets the count of every tag to the number of images carrying it in the inverted tag index, adding the tags
+     * carried by images that are missing. Tags carried by no image are kept with a count of 0.
+     */
+    void recount() {
+        for (Map.Entry<String, Integer> entry : tags.entrySet()) {
+            entry.setValue(tagIndex.count(entry.getKey()));
+        }
+        for (String tag : tagIndex.getTags()) {
+            tags.putIfAbsent(tag, tagIndex.count(tag));
+        }
+    }
+
+    /**
+     * Tells the input listener about the tags created and deleted from now on.
+     *
+     * @param tagListener the listener, such as a saver, or null to stop telling
+     * @see Autosaver
+     * @see BTreeCatalogStore
+     */
+    void setTagListener(TagListener tagListener) {
+        this.tagListener = tagListener;
+    }
 
     /**
-     * Adds new tag to hash map(tags) with default value 0.
+     * Creates an empty inverted tag index after this TagManager has been deserialized.
+     *
+     * @param input the stream this TagManager is read from.
+     * @throws IOException            indicates that reading this TagManager fails.
+     * @throws ClassNotFoundException indicates that reading this TagManager fails.
+     */
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        tagIndex = new TagIndex();
+    }
+
+
+    /**
+     * Adds new tag to hash map(tags) with default value 0, and records it with the listener, if any.
      *
      * @param newTag the tag that is added
      */
     public void addNewTag(String newTag) {
         tags.put(newTag, 0);
+        if (tagListener != null) {
+            tagListener.tagCreated(newTag);
+        }
     }
 
     /**
@@ -116,7 +188,8 @@ public class TagManager implements Observer, Serializable {
     }
 
     /**
-     * Deletes the input tag from hash map tags if the corresponding value of this tag in hash map is equal to 0.
+     * Deletes the input tag from hash map tags if the corresponding value of this tag in hash map is equal to 0,
+     * and records the deletion with the listener, if any.
      *
      * @param tag the tag need to be removed from tags
      * @return if the tag is removed successfully.
@@ -125,6 +198,9 @@ public class TagManager implements Observer, Serializable {
         Integer value = tags.get(tag);
         if (value == 0) {
             tags.remove(tag);
+            if (tagListener != null) {
+                tagListener.tagDeleted(tag);
+            }
             return true;
         }
         return false;
@@ -2,7 +2,10 @@ package model;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -53,11 +56,10 @@ class TagManagerTest {
     void TestUpdate() {
         Image image = new Image("IMG_454", "jpg", "./UnittestPictures/IMG_454.jpg");
         String tag = "helloJava";
-        String[] tagAndType = {tag, "U"};
         ImageManager imagemanager = new ImageManager();
         TagManager tagmanager = new TagManager();
-        imagemanager.addObserver(tagmanager);
-        tagmanager.update(imagemanager, tagAndType);
+        imagemanager.getEventBus().subscribe(tagmanager);
+        tagmanager.onBatch(CatalogEventBatch.of(new CatalogEvent.TagAdded(image, tag)));
         assertTrue(tagmanager.getTags().containsKey(tag));
         assertEquals(1, (int) tagmanager.getTags().get(tag));
     }
@@ -67,10 +69,9 @@ class TagManagerTest {
     void Test1uUdate() {
         Image image = new Image("IMG_454", "jpg", "./UnittestPictures/IMG_454.jpg");
         String tag = "helloJava";
-        String[] tagAndType = {tag, "U"};
         ImageManager imagemanager = new ImageManager();
         TagManager tagmanager = new TagManager();
-        imagemanager.addObserver(tagmanager);
+        imagemanager.getEventBus().subscribe(tagmanager);
         imagemanager.addTagToName(image, tag);
         assertTrue(tagmanager.getTags().containsKey(tag));
         assertEquals(1, (int) tagmanager.getTags().get(tag));
@@ -82,12 +83,11 @@ class TagManagerTest {
     void Test2Update() {
         Image image = new Image("IMG_454", "jpg", "./UnittestPictures/IMG_454.jpg");
         String tag = "helloJava";
-        String[] tagAndType = {tag, "U"};
         ImageManager imagemanager = new ImageManager();
         TagManager tagmanager = new TagManager();
-        imagemanager.addObserver(tagmanager);
-        tagmanager.update(imagemanager, tagAndType);
-        tagmanager.update(imagemanager, tagAndType);
+        imagemanager.getEventBus().subscribe(tagmanager);
+        tagmanager.onBatch(CatalogEventBatch.of(new CatalogEvent.TagAdded(image, tag)));
+        tagmanager.onBatch(CatalogEventBatch.of(new CatalogEvent.TagAdded(image, tag)));
         assertTrue(tagmanager.getTags().containsKey(tag));
         assertEquals(2, (int) tagmanager.getTags().get(tag));
         imagemanager.deleteTagFromName(image, tag);
@@ -182,4 +182,36 @@ class TagManagerTest {
         assertTrue(tm.getExistingTags().isEmpty());
     }
 
-}
\ No newline at end of file
+    @Test
+    void TestTagQuery() throws IOException {
+        Path directory = Files.createTempDirectory("tagQuery");
+        try {
+            Image beach2019 = new Image("a", "jpg", Files.createFile(directory.resolve("a.jpg")).toString());
+            Image beach2019Rejected = new Image("b", "jpg", Files.createFile(directory.resolve("b.jpg")).toString());
+            Image beach = new Image("c", "jpg", Files.createFile(directory.resolve("c.jpg")).toString());
+            ImageManager imagemanager = new ImageManager();
+            TagManager tagmanager = new TagManager();
+            imagemanager.getEventBus().subscribe(tagmanager);
+            imagemanager.addTagToName(beach2019, "beach");
+            imagemanager.addTagToName(beach2019, "2019");
+            imagemanager.addTagToName(beach2019Rejected, "beach");
+            imagemanager.addTagToName(beach2019Rejected, "2019");
+            imagemanager.addTagToName(beach2019Rejected, "rejected");
+            imagemanager.addTagToName(beach, "beach");
+            TagQuery query = TagQuery.and(TagQuery.tag("beach"), TagQuery.tag("2019"),
+                    TagQuery.not(TagQuery.tag("rejected")));
+            int universe = imagemanager.getIdCount();
+            assertEquals(1, query.evaluate(tagmanager.getTagIndex(), universe).cardinality());
+            assertTrue(query.evaluate(tagmanager.getTagIndex(), universe).contains(beach2019.getId()));
+            TagQuery either = TagQuery.or(TagQuery.tag("rejected"), TagQuery.not(TagQuery.tag("2019")));
+            assertEquals(2, either.evaluate(tagmanager.getTagIndex(), universe).cardinality());
+            imagemanager.deleteTagFromName(beach2019Rejected, "rejected");
+            assertEquals(2, query.evaluate(tagmanager.getTagIndex(), universe).cardinality());
+        } finally {
+            for (File file : directory.toFile().listFiles()) {
+                Files.delete(file.toPath());
+            }
+            Files.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class reads and writes the tags held in the name of an image file, such as "beach @summer @2019" for the
+ * image "beach" tagged "summer" and "2019". A name is read in one pass with indexOf, finding the start and end of
+ * every tag without splitting the name into an array, so that importing many files does not create throwaway
+ * arrays and strings. Names are written into a single builder of the right size.
+ *
+ * <p>Tags and names are checked before a file is renamed: a tag must not be empty, hold " @" or hold a character
+ * that some file system rejects in file names, and a full file name must fit in {@link #MAX_NAME_BYTES} bytes of
+ * UTF-8, the limit of most file systems.
+ *
+ * @see ImageManager
+ */
+public final class TagNameCodec {
+    /**
+     * The text before every tag of a name.
+     */
+    public static final String TAG_PREFIX = " @";
+
+    /**
+     * The largest number of bytes of a file name, extension included, in UTF-8.
+     */
+    public static final int MAX_NAME_BYTES = 255;
+
+    /**
+     * The characters that are not allowed in a file name on some file system.
+     */
+    private static final String ILLEGAL_CHARACTERS = "/\\:*?\"<>|";
+
+    /**
+     * TagNameCodec only has static methods.
+     */
+    private TagNameCodec() {
+    }
+
+    /**
+     * Returns the name without its tags.
+     *
+     * @param name the name of an image file, without extension
+     * @return the text before the first tag.
+     */
+    public static String baseName(String name) {
+        int end = name.indexOf(TAG_PREFIX);
+        return end < 0 ? name : name.substring(0, end);
+    }
+
+    /**
+     * Returns the tags of the name, in the order they are written. Empty tags are left out.
+     *
+     * @param name the name of an image file, without extension
+     * @return the tags of the name, without the "@" prefix.
+     */
+    public static List<String> parseTags(String name) {
+        ArrayList<String> tags = new ArrayList<>();
+        int start = name.indexOf(TAG_PREFIX);
+        while (start >= 0) {
+            start += TAG_PREFIX.length();
+            int end = name.indexOf(TAG_PREFIX, start);
+            int tagEnd = end < 0 ? name.length() : end;
+            if (tagEnd > start) {
+                tags.add(name.substring(start, tagEnd));
+            }
+            start = end;
+        }
+        return tags;
+    }
+
+    /**
+     * Returns whether the name holds the tag, without creating any object.
+     *
+     * @param name the name of an image file, without extension
+     * @param tag  the tag, without the "@" prefix
+     * @return true if the name holds the tag.
+     */
+    public static boolean hasTag(String name, String tag) {
+        return findTag(name, tag) >= 0;
+    }
+
+    /**
+     * Returns the name with the tag added after its other tags.
+     *
+     * @param name the name of an image file, without extension
+     * @param tag  the tag to add, without the "@" prefix
+     * @return the name with the tag.
+     * @throws IllegalArgumentException indicates that the tag is not valid.
+     */
+    public static String withTag(String name, String tag) {
+        checkTag(tag);
+        return new StringBuilder(name.length() + TAG_PREFIX.length() + tag.length())
+                .append(name).append(TAG_PREFIX).append(tag).toString();
+    }
+
+    /**
+     * Returns the name with every occurrence of the tag removed, and its other tags in the same order.
+     *
+     * @param name the name of an image file, without extension
+     * @param tag  the tag to remove, without the "@" prefix
+     * @return the name without the tag, or the same name if it does not hold the tag.
+     */
+    public static String withoutTag(String name, String tag) {
+        int found = findTag(name, tag);
+        if (found < 0) {
+            return name;
+        }
+        StringBuilder result = new StringBuilder(name.length());
+        int copied = 0;
+        while (found >= 0) {
+            result.append(name, copied, found);
+            copied = found + TAG_PREFIX.length() + tag.length();
+            found = findTag(name, tag, copied);
+        }
+        return result.append(name, copied, name.length()).toString();
+    }
+
+    /**
+     * Returns the name made of the base name and the tags.
+     *
+     * @param baseName the name without tags
+     * @param tags     the tags, without the "@" prefix
+     * @return the name with the tags.
+     * @throws IllegalArgumentException indicates that a tag is not valid.
+     */
+    public static String render(String baseName, Collection<String> tags) {
+        int length = baseName.length();
+        for (String tag : tags) {
+            checkTag(tag);
+            length += TAG_PREFIX.length() + tag.length();
+        }
+        StringBuilder result = new StringBuilder(length).append(baseName);
+        for (String tag : tags) {
+            result.append(TAG_PREFIX).append(tag);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Checks that the tag can be written in a name and read back.
+     *
+     * @param tag the tag, without the "@" prefix
+     * @throws IllegalArgumentException indicates that the tag is empty, holds " @" or holds a character not allowed
+     *                                  in file names.
+     */
+    public static void checkTag(String tag) {
+        if (tag.isEmpty()) {
+            throw new IllegalArgumentException("A tag cannot be empty");
+        }
+        if (tag.contains(TAG_PREFIX)) {
+            throw new IllegalArgumentException("A tag cannot hold \"" + TAG_PREFIX + "\": " + tag);
+        }
+        checkCharacters(tag);
+    }
+
+    /**
+     * Checks that the name, with its extension, is short enough to be the name of a file. The characters of the
+     * name are not checked: they come from an existing file and from checked tags.
+     *
+     * @param name      the name of an image file, without extension
+     * @param extension the extension of the file, without the dot
+     * @throws IllegalArgumentException indicates that the name is longer than {@link #MAX_NAME_BYTES} bytes in
+     *                                  UTF-8.
+     */
+    public static void checkFileName(String name, String extension) {
+        int bytes = utf8Length(name) + 1 + utf8Length(extension);
+        if (bytes > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("The file name is " + bytes + " bytes long, more than "
+                    + MAX_NAME_BYTES + ": " + name + "." + extension);
+        }
+    }
+
+    /**
+     * Checks that the text holds no character not allowed in file names.
+     *
+     * @param text a tag
+     * @throws IllegalArgumentException indicates that the text holds a character not allowed in file names.
+     */
+    private static void checkCharacters(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < ' ' || c == 0x7F || ILLEGAL_CHARACTERS.indexOf(c) >= 0) {
+                throw new IllegalArgumentException(String.format("Illegal character U+%04X at position %d of \"%s\"",
+                        (int) c, i, text));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the text in UTF-8, without encoding it unless it holds surrogate pairs.
+     *
+     * @param text the text
+     * @return the number of bytes of the text in UTF-8.
+     */
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isSurrogate(c)) {
+                return text.getBytes(StandardCharsets.UTF_8).length;
+            }
+            length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        return length;
+    }
+
+    /**
+     * Returns the position of the first occurrence of the tag in the name.
+     *
+     * @param name the name of an image file, without extension
+     * @param tag  the tag, without the "@" prefix
+     * @return the position of the " @" before the tag, or -1 if the name does not hold the tag.
+     */
+    private static int findTag(String name, String tag) {
+        return findTag(name, tag, 0);
+    }
+
+    /**
+     * Returns the position of the first occurrence of the tag in the name at or after the input position.
+     *
+     * @param name the name of an image file, without extension
+     * @param tag  the tag, without the "@" prefix
+     * @param from the position the search starts at
+     * @return the position of the " @" before the tag, or -1 if the rest of the name does not hold the tag.
+     */
+    private static int findTag(String name, String tag, int from) {
+        int start = name.indexOf(TAG_PREFIX, from);
+        while (start >= 0) {
+            int tagStart = start + TAG_PREFIX.length();
+            int end = tagStart + tag.length();
+            if (name.startsWith(tag, tagStart) && (end == name.length() || name.startsWith(TAG_PREFIX, end))) {
+                return start;
+            }
+            start = name.indexOf(TAG_PREFIX, tagStart);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,91 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class measures how long TagNameCodec takes to read the tags of file names and to remove a tag from them,
+ * against the String.split(" @") code it replaced. It is run by hand, with the number of names as argument:
+ * <pre>
+ * java model.TagNameCodecBenchmark 500000
+ * </pre>
+ *
+ * @see TagNameCodec
+ */
+class TagNameCodecBenchmark {
+    /**
+     * The number of times every measure is repeated; the first runs warm up the compiler.
+     */
+    private static final int ROUNDS = 10;
+
+    /**
+     * Runs the benchmark and prints the average time per name of the fastest round of every method.
+     *
+     * @param args the number of names, 500000 if absent
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        String[] names = names(count, new Random(42));
+        long sink = 0;
+        long splitParse = Long.MAX_VALUE;
+        long codecParse = Long.MAX_VALUE;
+        long splitRemove = Long.MAX_VALUE;
+        long codecRemove = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String name : names) {
+                String[] nameParts = name.split(" @");
+                sink += Arrays.asList(nameParts).subList(1, nameParts.length).size();
+            }
+            splitParse = Math.min(splitParse, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (String name : names) {
+                sink += TagNameCodec.parseTags(name).size();
+            }
+            codecParse = Math.min(codecParse, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (String name : names) {
+                String[] nameParts = name.split(" @");
+                StringBuilder newFileName = new StringBuilder(nameParts[0]);
+                for (int i = 1; i < nameParts.length; i++) {
+                    if (!nameParts[i].equals("tag3")) {
+                        newFileName.append(" @").append(nameParts[i]);
+                    }
+                }
+                sink += newFileName.toString().length();
+            }
+            splitRemove = Math.min(splitRemove, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (String name : names) {
+                sink += TagNameCodec.withoutTag(name, "tag3").length();
+            }
+            codecRemove = Math.min(codecRemove, System.nanoTime() - start);
+        }
+        System.out.printf("read tags:  split %.1f ns/name, codec %.1f ns/name%n",
+                (double) splitParse / count, (double) codecParse / count);
+        System.out.printf("remove tag: split %.1f ns/name, codec %.1f ns/name%n",
+                (double) splitRemove / count, (double) codecRemove / count);
+        System.out.println("(" + sink + ")");
+    }
+
+    /**
+     * Returns names of camera files with from zero to five tags each.
+     *
+     * @param count  the number of names
+     * @param random the source of the tags
+     * @return the names.
+     */
+    private static String[] names(int count, Random random) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            List<String> tags = new ArrayList<>();
+            for (int j = random.nextInt(6); j > 0; j--) {
+                tags.add("tag" + random.nextInt(8));
+            }
+            names[i] = TagNameCodec.render("IMG_" + i, tags);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,52 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagNameCodecTest {
+
+    @Test
+    void testParseTags() {
+        assertEquals(Arrays.asList("summer", "2019"), TagNameCodec.parseTags("beach @summer @2019"));
+        assertEquals(Collections.emptyList(), TagNameCodec.parseTags("beach"));
+        assertEquals(Arrays.asList("a b", "c"), TagNameCodec.parseTags("x @a b @c @"));
+        assertEquals("beach", TagNameCodec.baseName("beach @summer @2019"));
+        assertEquals("beach@home", TagNameCodec.baseName("beach@home"));
+    }
+
+    // a tag is only found as a whole tag, not as the start of a longer one
+    @Test
+    void testWithoutTag() {
+        assertEquals("beach @2019", TagNameCodec.withoutTag("beach @summer @2019", "summer"));
+        assertEquals("beach @summer", TagNameCodec.withoutTag("beach @summer @2019", "2019"));
+        assertEquals("beach @summers", TagNameCodec.withoutTag("beach @summers", "summer"));
+        assertEquals("beach", TagNameCodec.withoutTag("beach @a @a", "a"));
+        assertTrue(TagNameCodec.hasTag("beach @summer @2019", "2019"));
+        assertFalse(TagNameCodec.hasTag("beach @summers", "summer"));
+    }
+
+    @Test
+    void testRender() {
+        assertEquals("beach @summer @2019", TagNameCodec.render("beach", Arrays.asList("summer", "2019")));
+        assertEquals("beach @summer", TagNameCodec.withTag("beach", "summer"));
+    }
+
+    @Test
+    void testCheck() {
+        assertThrows(IllegalArgumentException.class, () -> TagNameCodec.checkTag(""));
+        assertThrows(IllegalArgumentException.class, () -> TagNameCodec.checkTag("a @b"));
+        assertThrows(IllegalArgumentException.class, () -> TagNameCodec.checkTag("a/b"));
+        assertThrows(IllegalArgumentException.class, () -> TagNameCodec.checkTag("a\tb"));
+        TagNameCodec.checkTag("a b");
+        char[] name = new char[251];
+        Arrays.fill(name, 'x');
+        TagNameCodec.checkFileName(new String(name), "jpg");
+        assertThrows(IllegalArgumentException.class, () -> TagNameCodec.checkFileName(new String(name), "jpeg"));
+        Arrays.fill(name, '\u00e9');
+        assertThrows(IllegalArgumentException.class, () -> TagNameCodec.checkFileName(new String(name), "jpg"));
+    }
+}
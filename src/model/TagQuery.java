@@ -0,0 +1,239 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class represents a boolean query over the tags of images, such as "@beach AND @2019 AND NOT @rejected".
+ * A query is built from {@link #tag(String)} with {@link #and(TagQuery...)}, {@link #or(TagQuery...)} and
+ * {@link #not(TagQuery)}, and is answered by GoGoPhotoSystem from the inverted tag index.
+ * An AND query starts from the operand matching the fewest images and intersects the other operands in
+ * increasing order of size, so that the intermediate result never grows beyond the smallest operand.
+ * Operands are evaluated to compressed sets of image IDs, so intersections and unions run on whole words of IDs.
+ *
+ * @see GoGoPhotoSystem#findImages(TagQuery)
+ * @see TagIndex
+ * @see ImageBitmap
+ */
+public abstract class TagQuery {
+
+    /**
+     * Creates a TagQuery. Queries are only created by the factory methods of this class.
+     */
+    private TagQuery() {
+    }
+
+    /**
+     * Returns a query matching the images carrying the given tag.
+     *
+     * @param tag the tag, without the "@" prefix
+     * @return a query matching the images carrying the tag.
+     */
+    public static TagQuery tag(String tag) {
+        return new TagTerm(tag);
+    }
+
+    /**
+     * Returns a query matching the images matched by every one of the given queries.
+     *
+     * @param queries the queries to combine
+     * @return a query matching the images matched by all the queries.
+     */
+    public static TagQuery and(TagQuery... queries) {
+        return new And(Arrays.asList(queries));
+    }
+
+    /**
+     * Returns a query matching the images matched by any of the given queries.
+     *
+     * @param queries the queries to combine
+     * @return a query matching the images matched by at least one of the queries.
+     */
+    public static TagQuery or(TagQuery... queries) {
+        return new Or(Arrays.asList(queries));
+    }
+
+    /**
+     * Returns a query matching the images not matched by the given query.
+     *
+     * @param query the query to negate
+     * @return a query matching the images not matched by the query.
+     */
+    public static TagQuery not(TagQuery query) {
+        return new Not(query);
+    }
+
+    /**
+     * Returns an upper bound of the number of images matched by this query.
+     *
+     * @param index        the inverted tag index
+     * @param universeSize the number of images in the system
+     * @return an upper bound of the number of images matched by this query.
+     */
+    abstract int estimate(TagIndex index, int universeSize);
+
+    /**
+     * Returns the IDs of the images matched by this query. The returned ImageBitmap may belong to the index and
+     * must not be modified.
+     *
+     * @param index        the inverted tag index
+     * @param universeSize the number of images in the system; every ID is smaller, and negations are
+     *                     answered within this range
+     * @return the IDs of the images matched by this query.
+     */
+    abstract ImageBitmap evaluate(TagIndex index, int universeSize);
+
+    /**
+     * A query matching the images carrying one tag.
+     */
+    private static class TagTerm extends TagQuery {
+        /**
+         * The tag, without the "@" prefix.
+         */
+        private final String tag;
+
+        /**
+         * Creates a TagTerm.
+         *
+         * @param tag the tag, without the "@" prefix
+         */
+        TagTerm(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        int estimate(TagIndex index, int universeSize) {
+            return index.count(tag);
+        }
+
+        @Override
+        ImageBitmap evaluate(TagIndex index, int universeSize) {
+            return index.getImages(tag);
+        }
+    }
+
+    /**
+     * A query matching the images matched by all of its operands.
+     */
+    private static class And extends TagQuery {
+        /**
+         * The operands of this query.
+         */
+        private final List<TagQuery> operands;
+
+        /**
+         * Creates an And query.
+         *
+         * @param operands the operands of this query
+         */
+        And(List<TagQuery> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        int estimate(TagIndex index, int universeSize) {
+            int estimate = universeSize;
+            for (TagQuery operand : operands) {
+                if (!(operand instanceof Not)) {
+                    estimate = Math.min(estimate, operand.estimate(index, universeSize));
+                }
+            }
+            return estimate;
+        }
+
+        @Override
+        ImageBitmap evaluate(final TagIndex index, final int universeSize) {
+            ArrayList<TagQuery> included = new ArrayList<>();
+            ArrayList<TagQuery> excluded = new ArrayList<>();
+            for (TagQuery operand : operands) {
+                if (operand instanceof Not) {
+                    excluded.add(((Not) operand).operand);
+                } else {
+                    included.add(operand);
+                }
+            }
+            included.sort(Comparator.comparingInt(operand -> operand.estimate(index, universeSize)));
+            ImageBitmap result;
+            if (included.isEmpty()) {
+                result = ImageBitmap.range(0, universeSize);
+            } else {
+                result = included.get(0).evaluate(index, universeSize);
+            }
+            for (int i = 1; i < included.size() && !result.isEmpty(); i++) {
+                result = result.and(included.get(i).evaluate(index, universeSize));
+            }
+            for (int i = 0; i < excluded.size() && !result.isEmpty(); i++) {
+                result = result.andNot(excluded.get(i).evaluate(index, universeSize));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A query matching the images matched by any of its operands.
+     */
+    private static class Or extends TagQuery {
+        /**
+         * The operands of this query.
+         */
+        private final List<TagQuery> operands;
+
+        /**
+         * Creates an Or query.
+         *
+         * @param operands the operands of this query
+         */
+        Or(List<TagQuery> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        int estimate(TagIndex index, int universeSize) {
+            long estimate = 0;
+            for (TagQuery operand : operands) {
+                estimate += operand.estimate(index, universeSize);
+            }
+            return (int) Math.min(estimate, universeSize);
+        }
+
+        @Override
+        ImageBitmap evaluate(TagIndex index, int universeSize) {
+            ImageBitmap result = new ImageBitmap();
+            for (TagQuery operand : operands) {
+                result = result.or(operand.evaluate(index, universeSize));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A query matching the images not matched by its operand.
+     */
+    private static class Not extends TagQuery {
+        /**
+         * The negated query.
+         */
+        private final TagQuery operand;
+
+        /**
+         * Creates a Not query.
+         *
+         * @param operand the negated query
+         */
+        Not(TagQuery operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        int estimate(TagIndex index, int universeSize) {
+            return universeSize;
+        }
+
+        @Override
+        ImageBitmap evaluate(TagIndex index, int universeSize) {
+            return ImageBitmap.range(0, universeSize).andNot(operand.evaluate(index, universeSize));
+        }
+    }
+}
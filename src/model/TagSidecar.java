@@ -0,0 +1,344 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * This class keeps the tags of images in a sidecar file in the directory of the images, instead of in their file
+ * names, so that tagging an image does not rename its file. Every change is appended to the sidecar file as one
+ * line: "=" followed by the file name when the sidecar file starts holding the tags of the file, "+" followed by
+ * the file name and the tag when a tag is added, "-" followed by the file name and the tag when a tag is removed,
+ * and "*" followed by the file name when the file has left the directory. The fields of a line are separated by
+ * tabs. The tags of a file are found by replaying the lines of its sidecar file in order; a file the sidecar file
+ * holds nothing for keeps the tags in its name. The tags of every directory read so far are kept in memory.
+ * A sidecar file is compacted once it holds many more lines than it takes to give every file its current tags.
+ *
+ * @see ImageManager
+ */
+class TagSidecar {
+    /**
+     * The name of the sidecar file in every directory holding tagged images.
+     */
+    static final String FILE_NAME = ".gogophoto-tags";
+
+    /**
+     * How many times more lines than needed a sidecar file holds before it is compacted.
+     *
+     * @see #compact(String)
+     */
+    static final int COMPACTION_FACTOR = 4;
+
+    /**
+     * The number of lines a sidecar file holds at least before it is compacted, so that small files are left alone.
+     */
+    static final int COMPACTION_MINIMUM = 64;
+
+    /**
+     * The tags of every file in every directory read so far, keyed by the path of the directory and then by
+     * the name of the file.
+     */
+    private final HashMap<String, HashMap<String, LinkedHashSet<String>>> directories = new HashMap<>();
+
+    /**
+     * The number of lines of the sidecar file of every directory read so far, keyed by the path of the directory.
+     */
+    private final HashMap<String, Integer> lineCounts = new HashMap<>();
+
+    /**
+     * Returns the tags the sidecar file of its directory holds for the input image file, in the order they
+     * were added.
+     *
+     * @param imagePath the path of the image file
+     * @return the tags of the image file, or null if the sidecar file holds nothing for it, in which case the
+     * tags of the image file are the ones in its name.
+     */
+    synchronized List<String> getTags(String imagePath) {
+        Path path = Paths.get(imagePath);
+        LinkedHashSet<String> tags = directory(path.getParent()).get(path.getFileName().toString());
+        return tags == null ? null : new ArrayList<>(tags);
+    }
+
+    /**
+     * Appends the adding or the removal of a tag of the input image file to the sidecar file of its directory.
+     * If the sidecar file holds nothing for the image file yet, all its tags are appended instead.
+     *
+     * @param imagePath the path of the image file
+     * @param tags      all the tags of the image after the change
+     * @param tag       the tag added or removed
+     * @param added     whether the tag is added (true) or removed (false)
+     */
+    synchronized void recordTag(String imagePath, List<String> tags, String tag, boolean added) {
+        Map<String, List<String>> images = new HashMap<>(2);
+        images.put(imagePath, tags);
+        recordTag(images, tag, added);
+    }
+
+    /**
+     * Appends the adding or the removal of a tag of several image files to the sidecar files of their
+     * directories, with one append to every sidecar file. All the tags of an image file are appended instead if
+     * the sidecar file holds nothing for it yet.
+     *
+     * @param images all the tags of every image file after the change, keyed by the path of the image file
+     * @param tag    the tag added or removed
+     * @param added  whether the tag is added (true) or removed (false)
+     */
+    synchronized void recordTag(Map<String, List<String>> images, String tag, boolean added) {
+        HashMap<Path, ArrayList<String>> lines = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : images.entrySet()) {
+            Path path = Paths.get(entry.getKey());
+            String fileName = path.getFileName().toString();
+            ArrayList<String> directoryLines = lines.computeIfAbsent(path.getParent(), dir -> new ArrayList<>());
+            if (directory(path.getParent()).containsKey(fileName)) {
+                directoryLines.add(line(added ? '+' : '-', fileName, tag));
+            } else {
+                addAllTags(directoryLines, fileName, entry.getValue());
+            }
+        }
+        for (Map.Entry<Path, ArrayList<String>> entry : lines.entrySet()) {
+            append(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Moves the tags of an image file that has been renamed or moved from its old path to its new path, so
+     * that the sidecar file of its new directory holds the input tags for it.
+     *
+     * @param oldPath the path of the image file before the change
+     * @param newPath the path of the image file after the change
+     * @param tags    the tags of the image
+     */
+    synchronized void moveTags(String oldPath, String newPath, List<String> tags) {
+        Path oldFile = Paths.get(oldPath);
+        Path newFile = Paths.get(newPath);
+        ArrayList<String> forget = new ArrayList<>(1);
+        forget.add(line('*', oldFile.getFileName().toString(), null));
+        append(oldFile.getParent(), forget);
+        ArrayList<String> lines = new ArrayList<>(tags.size() + 1);
+        addAllTags(lines, newFile.getFileName().toString(), tags);
+        append(newFile.getParent(), lines);
+    }
+
+    /**
+     * Rewrites the sidecar file of the directory with the lines giving every file its current tags, dropping the
+     * lines that later lines have undone. The sidecar file is deleted if it holds nothing for any file.
+     *
+     * @param directory the path of the directory
+     * @throws IOException indicates that rewriting the sidecar file fails.
+     */
+    synchronized void compact(String directory) throws IOException {
+        compact(Paths.get(directory));
+    }
+
+    /**
+     * Rewrites the sidecar file of the directory with the lines giving every file its current tags.
+     *
+     * @param dir the path of the directory
+     * @throws IOException indicates that rewriting the sidecar file fails.
+     */
+    private void compact(Path dir) throws IOException {
+        ArrayList<String> lines = new ArrayList<>();
+        for (Map.Entry<String, LinkedHashSet<String>> entry : directory(dir).entrySet()) {
+            addAllTags(lines, entry.getKey(), entry.getValue());
+        }
+        Path file = dir.resolve(FILE_NAME);
+        if (lines.isEmpty()) {
+            Files.deleteIfExists(file);
+        } else {
+            Path temporary = dir.resolve(FILE_NAME + ".tmp");
+            Files.write(temporary, lines, StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        lineCounts.put(key(dir), lines.size());
+    }
+
+    /**
+     * Compacts the sidecar file of the directory if it holds more than {@link #COMPACTION_FACTOR} times the lines
+     * giving every file its current tags, logging a failure instead of throwing it.
+     *
+     * @param dir the path of the directory
+     */
+    private void compactIfNeeded(Path dir) {
+        int lineCount = lineCounts.getOrDefault(key(dir), 0);
+        if (lineCount <= COMPACTION_MINIMUM) {
+            return;
+        }
+        int needed = 0;
+        for (LinkedHashSet<String> tags : directory(dir).values()) {
+            needed += 1 + tags.size();
+        }
+        if (lineCount > COMPACTION_FACTOR * needed) {
+            try {
+                compact(dir);
+            } catch (IOException e) {
+                GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot compact the tags of " + dir + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of a directory in {@link #directories} and {@link #lineCounts}.
+     *
+     * @param directory the path of the directory
+     * @return the normalized absolute path of the directory.
+     */
+    private static String key(Path directory) {
+        return directory.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Returns the tags of every file of the directory, reading its sidecar file if it has not been read yet. A
+     * sidecar file read for the first time is compacted if it needs to be.
+     *
+     * @param directory the path of the directory
+     * @return the tags of every file of the directory, keyed by the name of the file.
+     */
+    private HashMap<String, LinkedHashSet<String>> directory(Path directory) {
+        String key = key(directory);
+        HashMap<String, LinkedHashSet<String>> files = directories.get(key);
+        if (files == null) {
+            files = new HashMap<>();
+            int lineCount = 0;
+            try (BufferedReader reader = Files.newBufferedReader(directory.resolve(FILE_NAME),
+                    StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    apply(files, line);
+                    lineCount++;
+                }
+            } catch (NoSuchFileException e) {
+                // a directory without sidecar file has no tagged file
+            } catch (IOException e) {
+                GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot read the tags of " + directory + ": " + e);
+            }
+            directories.put(key, files);
+            lineCounts.put(key, lineCount);
+            compactIfNeeded(directory);
+        }
+        return files;
+    }
+
+    /**
+     * Appends the lines to the sidecar file of the directory and applies them to the tags kept in memory, then
+     * compacts the sidecar file if it needs to be.
+     *
+     * @param directory the path of the directory
+     * @param lines     the lines to append
+     */
+    private void append(Path directory, List<String> lines) {
+        HashMap<String, LinkedHashSet<String>> files = directory(directory);
+        try {
+            Files.write(directory.resolve(FILE_NAME), lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+            lineCounts.merge(key(directory), lines.size(), Integer::sum);
+        } catch (IOException e) {
+            GoGoPhotoSystem.logger.log(Level.WARNING, "Cannot save the tags of " + directory + ": " + e);
+        }
+        for (String line : lines) {
+            apply(files, line);
+        }
+        compactIfNeeded(directory);
+    }
+
+    /**
+     * Applies one line of a sidecar file to the tags of the files of its directory. Malformed lines are ignored.
+     *
+     * @param files the tags of every file of the directory, keyed by the name of the file
+     * @param line  the line to apply
+     */
+    private static void apply(HashMap<String, LinkedHashSet<String>> files, String line) {
+        if (line.length() < 3 || line.charAt(1) != '\t') {
+            return;
+        }
+        int separator = line.indexOf('\t', 2);
+        String fileName = separator < 0 ? line.substring(2) : line.substring(2, separator);
+        switch (line.charAt(0)) {
+            case '+':
+                if (separator > 0) {
+                    files.computeIfAbsent(fileName, name -> new LinkedHashSet<>()).add(line.substring(separator + 1));
+                }
+                break;
+            case '-':
+                if (separator > 0 && files.containsKey(fileName)) {
+                    files.get(fileName).remove(line.substring(separator + 1));
+                }
+                break;
+            case '=':
+                files.put(fileName, new LinkedHashSet<>());
+                break;
+            case '*':
+                files.remove(fileName);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Adds the lines giving the file exactly the input tags.
+     *
+     * @param lines    the lines to add to
+     * @param fileName the name of the image file
+     * @param tags     the tags of the image file
+     */
+    private static void addAllTags(List<String> lines, String fileName, Collection<String> tags) {
+        lines.add(line('=', fileName, null));
+        for (String tag : tags) {
+            lines.add(line('+', fileName, tag));
+        }
+    }
+
+    /**
+     * Returns one line of a sidecar file.
+     *
+     * @param operation the operation of the line: '=', '+', '-' or '*'
+     * @param fileName  the name of the image file
+     * @param tag       the tag of the line, or null for '=' and '*'
+     * @return the line, without line separator.
+     * @throws IllegalArgumentException if the file name or the tag contains a tab or a line break.
+     */
+    private static String line(char operation, String fileName, String tag) {
+        checkField(fileName);
+        if (tag == null) {
+            return operation + "\t" + fileName;
+        }
+        checkField(tag);
+        return operation + "\t" + fileName + "\t" + tag;
+    }
+
+    /**
+     * Checks that a field can be written in a line of a sidecar file.
+     *
+     * @param field the file name or the tag
+     * @throws IllegalArgumentException if the field contains a tab or a line break.
+     */
+    private static void checkField(String field) {
+        if (field.indexOf('\t') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Tabs and line breaks cannot be stored in a sidecar file: " + field);
+        }
+    }
+
+    /**
+     * Returns whether the input file is a sidecar file.
+     *
+     * @param file the file to check
+     * @return true if the file is a sidecar file.
+     */
+    static boolean isSidecar(File file) {
+        return file.getName().equals(FILE_NAME) || file.getName().equals(FILE_NAME + ".tmp");
+    }
+}
@@ -0,0 +1,268 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * This class indexes the images by capture time, for range queries such as "all photos from 2019-07-01 to
+ * 2019-07-14" and for the number of photos taken every day or month. The capture times are kept sorted in a
+ * primitive array with the image IDs in a parallel array, so that a range is found by two binary searches and read
+ * as one contiguous run. Images added since the last query are kept apart, unsorted, and merged into the sorted
+ * arrays by the next query, so that adding many images costs one sort instead of one array shift per image.
+ *
+ * <p>Capture times are in milliseconds of the wall-clock time of the camera in UTC, as read by ExifReader, so
+ * that the day of a capture time in UTC is the day the camera showed.
+ *
+ * @see MetadataTable
+ * @see ExifReader
+ */
+public class TimelineIndex {
+    /**
+     * The number of milliseconds of a day.
+     */
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * The sorted capture times; only the first size are used.
+     */
+    private long[] times = new long[0];
+
+    /**
+     * The ID of the image of every capture time, in the order of times; capture times that are equal are ordered
+     * by ID.
+     */
+    private int[] ids = new int[0];
+
+    /**
+     * The number of images in the sorted arrays.
+     */
+    private int size;
+
+    /**
+     * The capture times of the images added since the last merge; only the first pendingSize are used.
+     */
+    private long[] pendingTimes = new long[0];
+
+    /**
+     * The IDs of the images added since the last merge, in the order of pendingTimes.
+     */
+    private int[] pendingIds = new int[0];
+
+    /**
+     * The number of images added since the last merge.
+     */
+    private int pendingSize;
+
+    /**
+     * The capture time of every indexed image, by image ID, or {@link MetadataTable#UNKNOWN_TIME}.
+     */
+    private long[] timeById = new long[0];
+
+    /**
+     * Indexes the image at its capture time, replacing the capture time it had.
+     *
+     * @param id   the ID of the image
+     * @param time the capture time of the image
+     */
+    synchronized void put(int id, long time) {
+        remove(id);
+        if (id >= timeById.length) {
+            int length = timeById.length;
+            timeById = Arrays.copyOf(timeById, Math.max(id + 1, length + (length >> 1) + 16));
+            Arrays.fill(timeById, length, timeById.length, MetadataTable.UNKNOWN_TIME);
+        }
+        timeById[id] = time;
+        if (pendingSize == pendingTimes.length) {
+            int capacity = Math.max(16, pendingSize * 2);
+            pendingTimes = Arrays.copyOf(pendingTimes, capacity);
+            pendingIds = Arrays.copyOf(pendingIds, capacity);
+        }
+        pendingTimes[pendingSize] = time;
+        pendingIds[pendingSize++] = id;
+    }
+
+    /**
+     * Removes the image from the index, if it is indexed.
+     *
+     * @param id the ID of the image
+     */
+    synchronized void remove(int id) {
+        if (id < 0 || id >= timeById.length || timeById[id] == MetadataTable.UNKNOWN_TIME) {
+            return;
+        }
+        long time = timeById[id];
+        timeById[id] = MetadataTable.UNKNOWN_TIME;
+        for (int i = 0; i < pendingSize; i++) {
+            if (pendingIds[i] == id) {
+                pendingSize--;
+                pendingTimes[i] = pendingTimes[pendingSize];
+                pendingIds[i] = pendingIds[pendingSize];
+                return;
+            }
+        }
+        int index = lowerBound(time, id);
+        if (index < size && times[index] == time && ids[index] == id) {
+            System.arraycopy(times, index + 1, times, index, size - index - 1);
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Returns the IDs of the images taken from the first time, included, to the last time, excluded, in the order
+     * of their capture times.
+     *
+     * @param from the first capture time
+     * @param to   the capture time after the last
+     * @return the IDs of the images taken in the range.
+     */
+    synchronized int[] findBetween(long from, long to) {
+        merge();
+        int start = lowerBound(from, Integer.MIN_VALUE);
+        int end = Math.max(start, lowerBound(to, Integer.MIN_VALUE));
+        return Arrays.copyOfRange(ids, start, end);
+    }
+
+    /**
+     * Returns the number of images taken from the first time, included, to the last time, excluded.
+     *
+     * @param from the first capture time
+     * @param to   the capture time after the last
+     * @return the number of images taken in the range.
+     */
+    public synchronized int countBetween(long from, long to) {
+        merge();
+        return Math.max(0, lowerBound(to, Integer.MIN_VALUE) - lowerBound(from, Integer.MIN_VALUE));
+    }
+
+    /**
+     * Returns the number of images taken every day from the first day to the last day, both included. Days
+     * without images are left out.
+     *
+     * @param from the first day
+     * @param to   the last day
+     * @return the number of images of every day with images, in the order of the days.
+     */
+    public synchronized SortedMap<LocalDate, Integer> countByDay(LocalDate from, LocalDate to) {
+        merge();
+        TreeMap<LocalDate, Integer> counts = new TreeMap<>();
+        int end = lowerBound(startOf(to.plusDays(1)), Integer.MIN_VALUE);
+        int i = lowerBound(startOf(from), Integer.MIN_VALUE);
+        while (i < end) {
+            long day = Math.floorDiv(times[i], DAY);
+            int next = Math.min(end, lowerBound((day + 1) * DAY, Integer.MIN_VALUE));
+            counts.put(LocalDate.ofEpochDay(day), next - i);
+            i = next;
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of images taken every month from the first month to the last month, both included.
+     * Months without images are left out.
+     *
+     * @param from the first month
+     * @param to   the last month
+     * @return the number of images of every month with images, in the order of the months.
+     */
+    public synchronized SortedMap<YearMonth, Integer> countByMonth(YearMonth from, YearMonth to) {
+        merge();
+        TreeMap<YearMonth, Integer> counts = new TreeMap<>();
+        int end = lowerBound(startOf(to.plusMonths(1).atDay(1)), Integer.MIN_VALUE);
+        int i = lowerBound(startOf(from.atDay(1)), Integer.MIN_VALUE);
+        while (i < end) {
+            YearMonth month = YearMonth.from(LocalDate.ofEpochDay(Math.floorDiv(times[i], DAY)));
+            int next = Math.min(end, lowerBound(startOf(month.plusMonths(1).atDay(1)), Integer.MIN_VALUE));
+            counts.put(month, next - i);
+            i = next;
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of images indexed.
+     *
+     * @return the number of images indexed.
+     */
+    public synchronized int size() {
+        return size + pendingSize;
+    }
+
+    /**
+     * Returns the first capture time of the day.
+     *
+     * @param day the day
+     * @return the capture time at midnight starting the day.
+     */
+    static long startOf(LocalDate day) {
+        return day.atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Returns the position of the first image of the sorted arrays that comes at or after the input capture time
+     * and ID.
+     *
+     * @param time the capture time
+     * @param id   the ID, for capture times that are equal
+     * @return the position, from 0 to size.
+     */
+    private int lowerBound(long time, int id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[middle] < time || (times[middle] == time && ids[middle] < id)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sorts the images added since the last merge and merges them into the sorted arrays.
+     */
+    private void merge() {
+        if (pendingSize == 0) {
+            return;
+        }
+        Integer[] order = new Integer[pendingSize];
+        for (int i = 0; i < pendingSize; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> pendingTimes[a] != pendingTimes[b]
+                ? Long.compare(pendingTimes[a], pendingTimes[b]) : Integer.compare(pendingIds[a], pendingIds[b]));
+        long[] mergedTimes = new long[size + pendingSize];
+        int[] mergedIds = new int[size + pendingSize];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < size || j < pendingSize) {
+            boolean takeSorted;
+            if (j == pendingSize) {
+                takeSorted = true;
+            } else if (i == size) {
+                takeSorted = false;
+            } else {
+                long pendingTime = pendingTimes[order[j]];
+                takeSorted = times[i] < pendingTime || (times[i] == pendingTime && ids[i] < pendingIds[order[j]]);
+            }
+            if (takeSorted) {
+                mergedTimes[k] = times[i];
+                mergedIds[k++] = ids[i++];
+            } else {
+                mergedTimes[k] = pendingTimes[order[j]];
+                mergedIds[k++] = pendingIds[order[j++]];
+            }
+        }
+        times = mergedTimes;
+        ids = mergedIds;
+        size = k;
+        pendingSize = 0;
+    }
+}